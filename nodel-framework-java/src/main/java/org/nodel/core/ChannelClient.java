@@ -20,6 +20,7 @@ import org.apache.logging.log4j.Logger;
 import org.nodel.Handler;
 import org.nodel.SimpleName;
 import org.nodel.Tuple;
+import org.nodel.logging.LatencyHistogram;
 import org.nodel.reflection.Serialisation;
 import org.nodel.reflection.Value;
 import org.nodel.threading.ThreadPool;
@@ -40,6 +41,18 @@ public abstract class ChannelClient {
     
     protected static Timers s_timerThread = new Timers("channel_client");
     
+    /**
+     * (diagnostics)
+     */
+    private static LatencyHistogram s_eventDeliveryLatency = new LatencyHistogram();
+    
+    /**
+     * (diagnostics)
+     */
+    static {
+        Framework.shared().registerHistogram("event_delivery_latency", s_eventDeliveryLatency);
+    }
+    
     /**
      * (logging related)
      */
@@ -209,7 +222,7 @@ public abstract class ChannelClient {
     public ChannelClient(NodeAddress address) {
         _address = address;
         
-        _logger.info("ChannelClient started. address='" + address + "'");
+        _logger.info("ChannelClient started. address='{}'", address);
         
         s_timerThread.schedule(new TimerTask() {
             
@@ -576,7 +589,7 @@ public abstract class ChannelClient {
     protected void handleMessage(final ChannelMessage message) {
             _logger.entry();
             
-            _logger.info("Client: message arrived: " + message);
+            _logger.info("Client: message arrived: {}", message);
             
             // received an 'event'
             if (message.node != null && message.event != null) {
@@ -608,13 +621,20 @@ public abstract class ChannelClient {
 
             final NodelPoint entryKey = eventHandlersEntry.key;
             final Object messageArg = message.arg;
+            
+            // (delivery latency includes time spent queued for a thread)
+            final long arrivalTime = System.nanoTime();
 
             for (final ChannelEventHandler handler : eventHandlersEntry.handlers) {
                 s_threadPool.execute(new Runnable() {
 
                     @Override
                     public void run() {
-                        handler.handle(entryKey, messageArg);
+                        try {
+                            handler.handle(entryKey, messageArg);
+                        } finally {
+                            s_eventDeliveryLatency.recordSince(arrivalTime);
+                        }
                     }
 
                 });
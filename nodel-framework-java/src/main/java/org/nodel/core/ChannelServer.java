@@ -176,7 +176,7 @@ public abstract class ChannelServer {
      * Processes incoming messages.
      */
     protected void handleMessage(final ChannelMessage message) {
-        _logger.info("Server: message arrived: " + message);
+        _logger.info("Server: message arrived: {}", message);
 
         // 'interests' request
         if (message.node != null && (message.events != null || message.actions != null)) {
@@ -195,7 +195,7 @@ public class ChannelServerSocket {
 
 				_port = _serverSocket.getLocalPort();
 
-				_logger.info("Bound to port '" + _port + "'");
+				_logger.info("Bound to port '{}'", _port);
 
 				return;
 			} catch (Exception exc) {
@@ -20,8 +20,10 @@ import org.joda.time.DateTime;
 import org.nodel.Environment;
 import org.nodel.Threads;
 import org.nodel.discovery.NodelAutoDNS;
+import org.nodel.logging.LatencyHistogram;
 import org.nodel.logging.MeasurementHistory;
 import org.nodel.logging.MeasurementProvider;
+import org.nodel.reflection.Param;
 import org.nodel.reflection.Serialisation;
 import org.nodel.reflection.Service;
 import org.nodel.reflection.Value;
@@ -36,6 +38,17 @@ public class Framework {
      */
     private final static int HISTORY_SIZE = 100;
     
+    /**
+     * The resolution of the longer, down-sampled stats history (a minute).
+     */
+    private final static int LONG_HISTORY_RESOLUTION = 60000;
+    
+    /**
+     * How much longer stats history to keep (a day, about 11 KB per measurement so only kept for those
+     * that ask for it).
+     */
+    private final static int LONG_HISTORY_SIZE = 1440;
+    
     /**
      * The stats period.
      */
@@ -154,16 +167,112 @@ public class Framework {
      * Registers a new counter to be tracked.
      */
     public void registerCounter(String name, MeasurementProvider provider, boolean isRate) {
+        registerCounter(name, provider, isRate, false);
+    } // (method)
+    
+    /**
+     * Registers a new counter to be tracked, optionally keeping a day's worth of per-minute averages 
+     * (see 'longHistory').
+     */
+    public void registerCounter(String name, MeasurementProvider provider, boolean isRate, boolean longHistory) {
         if (this.counterNames.contains(name))
             throw new IllegalStateException(name + " is already present");
         
         this.counterNames.add(name);
         
-        MeasurementHistory counter = new MeasurementHistory(name, provider, HISTORY_SIZE, isRate);
+        MeasurementHistory counter = new MeasurementHistory(name, provider, PERIOD, HISTORY_SIZE, isRate);
+        if (longHistory)
+            counter.addTier(LONG_HISTORY_RESOLUTION, LONG_HISTORY_SIZE);
         
         _measurements.add(counter);
     } // (method)
     
+    /**
+     * (the long histories are kept out of the 'measurements' view)
+     */
+    @Service(name = "longHistory", title = "Long history", desc = "The down-sampled histories of a measurement (if it keeps any).", genericClassA = MeasurementHistory.Tier.class)
+    public List<MeasurementHistory.Tier> longHistory(@Param(name = "name", title = "Name", desc = "The measurement name.") String name) {
+        for (MeasurementHistory measurement : _measurements) {
+            if (measurement.getName().equals(name))
+                return measurement.getTiers();
+        }
+        
+        throw new IllegalArgumentException("No measurement named '" + name + "'");
+    } // (method)
+    
+    /**
+     * Registers a latency histogram to be tracked (its rate along with percentiles).
+     */
+    public void registerHistogram(String name, LatencyHistogram histogram) {
+        registerCounter(name, histogram, true);
+    } // (method)
+    
+    /**
+     * Writes the current value of every measurement in OpenMetrics (Prometheus) text format, i.e. rates as
+     * counters, instantaneous measurements as gauges and latency histograms as summaries (seconds).
+     * (no reflection involved so suitable for frequent scraping)
+     * 
+     * @param openMetrics false for the older Prometheus text format (0.0.4) where counters are declared by
+     *                    their '_total' sample name and there's no '# EOF' marker.
+     */
+    public void writeOpenMetrics(StringBuilder sb, boolean openMetrics) {
+        for (MeasurementHistory measurement : _measurements) {
+            MeasurementProvider provider = measurement.getMeasurementProvider();
+            String name = toMetricName(measurement.getName());
+
+            if (provider instanceof LatencyHistogram) {
+                LatencyHistogram histogram = (LatencyHistogram) provider;
+                LatencyHistogram.Summary summary = histogram.getSummary();
+
+                name += "_seconds";
+                sb.append("# TYPE ").append(name).append(" summary\n");
+                appendQuantile(sb, name, "0.5", summary.p50);
+                appendQuantile(sb, name, "0.9", summary.p90);
+                appendQuantile(sb, name, "0.99", summary.p99);
+                appendQuantile(sb, name, "0.999", summary.p999);
+                sb.append(name).append("_count ").append(summary.count).append('\n');
+                sb.append(name).append("_sum ").append(histogram.getSum() / 1e9).append('\n');
+
+            } else if (measurement.isRate()) {
+                sb.append("# TYPE ").append(name).append(openMetrics ? "" : "_total").append(" counter\n");
+                sb.append(name).append("_total ").append(provider.getMeasurement()).append('\n');
+
+            } else {
+                sb.append("# TYPE ").append(name).append(" gauge\n");
+                sb.append(name).append(' ').append(provider.getMeasurement()).append('\n');
+            }
+        } // (for)
+
+        if (openMetrics)
+            sb.append("# EOF\n");
+    } // (method)
+
+    /**
+     * (micros to seconds)
+     */
+    private static void appendQuantile(StringBuilder sb, String name, String quantile, long micros) {
+        sb.append(name).append("{quantile=\"").append(quantile).append("\"} ").append(micros / 1e6).append('\n');
+    } // (method)
+
+    /**
+     * Prefixes with 'nodel_' (if necessary) and replaces anything not allowed in a metric name.
+     */
+    private static String toMetricName(String name) {
+        StringBuilder sb = new StringBuilder(name.length() + 6);
+        if (!name.startsWith("nodel_"))
+            sb.append("nodel_");
+
+        for (int a = 0; a < name.length(); a++) {
+            char c = name.charAt(a);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == ':')
+                sb.append(c);
+            else
+                sb.append('_');
+        }
+
+        return sb.toString();
+    } // (method)
+    
     /**
      * Records stats periodically.
      * (timer entry-point)
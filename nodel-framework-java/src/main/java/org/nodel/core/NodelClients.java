@@ -15,6 +15,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -78,6 +79,25 @@ public class NodelClients {
      * (threading)
      */
     private Timers _timerThread = new Timers("nodel_clients");
+    
+    /**
+     * How long a successful resolution is trusted for.
+     * (millis)
+     */
+    private final static long RESOLVED_TTL = 15000;
+    
+    /**
+     * How long a failed resolution is trusted for (unless an advertisement arrives sooner). Must be 
+     * shorter than the retry period.
+     * (millis)
+     */
+    private final static long UNRESOLVED_TTL = 25000;
+    
+    /**
+     * The period between attempts to bring up nodes that are waiting.
+     * (millis)
+     */
+    private final static long RETRY_PERIOD = 30000;
 
     /**
      * (used in 'nodeEntryByNodeName' map)
@@ -89,8 +109,6 @@ public class NodelClients {
          */
         public SimpleName node;
         
-        public TimerTask schedule;
-        
         public ChannelClient channel;
         
         public boolean isBusy = false;
@@ -100,6 +118,11 @@ public class NodelClients {
          */
         public boolean recentConnectionError = false;
         
+        /**
+         * Whether this entry is waiting on an advertisement (as opposed to simply backing off)
+         */
+        public boolean awaitingAdvertisement = false;
+        
         /**
          * If this entry has been disposed.
          */
@@ -232,6 +255,48 @@ public class NodelClients {
      */
     private Map<NodeAddress, ChannelEntry> channelsByAddress = new HashMap<NodeAddress, ChannelEntry>();
     
+    /**
+     * (used in 'resolutionCache')
+     */
+    private class ResolutionEntry {
+        
+        /**
+         * The resolved address (null if resolution failed).
+         */
+        public NodeAddress address;
+        
+        /**
+         * (nanos)
+         */
+        public long expiry;
+        
+    } // (class)
+    
+    /**
+     * Positive and negative resolution results by node name.
+     * (locked around 'signal')
+     */
+    private Map<SimpleName, ResolutionEntry> resolutionCache = new HashMap<SimpleName, ResolutionEntry>();
+    
+    /**
+     * The node entries waiting on resolution or backing off, grouped by node so they can be
+     * serviced together by a single timer or as soon as an advertisement arrives.
+     * (locked around 'signal')
+     */
+    private Map<SimpleName, NodeEntry> waitingNodeEntries = new LinkedHashMap<SimpleName, NodeEntry>();
+    
+    /**
+     * The single retry timer for all waiting entries (or null if none is scheduled).
+     * (locked around 'signal')
+     */
+    private TimerTask retrySchedule;
+    
+    /**
+     * Whether the advertisement handler has been attached to the discovery service.
+     * (locked around 'signal')
+     */
+    private boolean advertisedHandlerAttached = false;
+    
     /**
      * Events handler(s) for when a crippling failure occurs.
      */
@@ -382,7 +447,7 @@ public class NodelClients {
             
             @Override
             public void run() {
-                doMaintainNode(nodeEntry, false);
+                doMaintainNode(nodeEntry);
             }
             
         });
@@ -392,17 +457,15 @@ public class NodelClients {
      * Does any node maintenance, including establishing channels, (re)registering, etc.
      * (thread-pool entry-point)
      */
-    private void doMaintainNode(final NodeEntry nodeEntry, boolean isSchedule) {
+    private void doMaintainNode(final NodeEntry nodeEntry) {
         synchronized (_signal) {
             _logger.entry();
             
             if (_closed || nodeEntry.disposed)
                 return;
             
-            if (isSchedule) {
-                // clear the schedule flag regardless
-                nodeEntry.schedule = null;
-            }
+            // clear the waiting state regardless
+            this.waitingNodeEntries.remove(nodeEntry.node);
             
             if (nodeEntry.channel == null) {
                 
@@ -413,7 +476,7 @@ public class NodelClients {
                     
                 } else {
                     // it's hosted on the external network
-                    NodeAddress address = AutoDNS.instance().resolveNodeAddress(nodeEntry.node);
+                    NodeAddress address = resolveNodeAddress(nodeEntry.node);
                     
                     handleResolutionComplete(nodeEntry, address);
                 }
@@ -423,6 +486,135 @@ public class NodelClients {
         }
     } // (method)
     
+    /**
+     * Resolves a node's address, using recent results (positive or negative) where possible.
+     * (assumes locked)
+     */
+    private NodeAddress resolveNodeAddress(SimpleName node) {
+        if (!this.advertisedHandlerAttached) {
+            AutoDNS.instance().attachAdvertisedHandler(new Handler.H1<Collection<SimpleName>>() {
+                
+                @Override
+                public void handle(final Collection<SimpleName> nodes) {
+                    // (discovery thread must not be held up)
+                    _threadPool.execute(new Runnable() {
+                        
+                        @Override
+                        public void run() {
+                            handleNodesAdvertised(nodes);
+                        }
+                        
+                    });
+                }
+                
+            });
+            
+            this.advertisedHandlerAttached = true;
+        }
+        
+        long now = System.nanoTime();
+        
+        ResolutionEntry entry = this.resolutionCache.get(node);
+        if (entry != null && now - entry.expiry < 0)
+            return entry.address;
+        
+        NodeAddress address = AutoDNS.instance().resolveNodeAddress(node);
+        
+        if (entry == null) {
+            entry = new ResolutionEntry();
+            this.resolutionCache.put(node, entry);
+        }
+        
+        entry.address = address;
+        entry.expiry = now + (address != null ? RESOLVED_TTL : UNRESOLVED_TTL) * 1000000L;
+        
+        return address;
+    } // (method)
+    
+    /**
+     * Places a node entry in the waiting group, making sure the shared retry timer is running.
+     * (assumes locked)
+     */
+    private void addToWaiting(NodeEntry nodeEntry, boolean awaitingAdvertisement) {
+        nodeEntry.awaitingAdvertisement = awaitingAdvertisement;
+        
+        this.waitingNodeEntries.put(nodeEntry.node, nodeEntry);
+        
+        if (this.retrySchedule == null) {
+            this.retrySchedule = _timerThread.schedule(new TimerTask() {
+                
+                @Override
+                public void run() {
+                    handleRetryTimer();
+                }
+                
+            }, RETRY_PERIOD);
+        }
+    } // (method)
+    
+    /**
+     * Services all the waiting node entries together.
+     * (timer entry-point)
+     */
+    private void handleRetryTimer() {
+        synchronized (_signal) {
+            this.retrySchedule = null;
+            
+            if (_closed)
+                return;
+            
+            // purge any stale resolution results
+            long now = System.nanoTime();
+            
+            Iterator<ResolutionEntry> resolutions = this.resolutionCache.values().iterator();
+            while (resolutions.hasNext()) {
+                if (now - resolutions.next().expiry >= 0)
+                    resolutions.remove();
+            }
+            
+            if (this.waitingNodeEntries.isEmpty())
+                return;
+            
+            _logger.debug("Retrying {} waiting node(s)...", this.waitingNodeEntries.size());
+            
+            // (entries may re-enter the waiting group)
+            List<NodeEntry> nodeEntries = new ArrayList<NodeEntry>(this.waitingNodeEntries.values());
+            this.waitingNodeEntries.clear();
+            
+            for (NodeEntry nodeEntry : nodeEntries)
+                doMaintainNode(nodeEntry);
+        }
+    } // (method)
+    
+    /**
+     * Wakes up any entries waiting on nodes that have just been advertised.
+     * (thread-pool entry-point)
+     */
+    private void handleNodesAdvertised(Collection<SimpleName> nodes) {
+        synchronized (_signal) {
+            if (_closed)
+                return;
+            
+            for (SimpleName node : nodes) {
+                // previous results no longer apply
+                this.resolutionCache.remove(node);
+                
+                NodeEntry nodeEntry = this.waitingNodeEntries.get(node);
+                if (nodeEntry == null || !nodeEntry.awaitingAdvertisement)
+                    continue;
+                
+                _logger.info("'{}' has been advertised; no longer waiting.", node);
+                
+                doMaintainNode(nodeEntry);
+            }
+            
+            // the retry timer is not needed if nothing is left waiting 
+            if (this.waitingNodeEntries.isEmpty() && this.retrySchedule != null) {
+                this.retrySchedule.cancel();
+                this.retrySchedule = null;
+            }
+        }
+    } // (method)
     
     /**
      *  Registers interest in a Node's actions
@@ -498,6 +690,7 @@ public class NodelClients {
         // "dispose" the node entry and remove it
         nodeEntry.disposed = true;
         this.nodeEntriesByNodeName.remove(nodeEntry.node);
+        this.waitingNodeEntries.remove(nodeEntry.node);
         
         ChannelClient channel = nodeEntry.channel;
         if (channel == null)
@@ -534,19 +727,10 @@ public class NodelClients {
                     nodeEntry.recentConnectionError = false;
                 }
 
-                // re-schedule an update 30 seconds into the future if
-                // there no future schedule to do so
+                // join the waiting group to be retried in the near future (or sooner, 
+                // if unresolved and an advertisement arrives)
                 _logger.debug("Address was not resolved so rescheduling maintainence...");
-                if (nodeEntry.schedule == null) {
-                    nodeEntry.schedule = _timerThread.schedule(new TimerTask() {
-                        
-                        @Override
-                        public void run() {
-                            doMaintainNode(nodeEntry, true);
-                        }
-                        
-                    }, 30000);
-                }
+                addToWaiting(nodeEntry, address == null);
                 
                 // notify all linked bindings that it could not be resolved
                 //  (actions...)
@@ -638,7 +822,7 @@ public class NodelClients {
                     long ts = System.nanoTime();
                     _logger.info("Starting channel...");
                     channel.start();
-                    _logger.info("Channel started (took " + DateTimes.formatPeriod(ts) + ")");
+                    _logger.info("Channel started (took {})", DateTimes.formatPeriod(ts));
 
                     this.channelsByAddress.put(address, channelEntry);
 
@@ -801,6 +985,9 @@ public class NodelClients {
                 // used to prevent rapid reconnects
                 nodeEntry.recentConnectionError = true;
                 
+                // the address may no longer be valid
+                this.resolutionCache.remove(node);
+                
                 nodeEntry.channel = null;
                 
                 // go through each event handler and action entries clearing the channel
@@ -873,6 +1060,9 @@ public class NodelClients {
                 
                 channelEntry.nodes.remove(relatedNode);
                 
+                // the node has moved so previous address no longer applies
+                this.resolutionCache.remove(relatedNode);
+                
                 NodeEntry nodeEntry = this.nodeEntriesByNodeName.get(relatedNode);
                 if (nodeEntry == null) {
                     _logger.info("This node has already been released locally, '{}'", relatedNode);
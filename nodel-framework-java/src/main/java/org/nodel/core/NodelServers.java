@@ -295,7 +295,7 @@ public class NodelServers {
         List<SimpleName> eventList = _nodeEvents.get(node);
         
         if ((actionList == null || actionList.size() == 0) && (eventList == null || eventList.size() == 0)) {
-            this.logger.info("No more references to " + node + " left; cleaning up its resources.");
+            this.logger.info("No more references to {} left; cleaning up its resources.", node);
             
             NodeEntry nodeEntry = _nodeEntriesByNodeName.remove(node);
             assert nodeEntry != null;
@@ -477,7 +477,7 @@ public class NodelServers {
             }
             
             int removed = toRemove.size();
-            this.logger.info("Cleaned up " + removed + " channel server reference" + (removed == 1 ? "" : "s") + ".");
+            this.logger.info("Cleaned up {} channel server reference{}.", removed, removed == 1 ? "" : "s");
         }
     } // (method)
     
@@ -21,6 +21,7 @@ import org.nodel.DateTimes;
 import org.nodel.logging.AtomicLongMeasurementProvider;
 import org.nodel.logging.CountableInputStream;
 import org.nodel.logging.CountableOutputStream;
+import org.nodel.logging.LatencyHistogram;
 import org.nodel.reflection.Serialisation;
 
 /**
@@ -48,12 +49,18 @@ public class TCPChannelClient extends ChannelClient {
      */    
     private static AtomicLong s_dataOutOpsCounter = new AtomicLong();
     
+    /**
+     * (diagnostics)
+     */
+    private static LatencyHistogram s_sendLatency = new LatencyHistogram();
+    
     /**
      * (diagnostics)
      */
     static {
         Framework.shared().registerCounter("tcp_client_in", new AtomicLongMeasurementProvider(s_dataInCounter), true);
         Framework.shared().registerCounter("tcp_client_out", new AtomicLongMeasurementProvider(s_dataOutCounter), true);
+        Framework.shared().registerHistogram("tcp_client_send_latency", s_sendLatency);
     }    
 
     /**
@@ -223,10 +230,12 @@ public class TCPChannelClient extends ChannelClient {
     private void doSendMessage(ChannelMessage message) {
         Writer writer = _writer;
         if (writer == null) {
-            _logger.info("A message was dropped because the channel connect was not complete yet; safely ignoring. message='{}'" + message);
+            _logger.info("A message was dropped because the channel connect was not complete yet; safely ignoring. message='{}'", message);
             return;
         }
 
+        long startTime = System.nanoTime();
+
         try {
             String jsonMessage = Serialisation.serialise(message, 4);
 
@@ -250,6 +259,8 @@ public class TCPChannelClient extends ChannelClient {
             writer.write(sb.toString());
             writer.flush();
             
+            s_sendLatency.recordSince(startTime);
+            
         } catch (Exception exc) {
             synchronized (this._signal) {
                 _logger.trace("sendMessage exception");
@@ -18,6 +18,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.nodel.logging.AtomicLongMeasurementProvider;
 import org.nodel.logging.CountableInputStream;
 import org.nodel.logging.CountableOutputStream;
+import org.nodel.logging.LatencyHistogram;
 import org.nodel.reflection.Serialisation;
 
 /**
@@ -67,12 +68,18 @@ public class TCPChannelServer extends ChannelServer {
      */    
     private static AtomicLong s_dataOutOpsCounter = new AtomicLong();
     
+    /**
+     * (diagnostics)
+     */
+    private static LatencyHistogram s_sendLatency = new LatencyHistogram();
+    
     /**
      * (diagnostics)
      */
     static {
         Framework.shared().registerCounter("tcp_server_in", new AtomicLongMeasurementProvider(s_dataInCounter), true);
         Framework.shared().registerCounter("tcp_server_out", new AtomicLongMeasurementProvider(s_dataOutCounter), true);
+        Framework.shared().registerHistogram("tcp_server_send_latency", s_sendLatency);
     }
     
     /**
@@ -312,6 +319,8 @@ public class TCPChannelServer extends ChannelServer {
      * (exception free)
      */
     private void doSendMessage(ChannelMessage message) {
+        long startTime = System.nanoTime();
+        
         String jsonMessage = Serialisation.serialise(message, 4);
 
         int len = jsonMessage.length();
@@ -333,6 +342,8 @@ public class TCPChannelServer extends ChannelServer {
         try {
             _writer.write(sb.toString());
             _writer.flush();
+            
+            s_sendLatency.recordSince(startTime);
 
         } catch (Exception exc) {
             boolean wasEnabled = false;
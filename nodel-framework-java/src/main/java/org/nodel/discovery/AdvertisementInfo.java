@@ -9,6 +9,7 @@ package org.nodel.discovery;
 import java.util.Collection;
 
 import org.nodel.SimpleName;
+import org.nodel.core.NodeAddress;
 import org.nodel.reflection.Value;
 
 public class AdvertisementInfo {
@@ -24,5 +25,12 @@ public class AdvertisementInfo {
      */
     @Value(name = "timeStamp")
     public long timeStamp;
+    
+    /**
+     * The Nodel channel address parsed from the 'tcp://...' entry in 'addresses'
+     * (only re-parsed when the addresses change, null if none is present)
+     */
+    @Value(name = "nodeAddress")
+    public NodeAddress nodeAddress;
 
 } // (class)
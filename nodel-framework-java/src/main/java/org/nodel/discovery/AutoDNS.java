@@ -14,6 +14,8 @@ import java.util.Collection;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.nodel.Handler;
+import org.nodel.Handlers;
 import org.nodel.SimpleName;
 import org.nodel.Strings;
 import org.nodel.core.NodeAddress;
@@ -41,6 +43,11 @@ public abstract class AutoDNS implements Closeable {
      */
     protected int _port = -1;
     
+    /**
+     * Handlers for when nodes are newly advertised or their addresses have changed.
+     */
+    protected Handlers.H1<Collection<SimpleName>> _onAdvertised = new Handlers.H1<Collection<SimpleName>>();
+    
     /**
      * Load an implementation (build-in or otherwise) using an optional system property 'org.nodel.discovery.impl':
      * e.g. org.nodel.discovery.impl = "org.nodel.discovery.AutoDNS"
@@ -111,6 +118,22 @@ public abstract class AutoDNS implements Closeable {
      */
     public abstract NodeAddress resolveNodeAddress(SimpleName node);
     
+    /**
+     * Attaches a handler that is given the group of nodes that were newly advertised (or whose
+     * addresses changed) as a result of a single announcement.
+     * (multicast event, delegate must not block)
+     */
+    public void attachAdvertisedHandler(Handler.H1<Collection<SimpleName>> handler) {
+        _onAdvertised.addHandler(handler);
+    } // (method)
+    
+    /**
+     * @see attachAdvertisedHandler
+     */
+    public void detachAdvertisedHandler(Handler.H1<Collection<SimpleName>> handler) {
+        _onAdvertised.removeHandler(handler);
+    } // (method)
+    
     /**
      * Creates a simple name advertisement.
      * (non-blocking)
@@ -806,8 +806,6 @@ public class NodelAutoDNS extends AutoDNS {
      * Sends the message to a recipient 
      */
     private void sendMessage(InetSocketAddress to, NameServicesChannelMessage message) {
-        _logger.info("Sending message. to={}, message={}", to, message);
-        
         if (_sendSocket == null) {
         	_logger.info("A socket is not available yet; ignoring send request.");
         	return;
@@ -815,6 +813,11 @@ public class NodelAutoDNS extends AutoDNS {
         
         // convert into bytes
         String json = Serialisation.serialise(message);
+        
+        // (logs the JSON already produced rather than serialising again)
+        if (_logger.isInfoEnabled())
+            _logger.info("Sending message. to={}, message={}", to, json);
+        
         byte[] bytes = json.getBytes();
         
         DatagramPacket packet = new DatagramPacket(bytes, bytes.length);
@@ -847,7 +850,8 @@ public class NodelAutoDNS extends AutoDNS {
      * Handles a complete packet from the socket.
      */
     private void handleIncomingMessage(InetSocketAddress from, NameServicesChannelMessage message) {
-        _logger.info("Message arrived. from={}, message={}", from, message);
+        if (_logger.isInfoEnabled())
+            _logger.info("Message arrived. from={}, message={}", from, message);
         
         // discovery request?
         if (message.discovery != null) {
@@ -866,6 +870,14 @@ public class NodelAutoDNS extends AutoDNS {
         }
         
         else if (message.present != null && message.addresses != null) {
+            // the group of nodes that have become resolvable as a result of this message
+            List<SimpleName> advertised = null;
+            
+            // the shared address list is parsed at most once for the whole message and only if it
+            // differs from what's already known
+            boolean parsed = false;
+            NodeAddress nodeAddress = null;
+            
             for (String name : message.present ) {
                 synchronized (_clientLock) {
                     SimpleName node = new SimpleName(name);
@@ -876,14 +888,65 @@ public class NodelAutoDNS extends AutoDNS {
                         _advertisements.put(node, ad);
                     }
                     
-                    // refresh the time stamp and update the address
+                    // refresh the time stamp
                     ad.timeStamp = System.nanoTime() / 1000000;
+                    
+                    // and update the address if it has changed
+                    if (message.addresses.equals(ad.addresses))
+                        continue;
+                    
+                    if (!parsed) {
+                        nodeAddress = parseNodeAddress(message.addresses);
+                        parsed = true;
+                    }
+                    
                     ad.addresses = message.addresses;
+                    
+                    if (nodeAddress != null && !nodeAddress.equals(ad.nodeAddress)) {
+                        if (advertised == null)
+                            advertised = new ArrayList<SimpleName>();
+                        
+                        advertised.add(node);
+                    }
+                    
+                    ad.nodeAddress = nodeAddress;
                 }
             }
+            
+            // notify interested parties as a group
+            if (advertised != null)
+                _onAdvertised.updateAll(advertised);
         }
         
     } // (method)
+    
+    /**
+     * Extracts the Nodel channel address from an advertisement's address list 
+     * e.g. "tcp://136.154.27.100:65017", or null if there isn't one.
+     */
+    private static NodeAddress parseNodeAddress(Collection<String> addresses) {
+        for (String address : addresses) {
+            if (address == null || !address.startsWith("tcp://"))
+                continue;
+
+            int indexOfPort = address.lastIndexOf(':');
+            if (indexOfPort < 6 || indexOfPort >= address.length() - 1)
+                continue;
+
+            try {
+                String addressPart = address.substring(6, indexOfPort);
+                int port = Integer.parseInt(address.substring(indexOfPort + 1));
+
+                return NodeAddress.create(addressPart, port);
+                
+            } catch (Exception exc) {
+                // malformed, try the next one
+                continue;
+            }
+        }
+        
+        return null;
+    } // (method)
 
     @Override
     public NodeAddress resolveNodeAddress(SimpleName node) {
@@ -891,27 +954,8 @@ public class NodelAutoDNS extends AutoDNS {
     	_usingResolution = true;
     	
         AdvertisementInfo adInfo = _advertisements.get(node);
-        if(adInfo != null) {
-            Collection<String> addresses = adInfo.addresses;
-            
-            for(String address : addresses) {
-                if (!address.startsWith("tcp://"))
-                    continue;
-                
-                int indexOfPort = address.lastIndexOf(':');
-                if (indexOfPort < 0 || indexOfPort >= address.length() - 2)
-                    continue;
-                
-                String addressPart = address.substring(6, indexOfPort);
-                
-                String portStr = address.substring(indexOfPort + 1);
-                int port = Integer.parseInt(portStr);
-                
-                NodeAddress nodeAddress = NodeAddress.create(addressPart, port);
-                
-                return nodeAddress;
-            }
-        }
+        if (adInfo != null)
+            return adInfo.nodeAddress;
         
         return null;
     }
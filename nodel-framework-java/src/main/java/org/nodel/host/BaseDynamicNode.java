@@ -10,12 +10,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.LogManager;
@@ -46,6 +46,7 @@ import org.nodel.host.RemoteBindingValues;
 import org.nodel.host.RemoteBindings;
 import org.nodel.host.RemoteBindingValues.ActionValue;
 import org.nodel.host.RemoteBindingValues.EventValue;
+import org.nodel.logging.LogRingBuffer;
 import org.nodel.reflection.Param;
 import org.nodel.reflection.Service;
 import org.nodel.reflection.Value;
@@ -149,26 +150,99 @@ public class BaseDynamicNode {
      * For sequence counting, starting at current time
      * to get a unique, progressing sequence number every 
      * time (regardless of restart).
-     * (locked around 'logs')
+     * (modified within 'logsSignal')
      */
-    private long _logsSeqCounter = System.currentTimeMillis();
+    private volatile long _logsSeqCounter = System.currentTimeMillis();
+    
+    /**
+     * Serialises additions to the event logs and signals waiting readers.
+     */
+    private Object _logsSignal = new Object();
     
     /**
      * Holds the event logs.
-     * (locked around self)
+     * (appended within 'logsSignal', read anywhere)
      */
-    private LinkedList<LogEntry> _logs = new LinkedList<LogEntry>();
+    private LogRingBuffer<LogEntry> _logs = new LogRingBuffer<LogEntry>(1000);
     
     /**
      * For sequence counting.
-     * (locked around 'console')
+     * (modified within 'consoleSignal')
+     */
+    private volatile long _consoleSeqCounter = System.currentTimeMillis();    
+    
+    /**
+     * Serialises additions to the console logs and signals waiting readers.
      */
-    private long _consoleSeqCounter = System.currentTimeMillis();    
+    private Object _consoleSignal = new Object();
     
     /**
      * Holds the console logs
+     * (appended within 'consoleSignal', read anywhere)
+     */
+    private LogRingBuffer<ConsoleLogEntry> _console = new LogRingBuffer<ConsoleLogEntry>(1000);
+    
+    /**
+     * The event logs on disk (if enabled, otherwise null)
+     */
+    private PersistentLog<LogEntry> _logsStore;
+    
+    /**
+     * The console logs on disk (if enabled, otherwise null)
      */
-    private LinkedList<ConsoleLogEntry> _console = new LinkedList<ConsoleLogEntry>();
+    private PersistentLog<ConsoleLogEntry> _consoleStore;
+    
+    /**
+     * For pushing event log entries (including event and action emissions) to live viewers.
+     */
+    private PushBuffer _logsPush = new PushBuffer("log", 1000);
+    
+    /**
+     * For pushing console log entries to live viewers.
+     */
+    private PushBuffer _consolePush = new PushBuffer("console", 1000);
+    
+    /**
+     * The event log as a push stream (server-sent events).
+     */
+    public PushBuffer getLogsPushBuffer() {
+        return _logsPush;
+    }
+    
+    /**
+     * The console log as a push stream (server-sent events).
+     */
+    public PushBuffer getConsolePushBuffer() {
+        return _consolePush;
+    }
+    
+    /**
+     * Bumped whenever the bindings, config or meta-data change (see 'bumpVersion').
+     */
+    private AtomicLong _version = new AtomicLong();
+    
+    /**
+     * Snapshots of serialised REST responses, current while the version is.
+     */
+    private SnapshotCache _snapshots = new SnapshotCache();
+    
+    /**
+     * The version of the bindings, config and meta-data (increases monotonically).
+     */
+    public long getVersion() {
+        return _version.get();
+    }
+    
+    /**
+     * Invalidates any snapshots taken of the bindings, config or meta-data.
+     */
+    protected void bumpVersion() {
+        _version.incrementAndGet();
+    }
+    
+    public SnapshotCache getSnapshotCache() {
+        return _snapshots;
+    }
     
     /**
      * The time this node instance was started.
@@ -243,7 +317,14 @@ public class BaseDynamicNode {
             
         });
 
-        _logger.info("Node initialised. Name=" + _name + ", Root='" + _root.getAbsolutePath() + "'");
+        // persist the logs if enabled for all nodes or this node has a '_logs' folder
+        File logsDir = new File(_root, "_logs");
+        if (Boolean.getBoolean(PersistentLog.ENABLED_SYSTEMPROP) || logsDir.isDirectory()) {
+            _logsStore = new PersistentLog<LogEntry>(new File(logsDir, "activity"), LogEntry.CODEC);
+            _consoleStore = new PersistentLog<ConsoleLogEntry>(new File(logsDir, "console"), ConsoleLogEntry.CODEC);
+        }
+
+        _logger.info("Node initialised. Name={}, Root='{}'", _name, _root.getAbsolutePath());
     } // (constructor)
     
     /**
@@ -264,47 +345,49 @@ public class BaseDynamicNode {
             int max,
             @Param(name = "timeout", title = "Timeout", desc = "How long to wait for new items in ms (default 0)")
             int timeout) {
-        LinkedList<LogEntry> batch = new LinkedList<LogEntry>();
-
-        synchronized (_logs) {
-            if (_logsSeqCounter < from)
-                from = 0;
-
-            Iterator<LogEntry> inReverse = _logs.descendingIterator();
-            while (inReverse.hasNext()) {
-                LogEntry entry = inReverse.next();
-                if (entry.seq >= from)
-                    batch.add(entry);
-
-                if (batch.size() >= max)
-                    break;
-            } // (while)
-
-            if (batch.size() == 0 && timeout > 0) {
-                Threads.waitOnSync(_logs, timeout);
-
-                // will only recurse once more
-                return getLogs(from, max, 0);
+        long seqCounter = _logsSeqCounter;
+        if (seqCounter < from)
+            from = 0;
+
+        // (lock-free read)
+        List<LogEntry> batch = _logs.getNewest(from, max, null);
+        
+        // page in older entries from disk
+        if (_logsStore != null && batch.size() < max)
+            batch.addAll(_logsStore.read(from, olderThan(_logs.getOldestSeq()), max - batch.size()));
+
+        if (batch.size() == 0 && timeout > 0) {
+            synchronized (_logsSignal) {
+                // only wait if nothing has arrived since reading
+                if (_logsSeqCounter == seqCounter)
+                    Threads.waitOnSync(_logsSignal, timeout);
             }
 
-            return batch;
+            // will only recurse once more
+            return getLogs(from, max, 0);
         }
+
+        return batch;
     } // (method)
     
     /**
      * Adds to the event logs, dropping if necessary.
      */
     protected void addLog(DateTime now, LogEntry.Source source, LogEntry.Type type, String alias, Object arg) {
-        synchronized (_logs) {
+        synchronized (_logsSignal) {
             // stamp with current seq number
-            LogEntry entry = new LogEntry(_logsSeqCounter++, now, source, type, alias, arg);
+            LogEntry entry = new LogEntry(_logsSeqCounter, now, source, type, alias, arg);
 
-            _logs.add(entry);
+            _logs.append(entry.seq, entry);
+            
+            if (_logsStore != null)
+                _logsStore.append(entry);
+            
+            _logsSeqCounter++;
 
-            if (_logs.size() > 1000)
-                _logs.removeFirst();
+            _logsPush.publish(entry.seq, entry);
 
-            _logs.notifyAll();
+            _logsSignal.notifyAll();
         }
     } // (method)
     
@@ -318,49 +401,67 @@ public class BaseDynamicNode {
                                                 int max,
                                                 @Param(name = "timeout", title = "Timeout", desc = "How long to wait for new items in ms (default 0)") 
                                                 int timeout) {
-        LinkedList<ConsoleLogEntry> batch = new LinkedList<ConsoleLogEntry>();
-        
-        synchronized (_console) {
-            if (_consoleSeqCounter < from)
-                from = 0;            
-            
-            Iterator<ConsoleLogEntry> inReverse = _console.descendingIterator();
-            while (inReverse.hasNext()) {
-                ConsoleLogEntry entry = inReverse.next();
-                if (entry.seq >= from)
-                    batch.add(entry);
-                else
-                    break;
-
-                if (batch.size() >= max)
-                    break;
-            } // (while)
-            
-            if (batch.size() == 0 && timeout > 0) {
-                Threads.waitOnSync(_console, timeout);
+        long seqCounter = _consoleSeqCounter;
+        if (seqCounter < from)
+            from = 0;            
+        
+        // (lock-free read)
+        List<ConsoleLogEntry> batch = _console.getNewest(from, max, null);
+        
+        // page in older entries from disk
+        if (_consoleStore != null && batch.size() < max)
+            batch.addAll(_consoleStore.read(from, olderThan(_console.getOldestSeq()), max - batch.size()));
+        
+        if (batch.size() == 0 && timeout > 0) {
+            synchronized (_consoleSignal) {
+                // only wait if nothing has arrived since reading
+                if (_consoleSeqCounter == seqCounter)
+                    Threads.waitOnSync(_consoleSignal, timeout);
+            }
 
-                // will only recurse once more
-                return getConsoleLogs(from, max, 0);
-            }            
+            // will only recurse once more
+            return getConsoleLogs(from, max, 0);
+        }            
 
-            return batch;
-        }
+        return batch;
+    } // (method)
+    
+    /**
+     * The upper bound (exclusive) of sequence numbers to read from disk given the oldest held in memory (-1 if none).
+     */
+    private static long olderThan(long oldestInMemory) {
+        return oldestInMemory < 0 ? Long.MAX_VALUE : oldestInMemory;
+    }
+    
+    /**
+     * Writes out and releases any persisted logs.
+     */
+    protected void closeLogs() {
+        if (_logsStore != null)
+            _logsStore.close();
+        
+        if (_consoleStore != null)
+            _consoleStore.close();
     } // (method)
     
     /**
      * Adds to the console logs, dropping if necessary.
      */
     private void addConsoleLog(DateTime timestamp, ConsoleLogEntry.Console console, String line) {
-        synchronized(_console) {
+        synchronized(_consoleSignal) {
             // stamp with current sequence number
-            ConsoleLogEntry entry = new ConsoleLogEntry(_consoleSeqCounter++, timestamp, console, line); 
+            ConsoleLogEntry entry = new ConsoleLogEntry(_consoleSeqCounter, timestamp, console, line); 
+            
+            _console.append(entry.seq, entry);
             
-            _console.add(entry);
+            if (_consoleStore != null)
+                _consoleStore.append(entry);
             
-            if (_console.size() > 1000)
-                _console.removeFirst();
+            _consoleSeqCounter++;
             
-            _console.notifyAll();
+            _consolePush.publish(entry.seq, entry);
+            
+            _consoleSignal.notifyAll();
         }
     } // (method)
         
@@ -432,6 +533,8 @@ public class BaseDynamicNode {
             }
         } // (for)
         
+        bumpVersion();
+        
         return;
     } // (method)
     
@@ -470,6 +573,8 @@ public class BaseDynamicNode {
             }
         } // (for)
         
+        bumpVersion();
+        
         return;
     } // (method)
     
@@ -484,14 +589,14 @@ public class BaseDynamicNode {
     protected void cleanupBindings() {
         // release previous local actions
         for (ServerActionEntry entry : _localActions.values()) {
-            _logger.info("Releasing server action " + entry.action.getNodelPoint());
+            _logger.info("Releasing server action {}", entry.action.getNodelPoint());
             entry.action.close();
         }
         _localActions.clear();
         
         // release previous local events
         for (ServerEventEntry entry : _localEvents.values()) {
-            _logger.info("Releasing server event " + entry.__event.getNodelPoint());
+            _logger.info("Releasing server event {}", entry.__event.getNodelPoint());
             entry.__event.close();
         }
         _localEvents.clear();
@@ -505,25 +610,27 @@ public class BaseDynamicNode {
         }
 
         // release previous events
-        for (RemoteEventEntry entry : _remoteEvents) {
-            _logger.info("Releasing client event " + entry.event.getNodelPoint());
+        for (RemoteEventEntry entry : _remoteEvents.values()) {
+            _logger.info("Releasing client event {}", entry.event.getNodelPoint());
             entry.event.close();
         }
         _remoteEvents.clear();        
         
         // release previous events
-        for (RemoteActionEntry entry : _clientActions) {
-            _logger.info("Releasing client action " + entry.action.getNodelPoint());
+        for (RemoteActionEntry entry : _clientActions.values()) {
+            _logger.info("Releasing client action {}", entry.action.getNodelPoint());
             entry.action.close();
         }
         _clientActions.clear();
         
         // release previous params
         for (ParameterEntry entry : _parameters) {
-            _logger.info("Releasing parameter " + entry.name);
+            _logger.info("Releasing parameter {}", entry.name);
         }
         
-        _parameters.clear();        
+        _parameters.clear();
+        
+        bumpVersion();
     } // (method)
     
     public class Local {
@@ -559,9 +666,16 @@ public class BaseDynamicNode {
         
         public NodelServerAction action;
         
+        /**
+         * (precomputed when the binding is applied)
+         */
+        private Map<String, Object> _argSchema;
+        
         public ServerActionEntry(Binding binding, NodelServerAction action) {
             this.binding = binding;
             this.action = action;
+            
+            _argSchema = prepareArgSchema(binding.schema);
         }
         
         @Value(name = "name", title = "Name", desc = "A simple name, alias or ID.")
@@ -614,30 +728,38 @@ public class BaseDynamicNode {
 
         @Service(name = "schema", title = "Schema", genericClassA = String.class, genericClassB = Object.class, desc = "Prepares a filtered schema for this action.")
         public Map<String, Object> argSchema() {
-            Map<String, Object> schema = new LinkedHashMap<String, Object>();
-            schema.put("type", "object");
-
-            Map<String, Object> properties = new LinkedHashMap<String, Object>();
-
-            schema.put("properties", properties);
-            
-            Map<String, Object> argSchema;
-            
-            if (binding.schema == null) {
-                argSchema = new LinkedHashMap<String, Object>();
-                argSchema.put("type", "null");
-            } else {
-                argSchema = binding.schema;
-            }
-            
-            properties.put("arg", argSchema);
-
-            return schema;
+            return _argSchema;
         }
         
     } // (class)
     
     
+    /**
+     * Wraps a binding's argument schema as the filtered schema of its 'arg' parameter (immutable).
+     */
+    private static Map<String, Object> prepareArgSchema(Map<String, Object> bindingSchema) {
+        Map<String, Object> schema = new LinkedHashMap<String, Object>();
+        schema.put("type", "object");
+
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+
+        schema.put("properties", Collections.unmodifiableMap(properties));
+        
+        Map<String, Object> argSchema;
+        
+        if (bindingSchema == null) {
+            argSchema = new LinkedHashMap<String, Object>();
+            argSchema.put("type", "null");
+            argSchema = Collections.unmodifiableMap(argSchema);
+        } else {
+            argSchema = bindingSchema;
+        }
+        
+        properties.put("arg", argSchema);
+
+        return Collections.unmodifiableMap(schema);
+    } // (method)
+    
     protected Map<SimpleName, ServerActionEntry> _localActions = new LinkedHashMap<SimpleName, ServerActionEntry>();
     
     @Service(name = "actions", title = "Actions", desc = "The local actions.", genericClassA = SimpleName.class, genericClassB = ServerActionEntry.class)
@@ -651,9 +773,16 @@ public class BaseDynamicNode {
         
         public NodelServerEvent __event;
         
+        /**
+         * (precomputed when the binding is applied)
+         */
+        private Map<String, Object> __argSchema;
+        
         public ServerEventEntry(Binding binding, NodelServerEvent event) {
             __binding = binding;
             __event = event;
+            
+            __argSchema = prepareArgSchema(binding.schema);
         }
         
         @Value(name = "name", title = "Name", desc = "The name.", order = 1)
@@ -703,25 +832,7 @@ public class BaseDynamicNode {
 
         @Service(name = "schema", title = "Schema", genericClassA = String.class, genericClassB = Object.class, desc = "Prepares a filtered schema for this action.")
         public Map<String, Object> argSchema() {
-            Map<String, Object> schema = new LinkedHashMap<String, Object>();
-            schema.put("type", "object");
-
-            Map<String, Object> properties = new LinkedHashMap<String, Object>();
-
-            schema.put("properties", properties);
-            
-            Map<String, Object> argSchema;
-            
-            if (__binding.schema == null) {
-                argSchema = new LinkedHashMap<String, Object>();
-                argSchema.put("type", "null");
-            } else {
-                argSchema = __binding.schema;
-            }
-            
-            properties.put("arg", argSchema);
-
-            return schema;
+            return __argSchema;
         }        
         
     } // (class)
@@ -737,24 +848,58 @@ public class BaseDynamicNode {
         
         public NodelClientAction action;
         
-        public RemoteActionEntry(NodelClientAction action) {
+        /**
+         * The node and action as bound (either could be empty)
+         */
+        public String boundNode, boundAction;
+        
+        public RemoteActionEntry(NodelClientAction action, String boundNode, String boundAction) {
             this.action = action;
+            this.boundNode = boundNode;
+            this.boundAction = boundAction;
+        }
+        
+        /**
+         * Whether this entry is already bound to the given node and action.
+         */
+        public boolean isBoundTo(NodelActionInfo actionInfo) {
+            return Objects.equals(this.boundNode, actionInfo.node) && Objects.equals(this.boundAction, actionInfo.action);
         }
     }
     
-    private List<RemoteActionEntry> _clientActions = new ArrayList<RemoteActionEntry>();
+    /**
+     * (by alias)
+     */
+    protected Map<SimpleName, RemoteActionEntry> _clientActions = new LinkedHashMap<SimpleName, RemoteActionEntry>();
         
     protected class RemoteEventEntry {
         
         public NodelClientEvent event;
         
-        public RemoteEventEntry(NodelClientEvent event) {
+        /**
+         * The node and event as bound.
+         */
+        public String boundNode, boundEvent;
+        
+        public RemoteEventEntry(NodelClientEvent event, String boundNode, String boundEvent) {
             this.event = event;
+            this.boundNode = boundNode;
+            this.boundEvent = boundEvent;
+        }
+        
+        /**
+         * Whether this entry is already bound to the given node and event.
+         */
+        public boolean isBoundTo(NodelEventInfo eventInfo) {
+            return Objects.equals(this.boundNode, eventInfo.node) && Objects.equals(this.boundEvent, eventInfo.event);
         }
         
     } // (class)
     
-    private List<RemoteEventEntry> _remoteEvents = new ArrayList<RemoteEventEntry>();
+    /**
+     * (by alias)
+     */
+    protected Map<SimpleName, RemoteEventEntry> _remoteEvents = new LinkedHashMap<SimpleName, RemoteEventEntry>();
             
     protected List<ParameterEntry> _parameters = new ArrayList<ParameterEntry>();
     
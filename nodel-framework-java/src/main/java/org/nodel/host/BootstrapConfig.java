@@ -145,5 +145,17 @@ public class BootstrapConfig {
     public void setEnableProgramLogging(boolean value) {
         this.enableProgramLogging = value;
     }    
+    
+    // (compiles Python modules separately for each node instead of sharing them, e.g. for comparison)
+    @Value(name = "disableModuleCache", title = "Disable module cache", order = 1100, required = false)
+    private boolean disableModuleCache = false;
+
+    public boolean getDisableModuleCache() {
+        return this.disableModuleCache;
+    }
+
+    public void setDisableModuleCache(boolean value) {
+        this.disableModuleCache = value;
+    }
 
 } // (class)
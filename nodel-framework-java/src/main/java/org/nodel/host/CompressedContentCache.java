@@ -0,0 +1,148 @@
+package org.nodel.host;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.nodel.io.Stream;
+
+/**
+ * Holds GZIP compressed variants of static files so they're only compressed once, keyed by path and
+ * invalidated by modification time or size. Least recently used entries are evicted once the cache
+ * exceeds its capacity.
+ */
+public class CompressedContentCache {
+
+    /**
+     * Files larger than this are not cached.
+     */
+    private final static long MAX_FILE_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Holds a compressed variant.
+     */
+    private static class Entry {
+
+        public long lastModified;
+
+        public long length;
+
+        /**
+         * (null if compression isn't worthwhile)
+         */
+        public byte[] compressed;
+
+    } // (class)
+
+    /**
+     * (capacity in bytes)
+     */
+    private long _capacity;
+
+    /**
+     * (access ordered, self locked)
+     */
+    private LinkedHashMap<String, Entry> _entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+
+    /**
+     * The total size of the compressed data held.
+     * (locked around 'entries')
+     */
+    private long _size;
+
+    public CompressedContentCache(long capacity) {
+        _capacity = capacity;
+    }
+
+    /**
+     * Returns the GZIP compressed content of a file (of given length and modification time), compressing 
+     * (and caching) it if necessary. Returns null if the file is too large or doesn't compress well.
+     */
+    public byte[] get(File file, long length, long lastModified) throws IOException {
+        if (length > MAX_FILE_SIZE)
+            return null;
+
+        String key = file.getAbsolutePath();
+
+        synchronized (_entries) {
+            Entry entry = _entries.get(key);
+            if (entry != null && entry.lastModified == lastModified && entry.length == length)
+                return entry.compressed;
+        }
+
+        // compress outside of the lock (concurrent first requests might compress twice which is harmless)
+        Entry entry = new Entry();
+        entry.lastModified = lastModified;
+        entry.length = length;
+
+        byte[] compressed = compress(file);
+        if (compressed.length < length)
+            entry.compressed = compressed;
+
+        synchronized (_entries) {
+            Entry previous = _entries.put(key, entry);
+            if (previous != null && previous.compressed != null)
+                _size -= previous.compressed.length;
+
+            if (entry.compressed != null)
+                _size += entry.compressed.length;
+
+            // evict least recently used
+            Iterator<Map.Entry<String, Entry>> i = _entries.entrySet().iterator();
+            while (_size > _capacity && i.hasNext()) {
+                Entry eldest = i.next().getValue();
+                if (eldest == entry)
+                    continue;
+
+                if (eldest.compressed != null)
+                    _size -= eldest.compressed.length;
+
+                i.remove();
+            }
+        }
+
+        return entry.compressed;
+    }
+
+    private static byte[] compress(File file) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream((int) file.length() / 2 + 64);
+
+        FileInputStream fis = null;
+        GZIPOutputStream gzos = null;
+        try {
+            fis = new FileInputStream(file);
+
+            // (compressed once so go for the best compression)
+            gzos = new GZIPOutputStream(baos, 8192) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            };
+
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = fis.read(buffer)) >= 0)
+                gzos.write(buffer, 0, read);
+
+            gzos.finish();
+
+        } finally {
+            Stream.safeClose(fis, gzos);
+        }
+
+        return baos.toByteArray();
+    }
+
+} // (class)
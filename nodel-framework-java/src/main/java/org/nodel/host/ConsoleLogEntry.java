@@ -6,6 +6,10 @@ package org.nodel.host;
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
  */
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import org.joda.time.DateTime;
 import org.nodel.reflection.Value;
 
@@ -39,5 +43,36 @@ public class ConsoleLogEntry {
         this.console = console;
         this.comment = comment;
     }
+    
+    /**
+     * For persistence (the console type is stored by name).
+     */
+    public final static PersistentLog.Codec<ConsoleLogEntry> CODEC = new PersistentLog.Codec<ConsoleLogEntry>() {
+
+        @Override
+        public long getSeq(ConsoleLogEntry entry) {
+            return entry.seq;
+        }
+
+        @Override
+        public long getTimestamp(ConsoleLogEntry entry) {
+            return entry.timestamp.getMillis();
+        }
+
+        @Override
+        public void write(DataOutput out, ConsoleLogEntry entry) throws IOException {
+            PersistentLog.writeString(out, entry.console.name());
+            PersistentLog.writeString(out, entry.comment);
+        }
+
+        @Override
+        public ConsoleLogEntry read(DataInput in, long seq, long timestamp) throws IOException {
+            Console console = PersistentLog.readEnum(in, Console.class);
+            String comment = PersistentLog.readString(in);
+
+            return new ConsoleLogEntry(seq, new DateTime(timestamp), console, comment);
+        }
+
+    };
 
-} // (class)
\ No newline at end of file
+} // (class)
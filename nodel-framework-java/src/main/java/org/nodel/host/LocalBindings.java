@@ -110,7 +110,7 @@ public class LocalBindings {
             String name = entry.getKey().getOriginalName();
             LocalBindingInfo bindingInfo = new LocalBindingInfo(entry.getValue());
             
-            Map<String, Object> actionSchema = Schema.getSchemaObject(bindingInfo);
+            Map<String, Object> actionSchema = new LinkedHashMap<String, Object>(Schema.getSchemaObject(bindingInfo));
             actionSchema.put("title", name);
             properties.put(name, actionSchema);
         } // (for)
@@ -132,7 +132,7 @@ public class LocalBindings {
             String name = entry.getKey().getOriginalName();
             LocalBindingInfo bindingInfo = new LocalBindingInfo(entry.getValue());
             
-            Map<String, Object> eventSchema = Schema.getSchemaObject(bindingInfo);
+            Map<String, Object> eventSchema = new LinkedHashMap<String, Object>(Schema.getSchemaObject(bindingInfo));
             eventSchema.put("title", name);
             properties.put(name, eventSchema);
         } // (for)
@@ -6,7 +6,15 @@ package org.nodel.host;
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
  */
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import org.joda.time.DateTime;
+import org.nodel.json.JSONException;
+import org.nodel.json.JSONObject;
+import org.nodel.json.JSONTokener;
+import org.nodel.reflection.Serialisation;
 import org.nodel.reflection.Value;
 
 /**
@@ -67,4 +75,51 @@ public class LogEntry {
         this.arg = arg;
     }
     
-} // (class)
\ No newline at end of file
+    /**
+     * For persistence (the argument is stored as JSON, the source and type by name so their order can change).
+     */
+    public final static PersistentLog.Codec<LogEntry> CODEC = new PersistentLog.Codec<LogEntry>() {
+
+        @Override
+        public long getSeq(LogEntry entry) {
+            return entry.seq;
+        }
+
+        @Override
+        public long getTimestamp(LogEntry entry) {
+            return entry.timestamp.getMillis();
+        }
+
+        @Override
+        public void write(DataOutput out, LogEntry entry) throws IOException {
+            PersistentLog.writeString(out, entry.source.name());
+            PersistentLog.writeString(out, entry.type.name());
+            PersistentLog.writeString(out, entry.alias);
+            PersistentLog.writeString(out, entry.arg == null ? null : Serialisation.serialise(entry.arg));
+        }
+
+        @Override
+        public LogEntry read(DataInput in, long seq, long timestamp) throws IOException {
+            Source source = PersistentLog.readEnum(in, Source.class);
+            Type type = PersistentLog.readEnum(in, Type.class);
+            String alias = PersistentLog.readString(in);
+            String argJSON = PersistentLog.readString(in);
+
+            Object arg = null;
+            if (argJSON != null) {
+                try {
+                    arg = new JSONTokener(argJSON).nextValue();
+                } catch (JSONException exc) {
+                    throw new IOException("Corrupt argument", exc);
+                }
+
+                if (JSONObject.NULL.equals(arg))
+                    arg = null;
+            }
+
+            return new LogEntry(seq, new DateTime(timestamp), source, type, alias, arg);
+        }
+
+    };
+    
+} // (class)
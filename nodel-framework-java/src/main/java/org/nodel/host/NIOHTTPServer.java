@@ -0,0 +1,969 @@
+package org.nodel.host;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.Logger;
+import org.nodel.DateTimes;
+import org.nodel.core.Framework;
+import org.nodel.host.NanoHTTPD.HTTPException;
+import org.nodel.host.NanoHTTPD.Response;
+import org.nodel.io.UTF8Charset;
+import org.nodel.logging.AtomicLongMeasurementProvider;
+import org.nodel.threading.ThreadPool;
+
+/**
+ * A non-blocking server engine for NanoHTTPD. A single selector thread accepts connections, parses requests
+ * incrementally and writes responses, so idle, slow or persistent connections don't tie up threads.
+ * Requests that could block (see 'NanoHTTPD.isBlockingRequest', typically REST calls) are handed off to a
+ * bounded worker pool.
+ *
+ * The NanoHTTPD 'serve()' / 'Response' contract is unchanged. Select using the 'org.nodel.host.httpEngine'
+ * system property.
+ */
+public class NIOHTTPServer {
+
+    /**
+     * Request header blocks larger than this are rejected (same as the classic engine)
+     */
+    private final static int MAX_HEADER_SIZE = 8192;
+
+    /**
+     * The size of the chunks used when reading from the sockets and non-file response streams.
+     */
+    private final static int BUFFER_SIZE = 16384;
+
+    /**
+     * Requests waiting for or being served by a worker beyond this are rejected with a '503'.
+     */
+    private final static int MAX_PENDING_WORKER_REQUESTS = 512;
+
+    /**
+     * How often idle connections are swept.
+     * (millis)
+     */
+    private final static int SWEEP_PERIOD = 1000;
+
+    /**
+     * (see 'fillOut')
+     */
+    private final static int FILL_MORE = 1, FILL_DONE = 0, FILL_BLOCKED = -1, FILL_WAITING = -2;
+
+    /**
+     * Shared by all non-blocking servers.
+     */
+    private static ThreadPool s_workerPool = new ThreadPool("nano_http_rest", 64);
+
+    /**
+     * (diagnostics)
+     */
+    private static AtomicInteger s_pendingWorkerRequests = new AtomicInteger();
+
+    /**
+     * (diagnostics)
+     */
+    private static AtomicLong s_rejectedRequests = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    static {
+        Framework.shared().registerCounter("http_requests_rejected", new AtomicLongMeasurementProvider(s_rejectedRequests), true);
+    }
+
+    /**
+     * The connection states.
+     */
+    private enum State {
+        ReadingHeader, ReadingBody, ReadingChunks, Processing, Writing
+    }
+
+    /**
+     * (instance logging)
+     */
+    private Logger _logger;
+
+    /**
+     * The server this engine is serving.
+     */
+    private NanoHTTPD _server;
+
+    private ServerSocketChannel _serverChannel;
+
+    private Selector _selector;
+
+    /**
+     * Responses that have been completed by the workers, to be written out by the selector thread.
+     */
+    private ConcurrentLinkedQueue<Connection> _completed = new ConcurrentLinkedQueue<Connection>();
+
+    /**
+     * Connections with more live content to write.
+     */
+    private ConcurrentLinkedQueue<Connection> _resumed = new ConcurrentLinkedQueue<Connection>();
+
+    /**
+     * All open connections (only accessed by the selector thread)
+     */
+    private List<Connection> _connections = new ArrayList<Connection>();
+
+    private volatile boolean _enabled = true;
+
+    /**
+     * (package-private, see NanoHTTPD)
+     */
+    NIOHTTPServer(NanoHTTPD server, ServerSocketChannel serverChannel, Logger logger) throws IOException {
+        _server = server;
+        _serverChannel = serverChannel;
+        _logger = logger;
+
+        _selector = Selector.open();
+
+        _serverChannel.configureBlocking(false);
+        _serverChannel.register(_selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Starts the selector thread, returning it.
+     */
+    public Thread start() {
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                selectorMain();
+            }
+
+        }, "nano_http_selector");
+        thread.setDaemon(true);
+        thread.start();
+
+        return thread;
+    }
+
+    /**
+     * Stops the selector thread and closes all connections.
+     */
+    public void stop() {
+        _enabled = false;
+
+        _selector.wakeup();
+    }
+
+    /**
+     * (selector thread entry-point)
+     */
+    private void selectorMain() {
+        long lastSweep = System.nanoTime();
+
+        try {
+            while (_enabled) {
+                _selector.select(SWEEP_PERIOD);
+
+                // responses ready from the workers
+                Connection completed;
+                while ((completed = _completed.poll()) != null)
+                    completed.beginResponse();
+
+                // live content that has become available
+                Connection resumed;
+                while ((resumed = _resumed.poll()) != null) {
+                    try {
+                        resumed.handleWritable();
+                    } catch (IOException exc) {
+                        resumed.close();
+                    }
+                }
+
+                Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid())
+                        continue;
+
+                    if (key.isAcceptable()) {
+                        handleAccept();
+                        continue;
+                    }
+
+                    Connection conn = (Connection) key.attachment();
+
+                    try {
+                        if (key.isWritable())
+                            conn.handleWritable();
+
+                        if (key.isValid() && key.isReadable())
+                            conn.handleReadable();
+
+                    } catch (IOException exc) {
+                        // connection failure, nothing else can be done
+                        conn.close();
+                    }
+                } // (while)
+
+                long now = System.nanoTime();
+                if ((now - lastSweep) / 1000000 >= SWEEP_PERIOD) {
+                    lastSweep = now;
+                    sweepIdle(now);
+                }
+            } // (while)
+
+        } catch (Exception exc) {
+            if (_enabled)
+                _logger.warn("Selector thread failed unexpectedly.", exc);
+
+        } finally {
+            for (Connection conn : new ArrayList<Connection>(_connections))
+                conn.close();
+
+            try {
+                _selector.close();
+            } catch (IOException ignore) {
+            }
+
+            try {
+                _serverChannel.close();
+            } catch (IOException ignore) {
+            }
+
+            _logger.info("Selector thread has ended.");
+        }
+    } // (method)
+
+    private void handleAccept() throws IOException {
+        SocketChannel channel;
+        while ((channel = _serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+
+            Connection conn = new Connection(channel);
+            conn.key = channel.register(_selector, SelectionKey.OP_READ, conn);
+
+            _connections.add(conn);
+
+            NanoHTTPD.s_connections.incrementAndGet();
+            NanoHTTPD.s_openConnections.incrementAndGet();
+        }
+    }
+
+    /**
+     * Closes connections that are idle (or stalled) beyond the keep-alive timeout. Connections
+     * being processed by a worker are left alone.
+     */
+    private void sweepIdle(long now) {
+        for (Connection conn : new ArrayList<Connection>(_connections)) {
+            if (conn.state == State.Processing)
+                continue;
+
+            if ((now - conn.lastActivity) / 1000000 >= NanoHTTPD.KEEPALIVE_TIMEOUT)
+                conn.close();
+        }
+    }
+
+    /**
+     * Holds the state of a connection. All methods are called on the selector thread except
+     * where noted.
+     */
+    private class Connection {
+
+        private SocketChannel channel;
+
+        private SelectionKey key;
+
+        private State state = State.ReadingHeader;
+
+        private long lastActivity = System.nanoTime();
+
+        private boolean closed;
+
+        /**
+         * Incoming bytes, valid from 'inPos' to 'inLen'
+         */
+        private byte[] in = new byte[BUFFER_SIZE];
+
+        private int inPos;
+
+        private int inLen;
+
+        /**
+         * Where the search for the end of the header block resumes from.
+         */
+        private int scanPos;
+
+        /**
+         * The number of requests served on this connection.
+         */
+        private int served;
+
+        // request state
+
+        private Properties pre;
+
+        private Properties parms;
+
+        private Properties header;
+
+        private ByteArrayOutputStream body;
+
+        /**
+         * The body bytes still to read, or in chunked mode, the bytes of the current chunk still to read
+         * (-1 when a chunk-size line is expected)
+         */
+        private long bodyRemaining;
+
+        /**
+         * (chunked mode)
+         */
+        private boolean readingTrailers;
+
+        private boolean http11;
+
+        private boolean isHead;
+
+        private boolean keepAlive;
+
+        // response state
+
+        /**
+         * Set by the worker or selector thread when processing has completed.
+         */
+        private Response response;
+
+        private ByteBuffer out;
+
+        private InputStream data;
+
+        /**
+         * Used instead of 'data' for file content of known length.
+         */
+        private FileChannel fileChannel;
+
+        private long filePos;
+
+        private long dataRemaining;
+
+        private boolean chunked;
+
+        private byte[] chunk;
+
+        /**
+         * (called from any thread when live content becomes available)
+         */
+        private Runnable resumeHandler = new Runnable() {
+
+            @Override
+            public void run() {
+                _resumed.add(Connection.this);
+                _selector.wakeup();
+            }
+
+        };
+
+        public Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        public void handleReadable() throws IOException {
+            // make room if necessary
+            if (this.inLen == this.in.length) {
+                // (only reading while writing to detect the client going away, not to buffer an unlimited amount)
+                if (this.state == State.Writing && this.inPos == 0) {
+                    close();
+                    return;
+                }
+
+                if (this.inPos > 0) {
+                    System.arraycopy(this.in, this.inPos, this.in, 0, this.inLen - this.inPos);
+                    this.inLen -= this.inPos;
+                    this.scanPos = Math.max(0, this.scanPos - this.inPos);
+                    this.inPos = 0;
+                } else {
+                    byte[] grown = new byte[this.in.length * 2];
+                    System.arraycopy(this.in, 0, grown, 0, this.inLen);
+                    this.in = grown;
+                }
+            }
+
+            int read = this.channel.read(ByteBuffer.wrap(this.in, this.inLen, this.in.length - this.inLen));
+            if (read < 0) {
+                close();
+                return;
+            }
+
+            this.inLen += read;
+            this.lastActivity = System.nanoTime();
+
+            parse();
+        }
+
+        /**
+         * Consumes as much of the incoming data as the current state allows.
+         */
+        private void parse() {
+            try {
+                for (;;) {
+                    switch (this.state) {
+                    case ReadingHeader:
+                        if (!parseHeader())
+                            return;
+                        break;
+
+                    case ReadingBody:
+                        int available = (int) Math.min(this.inLen - this.inPos, this.bodyRemaining);
+                        this.body.write(this.in, this.inPos, available);
+                        this.inPos += available;
+                        this.bodyRemaining -= available;
+
+                        if (this.bodyRemaining > 0)
+                            return;
+
+                        dispatch();
+                        return;
+
+                    case ReadingChunks:
+                        if (!parseChunks())
+                            return;
+
+                        dispatch();
+                        return;
+
+                    default:
+                        // (processing or writing, any pipelined requests are left until later)
+                        return;
+                    }
+                } // (for)
+
+            } catch (HTTPException exc) {
+                sendError(exc.status, exc.getMessage());
+            }
+        }
+
+        /**
+         * Returns true if a complete header block was parsed.
+         */
+        private boolean parseHeader() throws HTTPException {
+            // ignore stray line breaks between pipelined requests
+            while (this.inPos < this.inLen && (this.in[this.inPos] == '\r' || this.in[this.inPos] == '\n'))
+                this.inPos++;
+
+            int start = Math.max(this.inPos, this.scanPos);
+            int end = -1;
+
+            for (int i = start; i < this.inLen; i++) {
+                if (this.in[i] != '\n')
+                    continue;
+
+                // 'CRLFCRLF' (or bare 'LFLF')
+                if ((i - 1 >= this.inPos && this.in[i - 1] == '\n') || (i - 3 >= this.inPos && this.in[i - 1] == '\r' && this.in[i - 2] == '\n')) {
+                    end = i + 1;
+                    break;
+                }
+            } // (for)
+
+            if (end < 0) {
+                if (this.inLen - this.inPos >= MAX_HEADER_SIZE)
+                    throw new HTTPException(NanoHTTPD.HTTP_BADREQUEST, "BAD REQUEST: Header too large.");
+
+                this.scanPos = this.inLen;
+                return false;
+            }
+
+            NanoHTTPD.s_requests.incrementAndGet();
+            if (this.served > 0)
+                NanoHTTPD.s_reusedRequests.incrementAndGet();
+
+            this.pre = new Properties();
+            this.parms = new Properties();
+            this.header = new Properties();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(this.in, this.inPos, end - this.inPos)));
+
+            this.inPos = end;
+            this.scanPos = end;
+
+            _server.decodeHeader(reader, this.pre, this.parms, this.header);
+
+            String method = this.pre.getProperty("method");
+
+            this.http11 = "HTTP/1.1".equalsIgnoreCase(this.pre.getProperty("version"));
+            this.isHead = "HEAD".equalsIgnoreCase(method);
+
+            // HTTP/1.1 connections persist by default, HTTP/1.0 only if asked
+            String connection = this.header.getProperty("connection");
+            if (this.http11)
+                this.keepAlive = connection == null || !connection.equalsIgnoreCase("close");
+            else
+                this.keepAlive = connection != null && connection.equalsIgnoreCase("keep-alive");
+
+            // don't let any one connection hang around forever
+            if (this.served + 1 >= NanoHTTPD.MAX_REQUESTS_PER_CONNECTION)
+                this.keepAlive = false;
+
+            // the body (which can only be determined by length or chunking)
+            this.body = new ByteArrayOutputStream();
+
+            String contentLength = this.header.getProperty("content-length");
+            String transferEncoding = this.header.getProperty("transfer-encoding");
+
+            if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+                this.state = State.ReadingChunks;
+                this.bodyRemaining = -1;
+                this.readingTrailers = false;
+
+            } else if (contentLength != null) {
+                long size;
+                try {
+                    size = Long.parseLong(contentLength.trim());
+                } catch (NumberFormatException ex) {
+                    size = -1;
+                }
+
+                if (size < 0)
+                    throw new HTTPException(NanoHTTPD.HTTP_BADREQUEST, "BAD REQUEST: Invalid content-length.");
+
+                this.state = State.ReadingBody;
+                this.bodyRemaining = size;
+
+            } else {
+                this.state = State.ReadingBody;
+                this.bodyRemaining = 0;
+            }
+
+            return true;
+        }
+
+        /**
+         * Returns true once the last chunk (and any trailers) have been consumed.
+         */
+        private boolean parseChunks() throws HTTPException {
+            for (;;) {
+                if (this.bodyRemaining > 0) {
+                    // chunk data followed by its CRLF (which is treated like a blank line)
+                    int available = (int) Math.min(this.inLen - this.inPos, this.bodyRemaining);
+                    if (available == 0)
+                        return false;
+
+                    this.body.write(this.in, this.inPos, available);
+                    this.inPos += available;
+                    this.bodyRemaining -= available;
+                    continue;
+                }
+
+                String line = readLine();
+                if (line == null)
+                    return false;
+
+                if (this.readingTrailers) {
+                    if (line.length() == 0)
+                        return true;
+
+                    continue;
+                }
+
+                // ignore any chunk extensions
+                int semicolon = line.indexOf(';');
+                if (semicolon >= 0)
+                    line = line.substring(0, semicolon);
+                line = line.trim();
+
+                // (the CRLF following chunk data)
+                if (line.length() == 0)
+                    continue;
+
+                long size;
+                try {
+                    size = Long.parseLong(line, 16);
+                } catch (NumberFormatException exc) {
+                    throw new HTTPException(NanoHTTPD.HTTP_BADREQUEST, "BAD REQUEST: Invalid chunk size.");
+                }
+
+                if (size < 0)
+                    throw new HTTPException(NanoHTTPD.HTTP_BADREQUEST, "BAD REQUEST: Invalid chunk size.");
+
+                if (size == 0)
+                    this.readingTrailers = true;
+                else
+                    this.bodyRemaining = size;
+            } // (for)
+        }
+
+        /**
+         * Reads an ASCII line (without the line terminator) if a complete one is available, otherwise null.
+         */
+        private String readLine() throws HTTPException {
+            for (int i = this.inPos; i < this.inLen; i++) {
+                if (this.in[i] == '\n') {
+                    int end = (i > this.inPos && this.in[i - 1] == '\r') ? i - 1 : i;
+                    String line = new String(this.in, this.inPos, end - this.inPos, UTF8Charset.instance());
+                    this.inPos = i + 1;
+                    return line;
+                }
+            }
+
+            if (this.inLen - this.inPos >= MAX_HEADER_SIZE)
+                throw new HTTPException(NanoHTTPD.HTTP_BADREQUEST, "BAD REQUEST: Line too long.");
+
+            return null;
+        }
+
+        /**
+         * The request is complete, so serve it here or on a worker.
+         */
+        private void dispatch() {
+            this.state = State.Processing;
+
+            // stop reading while processing (pipelined requests are buffered by the socket)
+            this.key.interestOps(0);
+
+            final String method = this.pre.getProperty("method");
+            final String uri = this.pre.getProperty("uri");
+            final byte[] fbuf = this.body.toByteArray();
+
+            if (!_server.isBlockingRequest(method, uri)) {
+                process(method, uri, fbuf);
+                beginResponse();
+                return;
+            }
+
+            if (s_pendingWorkerRequests.incrementAndGet() > MAX_PENDING_WORKER_REQUESTS) {
+                s_pendingWorkerRequests.decrementAndGet();
+                s_rejectedRequests.incrementAndGet();
+
+                sendError(NanoHTTPD.HTTP_UNAVAILABLE, "SERVICE UNAVAILABLE: Too many requests pending.");
+                return;
+            }
+
+            s_workerPool.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        process(method, uri, fbuf);
+                    } finally {
+                        s_pendingWorkerRequests.decrementAndGet();
+                    }
+
+                    _completed.add(Connection.this);
+                    _selector.wakeup();
+                }
+
+            });
+        }
+
+        /**
+         * Calls through to 'serve()', always leaving a response.
+         * (selector or worker thread)
+         */
+        private void process(String method, String uri, byte[] fbuf) {
+            long startTime = System.nanoTime();
+
+            try {
+                Response r = _server.processRequest(method, uri, this.parms, this.header, fbuf, null, this.channel.socket());
+
+                if (r == null)
+                    this.response = errorResponse(NanoHTTPD.HTTP_INTERNALERROR, "SERVER INTERNAL ERROR: Serve() returned a null response.");
+                else
+                    this.response = r;
+
+                if (_logger.isDebugEnabled())
+                    _logger.debug("Finished serving (took {}). URI='{}'", DateTimes.formatPeriod(startTime), uri);
+
+            } catch (HTTPException exc) {
+                this.response = errorResponse(exc.status, exc.getMessage());
+
+            } catch (Exception exc) {
+                _logger.info(String.format("Serving failure (took %s). URI='%s'", DateTimes.formatPeriod(startTime), uri), exc);
+
+                this.response = errorResponse(NanoHTTPD.HTTP_INTERNALERROR, "SERVER INTERNAL ERROR: " + exc.getClass().getSimpleName() + ": " + exc.getMessage());
+            }
+        }
+
+        /**
+         * (the state of the stream is unknown after an error so the connection will close)
+         */
+        private Response errorResponse(String status, String msg) {
+            this.keepAlive = false;
+
+            return _server.new Response(status, NanoHTTPD.MIME_PLAINTEXT, msg);
+        }
+
+        private void sendError(String status, String msg) {
+            this.state = State.Processing;
+            this.key.interestOps(0);
+
+            this.response = errorResponse(status, msg);
+
+            beginResponse();
+        }
+
+        /**
+         * Starts writing the response once processing has completed.
+         */
+        public void beginResponse() {
+            if (this.closed) {
+                closeData(this.response.data);
+                return;
+            }
+
+            Response r = this.response;
+            this.response = null;
+
+            try {
+                boolean bodyAllowed = NanoHTTPD.isBodyAllowed(r.status);
+
+                long length = NanoHTTPD.determineLength(r.header, r.data);
+
+                this.chunked = false;
+                if (bodyAllowed && length < 0) {
+                    if (this.http11)
+                        this.chunked = true;
+                    else
+                        this.keepAlive = false;
+                }
+
+                String responseHeader = NanoHTTPD.prepareResponseHeader(r.status, r.mimeType, r.header, bodyAllowed ? length : -1, this.chunked, this.http11, this.keepAlive, NanoHTTPD.KEEPALIVE_TIMEOUT);
+                this.out = ByteBuffer.wrap(responseHeader.getBytes(UTF8Charset.instance()));
+
+                this.data = null;
+                this.fileChannel = null;
+
+                if (r.data != null && bodyAllowed && !this.isHead) {
+                    this.data = r.data;
+                    this.dataRemaining = length;
+
+                    // files of known length can go straight from the file to the socket
+                    if (!this.chunked && r.data instanceof FileInputStream) {
+                        this.fileChannel = ((FileInputStream) r.data).getChannel();
+                        this.filePos = this.fileChannel.position();
+                    }
+                } else {
+                    closeData(r.data);
+                }
+
+                this.state = State.Writing;
+                this.lastActivity = System.nanoTime();
+
+                handleWritable();
+
+            } catch (IOException exc) {
+                close();
+            }
+        }
+
+        /**
+         * Writes as much of the response as the socket will take.
+         */
+        public void handleWritable() throws IOException {
+            if (this.closed || this.state != State.Writing)
+                return;
+
+            for (;;) {
+                if (this.out != null && this.out.hasRemaining()) {
+                    this.channel.write(this.out);
+
+                    if (this.out.hasRemaining()) {
+                        // socket is full, wait until it drains
+                        this.key.interestOps(SelectionKey.OP_WRITE);
+                        return;
+                    }
+
+                    this.lastActivity = System.nanoTime();
+                }
+
+                int filled = fillOut();
+                if (filled == FILL_DONE)
+                    break;
+                
+                if (filled == FILL_BLOCKED) {
+                    this.key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+
+                if (filled == FILL_WAITING) {
+                    // (keep reading so a closed connection is noticed)
+                    this.key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+            } // (for)
+
+            completeResponse();
+        }
+
+        /**
+         * Prepares the next block of body data to write (or writes file data directly).
+         * Returns one of the 'FILL_' values.
+         */
+        private int fillOut() throws IOException {
+            if (this.data == null)
+                return FILL_DONE;
+
+            if (this.fileChannel != null) {
+                if (this.dataRemaining <= 0)
+                    return FILL_DONE;
+
+                long sent = this.fileChannel.transferTo(this.filePos, this.dataRemaining, this.channel);
+                if (sent <= 0) {
+                    if (this.filePos >= this.fileChannel.size()) {
+                        // the file shrunk so the framing is broken
+                        this.keepAlive = false;
+                        return FILL_DONE;
+                    }
+
+                    // socket is full
+                    this.out = null;
+                    return FILL_BLOCKED;
+                }
+
+                this.filePos += sent;
+                this.dataRemaining -= sent;
+                this.lastActivity = System.nanoTime();
+                return FILL_MORE;
+            }
+
+            if (this.chunk == null)
+                this.chunk = new byte[BUFFER_SIZE];
+
+            if (this.chunked || this.data instanceof NanoHTTPD.LiveContent) {
+                int read;
+                if (this.data instanceof NanoHTTPD.LiveContent) {
+                    NanoHTTPD.LiveContent live = (NanoHTTPD.LiveContent) this.data;
+
+                    read = live.poll(this.chunk, 0, this.chunk.length);
+                    if (read == 0) {
+                        live.setAvailableHandler(this.resumeHandler);
+                        return FILL_WAITING;
+                    }
+                } else {
+                    read = this.data.read(this.chunk, 0, this.chunk.length);
+                }
+
+                if (read < 0 && !this.chunked) {
+                    // (close-delimited)
+                    this.keepAlive = false;
+                    return FILL_DONE;
+                }
+
+                if (!this.chunked) {
+                    this.out = ByteBuffer.wrap(this.chunk, 0, read);
+                    return FILL_MORE;
+                }
+
+                if (read < 0) {
+                    // last-chunk (no trailers)
+                    this.out = ByteBuffer.wrap(NanoHTTPD.LAST_CHUNK);
+                    closeData(this.data);
+                    this.data = null;
+                    return FILL_MORE;
+                }
+
+                byte[] size = Integer.toHexString(read).getBytes(UTF8Charset.instance());
+                ByteBuffer buffer = ByteBuffer.allocate(size.length + 2 + read + 2);
+                buffer.put(size).put(NanoHTTPD.CRLF).put(this.chunk, 0, read).put(NanoHTTPD.CRLF);
+                buffer.flip();
+                this.out = buffer;
+                return FILL_MORE;
+            }
+
+            if (this.dataRemaining <= 0)
+                return FILL_DONE;
+
+            int read = this.data.read(this.chunk, 0, (int) Math.min(this.chunk.length, this.dataRemaining));
+            if (read < 0) {
+                // the stream ended early so the framing is broken
+                this.keepAlive = false;
+                return FILL_DONE;
+            }
+
+            this.dataRemaining -= read;
+            this.out = ByteBuffer.wrap(this.chunk, 0, read);
+            return FILL_MORE;
+        }
+
+        private void completeResponse() {
+            closeData(this.data);
+            this.data = null;
+            this.fileChannel = null;
+            this.out = null;
+
+            this.served++;
+
+            if (!this.keepAlive) {
+                close();
+                return;
+            }
+
+            // ready for the next request, which may already be buffered
+            this.state = State.ReadingHeader;
+            this.pre = null;
+            this.parms = null;
+            this.header = null;
+            this.body = null;
+            this.lastActivity = System.nanoTime();
+
+            this.key.interestOps(SelectionKey.OP_READ);
+
+            parse();
+        }
+
+        public void close() {
+            if (this.closed)
+                return;
+
+            this.closed = true;
+
+            // (if processing, the worker still owns the data)
+            if (this.state != State.Processing) {
+                closeData(this.data);
+                this.data = null;
+            }
+
+            _connections.remove(this);
+            NanoHTTPD.s_openConnections.decrementAndGet();
+
+            this.key.cancel();
+
+            try {
+                this.channel.close();
+            } catch (IOException ignore) {
+            }
+        }
+
+    } // (class)
+
+    private static void closeData(InputStream data) {
+        if (data == null)
+            return;
+
+        try {
+            data.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+} // (class)
@@ -6,6 +6,8 @@ package org.nodel.host;
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
  */
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -15,11 +17,14 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URLEncoder;
+import java.nio.channels.ServerSocketChannel;
+import java.text.ParseException;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Vector;
@@ -28,6 +33,9 @@ import java.util.Locale;
 import java.util.Properties;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 
@@ -35,13 +43,20 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nodel.Base64;
 import org.nodel.DateTimes;
+import org.nodel.core.Framework;
+import org.nodel.host.StaticContentCache.FileInfo;
+import org.nodel.io.GZIPEncodingInputStream;
 import org.nodel.io.UTF8Charset;
+import org.nodel.logging.AtomicLongMeasurementProvider;
 import org.nodel.net.Credentials;
 import org.nodel.threading.ThreadPool;
 
 /**
  * A simple, tiny, nicely embeddable HTTP 1.0 (partially 1.1) server in Java
  * 
+ * (Nodel: extended to support HTTP/1.1 persistent connections, pipelining and chunked
+ * transfer encoding)
+ * 
  * <p>
  * NanoHTTPD version 1.25, Copyright &copy; 2001,2005-2012 Jarno Elonen
  * (elonen@iki.fi, http://iki.fi/elonen/) and Copyright &copy; 2010 Konstantinos
@@ -107,6 +122,99 @@ public class NanoHTTPD {
         return s_threadPool;
     }
     
+    /**
+     * How long an idle persistent connection is held open (NIO engine, where idle connections are cheap).
+     * (millis)
+     */
+    final static int KEEPALIVE_TIMEOUT = 10000;
+    
+    /**
+     * How long an idle persistent connection is held open by the classic engine, which ties up a worker
+     * thread for it.
+     * (millis)
+     */
+    final static int CLASSIC_KEEPALIVE_TIMEOUT = 2000;
+    
+    /**
+     * How long the classic engine waits on a client that is part-way through a request (or yet to send
+     * its first one).
+     * (millis)
+     */
+    final static int CLASSIC_REQUEST_TIMEOUT = 10000;
+    
+    /**
+     * Beyond this many open classic sessions, keep-alive is no longer offered so workers are handed back 
+     * (three quarters of the worker pool).
+     */
+    final static int CLASSIC_KEEPALIVE_LIMIT = 96;
+    
+    /**
+     * The maximum number of requests served over one persistent connection.
+     */
+    final static int MAX_REQUESTS_PER_CONNECTION = 100;
+    
+    final static byte[] CRLF = new byte[] { '\r', '\n' };
+    
+    final static byte[] LAST_CHUNK = new byte[] { '0', '\r', '\n', '\r', '\n' };
+    
+    /**
+     * (diagnostics)
+     */
+    static AtomicLong s_connections = new AtomicLong();
+    
+    /**
+     * (diagnostics)
+     */
+    static AtomicLong s_openConnections = new AtomicLong();
+    
+    /**
+     * The open classic sessions, each holding a worker thread.
+     */
+    private static AtomicInteger s_classicSessions = new AtomicInteger();
+    
+    /**
+     * (diagnostics)
+     */
+    static AtomicLong s_requests = new AtomicLong();
+    
+    /**
+     * Requests that arrived on an already used (persistent) connection.
+     * (diagnostics)
+     */
+    static AtomicLong s_reusedRequests = new AtomicLong();
+    
+    /**
+     * Responses sent with 'gzip' content encoding.
+     * (diagnostics)
+     */
+    private static AtomicLong s_compressedResponses = new AtomicLong();
+    
+    /**
+     * Dynamic content smaller than this isn't worth compressing.
+     */
+    private final static int MIN_COMPRESSION_SIZE = 1024;
+    
+    /**
+     * Precompressed static content (shared, 16 MB)
+     */
+    private static CompressedContentCache s_compressedCache = new CompressedContentCache(16 * 1024 * 1024);
+    
+    /**
+     * File details and small static content (shared, 32 MB)
+     */
+    private static StaticContentCache s_staticContent = new StaticContentCache(32 * 1024 * 1024);
+    
+    /**
+     * (diagnostics)
+     */
+    static {
+        Framework.shared().registerCounter("http_responses_compressed", new AtomicLongMeasurementProvider(s_compressedResponses), true);
+        Framework.shared().registerCounter("http_connections", new AtomicLongMeasurementProvider(s_connections), true);
+        Framework.shared().registerCounter("http_connections_open", new AtomicLongMeasurementProvider(s_openConnections), false, true);
+        Framework.shared().registerCounter("http_requests", new AtomicLongMeasurementProvider(s_requests), true, true);
+        Framework.shared().registerCounter("http_requests_reused", new AtomicLongMeasurementProvider(s_reusedRequests), true);
+    }
+    
     // ==================================================
     // API parts
     // ==================================================
@@ -254,6 +362,24 @@ public class NanoHTTPD {
         public Properties header = new Properties();
     }
 
+    /**
+     * Response data that is produced over time (e.g. server-sent events). As an InputStream it blocks until 
+     * more is available; engines that can't block use 'poll' instead.
+     */
+    public interface LiveContent {
+        
+        /**
+         * Reads without blocking. Returns the number of bytes read, 0 if none are available yet or -1 at the end.
+         */
+        int poll(byte[] buffer, int offset, int length) throws IOException;
+        
+        /**
+         * Sets a (one-shot) handler called as soon as more can be polled (immediately if already available).
+         */
+        void setAvailableHandler(Runnable handler);
+        
+    } // (interface)
+
     /**
      * Holds data related to an HTTP request.
      */
@@ -271,15 +397,26 @@ public class NanoHTTPD {
 
         public byte[] raw;
 
+        /**
+         * The body, read straight off the connection where possible (in which case 'raw' is empty) and
+         * limited to the request's content length.
+         */
+        public InputStream body;
+
         public Socket peer;
 
         public Request(String uri, String method, Properties parms, Properties header, Properties files, byte[] raw, Socket peer) {
+            this(uri, method, parms, header, files, raw, new ByteArrayInputStream(raw), peer);
+        }
+
+        public Request(String uri, String method, Properties parms, Properties header, Properties files, byte[] raw, InputStream body, Socket peer) {
             this.uri = uri;
             this.method = method;
             this.parms = parms;
             this.header = header;
             this.files = files;
             this.raw = raw;
+            this.body = body;
             this.peer = peer;
         }
 
@@ -298,7 +435,8 @@ public class NanoHTTPD {
         HTTP_BADREQUEST = "400 Bad Request",
         HTTP_AUTHORIZATION = "401 Authorization Required",
         HTTP_INTERNALERROR = "500 Internal Server Error", 
-        HTTP_NOTIMPLEMENTED = "501 Not Implemented";
+        HTTP_NOTIMPLEMENTED = "501 Not Implemented",
+        HTTP_UNAVAILABLE = "503 Service Unavailable";
 
     /**
      * Common mime types for dynamic content
@@ -312,7 +450,20 @@ public class NanoHTTPD {
     // Socket & server code
     // ==================================================
 
+    /**
+     * The system property used to select the server engine, 'classic' (thread per connection, the default) 
+     * or 'nio' (single selector thread, see NIOHTTPServer).
+     */
+    public final static String ENGINE_SYSTEMPROP = "org.nodel.host.httpEngine";
+    
+    public final static String ENGINE_NIO = "nio";
+
     private boolean allowBrowsing;
+    
+    /**
+     * The non-blocking engine (or null if using the classic one)
+     */
+    private NIOHTTPServer nioServer;
 
     /**
      * Starts a HTTP server to given port.
@@ -324,19 +475,55 @@ public class NanoHTTPD {
 
         this.myTcpPort = port;
         this.myRootDir = wwwroot;
-        this.myServerSocket = new ServerSocket(myTcpPort);
         this.allowBrowsing = allowBrowsing;
+        
+        if (ENGINE_NIO.equalsIgnoreCase(System.getProperty(ENGINE_SYSTEMPROP))) {
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().bind(new InetSocketAddress(myTcpPort));
+            
+            this.nioServer = new NIOHTTPServer(this, serverChannel, this.logger);
+            this.myServerSocket = serverChannel.socket();
+            
+        } else {
+            this.myServerSocket = new ServerSocket(myTcpPort);
+        }
+    }
+    
+    /**
+     * Used by the non-blocking engine to decide whether a request could block (or take a while) and so
+     * must be handed off to a worker thread instead of being served on the selector thread. 
+     * (by default, anything other than a plain GET or HEAD and all REST calls)
+     */
+    protected boolean isBlockingRequest(String method, String uri) {
+        if (!("GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method)))
+            return true;
+        
+        return uri == null || uri.contains("/REST");
     }
 
     private class Flag {
         public boolean value;
     }
 
+    /**
+     * Whether the non-blocking (NIO) engine is in use, i.e. open connections don't each hold a thread.
+     */
+    public boolean isNonBlocking() {
+        return this.nioServer != null;
+    }
+
     /**
      * Starts handling requests. This will block until it's sure the socket is
      * ready to serve.
      */
     public void start() {
+        if (this.nioServer != null) {
+            this.myThread = this.nioServer.start();
+            
+            NanoHTTPD.this.logger.info("HTTPD started (non-blocking engine).");
+            return;
+        }
+        
         final Flag abort = new Flag();
 
         this.myThread = new Thread(new Runnable() {
@@ -381,6 +568,9 @@ public class NanoHTTPD {
      */
     public void stop() {
         try {
+            if (this.nioServer != null)
+                this.nioServer.stop();
+            
             this.myServerSocket.close();
             this.myThread.join();
         } catch (IOException ioe) {
@@ -426,422 +616,329 @@ public class NanoHTTPD {
     }
 
     /**
-     * Handles one session, i.e. parses the HTTP request and returns the
-     * response.
+     * Handles one session, i.e. parses the HTTP requests and returns the
+     * responses. Connections are persistent (keep-alive) where the client allows, so
+     * pipelined requests are served in order.
      */
     private class HTTPSession implements Runnable {
 
         private Socket mySocket;
+        
+        /**
+         * (buffered so that bytes belonging to pipelined requests aren't lost) 
+         */
+        private InputStream mySocketIn;
+        
+        private OutputStream mySocketOut;
+        
+        /**
+         * Whether the current request came from a HTTP/1.1 client.
+         */
+        private boolean http11;
+        
+        /**
+         * Whether the current request is a 'HEAD' request.
+         */
+        private boolean isHead;
+        
+        /**
+         * Whether the connection should persist after the current response.
+         */
+        private boolean keepAlive;
 
         public HTTPSession(Socket s) {
             this.mySocket = s;
             
+            s_connections.incrementAndGet();
+            
             staticThreadPool().execute(this);
         }
 
         public void run() {
+            s_openConnections.incrementAndGet();
+            s_classicSessions.incrementAndGet();
+            
+            try {
+                this.mySocket.setSoTimeout(CLASSIC_REQUEST_TIMEOUT);
+                this.mySocketIn = new BufferedInputStream(this.mySocket.getInputStream(), 8192);
+                this.mySocketOut = new BufferedOutputStream(this.mySocket.getOutputStream(), theBufferSize);
+
+                int served = 0;
+                do {
+                    if (!serveRequest(served))
+                        break;
+
+                    served++;
+                    
+                } while (this.keepAlive);
+                
+            } catch (IOException ioe) {
+                // connection failure, nothing else can be done
+                
+            } finally {
+                s_openConnections.decrementAndGet();
+                s_classicSessions.decrementAndGet();
+                
+                try {
+                    this.mySocket.close();
+                } catch (Throwable t) {
+                }
+            }
+        }
+        
+        /**
+         * Serves one request. Returns false if the connection was closed or went idle
+         * before a request arrived.
+         */
+        private boolean serveRequest(int served) {
             long startTime = System.nanoTime();
             
             String uri = null;
             
+            // not persistent until the request headers have been checked
+            this.keepAlive = false;
+            
             try {
-                InputStream is = this.mySocket.getInputStream();
-                if (is == null)
-                    return;
-
-                // Read the first 8192 bytes.
-                // The full header should fit in here.
+                // Read the header block (up to 8192 bytes).
                 // Apache's default header limit is 8KB.
-                int bufsize = 8192;
-                byte[] buf = new byte[bufsize];
-                int rlen = is.read(buf, 0, bufsize);
+                byte[] buf = new byte[8192];
+                int rlen;
+                
+                try {
+                    // (a persistent connection only gets a short time to send its next request)
+                    if (served > 0)
+                        this.mySocket.setSoTimeout(CLASSIC_KEEPALIVE_TIMEOUT);
+                    
+                    rlen = readHeaderBlock(buf);
+                } catch (SocketTimeoutException exc) {
+                    // idle connection
+                    return false;
+                }
+                
                 if (rlen <= 0)
-                    return;
+                    return false;
+                
+                if (served > 0)
+                    this.mySocket.setSoTimeout(CLASSIC_REQUEST_TIMEOUT);
+                
+                s_requests.incrementAndGet();
+                if (served > 0)
+                    s_reusedRequests.incrementAndGet();
 
-                // Create a BufferedReader for parsing the header.
-                ByteArrayInputStream hbis = new ByteArrayInputStream(buf, 0, rlen);
-                BufferedReader hin = new BufferedReader(new InputStreamReader(hbis));
                 Properties pre = new Properties();
                 Properties parms = new Properties();
                 Properties header = new Properties();
-                Properties files = new Properties();
 
                 // Decode the header into parms and header java properties
-                decodeHeader(hin, pre, parms, header);
+                decodeHeader(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(buf, 0, rlen))), pre, parms, header);
                 String method = pre.getProperty("method");
                 uri = pre.getProperty("uri");
+                
+                this.http11 = "HTTP/1.1".equalsIgnoreCase(pre.getProperty("version"));
+                this.isHead = "HEAD".equalsIgnoreCase(method);
+                
+                // HTTP/1.1 connections persist by default, HTTP/1.0 only if asked
+                String connection = header.getProperty("connection");
+                if (this.http11)
+                    this.keepAlive = connection == null || !connection.equalsIgnoreCase("close");
+                else
+                    this.keepAlive = connection != null && connection.equalsIgnoreCase("keep-alive");
+                
+                // don't let any one connection hang around forever
+                if (served + 1 >= MAX_REQUESTS_PER_CONNECTION)
+                    this.keepAlive = false;
+                
+                // or idle connections starve the worker pool
+                if (s_classicSessions.get() > CLASSIC_KEEPALIVE_LIMIT)
+                    this.keepAlive = false;
 
-                long size = 0x7FFFFFFFFFFFFFFFl;
+                // Read the body (which can only be determined by length or chunking)
+                ByteArrayOutputStream f = new ByteArrayOutputStream();
+                
+                // (or leave it to be streamed by whatever serves the request)
+                BodyInputStream body = null;
+                
                 String contentLength = header.getProperty("content-length");
-                if (contentLength != null) {
+                String transferEncoding = header.getProperty("transfer-encoding");
+                
+                if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+                    readChunkedBody(f);
+                    
+                } else if (contentLength != null) {
+                    long size;
                     try {
-                        size = Integer.parseInt(contentLength);
+                        size = Long.parseLong(contentLength.trim());
                     } catch (NumberFormatException ex) {
+                        size = -1;
                     }
+                    
+                    if (size < 0)
+                        throw new HTTPException(HTTP_BADREQUEST, "BAD REQUEST: Invalid content-length.");
+                    
+                    if (isStreamableBody(method, header))
+                        body = new BodyInputStream(this.mySocketIn, size);
+                    else
+                        readFully(f, size);
                 }
 
-                // We are looking for the byte separating header from body.
-                // It must be the last byte of the first two sequential new
-                // lines.
-                int splitbyte = 0;
-                boolean sbfound = false;
-                while (splitbyte < rlen) {
-                    if (buf[splitbyte] == '\r' && buf[++splitbyte] == '\n' && buf[++splitbyte] == '\r' && buf[++splitbyte] == '\n') {
-                        sbfound = true;
-                        break;
-                    }
-                    splitbyte++;
-                }
-                splitbyte++;
-
-                // Write the part of body already read to ByteArrayOutputStream
-                // f
-                ByteArrayOutputStream f = new ByteArrayOutputStream();
-                if (splitbyte < rlen)
-                    f.write(buf, splitbyte, rlen - splitbyte);
-
-                // While Firefox sends on the first read all the data fitting
-                // our buffer, Chrome and Opera sends only the headers even if
-                // there is data for the body. So we do some magic here to find
-                // out whether we have already consumed part of body, if we
-                // have reached the end of the data to be sent or we should
-                // expect the first byte of the body at the next read.
-                if (splitbyte < rlen)
-                    size -= rlen - splitbyte + 1;
-                else if (!sbfound || size == 0x7FFFFFFFFFFFFFFFl)
-                    size = 0;
-
-                // Now read all the body and write it to f
-                buf = new byte[512];
-                while (rlen >= 0 && size > 0) {
-                    rlen = is.read(buf, 0, 512);
-                    size -= rlen;
-                    if (rlen > 0)
-                        f.write(buf, 0, rlen);
-                }
-
-                // Get the raw body as a byte []
-                byte[] fbuf = f.toByteArray();
-
-                // Create a BufferedReader for easily reading it as string.
-                ByteArrayInputStream bin = new ByteArrayInputStream(fbuf);
-                BufferedReader in = new BufferedReader(new InputStreamReader(bin));
-
-                // If the method is POST, there may be parameters
-                // in data section, too, read it:
-                if (method.equalsIgnoreCase("POST")) {
-                    String contentType = "";
-                    String contentTypeHeader = header.getProperty("content-type");
-                    StringTokenizer st = new StringTokenizer(contentTypeHeader, "; ");
-                    if (st.hasMoreTokens()) {
-                        contentType = st.nextToken();
-                    }
-
-                    if (contentType.equalsIgnoreCase("multipart/form-data")) {
-                        // Handle multipart/form-data
-                        if (!st.hasMoreTokens())
-                            sendError(HTTP_BADREQUEST, "BAD REQUEST: Content type is multipart/form-data but boundary missing. Usage: GET /example/file.html");
-                        String boundaryExp = st.nextToken();
-                        st = new StringTokenizer(boundaryExp, "=");
-                        if (st.countTokens() != 2)
-                            sendError(HTTP_BADREQUEST, "BAD REQUEST: Content type is multipart/form-data but boundary syntax error. Usage: GET /example/file.html");
-                        st.nextToken();
-                        String boundary = st.nextToken();
-
-                        decodeMultipartData(boundary, fbuf, in, parms, files);
-                    } else if (contentType.equalsIgnoreCase("application/x-www-form-urlencoded")) {
-                        // Handle application/x-www-form-urlencoded
-                        String postLine = "";
-                        char pbuf[] = new char[512];
-                        int read = in.read(pbuf);
-                        while (read >= 0 && !postLine.endsWith("\r\n")) {
-                            postLine += String.valueOf(pbuf, 0, read);
-                            read = in.read(pbuf);
-                        }
-                        postLine = postLine.trim();
-                        decodeParms(postLine, parms);
-                    } else {
-                        // pass the input stream to another handler
-
-                    }
-                }
-
-                if (method.equalsIgnoreCase("PUT"))
-                    files.put("content", saveTmpFile(fbuf, 0, f.size()));
-
                 // Ok, now do the serve()
-                Response r = serve(uri, null, method, parms, new Request(uri, method, parms, header, files, fbuf, this.mySocket));
+                Response r = processRequest(method, uri, parms, header, f.toByteArray(), body, this.mySocket);
+                
+                // (anything not consumed still has to come off the connection before the next request)
+                if (body != null)
+                    body.drain();
+                
                 if (r == null)
                     sendError(HTTP_INTERNALERROR, "SERVER INTERNAL ERROR: Serve() returned a null response.");
                 else
                     sendResponse(r.status, r.mimeType, r.header, r.data);
                 
-                in.close();
-                is.close();
+                if (logger.isDebugEnabled())
+                    logger.debug("Finished serving (took {}). URI='{}'", DateTimes.formatPeriod(startTime), uri);
                 
+                return true;
+                
+            } catch (HTTPException exc) {
+                try {
+                    sendError(exc.status, exc.getMessage());
+                } catch (InterruptedException ie) {
+                }
                 
-                logger.debug("Finished serving (took {}). URI='{}'", DateTimes.formatPeriod(startTime), uri);
+                return false;
                 
             } catch (IOException ioe) {
+                this.keepAlive = false;
+                
                 try {
                     logger.info(String.format("Serving failure (took %s). URI='%s'", DateTimes.formatPeriod(startTime), uri), ioe);
                     
                     sendError(HTTP_INTERNALERROR, "SERVER INTERNAL ERROR: IOException: " + ioe.getMessage());
                 } catch (Throwable t) {
                 }
+                
+                return false;
+                
             } catch (InterruptedException ie) {
-                // Thrown by sendError, ignore and exit the thread.
-            }
-        }
-
-        /**
-         * Decodes the sent headers and loads the data into java Properties' key
-         * - value pairs
-         **/
-        private void decodeHeader(BufferedReader in, Properties pre, Properties parms, Properties header) throws InterruptedException {
-            try {
-                // Read the request line
-                String inLine = in.readLine();
-                if (inLine == null)
-                    return;
-                StringTokenizer st = new StringTokenizer(inLine);
-                if (!st.hasMoreTokens())
-                    sendError(HTTP_BADREQUEST, "BAD REQUEST: Syntax error. Usage: GET /example/file.html");
-
-                String method = st.nextToken();
-                pre.put("method", method);
-
-                if (!st.hasMoreTokens())
-                    sendError(HTTP_BADREQUEST, "BAD REQUEST: Missing URI. Usage: GET /example/file.html");
-
-                String uri = st.nextToken();
-
-                // Decode parameters from the URI
-                int qmi = uri.indexOf('?');
-                if (qmi >= 0) {
-                    decodeParms(uri.substring(qmi + 1), parms);
-                    uri = decodePercent(uri.substring(0, qmi));
-                } else
-                    uri = decodePercent(uri);
-
-                // If there's another token, it's protocol version,
-                // followed by HTTP headers. Ignore version but parse headers.
-                // NOTE: this now forces header names lowercase since they are
-                // case insensitive and vary by client.
-                if (st.hasMoreTokens()) {
-                    String line = in.readLine();
-                    while (line != null && line.trim().length() > 0) {
-                        int p = line.indexOf(':');
-                        if (p >= 0)
-                            header.put(line.substring(0, p).trim().toLowerCase(), line.substring(p + 1).trim());
-                        line = in.readLine();
-                    }
-                }
-
-                pre.put("uri", uri);
-            } catch (IOException ioe) {
-                sendError(HTTP_INTERNALERROR, "SERVER INTERNAL ERROR: IOException: " + ioe.getMessage());
-            }
-        }
-
-        /**
-         * Decodes the Multipart Body data and put it into java Properties' key
-         * - value pairs.
-         **/
-        private void decodeMultipartData(String boundary, byte[] fbuf, BufferedReader in, Properties parms, Properties files) throws InterruptedException {
-            try {
-                int[] bpositions = getBoundaryPositions(fbuf, boundary.getBytes());
-                int boundarycount = 1;
-                String mpline = in.readLine();
-                while (mpline != null) {
-                    if (mpline.indexOf(boundary) == -1)
-                        sendError(HTTP_BADREQUEST, "BAD REQUEST: Content type is multipart/form-data but next chunk does not start with boundary. Usage: GET /example/file.html");
-                    boundarycount++;
-                    Properties item = new Properties();
-                    mpline = in.readLine();
-                    while (mpline != null && mpline.trim().length() > 0) {
-                        int p = mpline.indexOf(':');
-                        if (p != -1)
-                            item.put(mpline.substring(0, p).trim().toLowerCase(), mpline.substring(p + 1).trim());
-                        mpline = in.readLine();
-                    }
-                    if (mpline != null) {
-                        String contentDisposition = item.getProperty("content-disposition");
-                        if (contentDisposition == null) {
-                            sendError(HTTP_BADREQUEST, "BAD REQUEST: Content type is multipart/form-data but no content-disposition info found. Usage: GET /example/file.html");
-                        }
-                        StringTokenizer st = new StringTokenizer(contentDisposition, "; ");
-                        Properties disposition = new Properties();
-                        while (st.hasMoreTokens()) {
-                            String token = st.nextToken();
-                            int p = token.indexOf('=');
-                            if (p != -1)
-                                disposition.put(token.substring(0, p).trim().toLowerCase(), token.substring(p + 1).trim());
-                        }
-                        String pname = disposition.getProperty("name");
-                        pname = pname.substring(1, pname.length() - 1);
-
-                        String value = "";
-                        if (item.getProperty("content-type") == null) {
-                            while (mpline != null && mpline.indexOf(boundary) == -1) {
-                                mpline = in.readLine();
-                                if (mpline != null) {
-                                    int d = mpline.indexOf(boundary);
-                                    if (d == -1)
-                                        value += mpline;
-                                    else
-                                        value += mpline.substring(0, d - 2);
-                                }
-                            }
-                        } else {
-                            if (boundarycount > bpositions.length)
-                                sendError(HTTP_INTERNALERROR, "Error processing request");
-                            int offset = stripMultipartHeaders(fbuf, bpositions[boundarycount - 2]);
-                            String path = saveTmpFile(fbuf, offset, bpositions[boundarycount - 1] - offset - 4);
-                            files.put(pname, path);
-                            value = disposition.getProperty("filename");
-                            value = value.substring(1, value.length() - 1);
-                            do {
-                                mpline = in.readLine();
-                            } while (mpline != null && mpline.indexOf(boundary) == -1);
-                        }
-                        parms.put(pname, value);
-                    }
-                }
-            } catch (IOException ioe) {
-                sendError(HTTP_INTERNALERROR, "SERVER INTERNAL ERROR: IOException: " + ioe.getMessage());
+                // Thrown by sendError, ignore and close the connection.
+                return false;
             }
         }
-
+        
         /**
-         * Find the byte positions where multipart boundaries start.
-         **/
-        public int[] getBoundaryPositions(byte[] b, byte[] boundary) {
-            int matchcount = 0;
-            int matchbyte = -1;
-            Vector<Integer> matchbytes = new Vector<Integer>();
-            for (int i = 0; i < b.length; i++) {
-                if (b[i] == boundary[matchcount]) {
-                    if (matchcount == 0)
-                        matchbyte = i;
-                    matchcount++;
-                    if (matchcount == boundary.length) {
-                        matchbytes.addElement(new Integer(matchbyte));
-                        matchcount = 0;
-                        matchbyte = -1;
-                    }
-                } else {
-                    i -= matchcount;
-                    matchcount = 0;
-                    matchbyte = -1;
+         * Reads up to and including the blank line that terminates the request header block.
+         * Returns the number of bytes read, or -1 if the connection closed before any data arrived.
+         */
+        private int readHeaderBlock(byte[] buf) throws IOException, HTTPException {
+            int len = 0;
+            
+            for (;;) {
+                int b = this.mySocketIn.read();
+                if (b < 0)
+                    return len == 0 ? -1 : len;
+                
+                // ignore stray line breaks between pipelined requests
+                if (len == 0 && (b == '\r' || b == '\n'))
+                    continue;
+                
+                if (len >= buf.length)
+                    throw new HTTPException(HTTP_BADREQUEST, "BAD REQUEST: Header too large.");
+                
+                buf[len++] = (byte) b;
+                
+                if (b == '\n') {
+                    // 'CRLFCRLF' (or bare 'LFLF')
+                    if ((len >= 4 && buf[len - 2] == '\r' && buf[len - 3] == '\n') || (len >= 2 && buf[len - 2] == '\n'))
+                        return len;
                 }
-            }
-            int[] ret = new int[matchbytes.size()];
-            for (int i = 0; i < ret.length; i++) {
-                ret[i] = ((Integer) matchbytes.elementAt(i)).intValue();
-            }
-            return ret;
+            } // (for)
         }
-
+        
         /**
-         * Retrieves the content of a sent file and saves it to a temporary
-         * file. The full path to the saved file is returned.
-         **/
-        private String saveTmpFile(byte[] b, int offset, int len) {
-            String path = "";
-            if (len > 0) {
-                String tmpdir = System.getProperty("java.io.tmpdir");
-                try {
-                    File temp = File.createTempFile("NanoHTTPD", "", new File(tmpdir));
-                    OutputStream fstream = new FileOutputStream(temp);
-                    fstream.write(b, offset, len);
-                    fstream.close();
-                    path = temp.getAbsolutePath();
-                } catch (Exception e) { // Catch exception if any
-                    myErr.println("Error: " + e.getMessage());
-                }
-            }
-            return path;
+         * Whether a body can be handed over as a stream instead of being read up-front, i.e. a POST body that
+         * isn't form data (which is decoded before serving).
+         */
+        private boolean isStreamableBody(String method, Properties header) {
+            if (!method.equalsIgnoreCase("POST"))
+                return false;
+            
+            String contentType = header.getProperty("content-type");
+            if (contentType == null)
+                return true;
+            
+            contentType = contentType.toLowerCase();
+            
+            return !contentType.startsWith("multipart/form-data") && !contentType.startsWith("application/x-www-form-urlencoded");
         }
-
+        
         /**
-         * It returns the offset separating multipart file headers from the
-         * file's data.
-         **/
-        private int stripMultipartHeaders(byte[] b, int offset) {
-            int i = 0;
-            for (i = offset; i < b.length; i++) {
-                if (b[i] == '\r' && b[++i] == '\n' && b[++i] == '\r' && b[++i] == '\n')
-                    break;
+         * Reads exactly 'size' bytes of the request body.
+         */
+        private void readFully(ByteArrayOutputStream f, long size) throws IOException {
+            byte[] buf = new byte[512];
+            
+            while (size > 0) {
+                int rlen = this.mySocketIn.read(buf, 0, (int) Math.min(buf.length, size));
+                if (rlen < 0)
+                    throw new IOException("Connection closed before request body was complete.");
+                
+                f.write(buf, 0, rlen);
+                size -= rlen;
             }
-            return i + 1;
         }
-
+        
         /**
-         * Decodes the percent encoding scheme. <br/>
-         * For example: "an+example%20string" -> "an example string"
+         * Reads a 'Transfer-Encoding: chunked' request body.
          */
-        private String decodePercent(String str) throws InterruptedException {
-            try {
-                // convert into literal bytes
-                int strLen = str.length();
+        private void readChunkedBody(ByteArrayOutputStream f) throws IOException, HTTPException {
+            for (;;) {
+                String sizeLine = readLine();
                 
-                // this will be the write ptr and final length of buffer
-                int bIndex = 0;
+                // ignore any chunk extensions
+                int semicolon = sizeLine.indexOf(';');
+                if (semicolon >= 0)
+                    sizeLine = sizeLine.substring(0, semicolon);
                 
-                // buffer length will always be equal to or less than original length
-                byte[] buffer = new byte[strLen];
+                long size;
+                try {
+                    size = Long.parseLong(sizeLine.trim(), 16);
+                } catch (NumberFormatException exc) {
+                    throw new HTTPException(HTTP_BADREQUEST, "BAD REQUEST: Invalid chunk size.");
+                }
                 
-                for (int i = 0; i < strLen; i++) {
-                    char c = str.charAt(i);
-                    byte b = (byte) c;
-                    switch (c) {
-                    case '+':
-                        buffer[bIndex++] = (byte) ' ';
-                        break;
-                    case '%':
-                        buffer[bIndex++] = (byte) Integer.parseInt(str.substring(i + 1, i + 3), 16);
-                        i += 2;
-                        break;
-                    default:
-                        buffer[bIndex++] = b;
-                        break;
-                    }
+                if (size == 0) {
+                    // skip over any trailers
+                    while (readLine().length() > 0)
+                        ;
+                    
+                    return;
                 }
                 
-                // UTF8 conversion
-                String result = new String(buffer, 0, bIndex, UTF8Charset.instance());
+                readFully(f, size);
                 
-                return result; 
-            } catch (Exception e) {
-                sendError(HTTP_BADREQUEST, "BAD REQUEST: Bad percent-encoding.");
-                return null;
-            }
+                // the chunk's trailing CRLF
+                readLine();
+            } // (for)
         }
-
+        
         /**
-         * Decodes parameters in percent-encoded URI-format ( e.g.
-         * "name=Jack%20Daniels&pass=Single%20Malt" ) and adds them to given
-         * Properties. NOTE: this doesn't support multiple identical keys due to
-         * the simplicity of Properties -- if you need multiples, you might want
-         * to replace the Properties with a Hashtable of Vectors or such.
+         * Reads an ASCII line (without the line terminator) directly from the socket.
          */
-        private void decodeParms(String parms, Properties p) throws InterruptedException {
-            if (parms == null)
-                return;
-
-            StringTokenizer st = new StringTokenizer(parms, "&");
-            while (st.hasMoreTokens()) {
-                String e = st.nextToken();
-                int sep = e.indexOf('=');
-                if (sep >= 0)
-                    p.put(decodePercent(e.substring(0, sep)).trim(), decodePercent(e.substring(sep + 1)));
-                else {
-                    // Just indicate the existence of this variable by using 'true'
-                    // (map doesn't allow 'null' values)
-                    p.put(decodePercent(e).trim(), Boolean.TRUE);
-                }
+        private String readLine() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            
+            for (;;) {
+                int b = this.mySocketIn.read();
+                if (b < 0)
+                    throw new IOException("Connection closed unexpectedly.");
+                
+                if (b == '\n')
+                    break;
+                
+                if (b != '\r')
+                    sb.append((char) b);
             }
+            
+            return sb.toString();
         }
 
         /**
@@ -849,67 +946,674 @@ public class NanoHTTPD {
          * InterruptedException to stop further request processing.
          */
         private void sendError(String status, String msg) throws InterruptedException {
+            // the state of the stream is unknown
+            this.keepAlive = false;
+            
             sendResponse(status, MIME_PLAINTEXT, null, new ByteArrayInputStream(msg.getBytes()));
             throw new InterruptedException();
         }
 
         /**
-         * Sends given response to the socket.
+         * Sends given response to the socket. The body is framed by 'Content-Length' where
+         * it is known, otherwise chunked (HTTP/1.1) or by closing the connection (HTTP/1.0).
          */
         private void sendResponse(String status, String mime, Properties header, InputStream data) {
             try {
                 if (status == null)
                     throw new Error("sendResponse(): Status can't be null.");
+                
+                boolean bodyAllowed = isBodyAllowed(status);
+                
+                long length = determineLength(header, data);
+                
+                boolean chunked = false;
+                if (bodyAllowed && length < 0) {
+                    if (this.http11)
+                        chunked = true;
+                    else
+                        this.keepAlive = false;
+                }
+                
+                String responseHeader = prepareResponseHeader(status, mime, header, bodyAllowed ? length : -1, chunked, this.http11, this.keepAlive, CLASSIC_KEEPALIVE_TIMEOUT);
+                
+                OutputStream out = this.mySocketOut;
+                out.write(responseHeader.getBytes(UTF8Charset.instance()));
 
-                OutputStream out = this.mySocket.getOutputStream();
-                PrintWriter pw = new PrintWriter(out);
-                pw.print("HTTP/1.0 " + status + " \r\n");
-
-                if (mime != null)
-                    pw.print("Content-Type: " + mime + "\r\n");
-
-                if (header == null || header.getProperty("Date") == null)
-                    pw.print("Date: " + gmtFrmt.format(new Date()) + "\r\n");
-
-                if (header != null) {
-                    Enumeration<?> e = header.keys();
-                    while (e.hasMoreElements()) {
-                        String key = (String) e.nextElement();
-                        String value = header.getProperty(key);
-                        pw.print(key + ": " + value + "\r\n");
-                    }
-                }
-
-                pw.print("\r\n");
-                pw.flush();
-
-                if (data != null) {
-                    int pending = data.available(); // This is to support
-                    // partial sends, see
-                    // serveFile()
+                if (data != null && bodyAllowed && !this.isHead) {
                     byte[] buff = new byte[theBufferSize];
-                    while (pending > 0) {
-                        int read = data.read(buff, 0, ((pending > theBufferSize) ? theBufferSize : pending));
-                        if (read <= 0)
-                            break;
-                        out.write(buff, 0, read);
-                        pending -= read;
+                    
+                    if (chunked) {
+                        for (;;) {
+                            int read = data.read(buff, 0, theBufferSize);
+                            if (read < 0)
+                                break;
+                            if (read == 0)
+                                continue;
+                            
+                            out.write(Integer.toHexString(read).getBytes(UTF8Charset.instance()));
+                            out.write(CRLF);
+                            out.write(buff, 0, read);
+                            out.write(CRLF);
+                            
+                            // deliver live content (e.g. server-sent events) as it's produced
+                            if (data.available() == 0)
+                                out.flush();
+                        }
+                        
+                        // last-chunk (no trailers)
+                        out.write(LAST_CHUNK);
+                        
+                    } else {
+                        long pending = length;
+                        while (pending > 0) {
+                            int read = data.read(buff, 0, (int) Math.min(theBufferSize, pending));
+                            if (read < 0)
+                                break;
+                            out.write(buff, 0, read);
+                            pending -= read;
+                        }
+                        
+                        // the stream ended early so the framing is broken
+                        if (pending > 0)
+                            this.keepAlive = false;
                     }
                 }
+                
                 out.flush();
-                out.close();
-                if (data != null)
-                    data.close();
+                
             } catch (IOException ioe) {
                 // Couldn't write? No can do.
+                this.keepAlive = false;
+                
                 try {
                     mySocket.close();
                 } catch (Throwable t) {
                 }
+                
+            } finally {
+                if (data != null) {
+                    try {
+                        data.close();
+                    } catch (IOException ignore) {
+                    }
+                }
+            }
+        }
+    }
+
+    // ==================================================
+    // Request / response processing (shared by server engines)
+    // ==================================================
+    
+    /**
+     * Thrown during request processing to abort with an error response.
+     */
+    static class HTTPException extends Exception {
+        
+        private static final long serialVersionUID = 1L;
+        
+        /**
+         * e.g. HTTP_BADREQUEST
+         */
+        final String status;
+        
+        HTTPException(String status, String message) {
+            super(message);
+            
+            this.status = status;
+        }
+        
+    } // (class)
+    
+    /**
+     * A request body of a known length, read directly from the connection.
+     * (not thread-safe)
+     */
+    private static class BodyInputStream extends InputStream {
+        
+        private InputStream _in;
+        
+        /**
+         * The number of bytes still to come.
+         */
+        private long _remaining;
+        
+        public BodyInputStream(InputStream in, long length) {
+            _in = in;
+            _remaining = length;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            if (_remaining <= 0)
+                return -1;
+            
+            int b = _in.read();
+            if (b < 0)
+                throw new IOException("Connection closed before request body was complete.");
+            
+            _remaining--;
+            
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (_remaining <= 0)
+                return -1;
+            
+            int read = _in.read(buffer, offset, (int) Math.min(length, _remaining));
+            if (read < 0)
+                throw new IOException("Connection closed before request body was complete.");
+            
+            _remaining -= read;
+            
+            return read;
+        }
+        
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(_in.available(), _remaining);
+        }
+        
+        /**
+         * Reads off whatever hasn't been consumed.
+         */
+        public void drain() throws IOException {
+            byte[] buffer = new byte[512];
+            
+            while (read(buffer, 0, buffer.length) >= 0)
+                ;
+        }
+        
+        /**
+         * (the connection stays open, see 'drain')
+         */
+        @Override
+        public void close() {
+        }
+        
+    } // (class)
+    
+    /**
+     * Completes a request whose header block and body have been fully read, decoding any form 
+     * data from the body before passing it through to 'serve()'.
+     * @param body the body when streamed instead (otherwise null)
+     */
+    Response processRequest(String method, String uri, Properties parms, Properties header, byte[] fbuf, InputStream body, Socket peer) throws HTTPException, IOException {
+        Properties files = new Properties();
+        
+        // Create a BufferedReader for easily reading it as string.
+        ByteArrayInputStream bin = new ByteArrayInputStream(fbuf);
+        BufferedReader in = new BufferedReader(new InputStreamReader(bin));
+
+        // If the method is POST, there may be parameters
+        // in data section, too, read it:
+        if (method.equalsIgnoreCase("POST")) {
+            String contentType = "";
+            String contentTypeHeader = header.getProperty("content-type");
+            StringTokenizer st = new StringTokenizer(contentTypeHeader != null ? contentTypeHeader : "", "; ");
+            if (st.hasMoreTokens()) {
+                contentType = st.nextToken();
+            }
+
+            if (contentType.equalsIgnoreCase("multipart/form-data")) {
+                // Handle multipart/form-data
+                if (!st.hasMoreTokens())
+                    throw new HTTPException(HTTP_BADREQUEST, "BAD REQUEST: Content type is multipart/form-data but boundary missing. Usage: GET /example/file.html");
+                String boundaryExp = st.nextToken();
+                st = new StringTokenizer(boundaryExp, "=");
+                if (st.countTokens() != 2)
+                    throw new HTTPException(HTTP_BADREQUEST, "BAD REQUEST: Content type is multipart/form-data but boundary syntax error. Usage: GET /example/file.html");
+                st.nextToken();
+                String boundary = st.nextToken();
+
+                decodeMultipartData(boundary, fbuf, in, parms, files);
+            } else if (contentType.equalsIgnoreCase("application/x-www-form-urlencoded")) {
+                // Handle application/x-www-form-urlencoded
+                String postLine = "";
+                char pbuf[] = new char[512];
+                int read = in.read(pbuf);
+                while (read >= 0 && !postLine.endsWith("\r\n")) {
+                    postLine += String.valueOf(pbuf, 0, read);
+                    read = in.read(pbuf);
+                }
+                postLine = postLine.trim();
+                decodeParms(postLine, parms);
+            } else {
+                // pass the input stream to another handler
+
+            }
+        }
+
+        if (method.equalsIgnoreCase("PUT"))
+            files.put("content", saveTmpFile(fbuf, 0, fbuf.length));
+        
+        in.close();
+
+        Response response = serve(uri, null, method, parms, new Request(uri, method, parms, header, files, fbuf, body != null ? body : new ByteArrayInputStream(fbuf), peer));
+        
+        encodeResponse(response, header);
+        
+        return response;
+    } // (method)
+    
+    /**
+     * Compresses a dynamic response if it's worthwhile and the client accepts it. Small byte array content 
+     * is compressed up-front, streamed content is compressed as it's sent. Responses that are already encoded,
+     * partial or of file content (see 'serveFile') are left alone.
+     */
+    static void encodeResponse(Response response, Properties requestHeader) throws IOException {
+        if (response == null || response.data == null || !response.status.startsWith("200") || !isCompressible(response.mimeType))
+            return;
+        
+        if (response.header.getProperty("Content-Encoding") != null || response.data instanceof FileInputStream || response.data instanceof LiveContent)
+            return;
+        
+        response.addHeader("Vary", "Accept-Encoding");
+        
+        if (!acceptsGzip(requestHeader))
+            return;
+        
+        long length = determineLength(response.header, response.data);
+        if (length >= 0 && length < MIN_COMPRESSION_SIZE)
+            return;
+
+        if (response.data instanceof ByteArrayInputStream) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream((int) length / 4 + 64);
+            GZIPOutputStream gzos = new GZIPOutputStream(baos, 8192);
+            
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = response.data.read(buffer)) >= 0)
+                gzos.write(buffer, 0, read);
+            gzos.close();
+            
+            response.data = new ByteArrayInputStream(baos.toByteArray());
+            response.header.setProperty("Content-Length", String.valueOf(baos.size()));
+            
+        } else {
+            // length is now unknown (chunked or close-delimited)
+            response.data = new GZIPEncodingInputStream(response.data);
+            response.header.remove("Content-Length");
+        }
+
+        response.addHeader("Content-Encoding", "gzip");
+        
+        s_compressedResponses.incrementAndGet();
+    } // (method)
+    
+    /**
+     * Whether a request accepts 'gzip' content encoding (not explicitly disallowed by a zero 'q' value)
+     */
+    static boolean acceptsGzip(Properties requestHeader) {
+        String acceptEncoding = requestHeader != null ? requestHeader.getProperty("accept-encoding") : null;
+        if (acceptEncoding == null)
+            return false;
+        
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim();
+            
+            if (!coding.equalsIgnoreCase("gzip") && !coding.equals("*"))
+                continue;
+            
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2).trim()) > 0;
+                    } catch (NumberFormatException exc) {
+                        return false;
+                    }
+                }
+            }
+            
+            return true;
+        }
+        
+        return false;
+    } // (method)
+    
+    /**
+     * Text-based content that's worth compressing.
+     */
+    static boolean isCompressible(String mime) {
+        if (mime == null)
+            return false;
+        
+        mime = mime.toLowerCase();
+        
+        return mime.startsWith("text/") || mime.contains("json") || mime.contains("javascript") || mime.contains("xml");
+    } // (method)
+    
+    /**
+     * 304 and 204 responses never carry a body.
+     */
+    static boolean isBodyAllowed(String status) {
+        return !(status.startsWith("304") || status.startsWith("204"));
+    }
+    
+    /**
+     * Determines the length of a response body from its 'Content-Length' header or
+     * data, or -1 if it cannot be known in advance.
+     */
+    static long determineLength(Properties header, InputStream data) throws IOException {
+        String lengthHeader = (header != null ? header.getProperty("Content-Length") : null);
+        if (lengthHeader != null) {
+            try {
+                return Long.parseLong(lengthHeader.trim());
+            } catch (NumberFormatException exc) {
+                // fall through
+            }
+        }
+
+        if (data == null)
+            return 0;
+        
+        if (data instanceof ByteArrayInputStream)
+            return data.available();
+        
+        return -1;
+    } // (method)
+    
+    /**
+     * Prepares the status line and header block of a response, including the framing headers 
+     * ('length' of -1 means no 'Content-Length' header, 'keepAliveTimeout' in millis).
+     */
+    static String prepareResponseHeader(String status, String mime, Properties header, long length, boolean chunked, boolean http11, boolean keepAlive, int keepAliveTimeout) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(http11 ? "HTTP/1.1 " : "HTTP/1.0 ").append(status).append(" \r\n");
+
+        if (mime != null)
+            sb.append("Content-Type: ").append(mime).append("\r\n");
+
+        if (header == null || header.getProperty("Date") == null)
+            sb.append("Date: ").append(formatDate(new Date())).append("\r\n");
+
+        if (header != null) {
+            Enumeration<?> e = header.keys();
+            while (e.hasMoreElements()) {
+                String key = (String) e.nextElement();
+                
+                // (framing headers are managed here)
+                if (key.equalsIgnoreCase("Content-Length") || key.equalsIgnoreCase("Connection") || key.equalsIgnoreCase("Transfer-Encoding"))
+                    continue;
+                
+                String value = header.getProperty(key);
+                sb.append(key).append(": ").append(value).append("\r\n");
+            }
+        }
+        
+        if (chunked)
+            sb.append("Transfer-Encoding: chunked\r\n");
+        else if (length >= 0)
+            sb.append("Content-Length: ").append(length).append("\r\n");
+        
+        if (keepAlive) {
+            sb.append("Connection: keep-alive\r\n");
+            sb.append("Keep-Alive: timeout=").append(Math.max(1, keepAliveTimeout / 1000)).append("\r\n");
+        } else {
+            sb.append("Connection: close\r\n");
+        }
+
+        sb.append("\r\n");
+        
+        return sb.toString();
+    } // (method)
+    
+    /**
+     * Decodes the sent headers and loads the data into java Properties' key
+     * - value pairs
+     **/
+    void decodeHeader(BufferedReader in, Properties pre, Properties parms, Properties header) throws HTTPException {
+        try {
+            // Read the request line
+            String inLine = in.readLine();
+            if (inLine == null)
+                return;
+            StringTokenizer st = new StringTokenizer(inLine);
+            if (!st.hasMoreTokens())
+                throw new HTTPException(HTTP_BADREQUEST, "BAD REQUEST: Syntax error. Usage: GET /example/file.html");
+
+            String method = st.nextToken();
+            pre.put("method", method);
+
+            if (!st.hasMoreTokens())
+                throw new HTTPException(HTTP_BADREQUEST, "BAD REQUEST: Missing URI. Usage: GET /example/file.html");
+
+            String uri = st.nextToken();
+
+            // Decode parameters from the URI
+            int qmi = uri.indexOf('?');
+            if (qmi >= 0) {
+                decodeParms(uri.substring(qmi + 1), parms);
+                uri = decodePercent(uri.substring(0, qmi));
+            } else
+                uri = decodePercent(uri);
+
+            // If there's another token, it's protocol version,
+            // followed by HTTP headers. Ignore version but parse headers.
+            // NOTE: this now forces header names lowercase since they are
+            // case insensitive and vary by client.
+            if (st.hasMoreTokens()) {
+                pre.put("version", st.nextToken());
+                
+                String line = in.readLine();
+                while (line != null && line.trim().length() > 0) {
+                    int p = line.indexOf(':');
+                    if (p >= 0)
+                        header.put(line.substring(0, p).trim().toLowerCase(), line.substring(p + 1).trim());
+                    line = in.readLine();
+                }
+            }
+
+            pre.put("uri", uri);
+        } catch (IOException ioe) {
+            throw new HTTPException(HTTP_INTERNALERROR, "SERVER INTERNAL ERROR: IOException: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Decodes the Multipart Body data and put it into java Properties' key
+     * - value pairs.
+     **/
+    void decodeMultipartData(String boundary, byte[] fbuf, BufferedReader in, Properties parms, Properties files) throws HTTPException {
+        try {
+            int[] bpositions = getBoundaryPositions(fbuf, boundary.getBytes());
+            int boundarycount = 1;
+            String mpline = in.readLine();
+            while (mpline != null) {
+                if (mpline.indexOf(boundary) == -1)
+                    throw new HTTPException(HTTP_BADREQUEST, "BAD REQUEST: Content type is multipart/form-data but next chunk does not start with boundary. Usage: GET /example/file.html");
+                boundarycount++;
+                Properties item = new Properties();
+                mpline = in.readLine();
+                while (mpline != null && mpline.trim().length() > 0) {
+                    int p = mpline.indexOf(':');
+                    if (p != -1)
+                        item.put(mpline.substring(0, p).trim().toLowerCase(), mpline.substring(p + 1).trim());
+                    mpline = in.readLine();
+                }
+                if (mpline != null) {
+                    String contentDisposition = item.getProperty("content-disposition");
+                    if (contentDisposition == null) {
+                        throw new HTTPException(HTTP_BADREQUEST, "BAD REQUEST: Content type is multipart/form-data but no content-disposition info found. Usage: GET /example/file.html");
+                    }
+                    StringTokenizer st = new StringTokenizer(contentDisposition, "; ");
+                    Properties disposition = new Properties();
+                    while (st.hasMoreTokens()) {
+                        String token = st.nextToken();
+                        int p = token.indexOf('=');
+                        if (p != -1)
+                            disposition.put(token.substring(0, p).trim().toLowerCase(), token.substring(p + 1).trim());
+                    }
+                    String pname = disposition.getProperty("name");
+                    pname = pname.substring(1, pname.length() - 1);
+
+                    String value = "";
+                    if (item.getProperty("content-type") == null) {
+                        while (mpline != null && mpline.indexOf(boundary) == -1) {
+                            mpline = in.readLine();
+                            if (mpline != null) {
+                                int d = mpline.indexOf(boundary);
+                                if (d == -1)
+                                    value += mpline;
+                                else
+                                    value += mpline.substring(0, d - 2);
+                            }
+                        }
+                    } else {
+                        if (boundarycount > bpositions.length)
+                            throw new HTTPException(HTTP_INTERNALERROR, "Error processing request");
+                        int offset = stripMultipartHeaders(fbuf, bpositions[boundarycount - 2]);
+                        String path = saveTmpFile(fbuf, offset, bpositions[boundarycount - 1] - offset - 4);
+                        files.put(pname, path);
+                        value = disposition.getProperty("filename");
+                        value = value.substring(1, value.length() - 1);
+                        do {
+                            mpline = in.readLine();
+                        } while (mpline != null && mpline.indexOf(boundary) == -1);
+                    }
+                    parms.put(pname, value);
+                }
+            }
+        } catch (IOException ioe) {
+            throw new HTTPException(HTTP_INTERNALERROR, "SERVER INTERNAL ERROR: IOException: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Find the byte positions where multipart boundaries start.
+     **/
+    public int[] getBoundaryPositions(byte[] b, byte[] boundary) {
+        int matchcount = 0;
+        int matchbyte = -1;
+        Vector<Integer> matchbytes = new Vector<Integer>();
+        for (int i = 0; i < b.length; i++) {
+            if (b[i] == boundary[matchcount]) {
+                if (matchcount == 0)
+                    matchbyte = i;
+                matchcount++;
+                if (matchcount == boundary.length) {
+                    matchbytes.addElement(new Integer(matchbyte));
+                    matchcount = 0;
+                    matchbyte = -1;
+                }
+            } else {
+                i -= matchcount;
+                matchcount = 0;
+                matchbyte = -1;
             }
         }
+        int[] ret = new int[matchbytes.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = ((Integer) matchbytes.elementAt(i)).intValue();
+        }
+        return ret;
     }
 
+    /**
+     * Retrieves the content of a sent file and saves it to a temporary
+     * file. The full path to the saved file is returned.
+     **/
+    private String saveTmpFile(byte[] b, int offset, int len) {
+        String path = "";
+        if (len > 0) {
+            String tmpdir = System.getProperty("java.io.tmpdir");
+            try {
+                File temp = File.createTempFile("NanoHTTPD", "", new File(tmpdir));
+                OutputStream fstream = new FileOutputStream(temp);
+                fstream.write(b, offset, len);
+                fstream.close();
+                path = temp.getAbsolutePath();
+            } catch (Exception e) { // Catch exception if any
+                myErr.println("Error: " + e.getMessage());
+            }
+        }
+        return path;
+    }
+
+    /**
+     * It returns the offset separating multipart file headers from the
+     * file's data.
+     **/
+    private int stripMultipartHeaders(byte[] b, int offset) {
+        int i = 0;
+        for (i = offset; i < b.length; i++) {
+            if (b[i] == '\r' && b[++i] == '\n' && b[++i] == '\r' && b[++i] == '\n')
+                break;
+        }
+        return i + 1;
+    }
+
+    /**
+     * Decodes the percent encoding scheme. <br/>
+     * For example: "an+example%20string" -> "an example string"
+     */
+    String decodePercent(String str) throws HTTPException {
+        try {
+            // convert into literal bytes
+            int strLen = str.length();
+            
+            // this will be the write ptr and final length of buffer
+            int bIndex = 0;
+            
+            // buffer length will always be equal to or less than original length
+            byte[] buffer = new byte[strLen];
+            
+            for (int i = 0; i < strLen; i++) {
+                char c = str.charAt(i);
+                byte b = (byte) c;
+                switch (c) {
+                case '+':
+                    buffer[bIndex++] = (byte) ' ';
+                    break;
+                case '%':
+                    buffer[bIndex++] = (byte) Integer.parseInt(str.substring(i + 1, i + 3), 16);
+                    i += 2;
+                    break;
+                default:
+                    buffer[bIndex++] = b;
+                    break;
+                }
+            }
+            
+            // UTF8 conversion
+            String result = new String(buffer, 0, bIndex, UTF8Charset.instance());
+            
+            return result; 
+        } catch (Exception e) {
+            throw new HTTPException(HTTP_BADREQUEST, "BAD REQUEST: Bad percent-encoding.");
+        }
+    }
+
+    /**
+     * Decodes parameters in percent-encoded URI-format ( e.g.
+     * "name=Jack%20Daniels&pass=Single%20Malt" ) and adds them to given
+     * Properties. NOTE: this doesn't support multiple identical keys due to
+     * the simplicity of Properties -- if you need multiples, you might want
+     * to replace the Properties with a Hashtable of Vectors or such.
+     */
+    void decodeParms(String parms, Properties p) throws HTTPException {
+        if (parms == null)
+            return;
+
+        StringTokenizer st = new StringTokenizer(parms, "&");
+        while (st.hasMoreTokens()) {
+            String e = st.nextToken();
+            int sep = e.indexOf('=');
+            if (sep >= 0)
+                p.put(decodePercent(e.substring(0, sep)).trim(), decodePercent(e.substring(sep + 1)));
+            else {
+                // Just indicate the existence of this variable by using 'true'
+                // (map doesn't allow 'null' values)
+                p.put(decodePercent(e).trim(), Boolean.TRUE);
+            }
+        }
+    }
+
+
     /**
      * URL-encodes everything between "/"-characters. Encodes spaces as '%20'
      * instead of '+'.
@@ -957,7 +1661,7 @@ public class NanoHTTPD {
      * Allows for first-choice overriding (fallback web-server)
      * */
     public void setFirstChoiceDir(File value) {
-        this.logger.info("Instructed to use first choice directory. firstChoiceDir='" + value + "'");
+        this.logger.info("Instructed to use first choice directory. firstChoiceDir='{}'", value);
 
         this.firstChoiceDir = value;
     }
@@ -996,11 +1700,12 @@ public class NanoHTTPD {
         }
 
         File f = new File(homeDir, uri);
-        if (res == null && !f.exists())
+        FileInfo info = s_staticContent.lookup(f);
+        if (res == null && !info.exists)
             res = new Response(HTTP_NOTFOUND, MIME_PLAINTEXT, "Error 404, file not found.");
 
         // List the directory, if necessary
-        if (res == null && f.isDirectory()) {
+        if (res == null && info.isDirectory) {
             // Browsers get confused without '/' after the
             // directory, send a redirect.
             if (!uri.endsWith("/")) {
@@ -1010,10 +1715,11 @@ public class NanoHTTPD {
 
             if (res == null) {
                 // First try index.html and index.htm
-                if (new File(f, "index.html").exists())
-                    f = new File(homeDir, uri + "/index.html");
-                else if (new File(f, "index.htm").exists())
-                    f = new File(homeDir, uri + "/index.htm");
+                FileInfo indexInfo;
+                if ((indexInfo = s_staticContent.lookup(new File(f, "index.html"))).exists)
+                    info = indexInfo;
+                else if ((indexInfo = s_staticContent.lookup(new File(f, "index.htm"))).exists)
+                    info = indexInfo;
                 // No index file, list the directory if it is readable
                 else if (allowDirectoryListing && f.canRead()) {
                     String[] files = f.list();
@@ -1064,74 +1770,9 @@ public class NanoHTTPD {
         }
 
         try {
-            if (res == null) {
-                // Get MIME type from file name extension, if possible
-                String mime = null;
-                int dot = f.getCanonicalPath().lastIndexOf('.');
-                if (dot >= 0)
-                    mime = (String) theMimeTypes.get(f.getCanonicalPath().substring(dot + 1).toLowerCase());
-                if (mime == null)
-                    mime = MIME_DEFAULT_BINARY;
-
-                // Calculate etag
-                String etag = Integer.toHexString((f.getAbsolutePath() + f.lastModified() + "" + f.length()).hashCode());
-
-                // Support (simple) skipping:
-                long startFrom = 0;
-                long endAt = -1;
-                String range = header.getProperty("range");
-                if (range != null) {
-                    if (range.startsWith("bytes=")) {
-                        range = range.substring("bytes=".length());
-                        int minus = range.indexOf('-');
-                        try {
-                            if (minus > 0) {
-                                startFrom = Long.parseLong(range.substring(0, minus));
-                                endAt = Long.parseLong(range.substring(minus + 1));
-                            }
-                        } catch (NumberFormatException nfe) {
-                        }
-                    }
-                }
-
-                // Change return code and add Content-Range header when skipping
-                // is requested
-                long fileLen = f.length();
-                if (range != null && startFrom >= 0) {
-                    if (startFrom >= fileLen) {
-                        res = new Response(HTTP_RANGE_NOT_SATISFIABLE, MIME_PLAINTEXT, "");
-                        res.addHeader("Content-Range", "bytes 0-0/" + fileLen);
-                        res.addHeader("ETag", etag);
-                    } else {
-                        if (endAt < 0)
-                            endAt = fileLen - 1;
-                        long newLen = endAt - startFrom + 1;
-                        if (newLen < 0)
-                            newLen = 0;
-
-                        final long dataLen = newLen;
-                        FileInputStream fis = new FileInputStream(f) {
-                            public int available() throws IOException {
-                                return (int) dataLen;
-                            }
-                        };
-                        fis.skip(startFrom);
-
-                        res = new Response(HTTP_PARTIALCONTENT, mime, fis);
-                        res.addHeader("Content-Length", "" + dataLen);
-                        res.addHeader("Content-Range", "bytes " + startFrom + "-" + endAt + "/" + fileLen);
-                        res.addHeader("ETag", etag);
-                    }
-                } else {
-                    if (etag.equals(header.getProperty("if-none-match")))
-                        res = new Response(HTTP_NOTMODIFIED, mime, "");
-                    else {
-                        res = new Response(HTTP_OK, mime, new FileInputStream(f));
-                        res.addHeader("Content-Length", "" + fileLen);
-                        res.addHeader("ETag", etag);
-                    }
-                }
-            }
+            if (res == null)
+                res = serveFileContent(info, header);
+            
         } catch (IOException ioe) {
             res = new Response(HTTP_FORBIDDEN, MIME_PLAINTEXT, "FORBIDDEN: Reading file failed.");
         }
@@ -1141,6 +1782,177 @@ public class NanoHTTPD {
         // content requestes
         return res;
     }
+    
+    /**
+     * Serves the content of a regular file, taking care of conditional and range requests and 
+     * precompressed variants.
+     */
+    private Response serveFileContent(FileInfo info, Properties header) throws IOException {
+        File f = info.file;
+        String mime = getMimeType(f.getName());
+        
+        long fileLen = info.length;
+        String etag = info.etag;
+        String lastModified = formatDate(new Date(info.lastModified));
+        
+        // Support (single) byte ranges, i.e. 'bytes=start-end', 'bytes=start-' and 'bytes=-suffixLength'
+        long startFrom = -1;
+        long endAt = -1;
+        String range = header.getProperty("range");
+        
+        // 'If-Range' only allows the range if the content is unchanged
+        String ifRange = header.getProperty("if-range");
+        if (range != null && ifRange != null && !ifRange.equals(etag) && !ifRange.equals(lastModified))
+            range = null;
+        
+        if (range != null && range.startsWith("bytes=") && range.indexOf(',') < 0) {
+            String spec = range.substring("bytes=".length()).trim();
+            int minus = spec.indexOf('-');
+            try {
+                if (minus == 0) {
+                    long suffixLength = Long.parseLong(spec.substring(1).trim());
+                    startFrom = Math.max(0, fileLen - suffixLength);
+                    endAt = suffixLength > 0 ? fileLen - 1 : -1;
+                    
+                } else if (minus > 0) {
+                    startFrom = Long.parseLong(spec.substring(0, minus).trim());
+                    String end = spec.substring(minus + 1).trim();
+                    endAt = end.length() == 0 ? fileLen - 1 : Math.min(Long.parseLong(end), fileLen - 1);
+                }
+            } catch (NumberFormatException nfe) {
+                // (ignore the range)
+                startFrom = -1;
+            }
+        }
+        
+        Response res;
+        
+        if (startFrom >= 0) {
+            // Change return code and add Content-Range header when skipping is requested
+            if (startFrom >= fileLen || endAt < startFrom) {
+                res = new Response(HTTP_RANGE_NOT_SATISFIABLE, MIME_PLAINTEXT, "");
+                res.addHeader("Content-Range", "bytes */" + fileLen);
+                
+            } else {
+                long dataLen = endAt - startFrom + 1;
+                
+                byte[] content = s_staticContent.getContent(info);
+                if (content != null) {
+                    res = new Response(HTTP_PARTIALCONTENT, mime, new ByteArrayInputStream(content, (int) startFrom, (int) dataLen));
+                } else {
+                    // (positioned rather than skipped, allows for large files)
+                    FileInputStream fis = new FileInputStream(f);
+                    fis.getChannel().position(startFrom);
+                    res = new Response(HTTP_PARTIALCONTENT, mime, fis);
+                }
+                
+                res.addHeader("Content-Length", "" + dataLen);
+                res.addHeader("Content-Range", "bytes " + startFrom + "-" + endAt + "/" + fileLen);
+            }
+            
+            res.addHeader("ETag", etag);
+            res.addHeader("Last-Modified", lastModified);
+            
+            return res;
+        }
+        
+        boolean compressible = isCompressible(mime);
+
+        // use the precompressed variant if there is one
+        byte[] compressed = null;
+        if (compressible && acceptsGzip(header))
+            compressed = s_compressedCache.get(f, info.length, info.lastModified);
+
+        // (each variant needs its own entity tag)
+        String variantETag = compressed != null ? etag.substring(0, etag.length() - 1) + "-gz\"" : etag;
+
+        if (isNotModified(header, variantETag, info.lastModified)) {
+            res = new Response(HTTP_NOTMODIFIED, mime, "");
+
+        } else if (compressed != null) {
+            res = new Response(HTTP_OK, mime, new ByteArrayInputStream(compressed));
+            res.addHeader("Content-Length", "" + compressed.length);
+            res.addHeader("Content-Encoding", "gzip");
+
+            s_compressedResponses.incrementAndGet();
+
+        } else {
+            byte[] content = s_staticContent.getContent(info);
+            if (content != null)
+                res = new Response(HTTP_OK, mime, new ByteArrayInputStream(content));
+            else
+                res = new Response(HTTP_OK, mime, new FileInputStream(f));
+            
+            res.addHeader("Content-Length", "" + fileLen);
+        }
+        
+        res.addHeader("ETag", variantETag);
+        res.addHeader("Last-Modified", lastModified);
+
+        if (compressible)
+            res.addHeader("Vary", "Accept-Encoding");
+        
+        return res;
+    } // (method)
+    
+    /**
+     * Evaluates the conditional request headers, 'If-None-Match' taking precedence over 'If-Modified-Since'.
+     */
+    private static boolean isNotModified(Properties header, String etag, long lastModified) {
+        String ifNoneMatch = header.getProperty("if-none-match");
+        if (ifNoneMatch != null)
+            return isETagMatched(ifNoneMatch, etag);
+        
+        String ifModifiedSince = header.getProperty("if-modified-since");
+        if (ifModifiedSince != null) {
+            try {
+                Date since;
+                synchronized (gmtFrmt) {
+                    since = gmtFrmt.parse(ifModifiedSince.trim());
+                }
+                
+                // (dates have a resolution of seconds)
+                return lastModified / 1000 <= since.getTime() / 1000;
+                
+            } catch (ParseException exc) {
+                return false;
+            }
+        }
+        
+        return false;
+    } // (method)
+    
+    /**
+     * Checks an 'If-None-Match' header value against an entity tag (quoted, without any weak prefix)
+     * using weak comparison.
+     */
+    protected static boolean isETagMatched(String ifNoneMatch, String etag) {
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            
+            // (weak comparison)
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+            
+            if (tag.equals("*") || tag.equals(etag))
+                return true;
+        }
+        
+        return false;
+    } // (method)
+    
+    /**
+     * Gets the MIME type from a file name extension, if possible.
+     */
+    private static String getMimeType(String name) {
+        String mime = null;
+        
+        int dot = name.lastIndexOf('.');
+        if (dot >= 0)
+            mime = theMimeTypes.get(name.substring(dot + 1).toLowerCase());
+        
+        return mime != null ? mime : MIME_DEFAULT_BINARY;
+    } // (method)
 
     /**
      * Prepares a very plain HTML redirect response.
@@ -1283,6 +2095,15 @@ public class NanoHTTPD {
         gmtFrmt = new java.text.SimpleDateFormat("E, d MMM yyyy HH:mm:ss 'GMT'", Locale.US);
         gmtFrmt.setTimeZone(TimeZone.getTimeZone("GMT"));
     }
+    
+    /**
+     * (formatter is not thread-safe)
+     */
+    protected static String formatDate(Date date) {
+        synchronized (gmtFrmt) {
+            return gmtFrmt.format(date);
+        }
+    }
 
     /**
      * The distribution licence
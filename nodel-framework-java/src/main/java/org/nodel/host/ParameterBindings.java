@@ -44,10 +44,13 @@ public class ParameterBindings extends HashMap<SimpleName, ParameterBinding> {
         for (Map.Entry<SimpleName, ParameterBinding> entry : this.entrySet()) {
             String paramName = entry.getKey().getReducedName();
             ParameterBinding paramBinding = entry.getValue();
-            Map<String, Object> paramSchema = paramBinding.schema;
+            // (copied, the binding's schema may be shared)
+            Map<String, Object> paramSchema;
             
-            if (paramSchema == null)
+            if (paramBinding.schema == null)
                 paramSchema = new HashMap<String, Object>();
+            else
+                paramSchema = new LinkedHashMap<String, Object>(paramBinding.schema);
             
             paramSchema.put("title", paramBinding.title);
             paramSchema.put("desc", paramBinding.desc);
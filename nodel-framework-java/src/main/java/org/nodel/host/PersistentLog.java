@@ -0,0 +1,704 @@
+package org.nodel.host;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nodel.core.Framework;
+import org.nodel.io.Stream;
+import org.nodel.io.UTF8Charset;
+import org.nodel.logging.AtomicLongMeasurementProvider;
+import org.nodel.threading.TimerTask;
+import org.nodel.threading.Timers;
+
+/**
+ * An append-only, segmented log file of sequenced items (e.g. node activity or console logs) that survives
+ * restarts. Appending only queues the item; a background timer writes them out. Segments are read block by block
+ * (via positional reads) using a sparse sequence index, and are removed once the log exceeds its size or age
+ * limits, though not before any readers are done with them (files in use can't be removed on Windows).
+ *
+ * Each record is: body length (int), CRC32 of body (int), then the body: sequence (long), timestamp (long
+ * millis) and the item encoded by its codec.
+ */
+public class PersistentLog<T> {
+
+    /**
+     * (logging)
+     */
+    private static Logger s_logger = LogManager.getLogger(PersistentLog.class);
+
+    /**
+     * Set to 'true' to enable persistent logs for all nodes (otherwise only nodes with a '_logs' folder).
+     */
+    public final static String ENABLED_SYSTEMPROP = "org.nodel.host.persistentLogs";
+
+    /**
+     * Segments are rolled over beyond this size.
+     */
+    private final static long SEGMENT_SIZE = 1024 * 1024;
+
+    /**
+     * Oldest segments are removed when the total size exceeds this.
+     */
+    private final static long MAX_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Segments whose newest record is older than this are removed.
+     * (30 days)
+     */
+    private final static long MAX_AGE = 30L * 24 * 3600 * 1000;
+
+    /**
+     * Every n-th record of a segment is indexed.
+     */
+    private final static int INDEX_INTERVAL = 64;
+
+    /**
+     * Items beyond this many waiting to be written are dropped.
+     */
+    private final static int MAX_PENDING = 10000;
+
+    /**
+     * (millis)
+     */
+    private final static long FLUSH_PERIOD = 1000;
+
+    /**
+     * Sanity limit when scanning segments.
+     */
+    private final static int MAX_RECORD_SIZE = 1024 * 1024;
+
+    private final static String SEGMENT_SUFFIX = ".seg";
+
+    /**
+     * (threading)
+     */
+    private static Timers s_timers = new Timers("persistent_log");
+
+    /**
+     * (diagnostics)
+     */
+    private static AtomicLong s_written = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    private static AtomicLong s_dropped = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    static {
+        Framework.shared().registerCounter("persistent_log_records_written", new AtomicLongMeasurementProvider(s_written), true);
+        Framework.shared().registerCounter("persistent_log_records_dropped", new AtomicLongMeasurementProvider(s_dropped), true);
+    }
+
+    /**
+     * Encodes and decodes items (the sequence number and timestamp are stored separately).
+     */
+    public interface Codec<T> {
+
+        public long getSeq(T item);
+
+        public long getTimestamp(T item);
+
+        public void write(DataOutput out, T item) throws IOException;
+
+        public T read(DataInput in, long seq, long timestamp) throws IOException;
+
+    } // (interface)
+
+    /**
+     * A segment file.
+     * (fields locked around 'lock' unless stated otherwise)
+     */
+    private static class Segment {
+
+        public File file;
+
+        public long firstSeq = -1;
+
+        public long lastSeq = -1;
+
+        public long lastTimestamp;
+
+        public long size;
+
+        public int records;
+
+        /**
+         * The sparse index, sequence numbers and offsets of every n-th record.
+         */
+        public long[] indexSeqs = new long[16];
+
+        public long[] indexOffsets = new long[16];
+
+        public int indexCount;
+
+        /**
+         * The number of reads in progress.
+         */
+        public int readers;
+
+        /**
+         * Removed by retention (the file is deleted once there are no readers).
+         */
+        public boolean removed;
+
+        public Segment(File file) {
+            this.file = file;
+        }
+
+        public void addRecord(long seq, long timestamp, long offset, long length) {
+            if (this.records % INDEX_INTERVAL == 0) {
+                if (this.indexCount == this.indexSeqs.length) {
+                    this.indexSeqs = Arrays.copyOf(this.indexSeqs, this.indexCount * 2);
+                    this.indexOffsets = Arrays.copyOf(this.indexOffsets, this.indexCount * 2);
+                }
+
+                this.indexSeqs[this.indexCount] = seq;
+                this.indexOffsets[this.indexCount] = offset;
+                this.indexCount++;
+            }
+
+            if (this.firstSeq < 0)
+                this.firstSeq = seq;
+
+            this.records++;
+            this.lastSeq = seq;
+            this.lastTimestamp = timestamp;
+            this.size = offset + length;
+        }
+
+        /**
+         * (must be called within 'lock')
+         */
+        public void release() {
+            this.readers--;
+
+            if (this.removed && this.readers == 0)
+                delete();
+        }
+
+        public void delete() {
+            if (!this.file.delete())
+                s_logger.info("Could not remove old log segment '{}'", this.file);
+        }
+
+    } // (class)
+
+    private File _dir;
+
+    private Codec<T> _codec;
+
+    /**
+     * (oldest first, locked around 'lock')
+     */
+    private List<Segment> _segments = new ArrayList<Segment>();
+
+    private Object _lock = new Object();
+
+    /**
+     * Items waiting to be written.
+     */
+    private ConcurrentLinkedQueue<T> _pending = new ConcurrentLinkedQueue<T>();
+
+    private AtomicInteger _pendingCount = new AtomicInteger();
+
+    /**
+     * Serialises writing.
+     */
+    private Object _writeLock = new Object();
+
+    /**
+     * (locked around 'writeLock')
+     */
+    private Segment _active;
+
+    /**
+     * (locked around 'writeLock')
+     */
+    private FileChannel _channel;
+
+    /**
+     * (locked around 'writeLock')
+     */
+    private ByteArrayOutputStream _recordBuffer = new ByteArrayOutputStream(256);
+
+    /**
+     * (locked around 'writeLock')
+     */
+    private CRC32 _crc = new CRC32();
+
+    private TimerTask _flushTimer;
+
+    private volatile boolean _closed;
+
+    /**
+     * Opens (or creates) a log within the given directory.
+     */
+    public PersistentLog(File dir, Codec<T> codec) {
+        _dir = dir;
+        _codec = codec;
+
+        if (!dir.isDirectory() && !dir.mkdirs())
+            s_logger.warn("Could not create log directory '{}'", dir);
+
+        open();
+
+        _flushTimer = s_timers.schedule(new TimerTask() {
+
+            @Override
+            public void run() {
+                flush();
+            }
+
+        }, FLUSH_PERIOD, FLUSH_PERIOD);
+    }
+
+    /**
+     * Queues an item for writing (never blocks).
+     */
+    public void append(T item) {
+        if (_closed)
+            return;
+
+        if (_pendingCount.incrementAndGet() > MAX_PENDING) {
+            _pendingCount.decrementAndGet();
+            s_dropped.incrementAndGet();
+            return;
+        }
+
+        _pending.add(item);
+    }
+
+    /**
+     * Returns up to 'max' of the most recent items with a sequence number of at least 'from' and less than
+     * 'before' (newest first).
+     */
+    public List<T> read(long from, long before, int max) {
+        List<T> result = new ArrayList<T>();
+
+        List<Segment> segments;
+        synchronized (_lock) {
+            segments = new ArrayList<Segment>(_segments);
+        }
+
+        for (int s = segments.size() - 1; s >= 0 && result.size() < max; s--) {
+            Segment segment = segments.get(s);
+
+            long size;
+            long[] indexSeqs;
+            long[] indexOffsets;
+            int indexCount;
+
+            synchronized (_lock) {
+                if (segment.removed || segment.lastSeq < from || segment.firstSeq < 0 || segment.firstSeq >= before)
+                    continue;
+
+                size = segment.size;
+                indexSeqs = segment.indexSeqs;
+                indexOffsets = segment.indexOffsets;
+                indexCount = segment.indexCount;
+
+                // (holds off its removal)
+                segment.readers++;
+            }
+
+            try {
+                readSegment(segment, size, indexSeqs, indexOffsets, indexCount, from, before, max, result);
+
+            } catch (Exception exc) {
+                s_logger.warn("Could not read log segment '{}'", segment.file, exc);
+
+            } finally {
+                synchronized (_lock) {
+                    segment.release();
+                }
+            }
+        } // (for)
+
+        return result;
+    }
+
+    /**
+     * Reads a segment, block by block (between index points) in reverse.
+     */
+    private void readSegment(Segment segment, long size, long[] indexSeqs, long[] indexOffsets, int indexCount,
+                             long from, long before, int max, List<T> result) throws IOException {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(segment.file, "r");
+            FileChannel channel = raf.getChannel();
+
+            int[] positions = new int[INDEX_INTERVAL];
+
+            for (int k = indexCount - 1; k >= 0 && result.size() < max; k--) {
+                if (indexSeqs[k] >= before)
+                    continue;
+
+                long start = indexOffsets[k];
+                long end = k + 1 < indexCount ? indexOffsets[k + 1] : size;
+
+                ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, start + buffer.position()) < 0)
+                        throw new EOFException("Log segment is shorter than expected");
+                }
+
+                // gather the positions (within the block) of the wanted records
+                int count = 0;
+                for (int position = 0; position < buffer.capacity() && count < positions.length; ) {
+                    int length = buffer.getInt(position);
+                    long seq = buffer.getLong(position + 8);
+
+                    if (seq >= before)
+                        break;
+
+                    if (seq >= from)
+                        positions[count++] = position;
+
+                    position += 8 + length;
+                } // (for)
+
+                // decode newest first
+                for (int i = count - 1; i >= 0 && result.size() < max; i--)
+                    result.add(decode(buffer, positions[i]));
+
+                // nothing older will be in range
+                if (indexSeqs[k] < from)
+                    break;
+            } // (for)
+
+        } finally {
+            Stream.safeClose(raf);
+        }
+    }
+
+    private T decode(ByteBuffer buffer, int position) throws IOException {
+        int length = buffer.getInt(position);
+        long seq = buffer.getLong(position + 8);
+        long timestamp = buffer.getLong(position + 16);
+
+        return _codec.read(new DataInputStream(new ByteArrayInputStream(buffer.array(), position + 24, length - 16)), seq, timestamp);
+    }
+
+    /**
+     * Writes out any pending items.
+     * (timer entry-point)
+     */
+    private void flush() {
+        synchronized (_writeLock) {
+            T item;
+            while ((item = _pending.poll()) != null) {
+                _pendingCount.decrementAndGet();
+
+                try {
+                    write(item);
+
+                } catch (Exception exc) {
+                    s_logger.warn("Could not write to persistent log '{}'; item dropped.", _dir, exc);
+                    s_dropped.incrementAndGet();
+
+                    // start afresh with a new segment
+                    closeActive();
+                }
+            } // (while)
+        }
+    }
+
+    /**
+     * (must be called within 'writeLock')
+     */
+    private void write(T item) throws IOException {
+        long seq = _codec.getSeq(item);
+        long timestamp = _codec.getTimestamp(item);
+
+        // encode the body (leaving room for the header)
+        _recordBuffer.reset();
+        DataOutputStream out = new DataOutputStream(_recordBuffer);
+        out.writeLong(0);
+        out.writeLong(seq);
+        out.writeLong(timestamp);
+        _codec.write(out, item);
+        out.flush();
+
+        byte[] record = _recordBuffer.toByteArray();
+        int length = record.length - 8;
+
+        _crc.reset();
+        _crc.update(record, 8, length);
+
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        buffer.putInt(0, length);
+        buffer.putInt(4, (int) _crc.getValue());
+
+        if (_active == null || _active.size + record.length > SEGMENT_SIZE && _active.records > 0)
+            roll(seq);
+
+        long offset = _active.size;
+
+        while (buffer.hasRemaining())
+            _channel.write(buffer);
+
+        synchronized (_lock) {
+            _active.addRecord(seq, timestamp, offset, record.length);
+        }
+
+        s_written.incrementAndGet();
+    }
+
+    /**
+     * Starts a new segment.
+     * (must be called within 'writeLock')
+     */
+    private void roll(long firstSeq) throws IOException {
+        closeActive();
+
+        Segment segment = new Segment(new File(_dir, String.format("%016x%s", firstSeq, SEGMENT_SUFFIX)));
+
+        _channel = new FileOutputStream(segment.file, true).getChannel();
+        _active = segment;
+
+        // (in case the file already existed)
+        segment.size = _channel.size();
+
+        synchronized (_lock) {
+            _segments.add(segment);
+
+            enforceRetention();
+        }
+    }
+
+    /**
+     * (must be called within 'writeLock')
+     */
+    private void closeActive() {
+        if (_channel != null) {
+            try {
+                _channel.force(false);
+            } catch (IOException exc) {
+                // (ignore)
+            }
+
+            Stream.safeClose(_channel);
+            _channel = null;
+        }
+
+        _active = null;
+    }
+
+    /**
+     * Removes the oldest segments beyond the size and age limits (always keeps the newest).
+     * (must be called within 'lock')
+     */
+    private void enforceRetention() {
+        long total = 0;
+        for (Segment segment : _segments)
+            total += segment.size;
+
+        long expiry = System.currentTimeMillis() - MAX_AGE;
+
+        while (_segments.size() > 1) {
+            Segment oldest = _segments.get(0);
+            if (total <= MAX_SIZE && oldest.lastTimestamp >= expiry)
+                break;
+
+            _segments.remove(0);
+            total -= oldest.size;
+
+            oldest.removed = true;
+
+            // (otherwise the last reader removes it)
+            if (oldest.readers == 0)
+                oldest.delete();
+        } // (while)
+    }
+
+    /**
+     * Loads the existing segments, rebuilding their indices (and truncating any partly written record).
+     */
+    private void open() {
+        File[] files = _dir.listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+
+        });
+
+        if (files == null)
+            return;
+
+        // (names are fixed-width hex so sort in sequence order)
+        Arrays.sort(files);
+
+        for (File file : files) {
+            Segment segment = new Segment(file);
+
+            try {
+                scan(segment);
+
+            } catch (Exception exc) {
+                s_logger.warn("Could not load log segment '{}'; ignoring.", file, exc);
+                continue;
+            }
+
+            if (segment.records == 0) {
+                file.delete();
+                continue;
+            }
+
+            _segments.add(segment);
+        } // (for)
+
+        synchronized (_lock) {
+            enforceRetention();
+        }
+    }
+
+    private void scan(Segment segment) throws IOException {
+        long fileSize = segment.file.length();
+        if (fileSize == 0)
+            return;
+
+        CRC32 crc = new CRC32();
+
+        long position = 0;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file), 64 * 1024));
+
+            byte[] body = new byte[256];
+
+            while (position + 24 <= fileSize) {
+                int length = in.readInt();
+                int expectedCRC = in.readInt();
+
+                if (length < 16 || length > MAX_RECORD_SIZE || position + 8 + length > fileSize)
+                    break;
+
+                if (body.length < length)
+                    body = new byte[Math.max(length, body.length * 2)];
+
+                in.readFully(body, 0, length);
+
+                crc.reset();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != expectedCRC)
+                    break;
+
+                ByteBuffer view = ByteBuffer.wrap(body);
+                segment.addRecord(view.getLong(0), view.getLong(8), position, 8 + length);
+
+                position += 8 + length;
+            } // (while)
+
+        } finally {
+            // (must be closed before any truncation)
+            Stream.safeClose(in);
+        }
+
+        if (position < fileSize) {
+            s_logger.info("Truncating partly written log segment '{}' at {}", segment.file, position);
+
+            RandomAccessFile raf = null;
+            try {
+                raf = new RandomAccessFile(segment.file, "rw");
+                raf.setLength(position);
+            } finally {
+                Stream.safeClose(raf);
+            }
+        }
+    }
+
+    /**
+     * Writes out anything pending and releases the log.
+     */
+    public void close() {
+        _closed = true;
+
+        if (_flushTimer != null)
+            _flushTimer.cancel();
+
+        flush();
+
+        synchronized (_writeLock) {
+            closeActive();
+        }
+    }
+
+    /**
+     * Writes a (nullable) string, UTF8 encoded.
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(UTF8Charset.instance());
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads an enum value written by name (see 'writeString').
+     */
+    public static <E extends Enum<E>> E readEnum(DataInput in, Class<E> enumClass) throws IOException {
+        String name = readString(in);
+        if (name == null)
+            return null;
+
+        try {
+            return Enum.valueOf(enumClass, name);
+        } catch (IllegalArgumentException exc) {
+            throw new IOException("Unknown " + enumClass.getSimpleName() + " value '" + name + "'");
+        }
+    }
+
+    /**
+     * (see 'writeString')
+     */
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+
+        return new String(bytes, UTF8Charset.instance());
+    }
+
+} // (class)
@@ -0,0 +1,514 @@
+package org.nodel.host;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nodel.core.Framework;
+import org.nodel.host.NanoHTTPD.LiveContent;
+import org.nodel.io.UTF8Charset;
+import org.nodel.logging.AtomicLongMeasurementProvider;
+import org.nodel.reflection.Serialisation;
+import org.nodel.threading.TimerTask;
+import org.nodel.threading.Timers;
+
+/**
+ * A fan-out buffer of recent items (e.g. log entries) for pushing to any number of HTTP clients as
+ * server-sent events ('text/event-stream'). Each item is encoded at most once regardless of the
+ * number of subscribers. Subscribers can resume from a sequence number (the SSE event 'id').
+ * 
+ * Streams that hold a thread while open (classic engine) are capped. Beyond the cap, streams end as soon as
+ * they have delivered what's available (or after a long-poll timeout) and the client reconnects, resuming
+ * via 'Last-Event-ID'.
+ */
+public class PushBuffer {
+
+    /**
+     * How often idle subscribers are sent a comment to keep connections alive.
+     * (well within the server's keep-alive timeout, even when a heartbeat is only due every second period)
+     */
+    private final static long HEARTBEAT_PERIOD = 3000;
+
+    private final static byte[] HEARTBEAT = ":\n\n".getBytes(UTF8Charset.instance());
+
+    /**
+     * The most streams that may each hold a thread for as long as they're open.
+     */
+    private final static int MAX_THREAD_HOLDING_STREAMS = 16;
+
+    /**
+     * How long a long-poll style stream waits for something to deliver before ending.
+     * (millis)
+     */
+    private final static long LONG_POLL_TIMEOUT = 30000;
+
+    /**
+     * Sent first on long-poll style streams so clients reconnect promptly.
+     */
+    private final static byte[] RETRY_PROMPTLY = "retry: 500\n\n".getBytes(UTF8Charset.instance());
+
+    /**
+     * (see 'MAX_THREAD_HOLDING_STREAMS')
+     */
+    private static AtomicInteger s_threadHoldingStreams = new AtomicInteger();
+
+    /**
+     * (threading)
+     */
+    private static Timers s_timers = new Timers("push_buffer");
+
+    /**
+     * (diagnostics)
+     */
+    private static AtomicLong s_subscribers = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    private static AtomicLong s_longPolls = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    static {
+        Framework.shared().registerCounter("http_push_subscribers", new AtomicLongMeasurementProvider(s_subscribers), false);
+        Framework.shared().registerCounter("http_push_long_polls", new AtomicLongMeasurementProvider(s_longPolls), true);
+    }
+
+    /**
+     * An item and its (lazily) encoded form.
+     */
+    private class Frame {
+
+        private long seq;
+
+        private Object item;
+
+        /**
+         * (self locked)
+         */
+        private byte[] encoded;
+
+        public Frame(long seq, Object item) {
+            this.seq = seq;
+            this.item = item;
+        }
+
+        public synchronized byte[] encode() {
+            if (this.encoded == null) {
+                StringBuilder sb = new StringBuilder();
+                sb.append("id: ").append(this.seq).append('\n');
+                sb.append("event: ").append(_eventName).append('\n');
+
+                // (each line needs its own field)
+                for (String line : Serialisation.serialise(this.item).split("\n"))
+                    sb.append("data: ").append(line).append('\n');
+
+                sb.append('\n');
+
+                this.encoded = sb.toString().getBytes(UTF8Charset.instance());
+                this.item = null;
+            }
+
+            return this.encoded;
+        }
+
+    } // (class)
+
+    /**
+     * The SSE event name, e.g. 'log'.
+     */
+    private String _eventName;
+
+    /**
+     * General lock (and signal)
+     */
+    private Object _lock = new Object();
+
+    /**
+     * Holds the most recent frames.
+     * (locked around 'lock')
+     */
+    private Frame[] _ring;
+
+    /**
+     * The total number of frames ever published, i.e. the position of the next frame.
+     * (locked around 'lock')
+     */
+    private long _count;
+
+    /**
+     * (locked around 'lock')
+     */
+    private List<Subscription> _subscriptions = new ArrayList<Subscription>();
+
+    /**
+     * (only while there are subscribers, locked around 'lock')
+     */
+    private TimerTask _heartbeatTimer;
+
+    public PushBuffer(String eventName, int capacity) {
+        _eventName = eventName;
+        _ring = new Frame[capacity];
+    }
+
+    /**
+     * Publishes an item (which must not be modified afterwards) with a sequence number greater
+     * than any previous one.
+     */
+    public void publish(long seq, Object item) {
+        List<Runnable> handlers;
+
+        synchronized (_lock) {
+            _ring[(int) (_count % _ring.length)] = new Frame(seq, item);
+            _count++;
+
+            if (_subscriptions.isEmpty())
+                return;
+
+            handlers = takeHandlers();
+
+            _lock.notifyAll();
+        }
+
+        runHandlers(handlers);
+    }
+
+    /**
+     * Subscribes to items with a sequence number of at least 'fromSeq' (that are still held) and any
+     * that follow. A negative value means only items that follow.
+     */
+    public Subscription subscribe(long fromSeq) {
+        return subscribe(fromSeq, false);
+    }
+
+    /**
+     * (as above)
+     * @param holdsThread whether the consumer ties up a thread for as long as the stream is open, i.e. a
+     *                    blocking server engine.
+     */
+    public Subscription subscribe(long fromSeq, boolean holdsThread) {
+        Subscription subscription = new Subscription();
+
+        if (holdsThread) {
+            if (s_threadHoldingStreams.incrementAndGet() <= MAX_THREAD_HOLDING_STREAMS) {
+                subscription.holdsThread = true;
+
+            } else {
+                s_threadHoldingStreams.decrementAndGet();
+
+                subscription.longPoll = true;
+                subscription.deadline = System.nanoTime() + LONG_POLL_TIMEOUT * 1000000;
+                subscription.pending = RETRY_PROMPTLY;
+
+                s_longPolls.incrementAndGet();
+            }
+        }
+
+        synchronized (_lock) {
+            long position = _count;
+
+            if (fromSeq >= 0) {
+                // find the earliest frame still held at or after 'fromSeq'
+                long oldest = Math.max(0, _count - _ring.length);
+
+                for (long i = _count - 1; i >= oldest; i--) {
+                    if (_ring[(int) (i % _ring.length)].seq < fromSeq)
+                        break;
+
+                    position = i;
+                }
+            }
+
+            subscription.position = position;
+
+            _subscriptions.add(subscription);
+
+            if (_heartbeatTimer == null) {
+                _heartbeatTimer = s_timers.schedule(new TimerTask() {
+
+                    @Override
+                    public void run() {
+                        handleHeartbeatTimer();
+                    }
+
+                }, HEARTBEAT_PERIOD, HEARTBEAT_PERIOD);
+            }
+        }
+
+        s_subscribers.incrementAndGet();
+
+        return subscription;
+    }
+
+    /**
+     * Flags subscribers that haven't had anything delivered since the last heartbeat.
+     * (timer entry-point)
+     */
+    private void handleHeartbeatTimer() {
+        List<Runnable> handlers;
+
+        synchronized (_lock) {
+            for (Subscription subscription : _subscriptions) {
+                if (!subscription.delivered)
+                    subscription.heartbeatDue = true;
+
+                subscription.delivered = false;
+            }
+
+            handlers = takeHandlers();
+
+            _lock.notifyAll();
+        }
+
+        runHandlers(handlers);
+    }
+
+    /**
+     * Collects the handlers of subscribers that can now be polled.
+     * (must be called within lock)
+     */
+    private List<Runnable> takeHandlers() {
+        List<Runnable> handlers = null;
+
+        for (Subscription subscription : _subscriptions) {
+            if (subscription.handler != null && subscription.isReady()) {
+                if (handlers == null)
+                    handlers = new ArrayList<Runnable>();
+
+                handlers.add(subscription.handler);
+                subscription.handler = null;
+            }
+        }
+
+        return handlers;
+    }
+
+    private static void runHandlers(List<Runnable> handlers) {
+        if (handlers == null)
+            return;
+
+        for (Runnable handler : handlers)
+            handler.run();
+    }
+
+    /**
+     * A subscriber's view of the buffer, an endless event stream (until closed).
+     */
+    public class Subscription extends InputStream implements LiveContent {
+
+        /**
+         * The position of the next frame.
+         * (locked around 'lock')
+         */
+        private long position;
+
+        /**
+         * (locked around 'lock')
+         */
+        private boolean heartbeatDue;
+
+        /**
+         * Whether anything has been delivered since the last heartbeat.
+         * (locked around 'lock')
+         */
+        private boolean delivered;
+
+        /**
+         * (locked around 'lock')
+         */
+        private boolean closed;
+
+        /**
+         * (locked around 'lock')
+         */
+        private Runnable handler;
+
+        /**
+         * Counted in 's_threadHoldingStreams'.
+         */
+        private boolean holdsThread;
+
+        /**
+         * Ends once caught up after delivering something or at the 'deadline' (see class notes).
+         */
+        private boolean longPoll;
+
+        /**
+         * (nanos, long-poll only)
+         */
+        private long deadline;
+
+        /**
+         * Whether any frame has been delivered.
+         * (locked around 'lock')
+         */
+        private boolean deliveredFrame;
+
+        /**
+         * The encoded frame being read.
+         * (consumer only)
+         */
+        private byte[] pending;
+
+        private int pendingPos;
+
+        private byte[] single = new byte[1];
+
+        /**
+         * (must be called within lock)
+         */
+        private boolean isReady() {
+            return this.closed || this.position < _count || this.heartbeatDue;
+        }
+
+        @Override
+        public int poll(byte[] buffer, int offset, int length) throws IOException {
+            if (this.pending == null) {
+                Frame frame = null;
+
+                synchronized (_lock) {
+                    if (this.closed)
+                        return -1;
+
+                    // skip over anything no longer held (a slow subscriber)
+                    long oldest = _count - _ring.length;
+                    if (this.position < oldest)
+                        this.position = oldest;
+
+                    if (this.position < _count) {
+                        frame = _ring[(int) (this.position % _ring.length)];
+                        this.position++;
+                        this.deliveredFrame = true;
+
+                    } else if (this.longPoll && (this.deliveredFrame || System.nanoTime() >= this.deadline)) {
+                        // (the client reconnects for more)
+                        return -1;
+
+                    } else if (this.heartbeatDue) {
+                        this.pending = HEARTBEAT;
+
+                    } else {
+                        return 0;
+                    }
+
+                    this.delivered = true;
+                    this.heartbeatDue = false;
+                }
+
+                // (encoding happens outside of the buffer lock)
+                if (frame != null)
+                    this.pending = frame.encode();
+
+                this.pendingPos = 0;
+            }
+
+            int count = Math.min(length, this.pending.length - this.pendingPos);
+            System.arraycopy(this.pending, this.pendingPos, buffer, offset, count);
+            this.pendingPos += count;
+
+            if (this.pendingPos >= this.pending.length)
+                this.pending = null;
+
+            return count;
+        }
+
+        @Override
+        public void setAvailableHandler(Runnable handler) {
+            synchronized (_lock) {
+                if (!isReady()) {
+                    this.handler = handler;
+                    return;
+                }
+            }
+
+            handler.run();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0)
+                return 0;
+
+            for (;;) {
+                int read = poll(buffer, offset, length);
+                if (read != 0)
+                    return read;
+
+                synchronized (_lock) {
+                    try {
+                        while (!isReady())
+                            _lock.wait();
+
+                    } catch (InterruptedException exc) {
+                        throw new InterruptedIOException();
+                    }
+                }
+            } // (for)
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = read(this.single, 0, 1);
+
+            return read < 0 ? -1 : (this.single[0] & 0xff);
+        }
+
+        /**
+         * (used by blocking writers to know when to flush)
+         */
+        @Override
+        public int available() {
+            if (this.pending != null)
+                return this.pending.length - this.pendingPos;
+
+            synchronized (_lock) {
+                return this.position < _count ? 1 : 0;
+            }
+        }
+
+        @Override
+        public void close() {
+            Runnable handler;
+
+            synchronized (_lock) {
+                if (this.closed)
+                    return;
+
+                this.closed = true;
+
+                _subscriptions.remove(this);
+
+                if (_subscriptions.isEmpty() && _heartbeatTimer != null) {
+                    _heartbeatTimer.cancel();
+                    _heartbeatTimer = null;
+                }
+
+                handler = this.handler;
+                this.handler = null;
+
+                _lock.notifyAll();
+            }
+
+            s_subscribers.decrementAndGet();
+
+            if (this.holdsThread)
+                s_threadHoldingStreams.decrementAndGet();
+
+            if (handler != null)
+                handler.run();
+        }
+
+    } // (class)
+
+} // (class)
@@ -79,7 +79,7 @@ public class RemoteBindings {
             String name = entry.getKey().getOriginalName();
             NodelActionInfo info = entry.getValue();
             
-            Map<String, Object> actionsSchema = Schema.getSchemaObject(ActionValue.class);
+            Map<String, Object> actionsSchema = new LinkedHashMap<String, Object>(Schema.getSchemaObject(ActionValue.class));
             actionsSchema.put("title", info.title);
             actionsSchema.put("desc", info.desc);
             
@@ -101,7 +101,7 @@ public class RemoteBindings {
         for (Entry<SimpleName, NodelEventInfo> entry : this.events.entrySet()) {
             String name = entry.getKey().getOriginalName();
             NodelEventInfo info = entry.getValue();
-            Map<String, Object> eventSchema = Schema.getSchemaObject(EventValue.class);
+            Map<String, Object> eventSchema = new LinkedHashMap<String, Object>(Schema.getSchemaObject(EventValue.class));
             eventSchema.put("title", info.title);
             eventSchema.put("desc", info.desc);
             properties.put(name, eventSchema);
@@ -0,0 +1,107 @@
+package org.nodel.host;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nodel.core.Framework;
+import org.nodel.logging.AtomicLongMeasurementProvider;
+
+/**
+ * Holds serialised snapshots (e.g. REST responses) of a versioned object, keyed by request. A snapshot is
+ * only returned while the version it was taken at is still current.
+ */
+public class SnapshotCache {
+
+    /**
+     * The maximum number of snapshots held before they're all discarded.
+     */
+    private final static int MAX_SNAPSHOTS = 256;
+
+    /**
+     * (diagnostics)
+     */
+    private static AtomicLong s_hits = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    private static AtomicLong s_misses = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    static {
+        Framework.shared().registerCounter("rest_snapshot_hits", new AtomicLongMeasurementProvider(s_hits), true);
+        Framework.shared().registerCounter("rest_snapshot_misses", new AtomicLongMeasurementProvider(s_misses), true);
+    }
+
+    /**
+     * A serialised form at a particular version.
+     */
+    public static class Snapshot {
+
+        public final long version;
+
+        /**
+         * (quoted)
+         */
+        public final String etag;
+
+        public final String data;
+
+        private Snapshot(long version, String etag, String data) {
+            this.version = version;
+            this.etag = etag;
+            this.data = data;
+        }
+
+    } // (class)
+
+    /**
+     * Distinguishes versions across instances (and process restarts).
+     */
+    private String _epoch = Long.toHexString(System.currentTimeMillis()) + Long.toHexString(System.nanoTime() & 0xffff);
+
+    private ConcurrentHashMap<String, Snapshot> _snapshots = new ConcurrentHashMap<String, Snapshot>();
+
+    /**
+     * The entity tag (quoted) for a version.
+     */
+    public String etagFor(long version) {
+        return "\"" + _epoch + "-" + Long.toHexString(version) + "\"";
+    }
+
+    /**
+     * Returns the snapshot for a key if it's still current, otherwise null.
+     */
+    public Snapshot get(String key, long currentVersion) {
+        Snapshot snapshot = _snapshots.get(key);
+        if (snapshot == null || snapshot.version != currentVersion) {
+            s_misses.incrementAndGet();
+            return null;
+        }
+
+        s_hits.incrementAndGet();
+        return snapshot;
+    }
+
+    /**
+     * Stores a snapshot taken at a version (which must have been read *before* the data was produced).
+     */
+    public Snapshot put(String key, long version, String data) {
+        if (_snapshots.size() >= MAX_SNAPSHOTS)
+            _snapshots.clear();
+
+        Snapshot snapshot = new Snapshot(version, etagFor(version), data);
+        _snapshots.put(key, snapshot);
+
+        return snapshot;
+    }
+
+} // (class)
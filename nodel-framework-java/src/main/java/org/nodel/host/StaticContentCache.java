@@ -0,0 +1,332 @@
+package org.nodel.host;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nodel.core.Framework;
+import org.nodel.io.Stream;
+import org.nodel.logging.AtomicLongMeasurementProvider;
+
+/**
+ * Caches file system lookups ('stat' results) and the content of small files for static content serving.
+ * Entries are invalidated by watching their directories or, where a directory can't be watched, revalidated
+ * after a short period. Least recently used entries are evicted beyond the capacity.
+ */
+public class StaticContentCache {
+
+    /**
+     * (logging)
+     */
+    private static Logger s_logger = LogManager.getLogger(StaticContentCache.class);
+
+    /**
+     * Files larger than this have their details cached but not their content.
+     */
+    private final static long MAX_CONTENT_SIZE = 64 * 1024;
+
+    /**
+     * The maximum number of entries held.
+     */
+    private final static int MAX_ENTRIES = 4096;
+
+    /**
+     * How long entries in unwatched directories are trusted for.
+     * (millis)
+     */
+    private final static long REVALIDATION_PERIOD = 2000;
+
+    /**
+     * (diagnostics)
+     */
+    private static AtomicLong s_hits = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    private static AtomicLong s_misses = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    static {
+        Framework.shared().registerCounter("http_static_cache_hits", new AtomicLongMeasurementProvider(s_hits), true);
+        Framework.shared().registerCounter("http_static_cache_misses", new AtomicLongMeasurementProvider(s_misses), true);
+    }
+
+    /**
+     * The details of a file at the time it was looked up.
+     */
+    public static class FileInfo {
+
+        public final File file;
+
+        public final boolean exists;
+
+        public final boolean isDirectory;
+
+        public final long length;
+
+        public final long lastModified;
+
+        /**
+         * A strong entity tag (quoted) derived from the length and modification time.
+         */
+        public final String etag;
+
+        /**
+         * The content if the file is small enough (otherwise null)
+         */
+        private byte[] content;
+
+        /**
+         * (nanos)
+         */
+        private long validatedAt = System.nanoTime();
+
+        private boolean watched;
+
+        private FileInfo(File file) {
+            this.file = file;
+            this.exists = file.exists();
+            this.isDirectory = this.exists && file.isDirectory();
+            this.length = this.exists ? file.length() : 0;
+            this.lastModified = this.exists ? file.lastModified() : 0;
+            this.etag = "\"" + Long.toHexString(this.length) + "-" + Long.toHexString(this.lastModified) + "\"";
+        }
+
+    } // (class)
+
+    /**
+     * (capacity in bytes)
+     */
+    private long _capacity;
+
+    /**
+     * Keyed by absolute path.
+     * (access ordered, self locked)
+     */
+    private LinkedHashMap<String, FileInfo> _entries = new LinkedHashMap<String, FileInfo>(256, 0.75f, true);
+
+    /**
+     * The total size of content held.
+     * (locked around 'entries')
+     */
+    private long _size;
+
+    /**
+     * Incremented whenever watch events are processed.
+     * (modified within lock)
+     */
+    private volatile long _generation;
+
+    /**
+     * (null if watching is not available)
+     */
+    private WatchService _watchService;
+
+    /**
+     * The directories being watched.
+     * (locked around 'entries')
+     */
+    private Map<Path, WatchKey> _watchedDirs = new HashMap<Path, WatchKey>();
+
+    public StaticContentCache(long capacity) {
+        _capacity = capacity;
+
+        try {
+            _watchService = FileSystems.getDefault().newWatchService();
+
+            Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    watcherMain();
+                }
+
+            }, "static_content_watcher");
+            thread.setDaemon(true);
+            thread.start();
+
+        } catch (Exception exc) {
+            s_logger.info("File watching is not available, static content will be revalidated periodically instead. reason:'{}'", exc.toString());
+        }
+    }
+
+    /**
+     * Looks up a file, using the cached details where they're still valid.
+     */
+    public FileInfo lookup(File file) {
+        String key = file.getAbsolutePath();
+
+        synchronized (_entries) {
+            FileInfo info = _entries.get(key);
+            if (info != null && (info.watched || (System.nanoTime() - info.validatedAt) / 1000000 < REVALIDATION_PERIOD)) {
+                s_hits.incrementAndGet();
+                return info;
+            }
+        }
+
+        s_misses.incrementAndGet();
+
+        // (watch before examining the file so no changes are missed)
+        boolean watched = watch(file.getAbsoluteFile().getParentFile());
+        long generation = _generation;
+
+        FileInfo info = new FileInfo(file);
+
+        synchronized (_entries) {
+            // only trust the watch if there were no events while examining the file
+            info.watched = watched && generation == _generation;
+
+            FileInfo previous = _entries.put(key, info);
+            if (previous != null && previous.content != null)
+                _size -= previous.content.length;
+
+            evict(info);
+        }
+
+        return info;
+    }
+
+    /**
+     * Returns the content of a file if it's small enough to cache, loading it if necessary (otherwise null).
+     */
+    public byte[] getContent(FileInfo info) throws IOException {
+        if (!info.exists || info.isDirectory || info.length > MAX_CONTENT_SIZE)
+            return null;
+
+        synchronized (_entries) {
+            if (info.content != null)
+                return info.content;
+        }
+
+        byte[] content;
+
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(info.file);
+            content = Stream.readFullyIntoBuffer(fis, info.length);
+        } finally {
+            Stream.safeClose(fis);
+        }
+
+        // the file changed since it was looked up so don't cache
+        if (content.length != info.length)
+            return null;
+
+        synchronized (_entries) {
+            // only hold on to it while it's still an entry
+            if (info.content == null && _entries.get(info.file.getAbsolutePath()) == info) {
+                info.content = content;
+                _size += content.length;
+
+                evict(info);
+            }
+        }
+
+        return content;
+    }
+
+    /**
+     * Evicts least recently used entries if over capacity.
+     * (must be called within lock)
+     */
+    private void evict(FileInfo keep) {
+        Iterator<FileInfo> i = _entries.values().iterator();
+        while ((_size > _capacity || _entries.size() > MAX_ENTRIES) && i.hasNext()) {
+            FileInfo eldest = i.next();
+            if (eldest == keep)
+                continue;
+
+            if (eldest.content != null)
+                _size -= eldest.content.length;
+
+            i.remove();
+        }
+    }
+
+    /**
+     * Starts watching a directory (if not already). Returns true if it's being watched.
+     */
+    private boolean watch(File dir) {
+        if (_watchService == null || dir == null || !dir.isDirectory())
+            return false;
+
+        Path path = dir.toPath();
+
+        synchronized (_entries) {
+            WatchKey existing = _watchedDirs.get(path);
+            if (existing != null && existing.isValid())
+                return true;
+
+            try {
+                WatchKey key = path.register(_watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                _watchedDirs.put(path, key);
+                return true;
+
+            } catch (Exception exc) {
+                // (can happen when the OS watch limit is reached)
+                return false;
+            }
+        }
+    }
+
+    /**
+     * (watcher thread entry-point)
+     */
+    private void watcherMain() {
+        try {
+            for (;;) {
+                WatchKey key = _watchService.take();
+
+                // any event within the directory invalidates all its entries
+                Path dir = (Path) key.watchable();
+                key.pollEvents();
+
+                synchronized (_entries) {
+                    _generation++;
+
+                    Iterator<FileInfo> i = _entries.values().iterator();
+                    while (i.hasNext()) {
+                        FileInfo info = i.next();
+                        File parent = info.file.getAbsoluteFile().getParentFile();
+
+                        if (parent != null && parent.toPath().equals(dir)) {
+                            if (info.content != null)
+                                _size -= info.content.length;
+
+                            i.remove();
+                        }
+                    }
+
+                    if (!key.reset())
+                        _watchedDirs.remove(dir);
+                }
+            } // (for)
+
+        } catch (InterruptedException | ClosedWatchServiceException exc) {
+            // ended
+        }
+    }
+
+} // (class)
@@ -0,0 +1,127 @@
+package org.nodel.io;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Reads a stream, producing it in GZIP format, i.e. the inverse of GZIPInputStream. Compression
+ * happens as the stream is read so there's no need to buffer the entire content.
+ */
+public class GZIPEncodingInputStream extends InputStream {
+
+    /**
+     * (magic, CM=deflate, no flags, no mtime, no XFL, OS=unknown)
+     */
+    private final static byte[] HEADER = new byte[] { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private InputStream _in;
+
+    private Deflater _deflater;
+
+    private CRC32 _crc = new CRC32();
+
+    private byte[] _inBuffer = new byte[8192];
+
+    /**
+     * The header or trailer bytes still to be read.
+     */
+    private byte[] _pending = HEADER;
+
+    private int _pendingPos;
+
+    /**
+     * Set once the trailer has been queued.
+     */
+    private boolean _finished;
+
+    private byte[] _single = new byte[1];
+
+    public GZIPEncodingInputStream(InputStream in, int level) {
+        _in = in;
+        _deflater = new Deflater(level, true);
+    }
+
+    public GZIPEncodingInputStream(InputStream in) {
+        this(in, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = read(_single, 0, 1);
+
+        return read < 0 ? -1 : (_single[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+
+        for (;;) {
+            // header or trailer bytes first
+            if (_pending != null) {
+                int count = Math.min(len, _pending.length - _pendingPos);
+                System.arraycopy(_pending, _pendingPos, b, off, count);
+                _pendingPos += count;
+
+                if (_pendingPos >= _pending.length)
+                    _pending = null;
+
+                return count;
+            }
+
+            if (_finished)
+                return -1;
+
+            if (_deflater.finished()) {
+                queueTrailer();
+                continue;
+            }
+
+            if (_deflater.needsInput()) {
+                int read = _in.read(_inBuffer, 0, _inBuffer.length);
+                if (read < 0) {
+                    _deflater.finish();
+                } else if (read > 0) {
+                    _crc.update(_inBuffer, 0, read);
+                    _deflater.setInput(_inBuffer, 0, read);
+                }
+            }
+
+            int deflated = _deflater.deflate(b, off, len);
+            if (deflated > 0)
+                return deflated;
+        } // (for)
+    }
+
+    /**
+     * (CRC32 and ISIZE, both little-endian)
+     */
+    private void queueTrailer() {
+        long crc = _crc.getValue();
+        long size = _deflater.getBytesRead();
+
+        _pending = new byte[] {
+            (byte) crc, (byte) (crc >> 8), (byte) (crc >> 16), (byte) (crc >> 24),
+            (byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24) };
+        _pendingPos = 0;
+
+        _finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _deflater.end();
+
+        _in.close();
+    }
+
+} // (class)
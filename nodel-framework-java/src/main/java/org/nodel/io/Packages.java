@@ -29,7 +29,7 @@ public class Packages {
      * a *new* download has occurred.
      */
     public static File downloadPackage(String packageURL, File folder, Map<String, String> properties) {
-        logger.info("Checking package - '" + packageURL + "'...");
+        logger.info("Checking package - '{}'...", packageURL);
 
         try {
             String url0;
@@ -100,7 +100,7 @@ public class Packages {
                 
                 etag = conn.getHeaderField("etag");
                 
-                logger.info("Package available. size:" + size);
+                logger.info("Package available. size:{}", size);
 
                 FileOutputStream fos = null;
                 InputStream is = null;
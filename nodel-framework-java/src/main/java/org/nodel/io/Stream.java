@@ -16,6 +16,8 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
 
 public class Stream {
 
@@ -124,6 +126,39 @@ public class Stream {
         }
     } // (method)
     
+    /**
+     * Writes an entire string out to a file so that readers only ever see the old or new contents,
+     * i.e. via a temporary file in the same directory which is synced and then renamed over the target.
+     */
+    public static void writeFullyAtomically(File file, String str) throws IOException {
+        // (unique so concurrent writers cannot interfere)
+        File tmpFile = File.createTempFile("." + file.getName() + "_", ".tmp", file.getAbsoluteFile().getParentFile());
+        
+        boolean moved = false;
+        try {
+            FileOutputStream fos = new FileOutputStream(tmpFile);
+            try {
+                fos.write(str.getBytes("UTF8"));
+
+                // (make sure it's on disk before it replaces anything)
+                fos.getFD().sync();
+            } finally {
+                fos.close();
+            }
+
+            try {
+                java.nio.file.Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException exc) {
+                java.nio.file.Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+            
+        } finally {
+            if (!moved)
+                tmpFile.delete();
+        }
+    } // (method)
+    
     /**
      * (overloaded)
      */
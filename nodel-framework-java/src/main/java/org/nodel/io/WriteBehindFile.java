@@ -0,0 +1,207 @@
+package org.nodel.io;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nodel.Handler;
+import org.nodel.core.Framework;
+import org.nodel.logging.AtomicLongMeasurementProvider;
+import org.nodel.threading.ThreadPool;
+import org.nodel.threading.TimerTask;
+import org.nodel.threading.Timers;
+
+/**
+ * A file that is saved in the background, shortly after being asked to, so that bursts of saves result in a
+ * single (atomic) write of the latest content.
+ */
+public class WriteBehindFile {
+
+    /**
+     * (diagnostics)
+     */
+    private static AtomicLong s_writes = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    private static AtomicLong s_coalesced = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    static {
+        Framework.shared().registerCounter("file_writes", new AtomicLongMeasurementProvider(s_writes), true);
+        Framework.shared().registerCounter("file_writes_coalesced", new AtomicLongMeasurementProvider(s_coalesced), true);
+    }
+
+    /**
+     * (threading)
+     */
+    private static Timers s_timers = new Timers("write_behind");
+
+    /**
+     * (writes are blocking so never done on the timer thread)
+     */
+    private static ThreadPool s_threadPool = new ThreadPool("write_behind", 4);
+
+    /**
+     * (logging)
+     */
+    private Logger _logger = LogManager.getLogger(WriteBehindFile.class);
+
+    private File _file;
+
+    /**
+     * (millis)
+     */
+    private int _delay;
+
+    /**
+     * (see 'setWrittenHandler')
+     */
+    private Handler.H1<Long> _writtenHandler;
+
+    /**
+     * (see 'setFailedHandler')
+     */
+    private Handler.H1<Exception> _failedHandler;
+
+    /**
+     * Protects '_pending' and '_scheduled'.
+     */
+    private Object _lock = new Object();
+
+    /**
+     * Produces the content to write, only called when actually writing.
+     */
+    private Callable<String> _pending;
+
+    private boolean _scheduled;
+
+    /**
+     * Ensures only one write at a time.
+     */
+    private Object _writeLock = new Object();
+
+    /**
+     * @param delay how long to wait for other saves (millis)
+     */
+    public WriteBehindFile(File file, int delay) {
+        _file = file;
+        _delay = delay;
+    }
+
+    public File getFile() {
+        return _file;
+    }
+
+    /**
+     * Called (from a background thread) after each write with the file's new modified time, as taken
+     * straight after the write.
+     */
+    public void setWrittenHandler(Handler.H1<Long> handler) {
+        _writtenHandler = handler;
+    }
+
+    /**
+     * Called (from a background thread) when a write fails, i.e. the save is lost.
+     */
+    public void setFailedHandler(Handler.H1<Exception> handler) {
+        _failedHandler = handler;
+    }
+
+    /**
+     * Schedules a save, replacing any that is still pending.
+     */
+    public void save(Callable<String> content) {
+        synchronized (_lock) {
+            if (_pending != null)
+                s_coalesced.incrementAndGet();
+
+            _pending = content;
+
+            if (_scheduled)
+                return;
+
+            _scheduled = true;
+        }
+
+        s_timers.schedule(s_threadPool, new TimerTask() {
+
+            @Override
+            public void run() {
+                writePending();
+            }
+
+        }, _delay);
+    } // (method)
+
+    /**
+     * (overloaded, for content that is already produced)
+     */
+    public void save(final String content) {
+        save(new Callable<String>() {
+
+            @Override
+            public String call() throws Exception {
+                return content;
+            }
+
+        });
+    } // (method)
+
+    /**
+     * Writes any pending save immediately (blocking).
+     */
+    public void flush() {
+        writePending();
+    }
+
+    private void writePending() {
+        synchronized (_writeLock) {
+            Callable<String> content;
+
+            synchronized (_lock) {
+                content = _pending;
+                _pending = null;
+                _scheduled = false;
+            }
+
+            if (content == null)
+                return;
+
+            long modified;
+
+            try {
+                Stream.writeFullyAtomically(_file, content.call());
+
+                modified = _file.lastModified();
+
+                s_writes.incrementAndGet();
+
+            } catch (Exception exc) {
+                _logger.warn("Could not write to '" + _file + "'", exc);
+
+                Handler.H1<Exception> handler = _failedHandler;
+                if (handler != null)
+                    handler.handle(exc);
+
+                return;
+            }
+
+            Handler.H1<Long> handler = _writtenHandler;
+            if (handler != null)
+                handler.handle(modified);
+        }
+    } // (method)
+
+} // (class)
@@ -25,20 +25,19 @@ SOFTWARE.
 */
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A JSONObject is an unordered collection of name/value pairs. Its external
@@ -103,15 +102,16 @@ public class JSONObject {
     /**
      * The maximum number of keys in the key pool.
      */
-     private static final int keyPoolSize = 100;
+     private static final int keyPoolSize = 1000;
 
    /**
      * Key pooling is like string interning, but without permanently tying up
      * memory. To help conserve memory, storage of duplicated key strings in
      * JSONObjects will be avoided by using a key pool to manage unique key
      * string objects. This is used by JSONObject.put(string, object).
+     * (concurrent as it's shared by all threads; cleared when full)
      */
-     private static Map<String, String> keyPool = new HashMap<String, String>(keyPoolSize);
+     private static ConcurrentHashMap<String, String> keyPool = new ConcurrentHashMap<String, String>(keyPoolSize);
 
     /**
      * JSONObject.NULL is equivalent to the value that JavaScript calls null,
@@ -1135,10 +1135,11 @@ public class JSONObject {
             pooled = keyPool.get(key);
             if (pooled == null) {
                 if (keyPool.size() >= keyPoolSize) {
-                    keyPool = new HashMap<String, String>(keyPoolSize);
+                    keyPool.clear();
                 }
-                keyPool.put(key, key);
-            } else {
+                pooled = keyPool.putIfAbsent(key, key);
+            }
+            if (pooled != null) {
                 key = pooled;
             }
             this.map.put(key, value);
@@ -1196,14 +1197,11 @@ public class JSONObject {
      * @return  A String correctly formatted for insertion in a JSON text.
      */
     public static String quote(String string) {
-        StringWriter sw = new StringWriter();
-        synchronized (sw.getBuffer()) {
-            try {
-                return quote(string, sw).toString();
-            } catch (IOException ignored) {
-                // will never happen - we are writing to a string writer
-                return "";
-            }
+        try {
+            return quote(string, new JSONStringWriter()).toString();
+        } catch (IOException ignored) {
+            // will never happen - we are writing to a string writer
+            return "";
         }
     }
 
@@ -1219,10 +1217,20 @@ public class JSONObject {
         int i;
         int len = string.length();
 
+        // characters that need no escaping are written in runs
+        int run = 0;
+
         w.write('"');
         for (i = 0; i < len; i += 1) {
             b = c;
             c = string.charAt(i);
+            if (c >= ' ' && c != '\\' && c != '"' && c != '/' && c < '\u0080') {
+                continue;
+            }
+            if (run < i) {
+                w.write(string, run, i - run);
+            }
+            run = i + 1;
             switch (c) {
             case '\\':
             case '"':
@@ -1262,6 +1270,9 @@ public class JSONObject {
                 }
             }
         }
+        if (run < len) {
+            w.write(string, run, len - run);
+        }
         w.write('"');
         return w;
     }
@@ -1315,11 +1326,11 @@ public class JSONObject {
                         return d;
                     }
                 } else {
-                    Long myLong = new Long(string);
-                    if (myLong.longValue() == myLong.intValue()) {
-                        return new Integer(myLong.intValue());
+                    long myLong = Long.parseLong(string);
+                    if (myLong == (int) myLong) {
+                        return Integer.valueOf((int) myLong);
                     } else {
-                        return myLong;
+                        return Long.valueOf(myLong);
                     }
                 }
             }  catch (Exception ignore) {
@@ -1404,10 +1415,7 @@ public class JSONObject {
      * @throws JSONException If the object contains an invalid number.
      */
     public String toString(int indentFactor) throws JSONException {
-        StringWriter w = new StringWriter();
-        synchronized (w.getBuffer()) {
-            return this.write(w, indentFactor, 0).toString();
-        }
+        return this.write(new JSONStringWriter(), indentFactor, 0).toString();
     }
 
     /**
@@ -1592,7 +1600,7 @@ public class JSONObject {
 
             if (length == 1) {
                 Object key = keys.next();
-                writer.write(quote(key.toString()));
+                quote(key.toString(), writer);
                 writer.write(':');
                 if (indentFactor > 0) {
                     writer.write(' ');
@@ -1609,7 +1617,7 @@ public class JSONObject {
                         writer.write('\n');
                     }
                     indent(writer, newindent);
-                    writer.write(quote(key.toString()));
+                    quote(key.toString(), writer);
                     writer.write(':');
                     if (indentFactor > 0) {
                         writer.write(' ');
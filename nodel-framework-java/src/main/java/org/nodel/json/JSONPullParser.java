@@ -0,0 +1,539 @@
+package org.nodel.json;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A streaming (pull) parser that steps through JSON text a token at a time using a small, fixed buffer, so
+ * large payloads can be bound without building a JSONObject / JSONArray tree first.
+ *
+ * Accepts the same relaxed forms as JSONTokener, i.e. single-quoted and unquoted strings, '=' or '=>'
+ * after keys, ';' as a separator, trailing separators and missing array elements (null).
+ *
+ * (not thread-safe)
+ */
+public class JSONPullParser {
+
+    public enum Token {
+        StartObject, EndObject, StartArray, EndArray,
+
+        /**
+         * An object key (see 'getKey').
+         */
+        Key,
+
+        /**
+         * A string, number, boolean or JSONObject.NULL (see 'getValue').
+         */
+        Value,
+
+        /**
+         * The end of the top-level value.
+         */
+        End
+
+    } // (enum)
+
+    /**
+     * The size of the buffer when reading from a stream.
+     */
+    private final static int BUFFER_SIZE = 8192;
+
+    /**
+     * The parsing states (one per nesting level)
+     */
+    private final static int TOP = 0, DONE = 1, OBJECT_START = 2, OBJECT_KEY = 3, OBJECT_VALUE = 4, OBJECT_NEXT = 5,
+                             ARRAY_START = 6, ARRAY_VALUE = 7, ARRAY_NEXT = 8;
+
+    /**
+     * (null when parsing characters directly)
+     */
+    private Reader _reader;
+
+    private char[] _buffer;
+
+    private int _pos;
+
+    private int _limit;
+
+    /**
+     * The number of characters consumed before the current buffer (for error messages).
+     */
+    private long _offset;
+
+    /**
+     * The state at each level.
+     */
+    private int[] _states = new int[32];
+
+    private int _depth;
+
+    private Token _token;
+
+    private String _key;
+
+    private Object _value;
+
+    /**
+     * Used for strings with escapes (or spanning buffer refills).
+     */
+    private StringBuilder _sb = new StringBuilder();
+
+    /**
+     * Parses from a stream (which is not closed).
+     */
+    public JSONPullParser(Reader reader) {
+        _reader = reader;
+        _buffer = new char[BUFFER_SIZE];
+    }
+
+    /**
+     * Parses a string.
+     */
+    public JSONPullParser(String json) {
+        _buffer = json.toCharArray();
+        _limit = _buffer.length;
+    }
+
+    /**
+     * The current token.
+     */
+    public Token getToken() {
+        return _token;
+    }
+
+    /**
+     * The key (when the current token is 'Key').
+     */
+    public String getKey() {
+        return _key;
+    }
+
+    /**
+     * The value (when the current token is 'Value').
+     */
+    public Object getValue() {
+        return _value;
+    }
+
+    /**
+     * Advances to the next token.
+     */
+    public Token next() throws JSONException {
+        _key = null;
+        _value = null;
+
+        int state = _states[_depth];
+        int c;
+
+        switch (state) {
+        case TOP:
+            return readValue(nextClean());
+
+        case DONE:
+            return _token = Token.End;
+
+        case OBJECT_START:
+        case OBJECT_KEY:
+            c = nextClean();
+            if (c == '}')
+                return endStructure(Token.EndObject);
+
+            if (c < 0)
+                throw syntaxError("A JSONObject text must end with '}'");
+
+            _key = readKey(c);
+            _states[_depth] = OBJECT_VALUE;
+
+            // the key is followed by ':', also tolerate '=' or '=>'
+            c = nextClean();
+            if (c == '=') {
+                if (peek() == '>')
+                    _pos++;
+            } else if (c != ':') {
+                throw syntaxError("Expected a ':' after a key");
+            }
+
+            return _token = Token.Key;
+
+        case OBJECT_VALUE:
+            return readValue(nextClean());
+
+        case OBJECT_NEXT:
+            c = nextClean();
+            if (c == ',' || c == ';') {
+                _states[_depth] = OBJECT_KEY;
+                return next();
+            }
+            if (c == '}')
+                return endStructure(Token.EndObject);
+
+            throw syntaxError("Expected a ',' or '}'");
+
+        case ARRAY_START:
+        case ARRAY_VALUE:
+            c = nextClean();
+            if (c == ']')
+                return endStructure(Token.EndArray);
+
+            // a missing element
+            if (c == ',' || c == ';') {
+                _pos--;
+                return scalar(JSONObject.NULL);
+            }
+
+            return readValue(c);
+
+        case ARRAY_NEXT:
+            c = nextClean();
+            if (c == ',' || c == ';') {
+                _states[_depth] = ARRAY_VALUE;
+
+                // (tolerate a trailing separator)
+                if (peekClean() == ']') {
+                    _pos++;
+                    return endStructure(Token.EndArray);
+                }
+
+                return next();
+            }
+            if (c == ']')
+                return endStructure(Token.EndArray);
+
+            throw syntaxError("Expected a ',' or ']'");
+
+        default:
+            throw new IllegalStateException();
+        }
+    } // (method)
+
+    /**
+     * When the current token starts an object or array, skips over the rest of it.
+     */
+    public void skipValue() throws JSONException {
+        if (_token != Token.StartObject && _token != Token.StartArray)
+            return;
+
+        int depth = _depth;
+        while (_depth >= depth)
+            next();
+    } // (method)
+
+    /**
+     * Reads the whole of the current value, i.e. a JSONObject, JSONArray or simple value.
+     */
+    public Object readValue() throws JSONException {
+        if (_token == Token.StartObject) {
+            JSONObject object = new JSONObject();
+            while (next() == Token.Key) {
+                String key = _key;
+                next();
+                object.putOnce(key, readValue());
+            }
+            return object;
+
+        } else if (_token == Token.StartArray) {
+            JSONArray array = new JSONArray();
+            while (next() != Token.EndArray)
+                array.put(readValue());
+            return array;
+
+        } else if (_token == Token.Value) {
+            return _value;
+
+        } else {
+            throw syntaxError("Not at a value");
+        }
+    } // (method)
+
+    /**
+     * Makes a JSONException to signal a syntax error.
+     */
+    public JSONException syntaxError(String message) {
+        return new JSONException(message + " at " + (_offset + _pos));
+    }
+
+    /**
+     * Reads the value starting with the given character.
+     */
+    private Token readValue(int c) throws JSONException {
+        switch (c) {
+        case '{':
+            return startStructure(OBJECT_START, Token.StartObject);
+
+        case '[':
+            return startStructure(ARRAY_START, Token.StartArray);
+
+        case '"':
+        case '\'':
+            return scalar(readString((char) c));
+
+        default:
+            return scalar(JSONObject.stringToValue(readUnquoted(c)));
+        }
+    } // (method)
+
+    /**
+     * Keys are normally strings but (like JSONTokener) unquoted text is tolerated.
+     */
+    private String readKey(int c) throws JSONException {
+        if (c == '"' || c == '\'')
+            return readString((char) c);
+        else
+            return JSONObject.stringToValue(readUnquoted(c)).toString();
+    } // (method)
+
+    private Token scalar(Object value) {
+        _value = value;
+        valueDone();
+
+        return _token = Token.Value;
+    } // (method)
+
+    private Token startStructure(int state, Token token) {
+        if (_depth + 1 >= _states.length) {
+            int[] states = new int[_states.length * 2];
+            System.arraycopy(_states, 0, states, 0, _states.length);
+            _states = states;
+        }
+
+        _states[++_depth] = state;
+
+        return _token = token;
+    } // (method)
+
+    private Token endStructure(Token token) {
+        _depth--;
+        valueDone();
+
+        return _token = token;
+    } // (method)
+
+    /**
+     * Moves the enclosing state on once a value has been completed.
+     */
+    private void valueDone() {
+        switch (_states[_depth]) {
+        case TOP:
+            _states[_depth] = DONE;
+            break;
+
+        case OBJECT_VALUE:
+            _states[_depth] = OBJECT_NEXT;
+            break;
+
+        case ARRAY_START:
+        case ARRAY_VALUE:
+            _states[_depth] = ARRAY_NEXT;
+            break;
+        }
+    } // (method)
+
+    /**
+     * Reads the rest of a quoted string.
+     */
+    private String readString(char quote) throws JSONException {
+        StringBuilder sb = null;
+
+        for (;;) {
+            if (_pos >= _limit && !fill())
+                throw syntaxError("Unterminated string");
+
+            // take runs of plain characters directly from the buffer
+            char[] buffer = _buffer;
+            int start = _pos;
+            int i = start;
+            char c = 0;
+            while (i < _limit) {
+                c = buffer[i];
+                if (c == quote || c == '\\' || c == '\n' || c == '\r' || c == 0)
+                    break;
+                i++;
+            }
+
+            if (i < _limit && c == quote && sb == null) {
+                _pos = i + 1;
+                return new String(buffer, start, i - start);
+            }
+
+            if (sb == null) {
+                sb = _sb;
+                sb.setLength(0);
+            }
+            sb.append(buffer, start, i - start);
+            _pos = i;
+
+            if (i >= _limit)
+                continue;
+
+            _pos++;
+
+            if (c == quote)
+                return sb.toString();
+
+            if (c != '\\')
+                throw syntaxError("Unterminated string");
+
+            c = (char) nextRequired();
+            switch (c) {
+            case 'b':
+                sb.append('\b');
+                break;
+            case 't':
+                sb.append('\t');
+                break;
+            case 'n':
+                sb.append('\n');
+                break;
+            case 'f':
+                sb.append('\f');
+                break;
+            case 'r':
+                sb.append('\r');
+                break;
+            case 'u':
+                int code = 0;
+                for (int a = 0; a < 4; a++) {
+                    int digit = JSONTokener.dehexchar((char) nextRequired());
+                    if (digit < 0)
+                        throw syntaxError("Illegal escape.");
+                    code = (code << 4) + digit;
+                }
+                sb.append((char) code);
+                break;
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                sb.append(c);
+                break;
+            default:
+                throw syntaxError("Illegal escape.");
+            }
+        } // (for)
+    } // (method)
+
+    /**
+     * Reads unquoted text (numbers, booleans, null or non-standard strings) starting with the given character,
+     * stopping before the next formatting character.
+     */
+    private String readUnquoted(int c) throws JSONException {
+        if (c < ' ' || isFormatting((char) c))
+            throw syntaxError("Missing value");
+
+        StringBuilder sb = _sb;
+        sb.setLength(0);
+        sb.append((char) c);
+
+        for (;;) {
+            int next = peek();
+            if (next < ' ' || isFormatting((char) next))
+                break;
+
+            sb.append((char) next);
+            _pos++;
+        }
+
+        String string = sb.toString().trim();
+        if (string.length() == 0)
+            throw syntaxError("Missing value");
+
+        return string;
+    } // (method)
+
+    /**
+     * (same set as JSONTokener)
+     */
+    private static boolean isFormatting(char c) {
+        switch (c) {
+        case ',': case ':': case ']': case '}': case '/': case '\\':
+        case '"': case '[': case '{': case ';': case '=': case '#':
+            return true;
+        default:
+            return false;
+        }
+    } // (method)
+
+    /**
+     * The next character (or -1 at the end).
+     */
+    private int peek() throws JSONException {
+        if (_pos >= _limit && !fill())
+            return -1;
+
+        return _buffer[_pos];
+    } // (method)
+
+    /**
+     * Takes the next non-whitespace character (or -1 at the end).
+     */
+    private int nextClean() throws JSONException {
+        int c = peekClean();
+        if (c >= 0)
+            _pos++;
+
+        return c;
+    } // (method)
+
+    /**
+     * Skips whitespace, returning the next character without taking it (or -1 at the end).
+     */
+    private int peekClean() throws JSONException {
+        for (;;) {
+            if (_pos >= _limit && !fill())
+                return -1;
+
+            char c = _buffer[_pos];
+
+            // (a NUL ends the text, like JSONTokener)
+            if (c == 0)
+                return -1;
+
+            if (c > ' ')
+                return c;
+
+            _pos++;
+        }
+    } // (method)
+
+    private int nextRequired() throws JSONException {
+        if (_pos >= _limit && !fill())
+            throw syntaxError("Unterminated string");
+
+        return _buffer[_pos++];
+    } // (method)
+
+    /**
+     * Refills the buffer (once everything in it has been consumed), returning false at the end.
+     */
+    private boolean fill() throws JSONException {
+        if (_reader == null)
+            return false;
+
+        try {
+            int read;
+            do {
+                read = _reader.read(_buffer, 0, _buffer.length);
+            } while (read == 0);
+
+            if (read < 0)
+                return false;
+
+            _offset += _limit;
+            _pos = 0;
+            _limit = read;
+
+            return true;
+
+        } catch (IOException exc) {
+            throw new JSONException(exc);
+        }
+    } // (method)
+
+} // (class)
@@ -0,0 +1,69 @@
+package org.nodel.json;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.Writer;
+
+/**
+ * An unsynchronised writer straight into a StringBuilder for producing JSON text, unlike StringWriter which
+ * locks its StringBuffer on every character (and Writer which copies strings through an intermediate buffer).
+ * (not thread-safe)
+ */
+class JSONStringWriter extends Writer {
+
+    private StringBuilder _sb;
+
+    public JSONStringWriter() {
+        _sb = new StringBuilder(256);
+    }
+
+    @Override
+    public void write(int c) {
+        _sb.append((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        _sb.append(cbuf, off, len);
+    }
+
+    @Override
+    public void write(String str) {
+        _sb.append(str);
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        _sb.append(str, off, off + len);
+    }
+
+    @Override
+    public Writer append(CharSequence csq) {
+        _sb.append(csq);
+        return this;
+    }
+
+    @Override
+    public Writer append(char c) {
+        _sb.append(c);
+        return this;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String toString() {
+        return _sb.toString();
+    }
+
+} // (class)
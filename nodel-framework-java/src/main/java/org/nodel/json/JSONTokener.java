@@ -5,7 +5,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringReader;
 
 /*
 Copyright (c) 2002 JSON.org
@@ -48,6 +47,14 @@ public class JSONTokener {
     private Reader  reader;
     private boolean usePrevious;
 
+    /**
+     * When tokenising a string, the characters are read directly from
+     * here instead of through a reader.
+     */
+    private char[]  chars;
+    private int     pos;
+    private int     length;
+
 
     /**
      * Construct a JSONTokener from a Reader.
@@ -81,7 +88,26 @@ public class JSONTokener {
      * @param s     A source string.
      */
     public JSONTokener(String s) {
-        this(new StringReader(s));
+        this(s.toCharArray());
+    }
+
+
+    /**
+     * Construct a JSONTokener from characters (which must not be modified
+     * while tokenising).
+     *
+     * @param chars     The source characters.
+     */
+    public JSONTokener(char[] chars) {
+        this.chars = chars;
+        this.pos = 0;
+        this.length = chars.length;
+        this.eof = false;
+        this.usePrevious = false;
+        this.previous = 0;
+        this.index = 0;
+        this.character = 1;
+        this.line = 1;
     }
 
 
@@ -150,6 +176,13 @@ public class JSONTokener {
         if (this.usePrevious) {
             this.usePrevious = false;
             c = this.previous;
+        } else if (this.chars != null) {
+            c = this.pos < this.length ? this.chars[this.pos++] : 0;
+
+            if (c <= 0) { // End of string
+                this.eof = true;
+                c = 0;
+            }
         } else {
             try {
                 c = this.reader.read();
@@ -249,8 +282,25 @@ public class JSONTokener {
      * @throws JSONException Unterminated string.
      */
     public String nextString(char quote) throws JSONException {
+        // when reading from a string, most strings have no escapes or
+        // line breaks so can be taken directly
+        if (this.chars != null && !this.usePrevious) {
+            char[] chars = this.chars;
+            int start = this.pos;
+            for (int i = start; i < this.length; i++) {
+                char c = chars[i];
+                if (c == quote) {
+                    skip(i + 1 - start);
+                    return new String(chars, start, i - start);
+                }
+                if (c == '\\' || c == '\n' || c == '\r' || c == 0) {
+                    break;
+                }
+            }
+        }
+
         char c;
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = new StringBuilder();
         for (;;) {
             c = this.next();
             switch (c) {
@@ -306,7 +356,7 @@ public class JSONTokener {
      * @return   A string.
      */
     public String nextTo(char delimiter) throws JSONException {
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = new StringBuilder();
         for (;;) {
             char c = this.next();
             if (c == delimiter || c == 0 || c == '\n' || c == '\r') {
@@ -328,7 +378,7 @@ public class JSONTokener {
      */
     public String nextTo(String delimiters) throws JSONException {
         char c;
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = new StringBuilder();
         for (;;) {
             c = this.next();
             if (delimiters.indexOf(c) >= 0 || c == 0 ||
@@ -375,14 +425,33 @@ public class JSONTokener {
          * formatting character.
          */
 
-        StringBuffer sb = new StringBuffer();
-        while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
-            sb.append(c);
-            c = this.next();
+        if (c < ' ' || isFormatting(c)) {
+            this.back();
+            throw this.syntaxError("Missing value");
         }
-        this.back();
 
-        string = sb.toString().trim();
+        if (this.chars != null) {
+            // (the character just taken is the one before the position)
+            int start = this.pos - 1;
+            int end = start + 1;
+            while (end < this.length && this.chars[end] >= ' ' && !isFormatting(this.chars[end])) {
+                end += 1;
+            }
+
+            // (no line breaks in between)
+            skip(end - start - 1);
+
+            string = new String(this.chars, start, end - start).trim();
+        } else {
+            StringBuilder sb = new StringBuilder();
+            while (c >= ' ' && !isFormatting(c)) {
+                sb.append(c);
+                c = this.next();
+            }
+            this.back();
+
+            string = sb.toString().trim();
+        }
         if ("".equals(string)) {
             throw this.syntaxError("Missing value");
         }
@@ -390,6 +459,32 @@ public class JSONTokener {
     }
 
 
+    /**
+     * Whether a character ends unquoted text, i.e. one of ",:]}/\\\"[{;=#".
+     */
+    private static boolean isFormatting(char c) {
+        switch (c) {
+        case ',': case ':': case ']': case '}': case '/': case '\\':
+        case '"': case '[': case '{': case ';': case '=': case '#':
+            return true;
+        default:
+            return false;
+        }
+    }
+
+
+    /**
+     * Steps over characters taken directly from the string (which must
+     * not include any line breaks).
+     */
+    private void skip(int count) {
+        this.pos += count;
+        this.index += count;
+        this.character += count;
+        this.previous = this.chars[this.pos - 1];
+    }
+
+
     /**
      * Skip characters until the next character is the requested character.
      * If the requested character is not found, no characters are skipped.
@@ -403,11 +498,18 @@ public class JSONTokener {
             long startIndex = this.index;
             long startCharacter = this.character;
             long startLine = this.line;
-            this.reader.mark(1000000);
+            int startPos = this.pos;
+            if (this.reader != null) {
+                this.reader.mark(1000000);
+            }
             do {
                 c = this.next();
                 if (c == 0) {
-                    this.reader.reset();
+                    if (this.reader != null) {
+                        this.reader.reset();
+                    } else {
+                        this.pos = startPos;
+                    }
                     this.index = startIndex;
                     this.character = startCharacter;
                     this.line = startLine;
@@ -0,0 +1,226 @@
+package org.nodel.logging;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.nodel.reflection.Value;
+
+/**
+ * A fixed-size, lock-free histogram of durations (nanos) in the style of HdrHistogram, i.e. log-linear
+ * buckets with a bounded relative error (under 2%). Recording is a couple of shifts and an atomic increment.
+ *
+ * As a measurement provider, the total number of recordings is provided (so best treated as a rate).
+ */
+public class LatencyHistogram implements MeasurementProvider {
+
+    /**
+     * The number of linear sub-buckets per power of two (as a power of two), which sets the precision.
+     */
+    private final static int SUB_BUCKET_BITS = 6;
+
+    private final static int SUB_BUCKET_HALF = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The highest trackable value, one hour (anything above is clamped).
+     */
+    private final static long MAX_VALUE = 3600L * 1000000000L;
+
+    /**
+     * The number of buckets needed to cover up to the maximum value.
+     */
+    private final static int BUCKET_COUNT = indexFor(MAX_VALUE) + 1;
+
+    /**
+     * The counts per bucket (cumulative).
+     */
+    private AtomicLongArray _counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private AtomicLong _sum = new AtomicLong();
+
+    /**
+     * The counts as they were when the last interval was taken.
+     * (only used by 'takeInterval')
+     */
+    private long[] _lastCounts = new long[BUCKET_COUNT];
+
+    private long _lastSum;
+
+    /**
+     * Records a duration (nanos).
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        else if (nanos > MAX_VALUE)
+            nanos = MAX_VALUE;
+
+        _counts.incrementAndGet(indexFor(nanos));
+        _sum.addAndGet(nanos);
+    } // (method)
+
+    /**
+     * Records the time elapsed since a start time (taken using 'System.nanoTime').
+     */
+    public void recordSince(long startTime) {
+        record(System.nanoTime() - startTime);
+    } // (method)
+
+    /**
+     * (totals the buckets, so intended for periodic use only)
+     */
+    @Override
+    public long getMeasurement() {
+        long total = 0;
+        for (int a = 0; a < BUCKET_COUNT; a++)
+            total += _counts.get(a);
+
+        return total;
+    }
+
+    /**
+     * The sum of all recordings (nanos).
+     */
+    public long getSum() {
+        return _sum.get();
+    }
+
+    /**
+     * Summarises everything recorded so far.
+     */
+    public Summary getSummary() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int a = 0; a < BUCKET_COUNT; a++)
+            counts[a] = _counts.get(a);
+
+        return new Summary(counts, _sum.get());
+    } // (method)
+
+    /**
+     * Summarises what's been recorded since this was last called.
+     * (not thread-safe, intended for a single periodic caller)
+     */
+    public Summary takeInterval() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int a = 0; a < BUCKET_COUNT; a++) {
+            long count = _counts.get(a);
+            counts[a] = count - _lastCounts[a];
+            _lastCounts[a] = count;
+        }
+
+        long sum = _sum.get();
+        long intervalSum = sum - _lastSum;
+        _lastSum = sum;
+
+        return new Summary(counts, intervalSum);
+    } // (method)
+
+    /**
+     * The bucket holding a value.
+     * (package-private for tests)
+     */
+    static int indexFor(long value) {
+        if (value < (SUB_BUCKET_HALF << 1))
+            return (int) value;
+
+        // keep the top bits of the value, i.e. shift it into the upper half of the sub-buckets
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    } // (method)
+
+    /**
+     * The lowest value held by a bucket.
+     * (package-private for tests)
+     */
+    static long lowestValueAt(int index) {
+        if (index < (SUB_BUCKET_HALF << 1))
+            return index;
+
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = (index & (SUB_BUCKET_HALF - 1)) + SUB_BUCKET_HALF;
+
+        return subBucket << shift;
+    } // (method)
+
+    /**
+     * A representative value for a bucket (its mid-point).
+     */
+    private static long valueAt(int index) {
+        if (index < (SUB_BUCKET_HALF << 1))
+            return index;
+
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+
+        return lowestValueAt(index) + ((1L << shift) >>> 1);
+    } // (method)
+
+    /**
+     * Percentiles of a set of recordings (in microseconds).
+     */
+    public static class Summary {
+
+        @Value(name = "count", title = "Count", desc = "The number of recordings.")
+        public final long count;
+
+        @Value(name = "mean", title = "Mean", desc = "The mean (microseconds).")
+        public final long mean;
+
+        @Value(name = "p50", title = "50th percentile", desc = "The median (microseconds).")
+        public final long p50;
+
+        @Value(name = "p90", title = "90th percentile", desc = "(microseconds)")
+        public final long p90;
+
+        @Value(name = "p99", title = "99th percentile", desc = "(microseconds)")
+        public final long p99;
+
+        @Value(name = "p999", title = "99.9th percentile", desc = "(microseconds)")
+        public final long p999;
+
+        @Value(name = "max", title = "Maximum", desc = "(microseconds)")
+        public final long max;
+
+        private Summary(long[] counts, long sum) {
+            long total = 0;
+            int highest = -1;
+            for (int a = 0; a < counts.length; a++) {
+                if (counts[a] > 0) {
+                    total += counts[a];
+                    highest = a;
+                }
+            }
+
+            this.count = total;
+            this.mean = total > 0 ? sum / total / 1000 : 0;
+
+            // walk the buckets once, picking off each percentile in turn
+            double[] percentiles = { 50, 90, 99, 99.9 };
+            long[] values = new long[percentiles.length];
+
+            int next = 0;
+            long seen = 0;
+            for (int a = 0; a <= highest && next < percentiles.length; a++) {
+                seen += counts[a];
+
+                while (next < percentiles.length && seen >= Math.ceil(total * percentiles[next] / 100)) {
+                    values[next] = valueAt(a) / 1000;
+                    next++;
+                }
+            } // (for)
+
+            this.p50 = values[0];
+            this.p90 = values[1];
+            this.p99 = values[2];
+            this.p999 = values[3];
+            this.max = highest >= 0 ? valueAt(highest) / 1000 : 0;
+        }
+
+    } // (class)
+
+} // (class)
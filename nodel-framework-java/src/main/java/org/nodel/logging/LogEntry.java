@@ -40,8 +40,26 @@ public class LogEntry {
     @Value(name = "message", title = "Message", desc = "Short commentary or message relating to this log event.", order = 6)
     public String message;
 
+    /**
+     * (formatted lazily, see 'getError')
+     */
+    private Throwable throwable;
+    
+    /**
+     * (see 'getError')
+     */
+    private String error;
+    
     @Value(name = "error", title = "Error", desc = "Specific error information.", order = 7)
-    public String error;
+    public synchronized String getError() {
+        // only format the stack-trace when it's actually needed
+        if (this.error == null && this.throwable != null) {
+            this.error = captureStackTrace(this.throwable);
+            this.throwable = null;
+        }
+        
+        return this.error;
+    }
     
     /**
      * Constructs a log entry from a basic set of logging info.
@@ -52,9 +70,8 @@ public class LogEntry {
         this.tag = tag;
         this.message = msg;
 
-        // capture stack trace
-        if (tr != null)
-            this.error = captureStackTrace(tr);
+        // (stack trace is captured lazily)
+        this.throwable = tr;
 
         // capture thread info
         Thread currentThread = Thread.currentThread();
@@ -0,0 +1,153 @@
+package org.nodel.logging;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-capacity store of the most recent log items, each with a (strictly increasing) sequence number.
+ * Appending is O(1) and readers never block writers or each other: items are published in immutable slots
+ * and a reader simply stops at any slot that has since been overwritten.
+ */
+public class LogRingBuffer<T> {
+
+    /**
+     * For filtering items during reads.
+     */
+    public interface Filter<T> {
+
+        public boolean accept(T item);
+
+    } // (interface)
+
+    /**
+     * An item at a position.
+     */
+    private static class Slot<T> {
+
+        public final long position;
+
+        public final long seq;
+
+        public final T item;
+
+        public Slot(long position, long seq, T item) {
+            this.position = position;
+            this.seq = seq;
+            this.item = item;
+        }
+
+    } // (class)
+
+    private int _capacity;
+
+    private AtomicReferenceArray<Slot<T>> _slots;
+
+    /**
+     * The number of items ever appended, i.e. the position of the next one.
+     * (written within lock, read anywhere)
+     */
+    private volatile long _count;
+
+    /**
+     * (writer lock)
+     */
+    private Object _lock = new Object();
+
+    public LogRingBuffer(int capacity) {
+        _capacity = capacity;
+        _slots = new AtomicReferenceArray<Slot<T>>(capacity);
+    }
+
+    /**
+     * Appends an item with a sequence number greater than any previous one.
+     */
+    public void append(long seq, T item) {
+        synchronized (_lock) {
+            long position = _count;
+
+            _slots.set((int) (position % _capacity), new Slot<T>(position, seq, item));
+
+            // (publishes the slot)
+            _count = position + 1;
+        }
+    }
+
+    /**
+     * Returns up to 'max' of the most recent items with a sequence number of at least 'from' (newest first),
+     * optionally filtered.
+     */
+    public List<T> getNewest(long from, int max, Filter<T> filter) {
+        List<T> batch = new ArrayList<T>(Math.max(0, Math.min(max, _capacity)));
+
+        long count = _count;
+        long oldest = Math.max(0, count - _capacity);
+
+        for (long position = count - 1; position >= oldest && batch.size() < max; position--) {
+            Slot<T> slot = _slots.get((int) (position % _capacity));
+
+            // overwritten since reading the count, so everything older is gone too
+            if (slot == null || slot.position != position)
+                break;
+
+            if (slot.seq < from)
+                break;
+
+            if (filter == null || filter.accept(slot.item))
+                batch.add(slot.item);
+        } // (for)
+
+        return batch;
+    }
+
+    /**
+     * The sequence number of the oldest item still held (or -1 if empty).
+     */
+    public long getOldestSeq() {
+        for (;;) {
+            long count = _count;
+            if (count == 0)
+                return -1;
+
+            long position = Math.max(0, count - _capacity);
+            Slot<T> slot = _slots.get((int) (position % _capacity));
+
+            if (slot == null)
+                return -1;
+
+            // (retry if overwritten in the meantime)
+            if (slot.position == position)
+                return slot.seq;
+        } // (for)
+    }
+
+    /**
+     * The sequence number of the most recent item (or -1 if empty).
+     */
+    public long getLastSeq() {
+        long count = _count;
+        if (count == 0)
+            return -1;
+
+        Slot<T> slot = _slots.get((int) ((count - 1) % _capacity));
+
+        return slot != null ? slot.seq : -1;
+    }
+
+    /**
+     * Removes all items.
+     */
+    public void clear() {
+        synchronized (_lock) {
+            for (int a = 0; a < _capacity; a++)
+                _slots.set(a, null);
+        }
+    }
+
+} // (class)
@@ -6,8 +6,6 @@ package org.nodel.logging;
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
  */
 
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.apache.logging.log4j.Level;
@@ -30,15 +28,14 @@ public class Logging {
     }
     
     /**
-     * Instance lock / signal.
+     * The maximum number of logs held.
      */
-    private Object lock = new Object();
+    private final static int CAPACITY = 3000;
     
     /**
      * Holds the event logs.
-     * (locked around self)
      */
-    private LinkedList<LogEntry> logs = new LinkedList<LogEntry>();
+    private LogRingBuffer<LogEntry> logs = new LogRingBuffer<LogEntry>(CAPACITY);
 
     /**
      * (constructor)
@@ -48,33 +45,14 @@ public class Logging {
     }
     
     public void addLog(LogEntry entry) {
-        synchronized(this.lock) {
-            this.logs.add(entry);
-            
-            if (this.logs.size() > 3000)
-                this.logs.removeFirst();
-        }
+        this.logs.append(entry.seq, entry);
     } // (method)
     
     /**
      * Retrieves logs.
      */
     public List<LogEntry> getLogs(long from, int max) {
-        LinkedList<LogEntry> batch = new LinkedList<LogEntry>();
-
-        synchronized (this.lock) {
-            Iterator<LogEntry> inReverse = this.logs.descendingIterator();
-            while (inReverse.hasNext()) {
-                LogEntry entry = inReverse.next();
-                if (entry.seq >= from)
-                    batch.add(entry);
-
-                if (entry.seq < from || batch.size() >= max)
-                    break;
-            } // (while)
-
-            return batch;
-        }
+        return this.logs.getNewest(from, max, null);
     } // (method)
     
     /**
@@ -88,32 +66,22 @@ public class Logging {
      * (this could have been rolled into one since it's only used once.)
      * (internal use)
      */
-    private List<LogEntry> getLogsByLevel(long from, int max, Level filterLevel) {
-        LinkedList<LogEntry> batch = new LinkedList<LogEntry>();
-        
-        synchronized (this.lock) {
-            Iterator<LogEntry> inReverse = this.logs.descendingIterator();
-            while (inReverse.hasNext()) {
-                LogEntry entry = inReverse.next();
-                // if (entry.seq >= from && entry.level.isAtLeastAsSpecificAs(filterLevel))
-                if (entry.seq >= from && entry.level.isMoreSpecificThan(filterLevel))
-                    batch.add(entry);
-
-                if (entry.seq < from || batch.size() >= max)
-                    break;
-            } // (while)
-
-            return batch;
-        }
+    private List<LogEntry> getLogsByLevel(long from, int max, final Level filterLevel) {
+        return this.logs.getNewest(from, max, new LogRingBuffer.Filter<LogEntry>() {
+            
+            @Override
+            public boolean accept(LogEntry entry) {
+                return entry.level.isMoreSpecificThan(filterLevel);
+            }
+            
+        });
     } // (method)   
 
     /**
      * Clears all logs.
      */
     public void clear() {
-        synchronized(this.lock) {
-            this.logs.clear();
-        }
+        this.logs.clear();
     } // (method)    
 
 } // (class)
@@ -6,12 +6,57 @@ package org.nodel.logging;
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
  */
 
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.nodel.reflection.Value;
 
 public class MeasurementHistory {
     
+    /**
+     * A coarser, down-sampled history, e.g. one data-point (the average) per minute.
+     */
+    public static class Tier {
+        
+        @Value(name = "resolution", title = "Resolution", desc = "The period each data-point covers (millis).")
+        public final long resolution;
+        
+        @Value(name = "values", title = "Values", desc = "The measurement values.", genericClassA = Number.class)
+        public final MeasurementRing values;
+        
+        /**
+         * The number of base data-points per data-point.
+         */
+        private int samplesPerPoint;
+        
+        /**
+         * Accumulates the base data-points.
+         * (only used by the recording thread)
+         */
+        private long sum;
+        
+        private int count;
+        
+        private Tier(long resolution, int samplesPerPoint, int capacity) {
+            this.resolution = resolution;
+            this.samplesPerPoint = samplesPerPoint;
+            this.values = new MeasurementRing(capacity);
+        }
+        
+        private void accumulate(long dataPoint) {
+            this.sum += dataPoint;
+            this.count++;
+            
+            if (this.count >= this.samplesPerPoint) {
+                this.values.add(this.sum / this.count);
+                
+                this.sum = 0;
+                this.count = 0;
+            }
+        }
+        
+    } // (class)
+    
     /**
      * Scaling to apply to rates to gain extra precision without using non-integers.
      */
@@ -38,39 +83,89 @@ public class MeasurementHistory {
     private int capacity;
     
     /**
-     * Holds all the data-points.
+     * The recording period (millis).
+     */
+    @Value(name = "period", title = "Period", desc = "The period between the measurement values (millis).")
+    private long period;
+    
+    /**
+     * Holds all the data-points (at full resolution).
      */
-    private ArrayBlockingQueue<Number> values;
+    private MeasurementRing values;
     
     /**
      * Holds the values.
      */
     @Value(name = "values", title = "Values", desc = "The measurement values.", genericClassA = Number.class)
-    public Iterable<Number> values() {
+    public MeasurementRing values() {
         return this.values;
     }
     
+    /**
+     * The down-sampled histories.
+     * (copy-on-write)
+     */
+    private List<Tier> tiers = new ArrayList<Tier>();
+    
+    /**
+     * (not a value, to keep it out of the regular view, see Framework 'longHistory')
+     */
+    public List<Tier> getTiers() {
+        return this.tiers;
+    }
+    
     /**
      * The last measurement added.
      */
     private long lastMeasurement;
     
+    /**
+     * The percentiles over the last period (histograms only).
+     */
+    private LatencyHistogram.Summary lastPeriod;
+    
+    @Value(name = "lastPeriod", title = "Last period", desc = "Latency percentiles over the last measurement period (histograms only).")
+    public LatencyHistogram.Summary getLastPeriod() {
+        return this.lastPeriod;
+    }
+    
+    @Value(name = "overall", title = "Overall", desc = "Latency percentiles since start-up (histograms only).")
+    public LatencyHistogram.Summary getOverall() {
+        if (this.measurementProvider instanceof LatencyHistogram)
+            return ((LatencyHistogram) this.measurementProvider).getSummary();
+        else
+            return null;
+    }
+    
     /**
      * Constructs a new measurement object.
+     * 
+     * @param period The recording period (millis)
      */
-    public MeasurementHistory(String name, MeasurementProvider measurementProvider, int size, boolean isRate) {
+    public MeasurementHistory(String name, MeasurementProvider measurementProvider, long period, int size, boolean isRate) {
         this.name = name;
         this.measurementProvider = measurementProvider;
+        this.period = period;
         this.capacity = size;
         this.isRate = isRate;
         
-        this.values = new ArrayBlockingQueue<Number>(this.capacity);
+        this.values = new MeasurementRing(this.capacity);
+    } // (init)
+    
+    /**
+     * Adds a down-sampled history.
+     * 
+     * @param resolution The period each data-point covers (millis), a multiple of the recording period.
+     */
+    public void addTier(long resolution, int size) {
+        if (resolution < this.period || resolution % this.period != 0)
+            throw new IllegalArgumentException("Resolution must be a multiple of the recording period");
         
-        // load the array
-        for (int a = 0; a < this.capacity; a++)
-            this.values.add(0);
+        List<Tier> tiers = new ArrayList<Tier>(this.tiers);
+        tiers.add(new Tier(resolution, (int) (resolution / this.period), size));
         
-    } // (init)
+        this.tiers = tiers;
+    } // (method)
     
     /**
      * The given name.
@@ -108,24 +203,25 @@ public class MeasurementHistory {
     public void recordMeasurement(long timeDiff) {
         long value = this.measurementProvider.getMeasurement();
 
-        Number dataPoint;
+        long dataPoint;
 
         if (isRate()) {
             long valueDiff = value - this.lastMeasurement;
 
-            // use 'int' value to save space
-            dataPoint = (int) (valueDiff * 1000000000L * RATE_SCALE / timeDiff);
+            dataPoint = valueDiff * 1000000000L * RATE_SCALE / timeDiff;
         } else {
-            // use 'long'
             dataPoint = value;
         }
 
-        if (this.values.remainingCapacity() <= 0)
-            this.values.remove();
-
         this.values.add(dataPoint);
 
+        for (Tier tier : this.tiers)
+            tier.accumulate(dataPoint);
+
         this.lastMeasurement = value;
+        
+        if (this.measurementProvider instanceof LatencyHistogram)
+            this.lastPeriod = ((LatencyHistogram) this.measurementProvider).takeInterval();
     } // (method)
     
 } // (class)
\ No newline at end of file
@@ -0,0 +1,76 @@
+package org.nodel.logging;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import org.nodel.json.JSONString;
+
+/**
+ * A fixed-capacity ring of primitive data-points, oldest first, initially all zero. Serialises directly
+ * as a JSON array (without boxing).
+ */
+public class MeasurementRing implements JSONString {
+
+    /**
+     * (self locked)
+     */
+    private long[] _points;
+
+    /**
+     * The position the next data-point will be written to (which is the oldest one).
+     * (self locked)
+     */
+    private int _next;
+
+    public MeasurementRing(int capacity) {
+        _points = new long[capacity];
+    }
+
+    public int getCapacity() {
+        return _points.length;
+    }
+
+    /**
+     * Adds a data-point, dropping the oldest.
+     */
+    public synchronized void add(long point) {
+        _points[_next] = point;
+
+        _next = (_next + 1) % _points.length;
+    } // (method)
+
+    /**
+     * A copy of the data-points, oldest first.
+     */
+    public synchronized long[] toArray() {
+        long[] result = new long[_points.length];
+
+        int tail = _points.length - _next;
+        System.arraycopy(_points, _next, result, 0, tail);
+        System.arraycopy(_points, 0, result, tail, _next);
+
+        return result;
+    } // (method)
+
+    @Override
+    public synchronized String toJSONString() {
+        StringBuilder sb = new StringBuilder(_points.length * 4 + 2);
+
+        sb.append('[');
+
+        for (int a = 0; a < _points.length; a++) {
+            if (a > 0)
+                sb.append(',');
+
+            sb.append(_points[(_next + a) % _points.length]);
+        } // (for)
+
+        sb.append(']');
+
+        return sb.toString();
+    } // (method)
+
+} // (class)
@@ -0,0 +1,857 @@
+package org.nodel.net;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nodel.Handler;
+import org.nodel.logging.LatencyHistogram;
+import org.nodel.reflection.Value;
+
+/**
+ * A persistent TCP or UDP connection to a device, connected when first needed and reconnected (with back-off)
+ * after failures. Requests are queued and sent one at a time, each waiting for its framed response (by
+ * delimiter, fixed length or whatever arrives at once); anything else received goes to the 'received' handlers.
+ *
+ * Data is treated as 8-bit characters (ISO-8859-1) so binary protocols pass through unchanged.
+ *
+ * All I/O happens on the shared selector thread (see 'ManagedConnections').
+ */
+public class ManagedConnection {
+
+    public enum Protocol {
+        TCP, UDP
+    }
+
+    /**
+     * The default time allowed for a request (including any queuing and connecting)
+     * (millis)
+     */
+    public final static int DEFAULT_TIMEOUT = 10000;
+
+    /**
+     * The back-off range between reconnection attempts.
+     * (millis)
+     */
+    private final static int MIN_BACKOFF = 1000, MAX_BACKOFF = 30000;
+
+    /**
+     * How long a resolved address is used for while connecting keeps failing before it's looked up again.
+     * (millis)
+     */
+    private final static long ADDRESS_TTL = 60000;
+
+    /**
+     * Received data beyond this without a complete frame is delivered as is.
+     */
+    private final static int MAX_FRAME = 65536;
+
+    /**
+     * (maps bytes to chars 1:1)
+     */
+    private final static Charset CHARSET = Charset.forName("ISO-8859-1");
+
+    /**
+     * (logging)
+     */
+    private static Logger s_logger = LogManager.getLogger(ManagedConnection.class);
+
+    /**
+     * The connection states.
+     * (selector thread)
+     */
+    private enum State {
+        Disconnected, Resolving, Connecting, Connected
+    }
+
+    private ManagedConnections _engine;
+
+    private Protocol _protocol;
+
+    private String _host;
+
+    private int _port;
+
+    /**
+     * (null if not framing by delimiter)
+     */
+    private byte[] _delimiter;
+
+    /**
+     * (0 if not framing by length)
+     */
+    private int _frameLength;
+
+    private volatile int _timeout = DEFAULT_TIMEOUT;
+
+    private volatile boolean _closed;
+
+    /**
+     * Requests waiting to be sent.
+     */
+    private ConcurrentLinkedQueue<Request> _queue = new ConcurrentLinkedQueue<Request>();
+
+    private List<Handler.H1<String>> _receivedHandlers = new CopyOnWriteArrayList<Handler.H1<String>>();
+
+    /**
+     * Frames waiting to be delivered to the handlers (in order).
+     */
+    private ConcurrentLinkedQueue<String> _received = new ConcurrentLinkedQueue<String>();
+
+    private AtomicBoolean _delivering = new AtomicBoolean();
+
+    /**
+     * (see 'setReceivedHandlerCaller', null if handlers are called directly)
+     */
+    private volatile Handler.H2<Handler.H1<String>, String> _handlerCaller;
+
+    // (selector thread)
+
+    private State _state = State.Disconnected;
+
+    private boolean _tracked;
+
+    private InetSocketAddress _address;
+
+    /**
+     * When the address was last looked up (nanos).
+     */
+    private long _addressLookedUp;
+
+    /**
+     * Set by the resolving thread.
+     */
+    private volatile InetSocketAddress _resolved;
+
+    private volatile IOException _resolveError;
+
+    private SelectableChannel _channel;
+
+    private SelectionKey _key;
+
+    /**
+     * When the current connection attempt started (nanos).
+     */
+    private long _connectStarted;
+
+    /**
+     * When the next connection attempt may be made (nanos).
+     */
+    private long _nextAttempt;
+
+    /**
+     * (millis)
+     */
+    private int _backoff = MIN_BACKOFF;
+
+    /**
+     * The request being sent or waiting for its response.
+     */
+    private Request _current;
+
+    private ByteBuffer _out;
+
+    private ByteBuffer _in = ByteBuffer.allocate(4096);
+
+    // (diagnostics)
+
+    private volatile boolean _connected;
+
+    private AtomicLong _requests = new AtomicLong();
+
+    private AtomicLong _errors = new AtomicLong();
+
+    private AtomicLong _timeouts = new AtomicLong();
+
+    private AtomicLong _connects = new AtomicLong();
+
+    private AtomicLong _receivedFrames = new AtomicLong();
+
+    private LatencyHistogram _latency = new LatencyHistogram();
+
+    private volatile String _lastError;
+
+    /**
+     * (package-private, see ManagedConnections)
+     */
+    ManagedConnection(ManagedConnections engine, Protocol protocol, String host, int port, String delimiter, int frameLength) {
+        if (host == null)
+            throw new IllegalArgumentException("A host must be specified.");
+
+        if (port <= 0 || port > 65535)
+            throw new IllegalArgumentException("The port is out of range - " + port);
+
+        if (frameLength < 0)
+            throw new IllegalArgumentException("The frame length cannot be negative.");
+
+        _engine = engine;
+        _protocol = protocol;
+        _host = host;
+        _port = port;
+        _delimiter = (delimiter == null || delimiter.length() == 0) ? null : delimiter.getBytes(CHARSET);
+        _frameLength = frameLength;
+    }
+
+    @Value(name = "protocol", title = "Protocol", order = 1)
+    public Protocol getProtocol() {
+        return _protocol;
+    }
+
+    @Value(name = "host", title = "Host", order = 2)
+    public String getHost() {
+        return _host;
+    }
+
+    @Value(name = "port", title = "Port", order = 3)
+    public int getPort() {
+        return _port;
+    }
+
+    @Value(name = "connected", title = "Connected", order = 4)
+    public boolean isConnected() {
+        return _connected;
+    }
+
+    @Value(name = "queued", title = "Queued", desc = "Requests waiting to be sent.", order = 5)
+    public int getQueued() {
+        return _queue.size();
+    }
+
+    @Value(name = "requests", title = "Requests", order = 6)
+    public long getRequests() {
+        return _requests.get();
+    }
+
+    @Value(name = "errors", title = "Errors", desc = "Connection failures.", order = 7)
+    public long getErrors() {
+        return _errors.get();
+    }
+
+    @Value(name = "timeouts", title = "Timeouts", desc = "Requests that timed out.", order = 8)
+    public long getTimeouts() {
+        return _timeouts.get();
+    }
+
+    @Value(name = "connects", title = "Connects", desc = "Connections made.", order = 9)
+    public long getConnects() {
+        return _connects.get();
+    }
+
+    @Value(name = "received", title = "Received", desc = "Frames received (including responses).", order = 10)
+    public long getReceived() {
+        return _receivedFrames.get();
+    }
+
+    @Value(name = "latency", title = "Latency", desc = "Request to response latency.", order = 11)
+    public LatencyHistogram.Summary getLatency() {
+        return _latency.getSummary();
+    }
+
+    @Value(name = "lastError", title = "Last error", order = 12)
+    public String getLastError() {
+        return _lastError;
+    }
+
+    /**
+     * The time allowed for requests (including queuing and connecting).
+     * (millis)
+     */
+    public int getTimeout() {
+        return _timeout;
+    }
+
+    public void setTimeout(int value) {
+        if (value <= 0)
+            throw new IllegalArgumentException("The timeout must be positive.");
+
+        _timeout = value;
+    }
+
+    /**
+     * Adds a handler for data received that isn't a response to a request. A handler also keeps the
+     * connection open.
+     */
+    public void addReceivedHandler(Handler.H1<String> handler) {
+        _receivedHandlers.add(handler);
+
+        _engine.attention(this);
+    }
+
+    public void removeReceivedHandler(Handler.H1<String> handler) {
+        _receivedHandlers.remove(handler);
+    }
+
+    /**
+     * Has the received handlers called through the given one instead of directly (with the handler and
+     * the data), e.g. so they run within a script's environment and report their own failures.
+     */
+    public void setReceivedHandlerCaller(Handler.H2<Handler.H1<String>, String> caller) {
+        _handlerCaller = caller;
+    }
+
+    /**
+     * Queues data to be sent (without waiting for a response).
+     */
+    public void send(String data) {
+        enqueue(data, false);
+    } // (method)
+
+    /**
+     * Sends data, waiting for the response (using the connection's timeout).
+     * @return The response or null if timed out.
+     */
+    public String request(String data) {
+        return request(data, _timeout);
+    } // (method)
+
+    /**
+     * Sends data, waiting for the response.
+     * @return The response or null if timed out.
+     */
+    public String request(String data, int timeout) {
+        Request request = enqueue(data, true, timeout);
+
+        return request.await();
+    } // (method)
+
+    private Request enqueue(String data, boolean expectsResponse) {
+        return enqueue(data, expectsResponse, _timeout);
+    }
+
+    private Request enqueue(String data, boolean expectsResponse, int timeout) {
+        if (_closed)
+            throw new IllegalStateException("The connection has been closed.");
+
+        if (data == null)
+            throw new IllegalArgumentException("No data was given.");
+
+        Request request = new Request(data.getBytes(CHARSET), expectsResponse, timeout);
+        _queue.add(request);
+
+        _requests.incrementAndGet();
+        ManagedConnections.s_requests.incrementAndGet();
+
+        _engine.attention(this);
+
+        return request;
+    } // (method)
+
+    /**
+     * Closes the connection permanently, abandoning any requests.
+     */
+    public void close() {
+        _closed = true;
+
+        _engine.attention(this);
+    }
+
+    // (selector thread)
+
+    boolean isTracked() {
+        return _tracked;
+    }
+
+    void setTracked(boolean value) {
+        _tracked = value;
+    }
+
+    /**
+     * Deals with timeouts, connecting and sending.
+     * @return false once closed.
+     */
+    boolean process(long now) {
+        if (_closed) {
+            disconnect();
+
+            Request request;
+            while ((request = _queue.poll()) != null)
+                request.complete(null);
+
+            return false;
+        }
+
+        // expire requests that have waited too long in the queue
+        Iterator<Request> iter = _queue.iterator();
+        while (iter.hasNext()) {
+            Request request = iter.next();
+            if (now - request.deadline >= 0) {
+                iter.remove();
+                timedOut(request);
+            }
+        } // (while)
+
+        // or for a response
+        if (_current != null && now - _current.deadline >= 0) {
+            timedOut(_current);
+            _current = null;
+
+            // (a half-sent request leaves the stream in an unknown state)
+            if (_out != null && _out.hasRemaining())
+                disconnect();
+        }
+
+        switch (_state) {
+        case Disconnected:
+            if ((!_queue.isEmpty() || !_receivedHandlers.isEmpty()) && now - _nextAttempt >= 0)
+                resolve(now);
+            break;
+
+        case Resolving:
+            if (_resolved != null || _resolveError != null)
+                connect(now);
+            break;
+
+        case Connecting:
+            if ((now - _connectStarted) / 1000000 >= _timeout)
+                failed(new IOException("Timed out while connecting."));
+            break;
+
+        case Connected:
+            sendNext();
+            break;
+        }
+
+        return true;
+    } // (method)
+
+    /**
+     * Resolves the address off the selector thread (could block).
+     */
+    private void resolve(long now) {
+        _state = State.Resolving;
+        _connectStarted = now;
+
+        // keep the address unless connecting has been failing for a while (in case it has changed)
+        boolean failing = _backoff > MIN_BACKOFF;
+        if (_address != null && (!failing || (now - _addressLookedUp) / 1000000 < ADDRESS_TTL)) {
+            _resolved = _address;
+            _resolveError = null;
+            return;
+        }
+
+        _resolved = null;
+        _resolveError = null;
+        _addressLookedUp = now;
+
+        ManagedConnections.s_threadPool.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                InetSocketAddress address = new InetSocketAddress(_host, _port);
+                if (address.isUnresolved())
+                    _resolveError = new IOException("Could not resolve host '" + _host + "'");
+                else
+                    _resolved = address;
+
+                _engine.attention(ManagedConnection.this);
+            }
+
+        });
+    } // (method)
+
+    private void connect(long now) {
+        if (_resolveError != null) {
+            failed(_resolveError);
+            return;
+        }
+
+        _address = _resolved;
+
+        try {
+            if (_protocol == Protocol.TCP) {
+                SocketChannel channel = SocketChannel.open();
+                _channel = channel;
+
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                channel.socket().setKeepAlive(true);
+
+                _state = State.Connecting;
+                _connectStarted = now;
+
+                if (channel.connect(_address))
+                    connected();
+                else
+                    _key = channel.register(_engine.selector(), SelectionKey.OP_CONNECT, this);
+
+            } else {
+                DatagramChannel channel = DatagramChannel.open();
+                _channel = channel;
+
+                channel.configureBlocking(false);
+                channel.connect(_address);
+
+                connected();
+            }
+
+        } catch (IOException exc) {
+            failed(exc);
+        }
+    } // (method)
+
+    private void connected() throws IOException {
+        _state = State.Connected;
+        _connected = true;
+        _backoff = MIN_BACKOFF;
+
+        _connects.incrementAndGet();
+        ManagedConnections.s_openConnections.incrementAndGet();
+
+        if (_key == null)
+            _key = _channel.register(_engine.selector(), SelectionKey.OP_READ, this);
+        else
+            _key.interestOps(SelectionKey.OP_READ);
+
+        s_logger.debug("Connected to {}:{} ({})", _host, _port, _protocol);
+
+        sendNext();
+    } // (method)
+
+    /**
+     * (from the selector)
+     */
+    void handleSelected(SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                if (((SocketChannel) _channel).finishConnect())
+                    connected();
+
+                return;
+            }
+
+            if (key.isWritable())
+                write();
+
+            if (key.isValid() && key.isReadable())
+                read();
+
+        } catch (IOException exc) {
+            failed(exc);
+        }
+    } // (method)
+
+    /**
+     * Starts sending the next request if idle.
+     */
+    private void sendNext() {
+        if (_current != null || _state != State.Connected)
+            return;
+
+        Request request = _queue.poll();
+        if (request == null)
+            return;
+
+        _current = request;
+        _out = ByteBuffer.wrap(request.data);
+        request.sent = System.nanoTime();
+
+        try {
+            write();
+        } catch (IOException exc) {
+            failed(exc);
+        }
+    } // (method)
+
+    private void write() throws IOException {
+        if (_out == null)
+            return;
+
+        ((ByteChannel) _channel).write(_out);
+
+        if (_out.hasRemaining()) {
+            _key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            return;
+        }
+
+        _out = null;
+        _key.interestOps(SelectionKey.OP_READ);
+
+        if (_current != null && !_current.expectsResponse) {
+            _current.complete(null);
+            _current = null;
+
+            sendNext();
+        }
+    } // (method)
+
+    private void read() throws IOException {
+        int read = ((ByteChannel) _channel).read(_in);
+
+        if (read < 0) {
+            // the device closed the connection (not an error, reconnects when next needed)
+            frame(true);
+
+            disconnect();
+
+            // (not straight away unless there's more to send)
+            if (_queue.isEmpty())
+                _nextAttempt = System.nanoTime() + MIN_BACKOFF * 1000000L;
+
+            return;
+        }
+
+        frame(_protocol == Protocol.UDP);
+    } // (method)
+
+    /**
+     * Takes complete frames out of the input buffer.
+     * @param flush treat any remainder as a frame too
+     */
+    private void frame(boolean flush) {
+        _in.flip();
+
+        byte[] buffer = _in.array();
+        int start = 0;
+        int limit = _in.limit();
+
+        if (_delimiter != null) {
+            int d = 0;
+            for (int i = 0; i < limit; i++) {
+                if (buffer[i] == _delimiter[d]) {
+                    d++;
+                    if (d == _delimiter.length) {
+                        int end = i + 1 - _delimiter.length;
+                        received(new String(buffer, start, end - start, CHARSET));
+                        start = i + 1;
+                        d = 0;
+                    }
+                } else if (d > 0) {
+                    // (restart the match from the character after the partial match began)
+                    i -= d;
+                    d = 0;
+                }
+            } // (for)
+
+        } else if (_frameLength > 0) {
+            while (limit - start >= _frameLength) {
+                received(new String(buffer, start, _frameLength, CHARSET));
+                start += _frameLength;
+            }
+
+        } else {
+            // whatever has arrived
+            flush = true;
+        }
+
+        if (flush && limit > start) {
+            received(new String(buffer, start, limit - start, CHARSET));
+            start = limit;
+        }
+
+        _in.position(start);
+        _in.compact();
+
+        // make room or give up on framing an overly large one
+        if (!_in.hasRemaining()) {
+            if (_in.capacity() < MAX_FRAME) {
+                ByteBuffer grown = ByteBuffer.allocate(_in.capacity() * 2);
+                _in.flip();
+                grown.put(_in);
+                _in = grown;
+            } else {
+                _in.flip();
+                received(new String(_in.array(), 0, _in.limit(), CHARSET));
+                _in.clear();
+            }
+        }
+    } // (method)
+
+    private void received(String frame) {
+        _receivedFrames.incrementAndGet();
+
+        if (_current != null && _current.expectsResponse && _out == null) {
+            long latency = System.nanoTime() - _current.sent;
+            _latency.record(latency);
+            ManagedConnections.s_requestLatency.record(latency);
+
+            _current.complete(frame);
+            _current = null;
+
+            sendNext();
+            return;
+        }
+
+        if (_receivedHandlers.isEmpty())
+            return;
+
+        _received.add(frame);
+        deliver();
+    } // (method)
+
+    /**
+     * Delivers received frames to the handlers in order using the thread-pool.
+     * (any thread)
+     */
+    private void deliver() {
+        if (_received.isEmpty() || !_delivering.compareAndSet(false, true))
+            return;
+
+        ManagedConnections.s_threadPool.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    String frame;
+                    while ((frame = _received.poll()) != null) {
+                        Handler.H2<Handler.H1<String>, String> caller = _handlerCaller;
+
+                        for (Handler.H1<String> handler : _receivedHandlers) {
+                            try {
+                                if (caller != null)
+                                    caller.handle(handler, frame);
+                                else
+                                    handler.handle(frame);
+                            } catch (Exception exc) {
+                                s_logger.warn("A received handler threw an exception.", exc);
+                            }
+                        }
+                    } // (while)
+                } finally {
+                    _delivering.set(false);
+                }
+
+                // (in case of a race with the flag)
+                deliver();
+            }
+
+        });
+    } // (method)
+
+    private void timedOut(Request request) {
+        _timeouts.incrementAndGet();
+        ManagedConnections.s_timeouts.incrementAndGet();
+
+        request.complete(null);
+    } // (method)
+
+    /**
+     * A connection failure; backs off before trying again.
+     */
+    private void failed(IOException exc) {
+        _errors.incrementAndGet();
+        ManagedConnections.s_errors.incrementAndGet();
+
+        _lastError = exc.getMessage();
+
+        if (s_logger.isInfoEnabled())
+            s_logger.info("Connection to {}:{} ({}) failed - {}", _host, _port, _protocol, exc.toString());
+
+        disconnect();
+
+        _nextAttempt = System.nanoTime() + _backoff * 1000000L;
+        _backoff = Math.min(_backoff * 2, MAX_BACKOFF);
+    } // (method)
+
+    private void disconnect() {
+        if (_state == State.Connected)
+            ManagedConnections.s_openConnections.decrementAndGet();
+
+        _state = State.Disconnected;
+        _connected = false;
+
+        // a request that was in progress cannot be completed
+        if (_current != null) {
+            _current.complete(null);
+            _current = null;
+        }
+
+        _out = null;
+        _in.clear();
+
+        if (_key != null) {
+            _key.cancel();
+            _key = null;
+        }
+
+        if (_channel != null) {
+            try {
+                _channel.close();
+            } catch (IOException ignore) {
+            }
+            _channel = null;
+        }
+    } // (method)
+
+    @Override
+    public String toString() {
+        return _protocol + "://" + _host + ":" + _port;
+    }
+
+    /**
+     * A queued request.
+     */
+    private static class Request {
+
+        public byte[] data;
+
+        public boolean expectsResponse;
+
+        /**
+         * (nanos)
+         */
+        public long deadline;
+
+        /**
+         * (nanos, selector thread)
+         */
+        public long sent;
+
+        private boolean _done;
+
+        private String _response;
+
+        public Request(byte[] data, boolean expectsResponse, int timeout) {
+            this.data = data;
+            this.expectsResponse = expectsResponse;
+            this.deadline = System.nanoTime() + timeout * 1000000L;
+        }
+
+        public synchronized void complete(String response) {
+            if (_done)
+                return;
+
+            _done = true;
+            _response = response;
+
+            notifyAll();
+        }
+
+        /**
+         * Waits for completion (which the selector thread guarantees by the deadline).
+         */
+        public synchronized String await() {
+            while (!_done) {
+                try {
+                    wait();
+                } catch (InterruptedException exc) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+
+            return _response;
+        }
+
+    } // (class)
+
+} // (class)
@@ -0,0 +1,227 @@
+package org.nodel.net;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nodel.core.Framework;
+import org.nodel.logging.AtomicLongMeasurementProvider;
+import org.nodel.logging.LatencyHistogram;
+import org.nodel.net.ManagedConnection.Protocol;
+import org.nodel.threading.ThreadPool;
+
+/**
+ * Hosts persistent device connections (see 'ManagedConnection') on a single selector thread shared by all
+ * nodes, instead of a socket (and often a thread) per command.
+ */
+public class ManagedConnections {
+
+    /**
+     * The granularity of timeouts and reconnection attempts.
+     * (millis)
+     */
+    private final static int TICK = 100;
+
+    /**
+     * A single instance.
+     */
+    private static ManagedConnections s_instance = new ManagedConnections();
+
+    public static ManagedConnections instance() {
+        return s_instance;
+    }
+
+    /**
+     * (diagnostics)
+     */
+    static AtomicLong s_openConnections = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    static AtomicLong s_requests = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    static AtomicLong s_errors = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    static AtomicLong s_timeouts = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    static LatencyHistogram s_requestLatency = new LatencyHistogram();
+
+    /**
+     * (diagnostics)
+     */
+    static {
+        Framework.shared().registerCounter("managed_connections", new AtomicLongMeasurementProvider(s_openConnections), false);
+        Framework.shared().registerCounter("managed_connection_requests", new AtomicLongMeasurementProvider(s_requests), true);
+        Framework.shared().registerCounter("managed_connection_errors", new AtomicLongMeasurementProvider(s_errors), true);
+        Framework.shared().registerCounter("managed_connection_timeouts", new AtomicLongMeasurementProvider(s_timeouts), true);
+        Framework.shared().registerHistogram("managed_connection_latency", s_requestLatency);
+    }
+
+    /**
+     * Used for name resolution and delivering received data (never the selector thread).
+     */
+    static ThreadPool s_threadPool = new ThreadPool("managed_connections", 32);
+
+    /**
+     * (logging)
+     */
+    private Logger _logger = LogManager.getLogger(ManagedConnections.class);
+
+    /**
+     * (lazily opened, see 'start')
+     */
+    private Selector _selector;
+
+    /**
+     * Connections that have new work or state (picked up by the selector thread).
+     */
+    private ConcurrentLinkedQueue<ManagedConnection> _attention = new ConcurrentLinkedQueue<ManagedConnection>();
+
+    /**
+     * All live connections (only accessed by the selector thread)
+     */
+    private List<ManagedConnection> _connections = new ArrayList<ManagedConnection>();
+
+    private ManagedConnections() {
+    }
+
+    /**
+     * Creates a TCP connection, framing responses by a delimiter (or if null, whatever arrives at once).
+     * The connection is made when first needed.
+     */
+    public ManagedConnection tcp(String host, int port, String delimiter) {
+        return new ManagedConnection(this, Protocol.TCP, host, port, delimiter, 0);
+    }
+
+    /**
+     * Creates a TCP connection, framing responses by fixed length.
+     */
+    public ManagedConnection tcp(String host, int port, int frameLength) {
+        return new ManagedConnection(this, Protocol.TCP, host, port, null, frameLength);
+    }
+
+    /**
+     * Creates a (connected) UDP "connection", each datagram being a response unless a delimiter is given.
+     */
+    public ManagedConnection udp(String host, int port, String delimiter) {
+        return new ManagedConnection(this, Protocol.UDP, host, port, delimiter, 0);
+    }
+
+    /**
+     * Has the selector thread look at the connection as soon as possible.
+     * (any thread)
+     */
+    void attention(ManagedConnection connection) {
+        _attention.add(connection);
+
+        start().wakeup();
+    } // (method)
+
+    /**
+     * (selector thread)
+     */
+    Selector selector() {
+        return _selector;
+    }
+
+    /**
+     * Opens the selector and starts its thread if not done already.
+     */
+    private synchronized Selector start() {
+        if (_selector != null)
+            return _selector;
+
+        try {
+            _selector = Selector.open();
+        } catch (IOException exc) {
+            throw new RuntimeException("Could not open a selector for managed connections.", exc);
+        }
+
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                selectorMain();
+            }
+
+        }, "managed_connections");
+        thread.setDaemon(true);
+        thread.start();
+
+        return _selector;
+    } // (method)
+
+    /**
+     * (selector thread entry-point)
+     */
+    private void selectorMain() {
+        _logger.info("Selector thread started.");
+
+        for (;;) {
+            try {
+                _selector.select(TICK);
+
+                Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid())
+                        continue;
+
+                    ((ManagedConnection) key.attachment()).handleSelected(key);
+                } // (while)
+
+                // newly active connections
+                ManagedConnection connection;
+                while ((connection = _attention.poll()) != null) {
+                    if (!connection.isTracked()) {
+                        connection.setTracked(true);
+                        _connections.add(connection);
+                    }
+                }
+
+                // every connection is given a chance to time out, reconnect or send
+                long now = System.nanoTime();
+
+                Iterator<ManagedConnection> iter = _connections.iterator();
+                while (iter.hasNext()) {
+                    connection = iter.next();
+
+                    if (!connection.process(now)) {
+                        connection.setTracked(false);
+                        iter.remove();
+                    }
+                } // (while)
+
+            } catch (Exception exc) {
+                // the thread must survive anything unexpected
+                _logger.warn("Unexpected exception within the selector thread.", exc);
+            }
+        } // (for)
+    } // (method)
+
+} // (class)
@@ -7,11 +7,16 @@ package org.nodel.reflection;
  */
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -19,7 +24,11 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.nodel.SimpleName;
 import org.nodel.Strings;
@@ -27,8 +36,8 @@ import org.nodel.Strings;
 /**
  * Utilities to assist with reflection.
  * 
- * This class is thread-safe and avoids using any locking. Map operations may overlap however,
- * the structure will still remain consistent.
+ * This class is thread-safe. The reflection data for each class is prepared exactly once (threads
+ * arriving meanwhile wait for it) and includes method handles for accessing values and services.
  * 
  */
 public class Reflection {
@@ -82,6 +91,11 @@ public class Reflection {
      */
     private static Map<Class<?>, ReflectionInfo> reflectionInfoMap = new ConcurrentHashMap<Class<?>, ReflectionInfo>();
     
+    /**
+     * Reflection info being prepared, by class (see 'tryInitReflectionData')
+     */
+    private static ConcurrentMap<Class<?>, FutureTask<ReflectionInfo>> pendingInfoMap = new ConcurrentHashMap<Class<?>, FutureTask<ReflectionInfo>>();
+    
     /**
      * Holds an adapter class map. Keys are original classes, values are adapters classes. 
      */
@@ -156,12 +170,57 @@ public class Reflection {
     /**
      * Initialises the lookup tables if they haven't been initialised already.
      */
-    private static ReflectionInfo tryInitReflectionData(Class<?> klazz) {
+    private static ReflectionInfo tryInitReflectionData(final Class<?> klazz) {
         ReflectionInfo reflectionInfo = reflectionInfoMap.get(klazz);
         if (reflectionInfo != null)
             return reflectionInfo;
         
-        reflectionInfo = new ReflectionInfo();
+        // (only one thread does the work, any others wait for it)
+        FutureTask<ReflectionInfo> task = new FutureTask<ReflectionInfo>(new Callable<ReflectionInfo>() {
+            
+            @Override
+            public ReflectionInfo call() throws Exception {
+                return createReflectionData(klazz);
+            }
+            
+        });
+        
+        FutureTask<ReflectionInfo> existing = pendingInfoMap.putIfAbsent(klazz, task);
+        if (existing == null) {
+            task.run();
+            existing = task;
+        }
+        
+        try {
+            reflectionInfo = existing.get();
+            
+        } catch (ExecutionException exc) {
+            // allow another attempt
+            pendingInfoMap.remove(klazz, existing);
+            
+            Throwable cause = exc.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+            
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for reflection data.", exc);
+        }
+        
+        reflectionInfoMap.put(klazz, reflectionInfo);
+        pendingInfoMap.remove(klazz, existing);
+        
+        return reflectionInfo;
+    } // (method)
+    
+    /**
+     * Scans the class for its annotations, etc. (see 'tryInitReflectionData')
+     */
+    private static ReflectionInfo createReflectionData(Class<?> klazz) {
+        ReflectionInfo reflectionInfo = new ReflectionInfo();
         
         // the class to target
         Class<?> targetClass;
@@ -376,8 +435,6 @@ public class Reflection {
         reflectionInfo.enumConstantMap = enumConstantMap;
         reflectionInfo.enumValues = enumValues;
 
-        reflectionInfoMap.put(klazz, reflectionInfo);
-
         return reflectionInfo;
     } // (method)
     
@@ -419,6 +476,9 @@ public class Reflection {
         
         fieldInfo.member = (actualMember == null ? member : actualMember);
         fieldInfo.annotation = valueAnnotation;
+        
+        fieldInfo.getHandle = prepareGetHandle(fieldInfo.member);
+        fieldInfo.setHandle = prepareSetHandle(fieldInfo.member);
 
         fieldInfos.add(fieldInfo);
 
@@ -457,6 +517,8 @@ public class Reflection {
             serviceInfo = new ServiceInfo(serviceAnnotation.name(), serviceAnnotation);
 
         serviceInfo.member = (actualMember == null ? member : actualMember);
+        
+        serviceInfo.invokeHandle = prepareInvokeHandle(serviceInfo.member);
 
         // (using LinkedHashMap to preserve order)
         Map<String, ParameterInfo> parameterMap = new LinkedHashMap<String, ParameterInfo>();
@@ -496,6 +558,99 @@ public class Reflection {
         return true;
     } // (method)
     
+    /**
+     * Makes a member accessible where permitted (e.g. public members of non-public classes).
+     */
+    private static void trySetAccessible(Member member) {
+        try {
+            ((AccessibleObject) member).setAccessible(true);
+        } catch (RuntimeException exc) {
+            // (not permitted, handles may still work)
+        }
+    } // (method)
+    
+    /**
+     * A '(Object)Object' handle that reads a field or calls an arg-less method.
+     * @return null if not possible
+     */
+    private static MethodHandle prepareGetHandle(Member member) {
+        trySetAccessible(member);
+        
+        try {
+            MethodHandle handle;
+            if (member instanceof Field) {
+                handle = MethodHandles.lookup().unreflectGetter((Field) member);
+            } else {
+                Method method = (Method) member;
+                if (method.getParameterTypes().length > 0)
+                    return null;
+                
+                handle = MethodHandles.lookup().unreflect(method);
+            }
+            
+            if (Modifier.isStatic(member.getModifiers()))
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            
+            return handle.asType(MethodType.methodType(Object.class, Object.class));
+            
+        } catch (IllegalAccessException exc) {
+            return null;
+        }
+    } // (method)
+    
+    /**
+     * A '(Object, Object)void' handle that sets a field.
+     * @return null if not possible
+     */
+    private static MethodHandle prepareSetHandle(Member member) {
+        if (!(member instanceof Field) || Modifier.isStatic(member.getModifiers()) || Modifier.isFinal(member.getModifiers()))
+            return null;
+        
+        try {
+            MethodHandle handle = MethodHandles.lookup().unreflectSetter((Field) member);
+            
+            return handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+            
+        } catch (IllegalAccessException exc) {
+            return null;
+        }
+    } // (method)
+    
+    /**
+     * A '(Object, Object[])Object' handle that calls a method (with spread arguments) or reads a field.
+     * @return null if not possible
+     */
+    private static MethodHandle prepareInvokeHandle(Member member) {
+        trySetAccessible(member);
+        
+        try {
+            MethodHandle handle;
+
+            if (member instanceof Field) {
+                handle = prepareGetHandle(member);
+                if (handle == null)
+                    return null;
+
+                // (ignores the arguments array)
+                return MethodHandles.dropArguments(handle, 1, Object[].class);
+
+            } else {
+                Method method = (Method) member;
+                handle = MethodHandles.lookup().unreflect(method);
+
+                if (Modifier.isStatic(method.getModifiers()))
+                    handle = MethodHandles.dropArguments(handle, 0, Object.class);
+
+                handle = handle.asType(handle.type().generic()).asSpreader(Object[].class, method.getParameterTypes().length);
+
+                return handle.asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+            }
+
+        } catch (IllegalAccessException exc) {
+            return null;
+        }
+    } // (method)
+    
     private static SetterInfo tryMemberAsSetter(Member member, Method actualMember) {
         Setter setterAnnotation = null;
         Method method = null;
@@ -693,15 +848,10 @@ public class Reflection {
                 continue;
 
             try {
-                Field dstField = (Field) dstValueInfo.member;
-                Field srcField = (Field) srcValueInfo.member;
+                Object srcValue = srcValueInfo.getValue(src);
 
-                Object srcValue = srcField.get(src);
-
-                dstField.set(dst, srcValue);
-            } catch (IllegalArgumentException exc) {
-                refExc = exc;
-            } catch (IllegalAccessException exc) {
+                dstValueInfo.setValue(dst, srcValue);
+            } catch (Exception exc) {
                 refExc = exc;
             }
 
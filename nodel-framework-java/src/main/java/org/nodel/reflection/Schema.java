@@ -11,12 +11,15 @@ import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.joda.time.DateTime;
 import org.nodel.Strings;
@@ -29,23 +32,63 @@ import org.nodel.reflection.Reflection.AllowedInstanceInfo;
 public class Schema {
 
     /**
-     * Class thread lock.
+     * The generated schemas, by class (deeply immutable once cached so safe to share).
      */
-    private static Object s_staticLock = new Object();
+    private static ConcurrentMap<Class<?>, Map<String, Object>> s_schemas = new ConcurrentHashMap<Class<?>, Map<String, Object>>();
 
+    /**
+     * The (cached, immutable) schema of an object's class.
+     */
     public static Map<String, Object> getSchemaObject(Object object) {
-        synchronized (s_staticLock) {
-            if (object == null)
-                throw new NullPointerException("Object");
+        if (object == null)
+            throw new NullPointerException("Object");
 
-            return getSchemaObject(0, object.getClass(), null, null);
-        }
+        return getSchemaObject(object.getClass());
     } // (method)
 
+    /**
+     * The (cached, immutable) schema of a class. Callers wanting to annotate it should take a shallow copy.
+     */
     public static Map<String, Object> getSchemaObject(Class<?> klass) {
-        synchronized (s_staticLock) {
-            return getSchemaObject(0, klass, null, null);
+        Map<String, Object> schema = s_schemas.get(klass);
+        if (schema != null)
+            return schema;
+
+        // generating is free of side-effects so a rare duplicate effort (when racing) is harmless
+        schema = immutable(getSchemaObject(0, klass, null, null));
+
+        Map<String, Object> existing = s_schemas.putIfAbsent(klass, schema);
+
+        return existing != null ? existing : schema;
+    } // (method)
+
+    /**
+     * Recursively wraps a freshly generated schema so it can be shared.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object immutable(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) value;
+            for (Entry<String, Object> entry : map.entrySet())
+                entry.setValue(immutable(entry.getValue()));
+
+            return Collections.unmodifiableMap(map);
+
+        } else if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            for (int a = 0; a < list.size(); a++)
+                list.set(a, immutable(list.get(a)));
+
+            return Collections.unmodifiableList(list);
+
+        } else {
+            return value;
         }
+    } // (method)
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> immutable(Map<String, Object> schema) {
+        return (Map<String, Object>) immutable((Object) schema);
     }
 
     private static Map<String, Object> getSchemaObject(int level, Class<?> klass, ValueInfo classFieldInfo, ServiceInfo classServiceInfo) {
@@ -6,18 +6,21 @@ package org.nodel.reflection;
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
  */
 
+import java.io.Reader;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
@@ -29,6 +32,8 @@ import org.nodel.UUIDs;
 import org.nodel.json.JSONArray;
 import org.nodel.json.JSONException;
 import org.nodel.json.JSONObject;
+import org.nodel.json.JSONPullParser;
+import org.nodel.json.JSONPullParser.Token;
 import org.nodel.json.JSONString;
 import org.nodel.reflection.Reflection.AllowedInstanceInfo;
 
@@ -48,14 +53,156 @@ public class Serialisation {
      * Convenience method: coerces from a JSON (giving 'generic class' hints)
      */
     public static Object coerceFromJSON(Class<?> klass, String json, Class<?> genericClassA, Class<?> genericClassB) {
+        return coerceFromJSON(klass, new JSONPullParser(json), genericClassA, genericClassB);
+    } // (method)
+    
+    /**
+     * Coerces from a JSON stream (giving 'generic class' hints), binding directly from the tokens 
+     * where possible instead of building the whole JSON object first.
+     */
+    public static Object coerceFromJSON(Class<?> klass, Reader reader, Class<?> genericClassA, Class<?> genericClassB) {
+        return coerceFromJSON(klass, new JSONPullParser(reader), genericClassA, genericClassB);
+    } // (method)
+    
+    private static Object coerceFromJSON(Class<?> klass, JSONPullParser parser, Class<?> genericClassA, Class<?> genericClassB) {
         try {
-            JSONObject jsonObject = new JSONObject(json);
+            // (a JSON object is expected at the top level)
+            if (parser.next() != Token.StartObject)
+                throw parser.syntaxError("A JSONObject text must begin with '{'");
 
-            return coerce(klass, jsonObject, null, genericClassA, genericClassB);
+            return coerceFromParser(klass, parser, null, genericClassA, genericClassB);
         } catch (JSONException exc) {
             throw new SerialisationException("JSON not formatted correctly.", exc);
         }
-    } // (method)    
+    } // (method)
+    
+    /**
+     * Coerces the value the parser is at, streaming into arrays, collections, maps and plain objects 
+     * and otherwise falling back to 'coerce' (with the same results).
+     */
+    private static Object coerceFromParser(Class<?> klass, JSONPullParser parser, ValueInfo valueInfo, Class<?> genericClassA, Class<?> genericClassB) throws JSONException {
+        Token token = parser.getToken();
+        
+        if (token == Token.Value || klass == null)
+            return coerce(klass, parser.readValue(), valueInfo, genericClassA, genericClassB);
+        
+        if (token == Token.StartArray) {
+            if (klass.isArray() && klass != Byte[].class && klass != byte[].class) {
+                Class<?> componentType = klass.getComponentType();
+                
+                List<Object> items = new ArrayList<Object>();
+                while (parser.next() != Token.EndArray)
+                    items.add(coerceFromParser(componentType, parser, null, null, null));
+                
+                Object array = Array.newInstance(componentType, items.size());
+                for (int index = 0; index < items.size(); index++) {
+                    Object objValue = items.get(index);
+                    if (objValue != null)
+                        Array.set(array, index, objValue);
+                }
+                
+                return array;
+            }
+            
+            if (Collection.class.isAssignableFrom(klass)) {
+                Class<?> componentType = valueInfo == null ? genericClassA : valueInfo.annotation.genericClassA();
+                
+                Collection<Object> instance = newCollection(klass);
+                while (parser.next() != Token.EndArray)
+                    instance.add(coerceFromParser(componentType, parser, null, null, null));
+                
+                return instance;
+            }
+        }
+        
+        else if (token == Token.StartObject) {
+            if (Map.class.isAssignableFrom(klass)) {
+                Class<?> keyType = valueInfo == null ? genericClassA : valueInfo.annotation.genericClassA();
+                Class<?> valueType = valueInfo == null ? genericClassB : valueInfo.annotation.genericClassB();
+                
+                Map<Object, Object> instance = newMap(klass);
+                Set<String> seen = new HashSet<String>();
+                while (parser.next() == Token.Key) {
+                    String jsonKey = parser.getKey();
+                    checkUnique(seen, jsonKey);
+                    
+                    Object objKey;
+                    if (keyType != String.class && keyType != Object.class)
+                        objKey = coerce(keyType, jsonKey, null, null, null);
+                    else
+                        objKey = jsonKey;
+                    
+                    parser.next();
+                    instance.put(objKey, coerceFromParser(valueType, parser, null, null, null));
+                } // (while)
+                
+                return instance;
+            }
+            
+            if (isPlainObjectClass(klass)) {
+                Object object;
+                try {
+                    object = klass.newInstance();
+                } catch (Exception exc) {
+                    throw new SerialisationException("Could not create instance of requested type plain object, " + klass.getName(), exc);
+                }
+                
+                Set<String> seen = new HashSet<String>();
+                while (parser.next() == Token.Key) {
+                    String key = parser.getKey();
+                    checkUnique(seen, key);
+                    parser.next();
+                    
+                    ValueInfo fieldInfo = Reflection.getValueInfosByName(klass, key);
+                    if (fieldInfo == null || !(fieldInfo.member instanceof Field)) {
+                        // only 0 argument methods are valid as fields
+                        parser.skipValue();
+                        continue;
+                    }
+                    
+                    Field field = (Field) fieldInfo.member;
+                    
+                    Object objValue = coerceFromParser(field.getType(), parser, fieldInfo, null, null);
+                    
+                    try {
+                        if (objValue != null)
+                            fieldInfo.setValue(object, objValue);
+                    } catch (Exception e) {
+                        throw new SerialisationException("Could not set field '" + field.getName() + "'.");
+                    }
+                } // (while)
+                
+                return object;
+            }
+        }
+        
+        // everything else needs the whole value
+        return coerce(klass, parser.readValue(), valueInfo, genericClassA, genericClassB);
+    } // (method)
+    
+    /**
+     * Rejects duplicate keys, as JSONObject does.
+     */
+    private static void checkUnique(Set<String> seen, String key) throws JSONException {
+        if (!seen.add(key))
+            throw new JSONException("Duplicate key \"" + key + "\"");
+    } // (method)
+    
+    /**
+     * Whether a class would be treated as a plain object by 'coerce' (and has no 'allowed instances' 
+     * which need all the keys to be known up front).
+     */
+    private static boolean isPlainObjectClass(Class<?> klass) {
+        if (klass == Object.class || klass == String.class || klass.isPrimitive() || klass.isArray() || klass.isEnum() ||
+                Number.class.isAssignableFrom(klass) || klass == Boolean.class ||
+                klass == DateTime.class || klass == Date.class || klass == UUID.class ||
+                Collection.class.isAssignableFrom(klass) || Map.class.isAssignableFrom(klass))
+            return false;
+        
+        AllowedInstanceInfo[] allowedInstanceInfos = Reflection.getAllowedInstances(klass);
+        
+        return allowedInstanceInfos == null || allowedInstanceInfos.length == 0;
+    } // (method)
 
     /**
      * Coerces an object (native or from 'json.org') package into a destination class.
@@ -314,11 +461,9 @@ public class Serialisation {
             }
             Object objValue = coerce(valueClass, jsonValue, fieldInfo, null, null);
 
-            field.setAccessible(true);
-
             try {
                 if (objValue != null)
-                    field.set(object, objValue);
+                    fieldInfo.setValue(object, objValue);
             } catch (Exception e) {
                 throw new SerialisationException("Could not set field '" + field.getName() + "'.");
             }
@@ -380,18 +525,7 @@ public class Serialisation {
             jsonArray.put(jsonObject);
         }
         
-        Collection<Object> instance;
-        if (klass.isInterface() || Modifier.isAbstract(klass.getModifiers())) {
-            // cannot create instance of interface or abstract classes, so use
-            // a well new 'Collection' class, ArrayList
-            instance = new ArrayList<Object>();
-        } else {
-            try {
-                instance = (Collection<Object>) klass.newInstance();
-            } catch (Exception exc) {
-                throw new SerialisationException("Could not create instance of requested type, Collection.", exc);
-            }
-        }
+        Collection<Object> instance = newCollection(klass);
         
         // get the length of the array
         int length = jsonArray.length();
@@ -423,19 +557,7 @@ public class Serialisation {
             throw new SerialisationException("The object is not a map");
         }
         
-        Map<Object,Object> instance;
-        if (klass.isInterface() || Modifier.isAbstract(klass.getModifiers())) {
-            // cannot create instance of interface or abstract classes, so use
-            // a well new 'Map' class, LinkedHashMap which preservers order
-            instance = new LinkedHashMap<Object, Object>();
-        } else {
-            // use the klass that was specified
-            try {
-                instance = (Map<Object, Object>) klass.newInstance();
-            } catch (Exception exc) {
-                throw new SerialisationException("Could not create an instance of a requested type, Map.", exc);
-            }
-        }
+        Map<Object,Object> instance = newMap(klass);
         
         Iterator<String> keys = jsonMap.keys();
         while (keys.hasNext()) {
@@ -463,6 +585,43 @@ public class Serialisation {
         return instance;
     } // (method)
 
+    /**
+     * (args all prechecked)
+     */
+    @SuppressWarnings("unchecked")
+    private static Collection<Object> newCollection(Class<?> klass) {
+        if (klass.isInterface() || Modifier.isAbstract(klass.getModifiers())) {
+            // cannot create instance of interface or abstract classes, so use
+            // a well new 'Collection' class, ArrayList
+            return new ArrayList<Object>();
+        } else {
+            try {
+                return (Collection<Object>) klass.newInstance();
+            } catch (Exception exc) {
+                throw new SerialisationException("Could not create instance of requested type, Collection.", exc);
+            }
+        }
+    } // (method)
+    
+    /**
+     * (args all prechecked)
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<Object, Object> newMap(Class<?> klass) {
+        if (klass.isInterface() || Modifier.isAbstract(klass.getModifiers())) {
+            // cannot create instance of interface or abstract classes, so use
+            // a well new 'Map' class, LinkedHashMap which preservers order
+            return new LinkedHashMap<Object, Object>();
+        } else {
+            // use the klass that was specified
+            try {
+                return (Map<Object, Object>) klass.newInstance();
+            } catch (Exception exc) {
+                throw new SerialisationException("Could not create an instance of a requested type, Map.", exc);
+            }
+        }
+    } // (method)
+
     /**
      * (overloaded - no indentation specified)
      */
@@ -571,20 +730,9 @@ public class Serialisation {
                         if (Strings.isNullOrEmpty(key))
                             key = fieldInfo.member.getName();
 
-                        Object result = null;
+                        // (field or arg-less method, via the prepared handle)
+                        Object result = fieldInfo.getValue(object);
                         
-                        if (fieldInfo.member instanceof Field) {
-                            Field field = (Field) fieldInfo.member;
-                            field.setAccessible(true);
-
-                            // invoke the getter
-                            result = field.get(object);
-                        } else {
-                            // treat as method
-                            Method method = (Method) fieldInfo.member;
-                            
-                            result = method.invoke(object, new Object[] {});
-                        }
                         if (result != null) {
                             // jsonObject()
                             jsonObject.put(key, wrap(result));
@@ -6,6 +6,7 @@ package org.nodel.reflection;
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
  */
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Member;
 import java.util.Map;
 
@@ -36,6 +37,12 @@ public class ServiceInfo implements Comparable<ServiceInfo> {
 
     public Map<String, ParameterInfo> parameterMap;
 
+    /**
+     * Invokes the method or reads the field, '(Object, Object[])Object'.
+     * (prepared along with the reflection data, null if the member could not be accessed this way)
+     */
+    public MethodHandle invokeHandle;
+
     /**
      * Compares by 'order' field.
      */
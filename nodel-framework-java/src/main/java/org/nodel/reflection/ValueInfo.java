@@ -6,7 +6,11 @@ package org.nodel.reflection;
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
  */
 
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Member;
+import java.lang.reflect.Method;
 
 /**
  * Holds quick lookup info when Value attributes are specified.
@@ -26,6 +30,61 @@ public class ValueInfo implements Comparable<ValueInfo> {
      * Holds the matcher setter info (if present)
      */
     public SetterInfo setter;    
+    
+    /**
+     * Reads the value, '(Object)Object'.
+     * (prepared along with the reflection data, null if the member could not be accessed this way)
+     */
+    public MethodHandle getHandle;
+    
+    /**
+     * Writes the value, '(Object, Object)void'.
+     * (fields only, can be null)
+     */
+    public MethodHandle setHandle;
+    
+    /**
+     * Gets the value from an instance (field or arg-less method).
+     */
+    public Object getValue(Object instance) throws Exception {
+        if (this.getHandle != null) {
+            try {
+                return (Object) this.getHandle.invokeExact(instance);
+            } catch (Exception | Error exc) {
+                throw exc;
+            } catch (Throwable th) {
+                throw new RuntimeException(th);
+            }
+        }
+        
+        if (this.member instanceof Field)
+            return ((Field) this.member).get(instance);
+        
+        try {
+            return ((Method) this.member).invoke(instance);
+        } catch (InvocationTargetException exc) {
+            Throwable cause = exc.getTargetException();
+            throw cause instanceof Exception ? (Exception) cause : exc;
+        }
+    } // (method)
+    
+    /**
+     * Sets the value of an instance's field.
+     */
+    public void setValue(Object instance, Object value) throws Exception {
+        if (this.setHandle != null) {
+            try {
+                this.setHandle.invokeExact(instance, value);
+                return;
+            } catch (Exception | Error exc) {
+                throw exc;
+            } catch (Throwable th) {
+                throw new RuntimeException(th);
+            }
+        }
+        
+        ((Field) this.member).set(instance, value);
+    } // (method)
 
     /**
      * Compare by 'order' field.
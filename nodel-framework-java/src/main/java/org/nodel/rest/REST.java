@@ -1,25 +1,33 @@
 package org.nodel.rest;
 
-/* 
+/*
  * This Source Code Form is subject to the terms of the Mozilla Public
  * License, v. 2.0. If a copy of the MPL was not distributed with this
- * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
  */
 
 import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
-import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.nodel.Strings;
+import org.nodel.io.Stream;
+import org.nodel.io.UTF8Charset;
 import org.nodel.reflection.Schema;
 import org.nodel.reflection.ParameterInfo;
 import org.nodel.reflection.Reflection;
@@ -28,51 +36,255 @@ import org.nodel.reflection.ServiceInfo;
 import org.nodel.reflection.ValueInfo;
 
 public class REST {
-    
+
+    /**
+     * The maximum number of route plans held before they're all discarded (protects against unbounded
+     * growth from arbitrary URLs).
+     */
+    private final static int MAX_ROUTE_PLANS = 4096;
+
+    /**
+     * Invokes a member (field getter or method) given a target and arguments.
+     */
+    private static abstract class Invoker {
+
+        public abstract Object invoke(Object target, Object[] args) throws Throwable;
+
+    } // (class)
+
+    /**
+     * Uses a method handle, adapted to '(Object, Object[])Object'.
+     */
+    private static class HandleInvoker extends Invoker {
+
+        private MethodHandle handle;
+
+        public HandleInvoker(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public Object invoke(Object target, Object[] args) throws Throwable {
+            return (Object) this.handle.invokeExact(target, args);
+        }
+
+    } // (class)
+
+    /**
+     * Plain reflection, for members that can't be accessed via method handles.
+     */
+    private static class ReflectionInvoker extends Invoker {
+
+        private Member member;
+
+        public ReflectionInvoker(Member member) {
+            this.member = member;
+        }
+
+        @Override
+        public Object invoke(Object target, Object[] args) throws Throwable {
+            try {
+                if (this.member instanceof Field)
+                    return ((Field) this.member).get(target);
+                else
+                    return ((Method) this.member).invoke(target, args);
+
+            } catch (InvocationTargetException exc) {
+                throw exc.getTargetException();
+            }
+        }
+
+    } // (class)
+
+    /**
+     * Converts argument strings (or JSON values) into a parameter type.
+     */
+    private static class Coercer {
+
+        private Class<?> klass;
+
+        /**
+         * The exact boxed type needed for numeric primitives (method handles don't widen), otherwise null.
+         */
+        private Class<?> numberClass;
+
+        /**
+         * Set if the default value can be shared between calls.
+         */
+        private boolean immutableDefault;
+
+        private Object defaultValue;
+
+        public Coercer(Class<?> klass) {
+            this.klass = klass;
+
+            if (klass == int.class || klass == Integer.class)
+                this.numberClass = Integer.class;
+            else if (klass == long.class || klass == Long.class)
+                this.numberClass = Long.class;
+            else if (klass == double.class || klass == Double.class)
+                this.numberClass = Double.class;
+            else if (klass == float.class || klass == Float.class)
+                this.numberClass = Float.class;
+            else if (klass == short.class || klass == Short.class)
+                this.numberClass = Short.class;
+            else if (klass == byte.class || klass == Byte.class)
+                this.numberClass = Byte.class;
+
+            this.immutableDefault = klass.isPrimitive() || this.numberClass != null || klass == Boolean.class || klass == String.class;
+            if (this.immutableDefault)
+                this.defaultValue = coerce(null);
+        }
+
+        public Object coerce(Object value) {
+            return fit(Serialisation.coerce(this.klass, value));
+        }
+
+        /**
+         * Ensures numbers are of the exact boxed type.
+         */
+        public Object fit(Object result) {
+            if (this.numberClass == null || !(result instanceof Number) || result.getClass() == this.numberClass)
+                return result;
+
+            Number number = (Number) result;
+
+            if (this.numberClass == Integer.class)
+                return number.intValue();
+            else if (this.numberClass == Long.class)
+                return number.longValue();
+            else if (this.numberClass == Double.class)
+                return number.doubleValue();
+            else if (this.numberClass == Float.class)
+                return number.floatValue();
+            else if (this.numberClass == Short.class)
+                return number.shortValue();
+            else
+                return number.byteValue();
+        }
+
+        /**
+         * The value used when an argument is missing.
+         */
+        public Object getDefault() {
+            return this.immutableDefault ? this.defaultValue : coerce(null);
+        }
+
+    } // (class)
+
+    /**
+     * A compiled member (service or value) lookup of a path part for a particular class.
+     */
+    private static class MemberStep {
+
+        /**
+         * The class this step applies to.
+         */
+        public Class<?> klass;
+
+        /**
+         * (null if a value)
+         */
+        public ServiceInfo serviceInfo;
+
+        public Invoker invoker;
+
+        /**
+         * Is a method (otherwise a field)
+         */
+        public boolean isMethod;
+
+        public boolean isVoid;
+
+        /**
+         * (by parameter index)
+         */
+        public Class<?>[] argTypes;
+
+        /**
+         * (by parameter index)
+         */
+        public Coercer[] coercers;
+
+        /**
+         * Set if the method takes exactly one major argument, which means it may take the entire POST data.
+         */
+        public ParameterInfo majorParam;
+
+    } // (class)
+
+    /**
+     * Indicates no member matches a part for the class.
+     */
+    private final static MemberStep NOT_FOUND = new MemberStep();
+
+    /**
+     * The compiled route for a path (from a particular class), i.e. the member steps by part index
+     * (null where parts are map keys or indices).
+     */
+    private static class RoutePlan {
+
+        /**
+         * (steps are compiled and stored on demand by any request thread so are safely published through this)
+         */
+        public AtomicReferenceArray<MemberStep> steps;
+
+        public RoutePlan(int length) {
+            this.steps = new AtomicReferenceArray<MemberStep>(length);
+        }
+
+    } // (class)
+
+    /**
+     * Keyed by 'class name, strictness, path'.
+     */
+    private static ConcurrentHashMap<String, RoutePlan> s_routePlans = new ConcurrentHashMap<String, RoutePlan>();
+
     public static Object resolveRESTcall(Object graph, String[] parts, Map<?, ?> props, byte[] buffer) throws Exception {
-        return resolveRESTcall(graph, parts, props, buffer, true);
+        return resolveRESTcall(graph, parts, props, buffer != null ? new ByteArrayInputStream(buffer) : null, true);
+    }
+
+    public static Object resolveRESTcall(Object graph, String[] parts, Map<?, ?> props, byte[] buffer, boolean strict) throws Exception {
+        return resolveRESTcall(graph, parts, props, buffer != null ? new ByteArrayInputStream(buffer) : null, strict);
     }
-    
+
     /**
      * Handles a REST call.
      * NOTE: the props value part is an array
-     * 
+     *
+     * @param body the POST data (if any), e.g. straight from the connection
      * @param strict 'true' if must respect service and value attributes.
      */
-    public static Object resolveRESTcall(Object graph, String[] parts, Map<?, ?> props, byte[] buffer, boolean strict) throws Exception {
+    public static Object resolveRESTcall(Object graph, String[] parts, Map<?, ?> props, InputStream body, boolean strict) throws Exception {
         // the cursor, starting at the root of the graph
         Object object = graph;
-        
+
         // works alongside the cursor, using any class hints
         // because of Java type erasure
         Class<?> classHint = null;
         ServiceInfo serviceInfoHint = null;
 
-        // the REST path as it builds up
-        StringBuilder restPath = new StringBuilder();
+        RoutePlan plan = getRoutePlan(graph, parts, strict);
 
         // go through each part
         for (int partNum = 0; partNum < parts.length; partNum++) {
             String part = parts[partNum];
             boolean lastPart = partNum == parts.length - 1;
 
-            restPath.append("/" + part);
-
             if (object == null)
-                throw new FileNotFoundException(restPath.toString());
+                throw new FileNotFoundException(restPath(parts, partNum));
 
             // test for a map
             if (object instanceof Map<?, ?>) {
                 Map<?, ?> map = (Map<?, ?>) object;
-                
+
                 Object key;
 
                 // check if a key class hint is being used
                 if (classHint != String.class && classHint != Object.class) {
                      // coerce the string into the key
-                    //key = Reflection.createInstanceFromString(classHintA, part);
                     key = Serialisation.coerce(classHint, part);
-                    
+
                     // conversion failed, so just use it as the string
                     if (key == null)
                         key = part;
@@ -88,7 +300,7 @@ public class REST {
 
                 classHint = Object.class;
                 serviceInfoHint = null;
-                
+
                 object = value;
                 continue;
             } // (if - map)
@@ -103,12 +315,12 @@ public class REST {
                     index = Integer.parseInt(part);
 
                 } catch (NumberFormatException ignoreEX) {
-                    throw new FileNotFoundException(restPath.toString());
+                    throw new FileNotFoundException(restPath(parts, partNum));
                 }
 
                 if (index < 0 || index >= list.size())
-                    throw new FileNotFoundException(restPath.toString());
-                
+                    throw new FileNotFoundException(restPath(parts, partNum));
+
                 classHint = Object.class;
                 serviceInfoHint = null;
 
@@ -129,11 +341,11 @@ public class REST {
                     index = Integer.parseInt(part);
 
                 } catch (NumberFormatException ignoreEX) {
-                    throw new FileNotFoundException(restPath.toString());
+                    throw new FileNotFoundException(restPath(parts, partNum));
                 }
 
                 if (index < 0 || index >= size)
-                    throw new FileNotFoundException(restPath.toString());
+                    throw new FileNotFoundException(restPath(parts, partNum));
 
                 classHint = Object.class;
                 serviceInfoHint = null;
@@ -143,250 +355,289 @@ public class REST {
                 continue;
             } // (if - list)
 
-            // if not in strict mode, test for annotated "values"
-            if (!strict) {
-                ValueInfo valueInfo = Reflection.getValueInfosByName(klass, part);
-                if (valueInfo != null) {
-                    try {
-                        if (valueInfo.member instanceof Field) {
-                            Field field = (Field) valueInfo.member;
-
-                            Object result = field.get(object);
+            // use the compiled step if it applies to this class, otherwise compile (and remember) it
+            MemberStep step = plan.steps.get(partNum);
+            if (step == null || step.klass != klass) {
+                step = compileMemberStep(klass, part, strict);
+                plan.steps.set(partNum, step);
+            }
 
-                            classHint = Object.class;
-                            serviceInfoHint = null;
+            if (step == NOT_FOUND || step.klass != klass)
+                throw new EndpointNotFoundException(restPath(parts, partNum));
 
-                            object = result;
+            try {
+                if (step.serviceInfo == null) {
+                    // an annotated "value" (non-strict mode)
+                    Object result = step.invoker.invoke(object, null);
 
-                            continue;
-                        } else {
-                            Method method = (Method) valueInfo.member;
+                    if (!step.isMethod) {
+                        classHint = Object.class;
+                        serviceInfoHint = null;
+                    }
 
-                            Object result = method.invoke(object, (Object[]) null);
+                    object = result;
+                    continue;
+                }
 
-                            object = result;
+                ServiceInfo serviceInfo = step.serviceInfo;
 
-                            continue;
-                        }
-                    } catch (IllegalArgumentException e) {
-                        throw new RuntimeException(e);
+                if (!step.isMethod) {
+                    // dealing with a field, set the class hint
+                    classHint = serviceInfo.annotation.genericClassA();
+                    serviceInfoHint = serviceInfo;
 
-                    } catch (IllegalAccessException e) {
-                        throw new RuntimeException(e);
-                    }
+                    // move the cursor
+                    object = step.invoker.invoke(object, null);
+                    continue;
                 }
-            }
 
-            // test for "services" (can be annotated methods or fields)
-            ServiceInfo serviceInfo = Reflection.getServiceInfosByName(klass, part);
-            if (serviceInfo != null) {
-                try {
-                    if (serviceInfo.member instanceof Field) {
-                        // dealing with a field
-                        Field field = (Field) serviceInfo.member;
-
-                     // set the class hint
-                        classHint = serviceInfo.annotation.genericClassA();
-                        serviceInfoHint = serviceInfo;
-                        
-                        // set the object
-                        Object result = field.get(object);
-
-                        // move the cursor
-                        object = result;
-                        continue;
+                Object[] args = prepareArgs(step, part, lastPart, classHint, props, body);
 
-                    } else if (serviceInfo.member instanceof Method) {
-                        // dealing with a method
-                        Method method = (Method) serviceInfo.member;
-
-                        // get the argument types
-                        Class<?>[] argTypes = method.getParameterTypes();
-
-                        // create an array for the arguments
-                        Object[] args = new Object[argTypes.length];
-                        
-                        // stores whether an arg has been set or not
-                        boolean[] argSet = new boolean[argTypes.length];
-
-                        Map<String, ParameterInfo> paramMap = serviceInfo.parameterMap;
-
-                        // check if the method takes more than one argument, so
-                        // fill in args from Query String and / or POST data
-                        if (argTypes.length > 0) {
-                            if (!lastPart) {
-                                // not the last part, try treat REST part as
-                                // first argument of method
-                                Object firstArg;
-
-                                // check if a key class hint is being used
-                                if (classHint != String.class && classHint != Object.class) {
-                                    // coerce the string into the key
-                                    // key =
-                                    // Reflection.createInstanceFromString(classHintA,
-                                    // part);
-                                    firstArg = Serialisation.coerce(classHint, part);
-
-                                    // conversion failed, so just use it as the
-                                    // string
-                                    if (firstArg == null)
-                                        firstArg = part;
-                                } else {
-                                    // try treat key as a string
-                                    firstArg = part;
-                                }
-
-                                args[0] = firstArg;
-                                argSet[0] = true;
-                            } else {
-                                // for last part use the query string parameters
-                                // and POST data (if it's present)
-                                
-                                  // try match each argument provided
-                                if (props != null) {
-                                    Set<?> propertyNames = props.keySet();
-                                    for (Object propertyNameObj : propertyNames) {
-                                        String propertyName = propertyNameObj.toString();
-
-                                        // try get the key
-                                        ParameterInfo paramInfo = paramMap.get(propertyName.toLowerCase());
-
-                                        // skip unexpected parameters
-                                        if (paramInfo == null)
-                                            continue;
-
-                                        Object value = props.get(propertyNameObj);
-                                        if (value.getClass().isArray())
-                                            value = Array.get(value, 0);
-
-                                        String paramValueStr = (String) value;
-                                        Object paramValueObj = Serialisation.coerce(paramInfo.klass, paramValueStr);
-                                        args[paramInfo.index] = paramValueObj;
-                                        argSet[paramInfo.index] = true;
-                                    } // (while)
-                                } // (if)
-
-                                // check for POST data
-
-                                if (buffer != null) {
-                                    // check the last argument for byte stream
-                                    int lastIndex = argTypes.length - 1;
-                                    if (lastIndex >= 0 && args[lastIndex] == null && argTypes[lastIndex] == ByteArrayInputStream.class) {
-                                        ByteArrayInputStream bais = new ByteArrayInputStream(buffer);
-                                        args[lastIndex] = bais;
-                                        argSet[lastIndex] = true;
-                                    } else {
-                                        // deal with the POST data as a string
-                                        String data = new String(buffer, "UTF8");
-                                        
-                                        ParameterInfo firstParamInfo = getFirstEntry(paramMap);
-                                        
-                                        if (paramMap.size() == 1 && firstParamInfo.annotation.isMajor()) {
-                                            // treat as complete argument (not argument map)
-                                            Object argValue = Serialisation.coerceFromJSON(firstParamInfo.klass, data, firstParamInfo.annotation.genericClassA(), firstParamInfo.annotation.genericClassB());
-                                            
-                                            args[0] = argValue;
-                                            argSet[0] = true;
-                                        } else {
-                                            // treat it as an argument map
-                                            @SuppressWarnings("unchecked")
-                                            HashMap<String, Object> argumentMap = (HashMap<String, Object>) Serialisation.coerceFromJSON(HashMap.class, data);
-
-                                            for (Entry<String, Object> entry : argumentMap.entrySet()) {
-                                                String argument = entry.getKey();
-
-                                                ParameterInfo paramInfo = paramMap.get(argument);
-
-                                                // skip unexpected parameters
-                                                if (paramInfo == null)
-                                                    continue;
-
-                                                Object argValue = Serialisation.coerce(paramInfo.klass, entry.getValue());
-
-                                                args[paramInfo.index] = argValue;
-                                                argSet[paramInfo.index] = true;
-                                            } // (for)
-                                        }
-                                    }
-                                }
-                            }
-
-                            // possibly dealt with all arguments, but
-                            // fill in defaults that might be missing
-                            for (ParameterInfo paramInfo : paramMap.values()) {
-                                if (argSet[paramInfo.index])
-                                    continue;
-                                
-                                Object argValue = Serialisation.coerce(paramInfo.klass, null);
-                                
-                                args[paramInfo.index] = argValue;
-
-                                // don't need to do this, but record anyway
-                                argSet[paramInfo.index] = true;
-                            } // (for)
-                        }
-                        
-                        classHint = serviceInfo.annotation.genericClassA();
-                        serviceInfoHint = serviceInfo;
-
-                        object = method.invoke(object, args);
-
-                        // if it a void method, return true always
-                        if (method.getReturnType() == void.class)
-                            object = true;
+                classHint = serviceInfo.annotation.genericClassA();
+                serviceInfoHint = serviceInfo;
 
-                        continue;
+                object = step.invoker.invoke(object, args);
 
-                    } else {
-                        throw new EndpointNotFoundException(part);
-                    }
-                } catch (IllegalArgumentException e) {
-                    throw new RuntimeException(e);
-                } catch (IllegalAccessException e) {
-                    throw new RuntimeException(e);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                } catch (InvocationTargetException e) {
-                    Throwable targetException = e.getTargetException();
-                    if (targetException instanceof Exception)
-                        throw (Exception) targetException;
-                    
-                    // must be an 'Error'
-                    throw new Exception("A serious program failure occurred which probably affects the stability of this server.", targetException);
-                }
+                // if it a void method, return true always
+                if (step.isVoid)
+                    object = true;
 
-            } // (if - service)
+            } catch (Exception exc) {
+                throw exc;
 
-            throw new EndpointNotFoundException(restPath.toString());
+            } catch (Error err) {
+                throw new Exception("A serious program failure occurred which probably affects the stability of this server.", err);
+
+            } catch (Throwable th) {
+                throw new RuntimeException(th);
+            }
         } // (for)
 
         if (props != null && props.containsKey("schema")) {
             return Schema.getSchemaObject(object);
-        } 
-        
+        }
+
         // return the object itself or the 'treat as value' method / field.
         Object result = Reflection.getDefaultValue(object);
-        
+
         if (serviceInfoHint != null && !Strings.isNullOrEmpty(serviceInfoHint.annotation.embeddedFieldName())) {
-            Map<String,Object> wrappedResult = new HashMap<String,Object>();  
+            Map<String,Object> wrappedResult = new HashMap<String,Object>();
             wrappedResult.put(serviceInfoHint.annotation.embeddedFieldName(), result);
-            
+
             return wrappedResult;
         }
-        
+
         return result;
     } // (method)
-    
+
     /**
-     * Returns the first item in the map.
+     * Fills in the arguments of a service method, from the path part if not the last part, otherwise the query
+     * string parameters and / or POST data, using defaults for any missing.
      */
-    private static <X, Y> Y getFirstEntry(Map<X, Y> map) {
-        for (Y item : map.values())
-            return item;
-        
-        return null;
+    private static Object[] prepareArgs(MemberStep step, String part, boolean lastPart, Class<?> classHint, Map<?, ?> props, InputStream body) throws Exception {
+        Class<?>[] argTypes = step.argTypes;
+        Coercer[] coercers = step.coercers;
+
+        // create an array for the arguments
+        Object[] args = new Object[argTypes.length];
+
+        // stores whether an arg has been set or not
+        boolean[] argSet = new boolean[argTypes.length];
+
+        Map<String, ParameterInfo> paramMap = step.serviceInfo.parameterMap;
+
+        if (argTypes.length == 0)
+            return args;
+
+        if (!lastPart) {
+            // not the last part, try treat REST part as first argument of method
+            Object firstArg;
+
+            // check if a key class hint is being used
+            if (classHint != String.class && classHint != Object.class) {
+                // coerce the string into the key
+                firstArg = Serialisation.coerce(classHint, part);
+
+                // conversion failed, so just use it as the string
+                if (firstArg == null)
+                    firstArg = part;
+            } else {
+                // try treat key as a string
+                firstArg = part;
+            }
+
+            args[0] = coercers[0].fit(firstArg);
+            argSet[0] = true;
+
+        } else {
+            // for last part use the query string parameters and POST data (if it's present)
+
+            // try match each argument provided
+            if (props != null) {
+                for (Entry<?, ?> entry : props.entrySet()) {
+                    String propertyName = entry.getKey().toString();
+
+                    // try get the key
+                    ParameterInfo paramInfo = paramMap.get(propertyName.toLowerCase());
+
+                    // skip unexpected parameters
+                    if (paramInfo == null)
+                        continue;
+
+                    Object value = entry.getValue();
+                    if (value.getClass().isArray())
+                        value = Array.get(value, 0);
+
+                    args[paramInfo.index] = coercers[paramInfo.index].coerce((String) value);
+                    argSet[paramInfo.index] = true;
+                } // (for)
+            } // (if)
+
+            // check for POST data
+            if (body != null) {
+                // check the last argument for byte stream
+                int lastIndex = argTypes.length - 1;
+                if (args[lastIndex] == null && argTypes[lastIndex] == ByteArrayInputStream.class) {
+                    args[lastIndex] = body instanceof ByteArrayInputStream ? body : new ByteArrayInputStream(Stream.readFullyIntoBuffer(body));
+                    argSet[lastIndex] = true;
+
+                } else {
+                    // deal with the POST data as a character stream, binding straight from the
+                    // JSON tokens (no intermediate string or JSON tree)
+                    Reader data = new InputStreamReader(body, UTF8Charset.instance());
+
+                    ParameterInfo majorParam = step.majorParam;
+
+                    if (majorParam != null) {
+                        // treat as complete argument (not argument map)
+                        args[0] = coercers[0].fit(Serialisation.coerceFromJSON(majorParam.klass, data, majorParam.annotation.genericClassA(), majorParam.annotation.genericClassB()));
+                        argSet[0] = true;
+
+                    } else {
+                        // treat it as an argument map
+                        @SuppressWarnings("unchecked")
+                        HashMap<String, Object> argumentMap = (HashMap<String, Object>) Serialisation.coerceFromJSON(HashMap.class, data, null, null);
+
+                        for (Entry<String, Object> entry : argumentMap.entrySet()) {
+                            ParameterInfo paramInfo = paramMap.get(entry.getKey());
+
+                            // skip unexpected parameters
+                            if (paramInfo == null)
+                                continue;
+
+                            args[paramInfo.index] = coercers[paramInfo.index].coerce(entry.getValue());
+                            argSet[paramInfo.index] = true;
+                        } // (for)
+                    }
+                }
+            }
+        }
+
+        // possibly dealt with all arguments, but fill in defaults that might be missing
+        for (ParameterInfo paramInfo : paramMap.values()) {
+            if (!argSet[paramInfo.index])
+                args[paramInfo.index] = coercers[paramInfo.index].getDefault();
+        } // (for)
+
+        return args;
+    } // (method)
+
+    /**
+     * Gets (or creates) the route plan for a path from the given graph root.
+     */
+    private static RoutePlan getRoutePlan(Object graph, String[] parts, boolean strict) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(graph == null ? "null" : graph.getClass().getName()).append(strict ? "|s|" : "|n|");
+        for (String part : parts)
+            sb.append('/').append(part);
+
+        String key = sb.toString();
+
+        RoutePlan plan = s_routePlans.get(key);
+        if (plan != null)
+            return plan;
+
+        if (s_routePlans.size() >= MAX_ROUTE_PLANS)
+            s_routePlans.clear();
+
+        plan = new RoutePlan(parts.length);
+        RoutePlan existing = s_routePlans.putIfAbsent(key, plan);
+
+        return existing != null ? existing : plan;
+    } // (method)
+
+    /**
+     * Resolves the member named by a path part for a class, preparing its invoker and argument coercers.
+     */
+    private static MemberStep compileMemberStep(Class<?> klass, String part, boolean strict) {
+        // if not in strict mode, test for annotated "values"
+        if (!strict) {
+            ValueInfo valueInfo = Reflection.getValueInfosByName(klass, part);
+            if (valueInfo != null) {
+                MemberStep step = new MemberStep();
+                step.klass = klass;
+                step.isMethod = !(valueInfo.member instanceof Field);
+                // (ignores the arguments array)
+                step.invoker = toInvoker(valueInfo.getHandle != null ? MethodHandles.dropArguments(valueInfo.getHandle, 1, Object[].class) : null, valueInfo.member);
+
+                return step;
+            }
+        }
+
+        // test for "services" (can be annotated methods or fields)
+        ServiceInfo serviceInfo = Reflection.getServiceInfosByName(klass, part);
+        if (serviceInfo == null || !(serviceInfo.member instanceof Field || serviceInfo.member instanceof Method))
+            return NOT_FOUND;
+
+        MemberStep step = new MemberStep();
+        step.klass = klass;
+        step.serviceInfo = serviceInfo;
+        step.invoker = toInvoker(serviceInfo.invokeHandle, serviceInfo.member);
+
+        if (serviceInfo.member instanceof Method) {
+            Method method = (Method) serviceInfo.member;
+
+            step.isMethod = true;
+            step.isVoid = method.getReturnType() == void.class;
+            step.argTypes = method.getParameterTypes();
+
+            step.coercers = new Coercer[step.argTypes.length];
+            for (int a = 0; a < step.argTypes.length; a++)
+                step.coercers[a] = new Coercer(step.argTypes[a]);
+
+            Map<String, ParameterInfo> paramMap = serviceInfo.parameterMap;
+            if (paramMap.size() == 1) {
+                ParameterInfo paramInfo = paramMap.values().iterator().next();
+                if (paramInfo.annotation != null && paramInfo.annotation.isMajor())
+                    step.majorParam = paramInfo;
+            }
+        }
+
+        return step;
     } // (method)
-    
+
+    /**
+     * Uses the handle prepared with the reflection data when available, otherwise plain reflection
+     * (e.g. public members of non-public classes).
+     */
+    private static Invoker toInvoker(MethodHandle handle, Member member) {
+        if (handle != null)
+            return new HandleInvoker(handle);
+        else
+            return new ReflectionInvoker(member);
+    } // (method)
+
+    /**
+     * Builds the REST path up to and including the given part (for error messages)
+     */
+    private static String restPath(String[] parts, int partNum) {
+        StringBuilder sb = new StringBuilder();
+        for (int a = 0; a <= partNum; a++)
+            sb.append('/').append(parts[a]);
+
+        return sb.toString();
+    } // (method)
+
     /**
      * A utility method to convert into the different maps types.
      * Servlettes use Map<String,String[]> whereas simple web servers might use Map<String,String>
@@ -401,4 +652,4 @@ public class REST {
         return newMap;
     } // (method)
 
-} // (class)
\ No newline at end of file
+} // (class)
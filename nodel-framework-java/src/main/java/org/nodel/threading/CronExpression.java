@@ -0,0 +1,174 @@
+package org.nodel.threading;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import org.joda.time.DateTime;
+
+/**
+ * A standard 5-field cron expression, i.e. 'minute hour day-of-month month day-of-week', each field being
+ * '*', a value, a range ('a-b'), a list ('a,b') or any of these with a step ('* /15', '0-30/5', without the space).
+ * Day-of-week is 0-7 (0 and 7 being Sunday). As with most crons, when both day fields are restricted either
+ * one matching is enough.
+ */
+public class CronExpression {
+
+    /**
+     * Occurrences further away than this are not searched for.
+     */
+    private final static int MAX_YEARS = 8;
+
+    private String _expression;
+
+    private long _minutes;
+
+    private int _hours;
+
+    private int _daysOfMonth;
+
+    private int _months;
+
+    private int _daysOfWeek;
+
+    private boolean _anyDayOfMonth;
+
+    private boolean _anyDayOfWeek;
+
+    public CronExpression(String expression) {
+        if (expression == null)
+            throw new IllegalArgumentException("No cron expression was given.");
+
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5)
+            throw new IllegalArgumentException("A cron expression needs 5 fields (minute hour day-of-month month day-of-week) - '" + expression + "'");
+
+        _expression = expression.trim();
+
+        _minutes = parseField(fields[0], 0, 59);
+        _hours = (int) parseField(fields[1], 0, 23);
+        _daysOfMonth = (int) parseField(fields[2], 1, 31);
+        _months = (int) parseField(fields[3], 1, 12);
+
+        _daysOfWeek = (int) parseField(fields[4], 0, 7);
+        // (7 is also Sunday)
+        if ((_daysOfWeek & (1 << 7)) != 0)
+            _daysOfWeek = (_daysOfWeek | 1) & ~(1 << 7);
+
+        _anyDayOfMonth = fields[2].startsWith("*");
+        _anyDayOfWeek = fields[4].startsWith("*");
+    }
+
+    /**
+     * The next time (on the minute) strictly after the given one.
+     * @return null if there is none (e.g. '0 0 31 2 *')
+     */
+    public DateTime nextAfter(DateTime after) {
+        DateTime time = after.withSecondOfMinute(0).withMillisOfSecond(0).plusMinutes(1);
+
+        DateTime limit = after.plusYears(MAX_YEARS);
+
+        while (time.isBefore(limit)) {
+            if ((_months & (1 << time.getMonthOfYear())) == 0) {
+                time = time.withDayOfMonth(1).withTimeAtStartOfDay().plusMonths(1);
+                continue;
+            }
+
+            if (!matchesDay(time)) {
+                time = time.withTimeAtStartOfDay().plusDays(1);
+                continue;
+            }
+
+            if ((_hours & (1 << time.getHourOfDay())) == 0) {
+                time = time.withMinuteOfHour(0).plusHours(1);
+                continue;
+            }
+
+            if ((_minutes & (1L << time.getMinuteOfHour())) == 0) {
+                time = time.plusMinutes(1);
+                continue;
+            }
+
+            return time;
+        } // (while)
+
+        return null;
+    } // (method)
+
+    private boolean matchesDay(DateTime time) {
+        boolean dayOfMonth = (_daysOfMonth & (1 << time.getDayOfMonth())) != 0;
+
+        // (Joda uses 1-7, Monday to Sunday)
+        boolean dayOfWeek = (_daysOfWeek & (1 << (time.getDayOfWeek() % 7))) != 0;
+
+        if (_anyDayOfMonth || _anyDayOfWeek)
+            return dayOfMonth && dayOfWeek;
+        else
+            return dayOfMonth || dayOfWeek;
+    } // (method)
+
+    /**
+     * Parses a field into a bit-set of its values.
+     */
+    private static long parseField(String field, int min, int max) {
+        long bits = 0;
+
+        for (String part : field.split(",")) {
+            int step = 1;
+
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseValue(part.substring(slash + 1), 1, max, field);
+                part = part.substring(0, slash);
+            }
+
+            int from, to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+
+            } else {
+                int dash = part.indexOf('-');
+                if (dash >= 0) {
+                    from = parseValue(part.substring(0, dash), min, max, field);
+                    to = parseValue(part.substring(dash + 1), min, max, field);
+                } else {
+                    from = parseValue(part, min, max, field);
+
+                    // ('a/n' means from 'a' to the end)
+                    to = slash >= 0 ? max : from;
+                }
+
+                if (from > to)
+                    throw new IllegalArgumentException("Bad range in cron field '" + field + "'");
+            }
+
+            for (int value = from; value <= to; value += step)
+                bits |= 1L << value;
+        } // (for)
+
+        return bits;
+    } // (method)
+
+    private static int parseValue(String value, int min, int max, String field) {
+        int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException exc) {
+            throw new IllegalArgumentException("Bad value in cron field '" + field + "'");
+        }
+
+        if (result < min || result > max)
+            throw new IllegalArgumentException("Value out of range (" + min + "-" + max + ") in cron field '" + field + "'");
+
+        return result;
+    } // (method)
+
+    @Override
+    public String toString() {
+        return _expression;
+    }
+
+} // (class)
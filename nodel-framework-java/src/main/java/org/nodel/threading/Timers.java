@@ -98,7 +98,7 @@ public class Timers {
      * A one-off timer whose task could be blocking so thread-pool can be used.
      */
     public TimerTask schedule(ThreadPool threadPool, TimerTask task, int delay) {
-        sharedTimer().schedule(createWrapper(task, null), delay);
+        sharedTimer().schedule(createWrapper(task, threadPool), delay);
         
         return task;        
     } // (method)
@@ -0,0 +1,118 @@
+package org.nodel.io;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * 'writeFullyAtomically' must only ever expose the old or new contents and never leave temporary files behind.
+ */
+public class StreamTest {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Test
+    public void writesANewFile() throws IOException {
+        File file = new File(_folder.getRoot(), "config.json");
+
+        Stream.writeFullyAtomically(file, "caf\u00e9 \u2603");
+
+        assertEquals("caf\u00e9 \u2603", Stream.readFully(file));
+        assertArrayEquals(new String[] { "config.json" }, _folder.getRoot().list());
+    }
+
+    @Test
+    public void replacesAnExistingFile() throws IOException {
+        File file = new File(_folder.getRoot(), "config.json");
+
+        Stream.writeFullyAtomically(file, "a much longer first version");
+        Stream.writeFullyAtomically(file, "second");
+
+        assertEquals("second", Stream.readFully(file));
+        assertArrayEquals(new String[] { "config.json" }, _folder.getRoot().list());
+    }
+
+    @Test
+    public void failureLeavesTheTargetAndNoTemporaryFile() throws IOException {
+        // (a non-empty directory cannot be replaced)
+        File target = _folder.newFolder("config.json");
+        File inside = new File(target, "keep");
+        Stream.writeFullyAtomically(inside, "kept");
+
+        try {
+            Stream.writeFullyAtomically(target, "lost");
+            fail("Expected an IOException.");
+        } catch (IOException exc) {
+            // (expected)
+        }
+
+        assertTrue(target.isDirectory());
+        assertEquals("kept", Stream.readFully(inside));
+        assertArrayEquals(new String[] { "config.json" }, _folder.getRoot().list());
+    }
+
+    @Test
+    public void readersNeverSeeAPartialWrite() throws Exception {
+        final File file = new File(_folder.getRoot(), "config.json");
+
+        final String[] versions = { repeat('a', 256 * 1024), repeat('b', 64 * 1024) };
+        Stream.writeFullyAtomically(file, versions[0]);
+
+        final AtomicReference<String> torn = new AtomicReference<String>();
+
+        Thread reader = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.interrupted()) {
+                        String content = Stream.readFully(file);
+                        if (!content.equals(versions[0]) && !content.equals(versions[1])) {
+                            torn.set(content.length() + " chars");
+                            return;
+                        }
+                    }
+                } catch (IOException exc) {
+                    torn.set(exc.toString());
+                }
+            }
+
+        });
+        reader.start();
+
+        for (int a = 0; a < 200; a++)
+            Stream.writeFullyAtomically(file, versions[a % 2]);
+
+        reader.interrupt();
+        reader.join();
+
+        assertNull(torn.get());
+        assertArrayEquals(new String[] { "config.json" }, _folder.getRoot().list());
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+
+        return new String(chars);
+    }
+
+}
@@ -0,0 +1,159 @@
+package org.nodel.io;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nodel.Handler;
+
+public class WriteBehindFileTest {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    /**
+     * The number of times any content was produced.
+     */
+    private AtomicInteger _calls = new AtomicInteger();
+
+    /**
+     * (modified times, as passed to the written handler)
+     */
+    private BlockingQueue<Long> _written = new LinkedBlockingQueue<Long>();
+
+    private BlockingQueue<Exception> _failed = new LinkedBlockingQueue<Exception>();
+
+    @Test
+    public void burstsOfSavesAreCoalesced() throws Exception {
+        File file = new File(_folder.getRoot(), "config.json");
+        WriteBehindFile writer = newWriter(file, 300);
+
+        for (int a = 0; a < 100; a++)
+            writer.save(content("version " + a));
+
+        long modified = _written.poll(10, TimeUnit.SECONDS);
+
+        assertEquals("version 99", Stream.readFully(file));
+        assertEquals(file.lastModified(), modified);
+
+        // (only the latest content is ever produced, and only once)
+        assertEquals(1, _calls.get());
+        assertTrue(_written.poll(600, TimeUnit.MILLISECONDS) == null);
+    }
+
+    @Test
+    public void laterSavesAreWrittenAgain() throws Exception {
+        File file = new File(_folder.getRoot(), "config.json");
+        WriteBehindFile writer = newWriter(file, 50);
+
+        writer.save(content("first"));
+        _written.poll(10, TimeUnit.SECONDS);
+
+        writer.save(content("second"));
+        _written.poll(10, TimeUnit.SECONDS);
+
+        assertEquals("second", Stream.readFully(file));
+        assertEquals(2, _calls.get());
+    }
+
+    @Test
+    public void flushWritesImmediately() throws Exception {
+        File file = new File(_folder.getRoot(), "config.json");
+        WriteBehindFile writer = newWriter(file, 60000);
+
+        writer.save(content("flushed"));
+        writer.flush();
+
+        assertEquals("flushed", Stream.readFully(file));
+        assertEquals(1, _written.size());
+
+        // (nothing pending)
+        writer.flush();
+        assertEquals(1, _calls.get());
+    }
+
+    @Test
+    public void failuresAreReported() throws Exception {
+        File file = new File(new File(_folder.getRoot(), "missing"), "config.json");
+        WriteBehindFile writer = newWriter(file, 60000);
+
+        writer.save(content("lost"));
+        writer.flush();
+
+        assertEquals(1, _failed.size());
+        assertTrue(_written.isEmpty());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void contentFailuresAreReported() throws Exception {
+        File file = new File(_folder.getRoot(), "config.json");
+        WriteBehindFile writer = newWriter(file, 60000);
+
+        writer.save(new Callable<String>() {
+
+            @Override
+            public String call() throws Exception {
+                throw new IllegalStateException("not serialisable");
+            }
+
+        });
+        writer.flush();
+
+        assertEquals("not serialisable", _failed.poll().getMessage());
+        assertTrue(_written.isEmpty());
+        assertFalse(file.exists());
+    }
+
+    private WriteBehindFile newWriter(File file, int delay) {
+        WriteBehindFile writer = new WriteBehindFile(file, delay);
+
+        writer.setWrittenHandler(new Handler.H1<Long>() {
+
+            @Override
+            public void handle(Long modified) {
+                _written.add(modified);
+            }
+
+        });
+        writer.setFailedHandler(new Handler.H1<Exception>() {
+
+            @Override
+            public void handle(Exception exc) {
+                _failed.add(exc);
+            }
+
+        });
+
+        return writer;
+    }
+
+    private Callable<String> content(final String value) {
+        return new Callable<String>() {
+
+            @Override
+            public String call() throws Exception {
+                _calls.incrementAndGet();
+                return value;
+            }
+
+        };
+    }
+
+}
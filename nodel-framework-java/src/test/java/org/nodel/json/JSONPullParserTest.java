@@ -0,0 +1,138 @@
+package org.nodel.json;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+import org.nodel.json.JSONPullParser.Token;
+
+/**
+ * The pull parser must read the same values as the tree parser (JSONTokener) and reject the same input.
+ */
+public class JSONPullParserTest {
+
+    private final static String[] VALID = {
+        "{}", "[]", "0", "-1.5e3", "true", "null", "\"\"",
+        "{\"a\": 1, \"b\": [1, 2.5, \"x\"], \"c\": {\"d\": null, \"e\": false}}",
+        "[\"\\u00e9\\n\\t\\\"\\\\\\/\", \"caf\u00e9 \u2603\", 9223372036854775807, 12345678901234567890]",
+        "\r\n  [ 1 ,\n 2 ]  ",
+        "[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[1]]]]]]]]]]]]]]]]]]]]]]]]]]]]]]]]]]]]]]]]",
+
+        // relaxed forms
+        "{a: 1, 'b': 'two', c = 3; d => 4,}", "[1,,2,]", "[unquoted, words]",
+    };
+
+    private final static String[] MALFORMED = {
+        "", "{", "[1, 2", "{\"a\" 1}", "{\"a\": 1 \"b\": 2}", "\"unterminated", "\"bad \\q escape\"",
+        "\"bad \\u12\"", "{\"a\":}", "}", "\"line\nbreak\"", "{\"a\": 1, \"a\": 2}",
+    };
+
+    @Test
+    public void readsTheSameValuesAsTheTreeParser() throws JSONException {
+        for (String text : VALID) {
+            String expected = String.valueOf(new JSONTokener(text).nextValue());
+
+            assertEquals("(String) " + text, expected, readWhole(new JSONPullParser(text)));
+            assertEquals("(Reader) " + text, expected, readWhole(new JSONPullParser(new StringReader(text))));
+        }
+    }
+
+    @Test
+    public void rejectsWhatTheTreeParserRejects() {
+        for (String text : MALFORMED) {
+            try {
+                new JSONTokener(text).nextValue();
+                fail("(corpus) tree parser accepted " + text);
+            } catch (JSONException exc) {
+                // expected
+            }
+
+            for (JSONPullParser parser : new JSONPullParser[] { new JSONPullParser(text), new JSONPullParser(new StringReader(text)) }) {
+                try {
+                    readWhole(parser);
+                    fail("accepted " + text);
+                } catch (JSONException exc) {
+                    // expected
+                }
+            }
+        }
+    }
+
+    @Test
+    public void valuesSpanningTheStreamBuffer() throws JSONException {
+        StringBuilder sb = new StringBuilder("{\"items\": [");
+        for (int a = 0; a < 5000; a++) {
+            if (a > 0)
+                sb.append(", ");
+            sb.append("{\"id\": ").append(a).append(", \"name\": \"item \\u00e9 ").append(a).append("\"}");
+        }
+        sb.append("], \"long\": \"");
+        for (int a = 0; a < 20000; a++)
+            sb.append((char) ('a' + a % 26));
+        sb.append("\"}");
+
+        String text = sb.toString();
+        assertTrue(text.length() > 8192 * 4);
+
+        assertEquals(new JSONObject(text).toString(), readWhole(new JSONPullParser(new StringReader(text))));
+    }
+
+    @Test
+    public void tokens() throws JSONException {
+        JSONPullParser parser = new JSONPullParser("{\"a\": [1, \"x\"], \"b\": {}}");
+
+        assertEquals(Token.StartObject, parser.next());
+        assertEquals(Token.Key, parser.next());
+        assertEquals("a", parser.getKey());
+        assertEquals(Token.StartArray, parser.next());
+        assertEquals(Token.Value, parser.next());
+        assertEquals(1, parser.getValue());
+        assertEquals(Token.Value, parser.next());
+        assertEquals("x", parser.getValue());
+        assertEquals(Token.EndArray, parser.next());
+        assertEquals(Token.Key, parser.next());
+        assertEquals("b", parser.getKey());
+        assertEquals(Token.StartObject, parser.next());
+        assertEquals(Token.EndObject, parser.next());
+        assertEquals(Token.EndObject, parser.next());
+        assertEquals(Token.End, parser.next());
+    }
+
+    @Test
+    public void skipsValues() throws JSONException {
+        JSONPullParser parser = new JSONPullParser("{\"skip\": {\"a\": [1, {\"b\": [2]}]}, \"keep\": 3}");
+
+        assertEquals(Token.StartObject, parser.next());
+        assertEquals(Token.Key, parser.next());
+        assertEquals(Token.StartObject, parser.next());
+        parser.skipValue();
+
+        assertEquals(Token.Key, parser.next());
+        assertEquals("keep", parser.getKey());
+        assertEquals(Token.Value, parser.next());
+        assertEquals(3, parser.getValue());
+    }
+
+    /**
+     * Reads the whole top-level value (as text), which must be all there is.
+     */
+    private static String readWhole(JSONPullParser parser) throws JSONException {
+        parser.next();
+
+        Object value = parser.readValue();
+
+        assertEquals(Token.End, parser.next());
+
+        return String.valueOf(value);
+    }
+
+} // (class)
@@ -0,0 +1,162 @@
+package org.nodel.json;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+/**
+ * The in-memory (String and char[]) fast paths must behave exactly like the Reader path.
+ */
+public class JSONTokenerTest {
+
+    private final static String[] CORPUS = {
+        // valid
+        "{}", "[]", "0", "-1.5e3", "true", "null", "\"\"",
+        "{\"a\": 1, \"b\": [1, 2.5, \"x\"], \"c\": {\"d\": null, \"e\": false}}",
+        "[\"\\u00e9\\n\\t\\\"\\\\\\/\", \"caf\u00e9 \u2603\", 9223372036854775807, 12345678901234567890]",
+        "\r\n  [ 1 ,\n 2 ]  ",
+
+        // relaxed forms the tokener has always accepted
+        "{a: 1, 'b': 'two', c = 3; d => 4,}", "[1,,2,]", "[unquoted, words]", "// comment\n[1]",
+        "/* block */ {\"x\": 0x1F}", "# hash\n[true]",
+
+        // malformed
+        "", "{", "[1, 2", "{\"a\" 1}", "{\"a\": 1 \"b\": 2}", "\"unterminated", "\"bad \\q escape\"",
+        "\"bad \\u12\"", "[1] trailing", "{\"a\":}", "/* open", "}", "\"line\nbreak\"",
+    };
+
+    @Test
+    public void inMemoryPathsMatchTheReaderPath() {
+        for (String text : CORPUS) {
+            String expected = parse(new JSONTokener(new StringReader(text)));
+
+            assertEquals("(String) " + text, expected, parse(new JSONTokener(text)));
+            assertEquals("(char[]) " + text, expected, parse(new JSONTokener(text.toCharArray())));
+        }
+    }
+
+    @Test
+    public void tokenerPrimitivesMatchTheReaderPath() throws JSONException {
+        String text = "abc,def;ghi\njkl\"quoted \\\" string\" tail";
+
+        JSONTokener fast = new JSONTokener(text);
+        JSONTokener slow = new JSONTokener(new StringReader(text));
+
+        assertEquals(slow.nextTo(','), fast.nextTo(','));
+        assertEquals(slow.next(), fast.next());
+        assertEquals(slow.nextTo(";\n"), fast.nextTo(";\n"));
+        assertEquals(slow.next(2), fast.next(2));
+        assertEquals(slow.skipTo('"'), fast.skipTo('"'));
+        assertEquals(slow.next(), fast.next());
+        assertEquals(slow.nextString('"'), fast.nextString('"'));
+        assertEquals(slow.nextClean(), fast.nextClean());
+        assertEquals(slow.toString(), fast.toString());
+        assertEquals(slow.more(), fast.more());
+    }
+
+    @Test
+    public void quoteEscapes() {
+        assertEquals("\"\"", JSONObject.quote(""));
+        assertEquals("\"\"", JSONObject.quote(null));
+        assertEquals("\"plain\"", JSONObject.quote("plain"));
+        assertEquals("\"a\\\"b\\\\c\"", JSONObject.quote("a\"b\\c"));
+        assertEquals("\"\\b\\t\\n\\f\\r\"", JSONObject.quote("\b\t\n\f\r"));
+        assertEquals("\"\\u0001\\u001f\"", JSONObject.quote("\u0001\u001f"));
+        assertEquals("\"<\\/script> a/b\"", JSONObject.quote("</script> a/b"));
+        assertEquals("\"\\u0085\\u2028 caf\u00e9 \u2603\"", JSONObject.quote("\u0085\u2028 caf\u00e9 \u2603"));
+
+        // escaping runs that start and end mid-string
+        assertEquals("\"ab\\ncd\\nef\"", JSONObject.quote("ab\ncd\nef"));
+    }
+
+    @Test
+    public void quotedStringsRoundTrip() throws JSONException {
+        String original = "\u0000\u0001 \"</\" \\ \u0085 \u2028 \uffff tail";
+
+        assertEquals(original, new JSONTokener(JSONObject.quote(original)).nextValue());
+    }
+
+    @Test
+    public void stringToValue() {
+        assertEquals("", JSONObject.stringToValue(""));
+        assertEquals(Boolean.TRUE, JSONObject.stringToValue("TRUE"));
+        assertEquals(Boolean.FALSE, JSONObject.stringToValue("false"));
+        assertSame(JSONObject.NULL, JSONObject.stringToValue("null"));
+        assertEquals(Integer.valueOf(-42), JSONObject.stringToValue("-42"));
+        assertEquals(Long.valueOf(4294967296L), JSONObject.stringToValue("4294967296"));
+        assertEquals(Double.valueOf(1.5), JSONObject.stringToValue("1.5"));
+        assertEquals(Double.valueOf(2000), JSONObject.stringToValue("2e3"));
+        assertEquals("12345678901234567890", JSONObject.stringToValue("12345678901234567890"));
+        assertEquals("1e999", JSONObject.stringToValue("1e999"));
+        assertEquals("-", JSONObject.stringToValue("-"));
+        assertEquals("word", JSONObject.stringToValue("word"));
+    }
+
+    @Test
+    public void writersProduceTheSameText() throws JSONException {
+        JSONObject object = new JSONObject("{\"a\": [1, {\"b\": \"c\\n\"}], \"d\": \"</e>\", \"f\": null}");
+
+        assertEquals(object.toString(), new JSONObject(object.toString()).toString());
+        assertEquals(object.toString(2), new JSONObject(object.toString(2)).toString(2));
+
+        JSONArray array = new JSONArray("[1, [2, [3]], {}]");
+        assertEquals("[1,[2,[3]],{}]", array.toString());
+        assertEquals("[\n  1,\n  [\n    2,\n    [3]\n  ],\n  {}\n]", array.toString(2));
+    }
+
+    @Test
+    public void stringWriter() throws IOException {
+        JSONStringWriter writer = new JSONStringWriter();
+
+        writer.write('[');
+        writer.write("abc");
+        writer.write("xdefx", 1, 3);
+        writer.write(new char[] { 'y', 'g', 'h', 'y' }, 1, 2);
+        writer.append("ij").append(']');
+
+        assertEquals("[abcdefghij]", writer.toString());
+    }
+
+    @Test
+    public void keysArePooled() throws JSONException {
+        JSONObject first = new JSONObject(new JSONTokener("{\"pooledKey\": 1}"));
+        JSONObject second = new JSONObject(new JSONTokener(new StringReader("{\"pooledKey\": 2}")));
+
+        assertSame(onlyKey(first), onlyKey(second));
+    }
+
+    /**
+     * The parsed value (as text) or the error message.
+     */
+    private static String parse(JSONTokener tokener) {
+        try {
+            Object value = tokener.nextValue();
+
+            // (pick up anything trailing, as the callers do)
+            char trailing = tokener.nextClean();
+
+            return value + (trailing == 0 ? "" : " then " + trailing);
+
+        } catch (JSONException exc) {
+            return "error: " + exc.getMessage();
+        }
+    }
+
+    private static String onlyKey(JSONObject object) {
+        Iterator<?> keys = object.keys();
+
+        return (String) keys.next();
+    }
+
+} // (class)
@@ -0,0 +1,102 @@
+package org.nodel.logging;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesHaveTheirOwnBuckets() {
+        for (long value = 0; value < 128; value++) {
+            assertEquals(value, LatencyHistogram.indexFor(value));
+            assertEquals(value, LatencyHistogram.lowestValueAt((int) value));
+        }
+    }
+
+    @Test
+    public void bucketsCoverValuesWithBoundedError() {
+        for (long value = 128; value < 3600L * 1000000000L; value = value * 3 / 2 + 7) {
+            int index = LatencyHistogram.indexFor(value);
+
+            long lowest = LatencyHistogram.lowestValueAt(index);
+            long next = LatencyHistogram.lowestValueAt(index + 1);
+
+            assertTrue("bucket for " + value + " starts at " + lowest, lowest <= value);
+            assertTrue("bucket for " + value + " ends at " + next, value < next);
+
+            // (the bucket width sets the relative error)
+            assertTrue("bucket for " + value + " is too wide", (next - lowest) / (double) lowest < 0.02);
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        for (int index = 1; index < LatencyHistogram.indexFor(3600L * 1000000000L); index++)
+            assertEquals(index, LatencyHistogram.indexFor(LatencyHistogram.lowestValueAt(index)));
+    }
+
+    @Test
+    public void percentilesOfUniformRecordings() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // 1 to 10000 microseconds
+        for (long micros = 1; micros <= 10000; micros++)
+            histogram.record(micros * 1000);
+
+        LatencyHistogram.Summary summary = histogram.getSummary();
+
+        assertEquals(10000, summary.count);
+        assertEquals(10000, histogram.getMeasurement());
+        assertWithin(5000, summary.mean, 0.02);
+        assertWithin(5000, summary.p50, 0.02);
+        assertWithin(9000, summary.p90, 0.02);
+        assertWithin(9900, summary.p99, 0.02);
+        assertWithin(9990, summary.p999, 0.02);
+        assertWithin(10000, summary.max, 0.02);
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        LatencyHistogram.Summary summary = histogram.getSummary();
+
+        assertEquals(2, summary.count);
+        assertWithin(3600L * 1000000, summary.max, 0.02);
+    }
+
+    @Test
+    public void intervalsOnlyIncludeNewRecordings() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int a = 0; a < 100; a++)
+            histogram.record(1000000);
+
+        assertEquals(100, histogram.takeInterval().count);
+
+        for (int a = 0; a < 10; a++)
+            histogram.record(5000000);
+
+        LatencyHistogram.Summary interval = histogram.takeInterval();
+        assertEquals(10, interval.count);
+        assertWithin(5000, interval.p50, 0.02);
+
+        assertEquals(0, histogram.takeInterval().count);
+        assertEquals(110, histogram.getSummary().count);
+    }
+
+    private static void assertWithin(long expected, long actual, double relativeError) {
+        assertTrue("expected " + expected + " but was " + actual, Math.abs(actual - expected) <= expected * relativeError);
+    }
+
+}
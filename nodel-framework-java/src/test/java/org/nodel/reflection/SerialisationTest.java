@@ -0,0 +1,120 @@
+package org.nodel.reflection;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.nodel.json.JSONException;
+import org.nodel.json.JSONObject;
+
+/**
+ * Binding straight from the pull parser's tokens must give the same results as coercing a JSON tree.
+ */
+public class SerialisationTest {
+
+    public static class Item {
+
+        @Value(name = "id")
+        public int id;
+
+        @Value(name = "name")
+        public String name;
+
+    } // (class)
+
+    public static class Payload {
+
+        @Value(name = "name")
+        public String name;
+
+        @Value(name = "count")
+        public long count;
+
+        @Value(name = "ratio")
+        public Double ratio;
+
+        @Value(name = "flags")
+        public boolean[] flags;
+
+        @Value(name = "items")
+        public Item[] items;
+
+        @Value(name = "tags", genericClassA = String.class)
+        public List<String> tags;
+
+        @Value(name = "limits", genericClassA = String.class, genericClassB = Integer.class)
+        public Map<String, Integer> limits;
+
+        @Value(name = "nested")
+        public Item nested;
+
+        @Value(name = "any")
+        public Object any;
+
+    } // (class)
+
+    private final static String PAYLOAD = "{\"name\": \"caf\u00e9\", \"count\": 12345678901, \"ratio\": 0.25, \"flags\": [true, false], " +
+            "\"items\": [{\"id\": 1, \"name\": \"one\"}, {\"id\": 2, \"unknown\": {\"deep\": [1, 2]}}], \"tags\": [\"a\", \"b\"], " +
+            "\"limits\": {\"x\": 1, \"y\": \"2\"}, \"nested\": {\"id\": 3}, \"any\": {\"k\": [1, \"v\"]}, \"ignored\": [{}, []]}";
+
+    @Test
+    public void streamedBindingMatchesTheTree() throws JSONException {
+        String expected = Serialisation.serialise(Serialisation.coerce(Payload.class, new JSONObject(PAYLOAD)));
+
+        assertEquals(expected, Serialisation.serialise(Serialisation.coerceFromJSON(Payload.class, PAYLOAD)));
+        assertEquals(expected, Serialisation.serialise(Serialisation.coerceFromJSON(Payload.class, new StringReader(PAYLOAD), null, null)));
+    }
+
+    @Test
+    public void streamedMapsMatchTheTree() throws JSONException {
+        String json = "{\"a\": 1, \"b\": [true, null], \"c\": {\"d\": \"e\"}}";
+
+        String expected = Serialisation.serialise(Serialisation.coerce(Map.class, new JSONObject(json)));
+
+        assertEquals(expected, Serialisation.serialise(Serialisation.coerceFromJSON(Map.class, json)));
+    }
+
+    @Test
+    public void duplicateKeysAreRejected() {
+        String[] duplicates = {
+            "{\"name\": \"a\", \"name\": \"b\"}",
+            "{\"ignored\": 1, \"ignored\": 2}",
+            "{\"limits\": {\"x\": 1, \"x\": 2}}",
+            "{\"any\": {\"k\": 1, \"k\": 2}}"
+        };
+
+        for (String json : duplicates) {
+            try {
+                Serialisation.coerceFromJSON(Payload.class, json);
+                fail("accepted " + json);
+            } catch (SerialisationException exc) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void malformedInputIsRejected() {
+        String[] malformed = { "", "[]", "{\"name\": }", "{\"items\": [{\"id\": 1}", "{\"count\": 1 \"name\": \"a\"}" };
+
+        for (String json : malformed) {
+            try {
+                Serialisation.coerceFromJSON(Payload.class, json);
+                fail("accepted " + json);
+            } catch (SerialisationException exc) {
+                // expected
+            }
+        }
+    }
+
+} // (class)
@@ -0,0 +1,103 @@
+package org.nodel.threading;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+public class CronExpressionTest {
+
+    /**
+     * (a Monday)
+     */
+    private final static DateTime START = new DateTime(2026, 10, 19, 13, 37, 12, 500, DateTimeZone.UTC);
+
+    @Test
+    public void everyMinute() {
+        assertNext("* * * * *", "2026-10-19 13:38", "2026-10-19 13:39", "2026-10-19 13:40");
+    }
+
+    @Test
+    public void steps() {
+        assertNext("*/15 * * * *", "2026-10-19 13:45", "2026-10-19 14:00", "2026-10-19 14:15");
+        assertNext("5/20 8-10 * * 0", "2026-10-25 08:05", "2026-10-25 08:25", "2026-10-25 08:45", "2026-10-25 09:05");
+        assertNext("0-30/10 14 * * *", "2026-10-19 14:00", "2026-10-19 14:10", "2026-10-19 14:20", "2026-10-19 14:30", "2026-10-20 14:00");
+    }
+
+    @Test
+    public void listsAndRanges() {
+        assertNext("0 9 * * 1-5", "2026-10-20 09:00", "2026-10-21 09:00", "2026-10-22 09:00", "2026-10-23 09:00", "2026-10-26 09:00");
+        assertNext("15,45 6,18 * * *", "2026-10-19 18:15", "2026-10-19 18:45", "2026-10-20 06:15");
+    }
+
+    @Test
+    public void monthsAndDaysOfMonth() {
+        assertNext("30 2 1 * *", "2026-11-01 02:30", "2026-12-01 02:30", "2027-01-01 02:30");
+        assertNext("0 0 29 2 *", "2028-02-29 00:00", "2032-02-29 00:00");
+        assertNext("0 0 31 * *", "2026-10-31 00:00", "2026-12-31 00:00", "2027-01-31 00:00");
+    }
+
+    @Test
+    public void sundayIsZeroOrSeven() {
+        assertNext("0 0 * * 0", "2026-10-25 00:00", "2026-11-01 00:00");
+        assertNext("0 0 * * 7", "2026-10-25 00:00", "2026-11-01 00:00");
+    }
+
+    @Test
+    public void eitherDayFieldMatches() {
+        // (the 13th or any Friday)
+        assertNext("0 12 13 * 5", "2026-10-23 12:00", "2026-10-30 12:00", "2026-11-06 12:00", "2026-11-13 12:00", "2026-11-20 12:00");
+    }
+
+    @Test
+    public void nextIsStrictlyAfter() {
+        DateTime onTheMinute = new DateTime(2026, 10, 19, 9, 0, 0, 0, DateTimeZone.UTC);
+
+        assertEquals(onTheMinute.plusDays(1), new CronExpression("0 9 * * *").nextAfter(onTheMinute));
+    }
+
+    @Test
+    public void impossibleDatesHaveNoOccurrence() {
+        assertNull(new CronExpression("0 0 31 2 *").nextAfter(START));
+        assertNull(new CronExpression("0 0 30 2 *").nextAfter(START));
+    }
+
+    @Test
+    public void badExpressionsAreRejected() {
+        String[] bad = { null, "", "* * *", "* * * * * *", "60 * * * *", "* 24 * * *", "* * 0 * *", "* * * 13 *", "* * * * 8",
+                         "a * * * *", "5-1 * * * *", "*/0 * * * *", "1,,2 * * * *" };
+
+        for (String expression : bad) {
+            try {
+                new CronExpression(expression);
+                fail("accepted '" + expression + "'");
+            } catch (IllegalArgumentException exc) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Checks successive occurrences from the start time ('yyyy-MM-dd HH:mm', UTC).
+     */
+    private static void assertNext(String expression, String... expected) {
+        CronExpression cron = new CronExpression(expression);
+
+        DateTime time = START;
+        for (String next : expected) {
+            time = cron.nextAfter(time);
+
+            assertEquals(expression, next, time == null ? null : time.toString("yyyy-MM-dd HH:mm"));
+        }
+    }
+
+} // (class)
@@ -39,9 +39,6 @@ import org.nodel.reflection.Schema;
 import org.nodel.reflection.Serialisation;
 import org.nodel.reflection.Value;
 import org.python.core.Py;
-import org.python.core.PyDictionary;
-import org.python.core.PyList;
-import org.python.core.PyNone;
 import org.python.core.PyObject;
 import org.python.core.adapter.PyObjectAdapter;
 import org.python.util.PythonInterpreter;
@@ -134,7 +131,7 @@ public class Launch {
         
         // only write out the schema file if it's different or never been written out
         if(bootstrapSchemaFileString == null || !bootstrapSchemaFileString.equals(schemaString)) {
-            Stream.writeFully(bootstrapSchemaFile, schemaString);
+            Stream.writeFullyAtomically(bootstrapSchemaFile, schemaString);
         }
         
         // dump the example config schema if it hasn't already been dumped
@@ -149,7 +146,7 @@ public class Launch {
         
         // only write out the schema file if it's different or never been written out
         if(exampleBootstrapFileString == null || !exampleBootstrapFileString.equals(exampleBootstrapString)) {
-            Stream.writeFully(exampleBootstrapFile, exampleBootstrapString);
+            Stream.writeFullyAtomically(exampleBootstrapFile, exampleBootstrapString);
         }        
         
         // now look for the bootstrap config itself
@@ -178,6 +175,11 @@ public class Launch {
         }
 
         initialisePython();
+        
+        if (_bootstrapConfig.getDisableModuleCache()) {
+            _logger.info("(module cache is disabled)");
+            ModuleCache.instance().setEnabled(false);
+        }
 
         _logger.info("Nodel [Jython] is starting... version=" + VERSION);
 
@@ -228,7 +230,16 @@ public class Launch {
                 Stream.writeFully(exampleLoggingConfigFile, Stream.readFully(is));
             } catch (Exception e) {
                 // ignore
-            }            
+            }
+
+            // and the asynchronous variant (for high logging rates)
+            try {
+                InputStream is = Launch.class.getResourceAsStream("log4j2_async.xml");
+                File exampleLoggingConfigFile = new File(_root, "loggingConfig (async example).xml");
+                Stream.writeFully(exampleLoggingConfigFile, Stream.readFully(is));
+            } catch (Exception e) {
+                // ignore
+            }
 
             // update the version stamp so extraction isn't done again
             Stream.writeFully(versionFile, VERSION);
@@ -417,78 +428,17 @@ public class Launch {
     private static void initialisePython() {
         PythonInterpreter.initialize(System.getProperties(), null, s_processArgs);
         
-        // JSONObject.NULL
-        Py.getAdapter().addPostClass(new PyObjectAdapter() {
-            
-            @Override
-            public boolean canAdapt(Object o) {
-                return JSONObject.NULL.equals(o);
-            }
-            
-            @Override
-            public PyObject adapt(Object o) {
-                return PyNone.TYPE;
-            }
-            
-        });
-        
-        // JSONArray
-        Py.getAdapter().addPostClass(new PyObjectAdapter() {
-            
-            @Override
-            public boolean canAdapt(Object o) {
-                return o instanceof JSONArray;
-            }
-
-            @Override
-            public PyObject adapt(Object o) {
-                JSONArray jsonArray = (JSONArray) o;
-
-                int len = jsonArray.length();
-                
-                PyList pyList = new PyList();
-
-                for (int a = 0; a < len; a++) {
-                    try {
-                        Object obj = jsonArray.get(a);
-                        pyList.append(Py.java2py(obj));
-                    } catch (JSONException e) {
-                        // should never get here, just add 'None'
-                        pyList.append(PyNone.TYPE);
-                    }
-                } // (for)
-
-                return pyList;
-            }
-            
-        });
-        
-        // JSONDict
+        // JSONObject, JSONArray and JSONObject.NULL (dispatched directly by the converter)
         Py.getAdapter().addPostClass(new PyObjectAdapter() {
             
             @Override
             public boolean canAdapt(Object o) {
-                return o instanceof JSONObject;
+                return o instanceof JSONObject || o instanceof JSONArray || JSONObject.NULL.equals(o);
             }
             
             @Override
             public PyObject adapt(Object o) {
-                JSONObject jsonObject = (JSONObject) o;
-
-                PyDictionary pyDictionary = new PyDictionary();
-
-                for (String key : jsonObject.keySet()) {
-                    Object value;
-                    try {
-                        value = jsonObject.get(key);
-                    } catch (JSONException e) {
-                        // should never get here, just add 'None'
-                        value = PyNone.TYPE;
-                    }
-                    pyDictionary.put(key, Py.java2py(value));
-                } // (for)
-
-                return pyDictionary;
+                return PyConverter.toPy(o);
             }
             
         });
@@ -0,0 +1,459 @@
+package org.nodel.jyhost;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nodel.core.Framework;
+import org.nodel.io.Stream;
+import org.nodel.logging.AtomicLongMeasurementProvider;
+import org.python.core.BytecodeLoader;
+import org.python.core.Py;
+import org.python.core.PyCode;
+import org.python.core.PyList;
+import org.python.core.PyModule;
+import org.python.core.PyObject;
+import org.python.core.PyRunnable;
+import org.python.core.PyString;
+import org.python.core.PySystemState;
+import org.python.core.imp;
+
+/**
+ * A host-wide cache of compiled Python modules so the same library (e.g. one bundled by a recipe and copied
+ * into many nodes) is compiled once instead of once per interpreter.
+ *
+ * Each interpreter gets its own 'Importer' (on 'sys.meta_path') which finds '.py' modules on the interpreter's
+ * own path exactly as usual but shares the bytecode by module name and source content. Module globals stay
+ * per interpreter.
+ *
+ * The bytecode is loaded as a class once per file, not once per module, because the generated class holds its
+ * code objects (and their file name, as seen in tracebacks) statically. A node that reloads its script reuses
+ * its classes.
+ *
+ * Modules in archives and on the classpath (i.e. the standard library within the Jython jar) are left to the
+ * normal import machinery.
+ */
+public class ModuleCache {
+
+    /**
+     * Entries beyond this are dropped (stale versions of edited modules) and recompiled as needed.
+     */
+    private final static int MAX_ENTRIES = 4000;
+
+    /**
+     * A single instance.
+     */
+    private static ModuleCache s_instance = new ModuleCache();
+
+    public static ModuleCache instance() {
+        return s_instance;
+    }
+
+    /**
+     * (diagnostics)
+     */
+    private static AtomicLong s_hits = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    private static AtomicLong s_compiles = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    private static AtomicLong s_modules = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    private static AtomicLong s_bytecodeSize = new AtomicLong();
+
+    /**
+     * (diagnostics)
+     */
+    static {
+        Framework.shared().registerCounter("module_cache_hits", new AtomicLongMeasurementProvider(s_hits), true);
+        Framework.shared().registerCounter("module_cache_compiles", new AtomicLongMeasurementProvider(s_compiles), true);
+        Framework.shared().registerCounter("module_cache_modules", new AtomicLongMeasurementProvider(s_modules), false);
+        Framework.shared().registerCounter("module_cache_bytecode_size", new AtomicLongMeasurementProvider(s_bytecodeSize), false);
+    }
+
+    /**
+     * (logging)
+     */
+    private Logger _logger = LogManager.getLogger(ModuleCache.class);
+
+    /**
+     * Whether interpreters should use the cache (see bootstrap config).
+     */
+    private volatile boolean _enabled = true;
+
+    /**
+     * Compiled code by module name and source digest.
+     */
+    private ConcurrentMap<String, CompiledModule> _modules = new ConcurrentHashMap<String, CompiledModule>();
+
+    /**
+     * The entry names of the archives on interpreter paths (for shadowing checks).
+     */
+    private ConcurrentMap<String, Set<String>> _archiveEntries = new ConcurrentHashMap<String, Set<String>>();
+
+    private ModuleCache() {
+    }
+
+    public boolean isEnabled() {
+        return _enabled;
+    }
+
+    public void setEnabled(boolean value) {
+        _enabled = value;
+    }
+
+    /**
+     * Installs a new importer into a system state (before any script is run).
+     * @return the importer (for its diagnostics) or null if the cache is disabled.
+     */
+    public Importer install(PySystemState pySystemState) {
+        if (!_enabled)
+            return null;
+
+        Importer importer = new Importer();
+        pySystemState.meta_path.append(Py.java2py(importer));
+
+        return importer;
+    } // (method)
+
+    /**
+     * Retrieves or compiles a module.
+     * (identical copies share the bytecode, see 'CompiledModule.newCode')
+     */
+    private CompiledModule getCode(String name, File file, boolean[] compiled) throws IOException {
+        byte[] source;
+        try (InputStream is = new FileInputStream(file)) {
+            source = Stream.readFullyIntoBuffer(is, file.length());
+        }
+
+        String key = name + ":" + digest(source);
+
+        CompiledModule module = _modules.get(key);
+        if (module != null) {
+            s_hits.incrementAndGet();
+            return module;
+        }
+
+        // (an interpreter racing to compile the same module is harmless, the first one in wins)
+        InputStream is = new ByteArrayInputStream(source);
+        byte[] bytecode = imp.compileSource(name, is, file.getPath(), file.lastModified());
+
+        s_compiles.incrementAndGet();
+        compiled[0] = true;
+
+        if (_modules.size() >= MAX_ENTRIES) {
+            _logger.info("Module cache is full ({} modules); clearing...", _modules.size());
+            _modules.clear();
+            s_modules.set(0);
+            s_bytecodeSize.set(0);
+        }
+
+        module = new CompiledModule(name, bytecode);
+
+        CompiledModule existing = _modules.putIfAbsent(key, module);
+        if (existing != null)
+            return existing;
+
+        s_modules.incrementAndGet();
+        s_bytecodeSize.addAndGet(bytecode.length);
+
+        return module;
+    } // (method)
+
+    /**
+     * Checks whether a (non-directory) path entry, e.g. 'jython.jar/Lib' or '__pyclasspath__/', could provide
+     * the given module, in which case the normal import machinery is left to deal with it.
+     */
+    private boolean mightProvide(PySystemState sys, String entry, String relativePath) {
+        if (entry.startsWith("__pyclasspath__")) {
+            // (the same loader as Jython's own '__pyclasspath__' importer; the 'syspath' loader would search the
+            // path itself and so find everything)
+            ClassLoader classLoader = sys.getClassLoader() != null ? sys.getClassLoader() : imp.getParentClassLoader();
+            String prefix = entry.substring("__pyclasspath__".length());
+            if (prefix.startsWith("/"))
+                prefix = prefix.substring(1);
+            if (prefix.length() > 0 && !prefix.endsWith("/"))
+                prefix = prefix + "/";
+
+            return classLoader != null && (classLoader.getResource(prefix + relativePath + ".py") != null ||
+                    classLoader.getResource(prefix + relativePath + "$py.class") != null ||
+                    classLoader.getResource(prefix + relativePath + "/__init__.py") != null ||
+                    classLoader.getResource(prefix + relativePath + "/__init__$py.class") != null);
+        }
+
+        // ('__classpath__' only provides Java packages)
+        if (entry.startsWith("__classpath__"))
+            return false;
+
+        // find the archive part, e.g. '.../jython.jar' of '.../jython.jar/Lib'
+        File archive = new File(entry);
+        String inner = "";
+        while (archive != null && !archive.isFile()) {
+            inner = archive.getName() + "/" + inner;
+            archive = archive.getParentFile();
+        }
+
+        if (archive == null)
+            return false;
+
+        Set<String> entries = getArchiveEntries(archive);
+
+        return entries.contains(inner + relativePath + ".py") ||
+                entries.contains(inner + relativePath + "$py.class") ||
+                entries.contains(inner + relativePath + "/__init__.py") ||
+                entries.contains(inner + relativePath + "/__init__$py.class");
+    } // (method)
+
+    private Set<String> getArchiveEntries(File archive) {
+        String key = archive.getAbsolutePath();
+
+        Set<String> entries = _archiveEntries.get(key);
+        if (entries != null)
+            return entries;
+
+        entries = new HashSet<String>();
+
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements())
+                entries.add(zipEntries.nextElement().getName());
+
+        } catch (IOException exc) {
+            // not an archive so cannot provide anything
+        }
+
+        Set<String> existing = _archiveEntries.putIfAbsent(key, entries);
+
+        return existing != null ? existing : entries;
+    } // (method)
+
+    private static String digest(byte[] data) {
+        try {
+            return new BigInteger(1, MessageDigest.getInstance("SHA-1").digest(data)).toString(16);
+        } catch (NoSuchAlgorithmException exc) {
+            throw new RuntimeException(exc);
+        }
+    } // (method)
+
+    /**
+     * A shared, compiled module.
+     */
+    private static class CompiledModule {
+
+        private String name;
+
+        private byte[] bytecode;
+
+        public final int size;
+
+        /**
+         * The loaded classes (each a 'PyRunnable') by file path.
+         */
+        private ConcurrentMap<String, Class<?>> classes = new ConcurrentHashMap<String, Class<?>>();
+
+        public CompiledModule(String name, byte[] bytecode) {
+            this.name = name;
+            this.bytecode = bytecode;
+            this.size = bytecode.length;
+        }
+
+        /**
+         * Creates the module's code for a particular file (which the generated class stamps into every code object
+         * it holds, e.g. 'co_filename').
+         */
+        public PyCode newCode(String filename) {
+            Class<?> klass = this.classes.get(filename);
+            if (klass == null) {
+                klass = BytecodeLoader.makeClass(this.name + "$py", this.bytecode);
+
+                Class<?> existing = this.classes.putIfAbsent(filename, klass);
+                if (existing != null)
+                    klass = existing;
+            }
+
+            try {
+                return ((PyRunnable) klass.getConstructor(String.class).newInstance(filename)).getMain();
+            } catch (Exception exc) {
+                throw Py.JavaError(exc);
+            }
+        } // (method)
+
+    } // (class)
+
+    /**
+     * A PEP 302 importer for a single interpreter (its methods are called by Jython's import machinery).
+     */
+    public class Importer {
+
+        // (diagnostics)
+
+        private AtomicLong _shared = new AtomicLong();
+
+        private AtomicLong _sharedSize = new AtomicLong();
+
+        private AtomicLong _compiled = new AtomicLong();
+
+        /**
+         * The number of modules using already compiled code.
+         */
+        public long getShared() {
+            return _shared.get();
+        }
+
+        /**
+         * The total bytecode size of the shared modules, i.e. compilation this interpreter was spared.
+         */
+        public long getSharedSize() {
+            return _sharedSize.get();
+        }
+
+        /**
+         * The number of modules this interpreter had to compile.
+         */
+        public long getCompiled() {
+            return _compiled.get();
+        }
+
+        /**
+         * (PEP 302)
+         */
+        public Object find_module(String fullname) {
+            return find_module(fullname, Py.None);
+        }
+
+        /**
+         * (PEP 302)
+         * @param path the package's '__path__' or None for top-level modules.
+         */
+        public Object find_module(String fullname, PyObject path) {
+            PySystemState sys = Py.getSystemState();
+
+            if (path == null || path == Py.None)
+                path = sys.path;
+
+            String name = fullname.substring(fullname.lastIndexOf('.') + 1);
+
+            int len = path.__len__();
+            for (int i = 0; i < len; i++) {
+                PyObject item = path.__getitem__(i);
+                if (!(item instanceof PyString))
+                    continue;
+
+                String entry = ((PyString) item).getString();
+
+                File dir = new File(entry.length() == 0 ? sys.getCurrentWorkingDir() : entry);
+                if (!dir.isAbsolute())
+                    dir = new File(sys.getCurrentWorkingDir(), entry);
+
+                if (!dir.isDirectory()) {
+                    if (mightProvide(sys, entry, name))
+                        return null;
+
+                    continue;
+                }
+
+                File packageDir = new File(dir, name);
+                File initFile = new File(packageDir, "__init__.py");
+                if (initFile.isFile())
+                    return new Loader(this, initFile, packageDir);
+
+                File moduleFile = new File(dir, name + ".py");
+                if (moduleFile.isFile())
+                    return new Loader(this, moduleFile, null);
+
+                // only compiled or native forms, so leave to the usual importers
+                if (new File(dir, name + "$py.class").isFile() || new File(packageDir, "__init__$py.class").isFile())
+                    return null;
+            } // (for)
+
+            return null;
+        } // (method)
+
+    } // (class)
+
+    /**
+     * A PEP 302 loader for a found module.
+     */
+    public class Loader {
+
+        private Importer _importer;
+
+        private File _file;
+
+        /**
+         * (null if not a package)
+         */
+        private File _packageDir;
+
+        private Loader(Importer importer, File file, File packageDir) {
+            _importer = importer;
+            _file = file;
+            _packageDir = packageDir;
+        }
+
+        /**
+         * (PEP 302)
+         */
+        public PyObject load_module(String fullname) throws IOException {
+            boolean[] compiled = new boolean[1];
+            CompiledModule compiledModule = getCode(fullname, _file, compiled);
+
+            if (compiled[0]) {
+                _importer._compiled.incrementAndGet();
+            } else {
+                _importer._shared.incrementAndGet();
+                _importer._sharedSize.addAndGet(compiledModule.size);
+            }
+
+            PySystemState sys = Py.getSystemState();
+
+            PyModule module = imp.addModule(fullname);
+            PyObject dict = module.__dict__;
+            dict.__setitem__("__file__", new PyString(_file.getPath()));
+            if (_packageDir != null)
+                dict.__setitem__("__path__", new PyList(new PyObject[] { new PyString(_packageDir.getPath()) }));
+
+            try {
+                Py.runCode(compiledModule.newCode(_file.getPath()), dict, dict);
+            } catch (RuntimeException exc) {
+                // (a failed import must not leave a half-initialised module)
+                sys.modules.__delitem__(fullname);
+                throw exc;
+            }
+
+            // (the module may have replaced itself)
+            return sys.modules.__finditem__(fullname);
+        } // (method)
+
+    } // (class)
+
+} // (class)
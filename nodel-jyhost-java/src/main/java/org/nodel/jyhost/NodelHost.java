@@ -199,7 +199,7 @@ public class NodelHost {
             
             // start all the new nodes
             for (Entry<SimpleName, File> entry : newFolders.entrySet()) {
-                _logger.info("Spinning up node " + entry.getKey() + "...");
+                _logger.info("Spinning up node {}...", entry.getKey());
                 
                 try {
                     PyNode node = new PyNode(entry.getValue());
@@ -211,7 +211,7 @@ public class NodelHost {
                     _nodeMap.put(entry.getKey(), node);
                     
                 } catch (Exception exc) {
-                    _logger.warn("Node creation failed; ignoring." + exc);
+                    _logger.warn("Node creation failed; ignoring. {}", exc);
                 }
             } // (for)
         }
@@ -9,13 +9,20 @@ package org.nodel.jyhost;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.UnknownServiceException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.LogManager;
@@ -28,6 +35,13 @@ import org.nodel.core.NodelClients.NodeURL;
 import org.nodel.discovery.AdvertisementInfo;
 import org.nodel.discovery.AutoDNS;
 import org.nodel.host.NanoHTTPD;
+import org.nodel.host.PushBuffer;
+import org.nodel.host.SnapshotCache;
+import org.nodel.host.SnapshotCache.Snapshot;
+import org.nodel.io.UTF8Charset;
+import org.nodel.json.JSONObject;
+import org.nodel.json.JSONString;
+import org.nodel.logging.LatencyHistogram;
 import org.nodel.logging.LogEntry;
 import org.nodel.logging.Logging;
 import org.nodel.reflection.Param;
@@ -37,6 +51,7 @@ import org.nodel.reflection.Service;
 import org.nodel.reflection.Value;
 import org.nodel.rest.EndpointNotFoundException;
 import org.nodel.rest.REST;
+import org.nodel.threading.ThreadPool;
 
 public class NodelHostHTTPD extends NanoHTTPD {
 
@@ -55,6 +70,18 @@ public class NodelHostHTTPD extends NanoHTTPD {
      */
     protected Logger _logger = LogManager.getLogger(this.getClass().getName() + "_" + _instance);
     
+    /**
+     * (diagnostics)
+     */
+    private static LatencyHistogram s_restLatency = new LatencyHistogram();
+    
+    /**
+     * (diagnostics)
+     */
+    static {
+        Framework.shared().registerHistogram("rest_latency", s_restLatency);
+    }
+    
     /**
      * The last user agent being used.
      */
@@ -136,7 +163,7 @@ public class NodelHostHTTPD extends NanoHTTPD {
      */
     @Override
     public Response serve(String uri, File root, String method, Properties params, Request request) {
-        _logger.debug("Serving '" + uri + "'...");
+        _logger.debug("Serving '{}'...", uri);
 
         // if REST being used, the target object
         Object restTarget = _restModel;
@@ -189,60 +216,468 @@ public class NodelHostHTTPD extends NanoHTTPD {
 			parts = newParts;
         }
 
+        // check if a push stream is being requested, e.g. '/nodes/name/stream/logs'
+        if (restTarget instanceof PyNode && parts.length == 2 && parts[0].equals("stream"))
+            return serveStream((PyNode) restTarget, parts[1], params, request.header);
+
+        // check if metrics are being scraped (host level only)
+        if (restTarget == _restModel && parts.length == 1 && parts[0].equals("metrics"))
+            return serveMetrics(request.header);
+
         // check if REST is being used
 		if (parts.length > 0 && parts[0].equals("REST")) {
-			// drop 'REST' part
-			int OFFSET = 1;
-			String[] newParts = new String[parts.length - OFFSET];
-			for (int a = OFFSET; a < parts.length; a++)
-				newParts[a - OFFSET] = parts[a];
-			
-			parts = newParts;
+			long startTime = System.nanoTime();
 
 			try {
-				Object target;
+				return serveREST(restTarget, parts, method, params, request);
+			} finally {
+				s_restLatency.recordSince(startTime);
+			}
+		} else {
+			// not a REST call, fall through to other handlers
+			return super.serve(uri, root, method, params, request);
+		}
+    } // (method)
+    
+    /**
+     * Serves the framework measurements in OpenMetrics text format (or the older Prometheus text format
+     * unless OpenMetrics is accepted), i.e. '/metrics'.
+     */
+    private Response serveMetrics(Properties header) {
+        String accept = header.getProperty("accept");
+        boolean openMetrics = accept != null && accept.contains("application/openmetrics-text");
 
-				if (method.equalsIgnoreCase("GET"))
-					target = REST.resolveRESTcall(restTarget, parts, params, null);
+        StringBuilder sb = new StringBuilder(8192);
+        Framework.shared().writeOpenMetrics(sb, openMetrics);
 
-				else if (method.equalsIgnoreCase("POST"))
-					target = REST.resolveRESTcall(restTarget, parts, params, request.raw);
+        String contentType = openMetrics ? "application/openmetrics-text; version=1.0.0; charset=utf-8" : "text/plain; version=0.0.4; charset=utf-8";
 
-				else
-					throw new UnknownServiceException("Unexpected method - '" + method + "'");
+        Response resp = new Response(HTTP_OK, contentType, sb.toString());
+        resp.addHeader("Cache-Control", "no-cache");
 
-				String targetAsJSON = Serialisation.serialise(target);
+        return resp;
+    } // (method)
+    
+    /**
+     * Serves a REST request, i.e. '/REST/...'.
+     */
+    private Response serveREST(Object restTarget, String[] parts, String method, Properties params, Request request) {
+		// drop 'REST' part
+		int OFFSET = 1;
+		String[] newParts = new String[parts.length - OFFSET];
+		for (int a = OFFSET; a < parts.length; a++)
+			newParts[a - OFFSET] = parts[a];
+		
+		parts = newParts;
 
-				// adjust the response headers for script compatibility
+		try {
+			Object target;
 
-				Response resp = new Response(HTTP_OK, "application/json; charset=utf-8", targetAsJSON);
-				resp.addHeader("Access-Control-Allow-Origin", "*");
+			// check for a batch of calls
+			if (parts.length == 1 && parts[0].equals("batch") && method.equalsIgnoreCase("POST"))
+				return serveBatch(restTarget, request.body);
 
-				return resp;
-				
-			} catch (EndpointNotFoundException exc) {
-				return prepareExceptionMessageResponse(HTTP_NOTFOUND, exc, false);
+			String snapshotKey;
 
-			} catch (FileNotFoundException exc) {
-				return prepareExceptionMessageResponse(HTTP_NOTFOUND, exc, false);
+			if (method.equalsIgnoreCase("GET") && restTarget instanceof PyNode && (snapshotKey = getSnapshotKey(parts, params)) != null)
+				return serveSnapshot((PyNode) restTarget, snapshotKey, parts, params, request.header);
 
-			} catch (SerialisationException exc) {
-				return prepareExceptionMessageResponse(HTTP_INTERNALERROR, exc, params.containsKey("trace"));
+			else if (method.equalsIgnoreCase("GET"))
+				target = REST.resolveRESTcall(restTarget, parts, params, null);
 
-			} catch (UnknownServiceException exc) {
-				return prepareExceptionMessageResponse(HTTP_INTERNALERROR, exc, false);
+			else if (method.equalsIgnoreCase("POST"))
+				target = REST.resolveRESTcall(restTarget, parts, params, request.body, true);
 
-			} catch (Exception exc) {
-				_logger.warn("Unexpected exception during REST operation.", exc);
+			else
+				throw new UnknownServiceException("Unexpected method - '" + method + "'");
 
-				return prepareExceptionMessageResponse(HTTP_INTERNALERROR, exc, params.contains("trace"));
-			}
-		} else {
-			// not a REST call, fall through to other handlers
-			return super.serve(uri, root, method, params, request);
+			String targetAsJSON = Serialisation.serialise(target);
+
+			// adjust the response headers for script compatibility
+
+			Response resp = new Response(HTTP_OK, "application/json; charset=utf-8", targetAsJSON);
+			resp.addHeader("Access-Control-Allow-Origin", "*");
+
+			return resp;
+			
+		} catch (EndpointNotFoundException exc) {
+			return prepareExceptionMessageResponse(HTTP_NOTFOUND, exc, false);
+
+		} catch (FileNotFoundException exc) {
+			return prepareExceptionMessageResponse(HTTP_NOTFOUND, exc, false);
+
+		} catch (SerialisationException exc) {
+			return prepareExceptionMessageResponse(HTTP_INTERNALERROR, exc, params.containsKey("trace"));
+
+		} catch (UnknownServiceException exc) {
+			return prepareExceptionMessageResponse(HTTP_INTERNALERROR, exc, false);
+
+		} catch (Exception exc) {
+			_logger.warn("Unexpected exception during REST operation.", exc);
+
+			return prepareExceptionMessageResponse(HTTP_INTERNALERROR, exc, params.contains("trace"));
 		}
     } // (method)
     
+    /**
+     * The node model endpoints that only change with the node's version.
+     */
+    private final static String[] VERSIONED_ENDPOINTS = { "actions", "events", "remote", "params", "local" };
+    
+    /**
+     * Returns the key of a snapshot-able REST request, i.e. the node itself, its actions, events, remote 
+     * bindings, params and their schemas (otherwise null).
+     * (package-private for tests)
+     */
+    static String getSnapshotKey(String[] parts, Properties params) {
+        // only the 'schema' parameter is allowed (and '_', the cache-buster some clients use)
+        for (Object name : params.keySet()) {
+            if (!name.equals("schema") && !name.equals("_"))
+                return null;
+        }
+        
+        boolean schema = params.containsKey("schema");
+        
+        if (parts.length > 2)
+            return null;
+        
+        if (parts.length >= 1) {
+            boolean versioned = false;
+            for (String endpoint : VERSIONED_ENDPOINTS) {
+                if (endpoint.equals(parts[0])) {
+                    versioned = true;
+                    break;
+                }
+            }
+            
+            if (!versioned)
+                return null;
+            
+            // 'local' values are live, only its schema isn't
+            if (parts[0].equals("local") && parts.length == 1)
+                return null;
+        }
+        
+        if (parts.length == 2 && !parts[1].equals("schema"))
+            return null;
+        
+        StringBuilder sb = new StringBuilder();
+        for (String part : parts)
+            sb.append('/').append(part);
+        
+        if (schema)
+            sb.append("?schema");
+        
+        return sb.toString();
+    } // (method)
+    
+    /**
+     * Serves a REST request from a snapshot that's current for the node's version (taking one if necessary),
+     * responding with 'Not Modified' if the client's entity tag is current.
+     */
+    private Response serveSnapshot(PyNode node, String key, String[] parts, Properties params, Properties header) throws Exception {
+        // (version must be read before anything is resolved)
+        long version = node.getVersion();
+        
+        SnapshotCache snapshots = node.getSnapshotCache();
+        String etag = snapshots.etagFor(version);
+        
+        Response resp;
+        
+        String ifNoneMatch = header.getProperty("if-none-match");
+        if (ifNoneMatch != null && isETagMatched(ifNoneMatch, etag)) {
+            resp = new Response(HTTP_NOTMODIFIED, "application/json; charset=utf-8", "");
+            
+        } else {
+            Snapshot snapshot = getSnapshot(node, key, version, parts, params);
+            
+            resp = new Response(HTTP_OK, "application/json; charset=utf-8", snapshot.data);
+        }
+        
+        // (weak because the content encoding may differ)
+        resp.addHeader("ETag", "W/" + etag);
+        resp.addHeader("Cache-Control", "no-cache");
+        resp.addHeader("Access-Control-Allow-Origin", "*");
+        
+        return resp;
+    } // (method)
+    
+    /**
+     * Returns the snapshot for a version, taking one if necessary.
+     * (package-private for tests)
+     */
+    static Snapshot getSnapshot(PyNode node, String key, long version, String[] parts, Properties params) throws Exception {
+        SnapshotCache snapshots = node.getSnapshotCache();
+        
+        Snapshot snapshot = snapshots.get(key, version);
+        if (snapshot == null)
+            snapshot = snapshots.put(key, version, Serialisation.serialise(REST.resolveRESTcall(node, parts, params, null)));
+        
+        return snapshot;
+    } // (method)
+    
+    /**
+     * The maximum number of calls in a batch.
+     */
+    private final static int MAX_BATCH_CALLS = 128;
+    
+    /**
+     * How long a batch waits for its calls, after which any unfinished ones are reported as timed out.
+     * (millis)
+     */
+    private final static long BATCH_TIMEOUT = 30000;
+    
+    /**
+     * For calls in a batch (so a hung call can't hold the HTTP worker indefinitely).
+     * (threading)
+     */
+    private static ThreadPool s_batchThreadPool = new ThreadPool("rest_batch", 8);
+    
+    /**
+     * A call within a batch.
+     */
+    public static class BatchCall {
+        
+        @Value(name = "method", title = "Method", desc = "'GET' (default) or 'POST'.")
+        public String method;
+        
+        @Value(name = "path", title = "Path", desc = "The REST path relative to the batch endpoint's, e.g. 'actions/Power/schema'.")
+        public String path;
+        
+        @Value(name = "params", title = "Params", desc = "The query string parameters.", genericClassA = String.class, genericClassB = String.class)
+        public Map<String, String> params;
+        
+        @Value(name = "body", title = "Body", desc = "The POST data (any JSON value).")
+        public Object body;
+        
+    } // (class)
+    
+    /**
+     * A batch of calls.
+     */
+    public static class BatchRequest {
+        
+        @Value(name = "parallel", title = "Parallel", desc = "Whether the calls can be made concurrently (otherwise in order).")
+        public boolean parallel;
+        
+        @Value(name = "calls", title = "Calls", desc = "The calls.", genericClassA = BatchCall.class)
+        public BatchCall[] calls;
+        
+    } // (class)
+    
+    /**
+     * The result of a call within a batch.
+     */
+    public class BatchResult {
+        
+        @Value(name = "path", title = "Path", order = 1)
+        public String path;
+        
+        @Value(name = "status", title = "Status", desc = "The equivalent HTTP status code.", order = 2)
+        public int status;
+        
+        @Value(name = "result", title = "Result", order = 3)
+        public Object result;
+        
+        @Value(name = "error", title = "Error", order = 4)
+        public ExceptionMessage error;
+        
+    } // (class)
+    
+    /**
+     * Already serialised JSON (e.g. from a snapshot).
+     */
+    private static class RawJSON implements JSONString {
+        
+        private String json;
+        
+        public RawJSON(String json) {
+            this.json = json;
+        }
+        
+        @Override
+        public String toJSONString() {
+            return this.json;
+        }
+        
+    } // (class)
+    
+    /**
+     * Resolves a batch of GET paths and / or POST calls in one request, returning the results in the 
+     * same order.
+     */
+    private Response serveBatch(final Object restTarget, InputStream body) throws Exception {
+        if (body == null)
+            throw new IllegalArgumentException("No batch calls were provided.");
+        
+        // (tokens are bound directly from the request body, see 'Serialisation')
+        BatchRequest batch = (BatchRequest) Serialisation.coerceFromJSON(BatchRequest.class, new InputStreamReader(body, UTF8Charset.instance()), null, null);
+        
+        final BatchCall[] calls = batch.calls != null ? batch.calls : new BatchCall[0];
+        if (calls.length > MAX_BATCH_CALLS)
+            throw new IllegalArgumentException("Too many calls in batch (max. " + MAX_BATCH_CALLS + ")");
+        
+        final AtomicReferenceArray<BatchResult> completed = new AtomicReferenceArray<BatchResult>(calls.length);
+        
+        final CountDownLatch latch = new CountDownLatch(calls.length);
+        
+        if (!batch.parallel || calls.length <= 1) {
+            // in order, on one thread
+            s_batchThreadPool.execute(new Runnable() {
+                
+                @Override
+                public void run() {
+                    for (int a = 0; a < calls.length; a++) {
+                        try {
+                            completed.set(a, processBatchCall(restTarget, calls[a]));
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                }
+                
+            });
+            
+        } else {
+            for (int a = 0; a < calls.length; a++) {
+                final int index = a;
+                
+                s_batchThreadPool.execute(new Runnable() {
+                    
+                    @Override
+                    public void run() {
+                        try {
+                            completed.set(index, processBatchCall(restTarget, calls[index]));
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                    
+                });
+            } // (for)
+        }
+        
+        latch.await(BATCH_TIMEOUT, TimeUnit.MILLISECONDS);
+        
+        BatchResult[] results = new BatchResult[calls.length];
+        for (int a = 0; a < calls.length; a++) {
+            results[a] = completed.get(a);
+            
+            if (results[a] == null) {
+                BatchResult result = new BatchResult();
+                result.path = calls[a].path;
+                result.status = 504;
+                result.error = prepareExceptionMessage(new TimeoutException("The call did not complete within " + (BATCH_TIMEOUT / 1000) + " seconds."), false);
+                
+                results[a] = result;
+            }
+        } // (for)
+        
+        Response resp = new Response(HTTP_OK, "application/json; charset=utf-8", Serialisation.serialise(results));
+        resp.addHeader("Access-Control-Allow-Origin", "*");
+        
+        return resp;
+    } // (method)
+    
+    /**
+     * Processes a call within a batch, capturing any error.
+     */
+    private BatchResult processBatchCall(Object restTarget, BatchCall call) {
+        BatchResult result = new BatchResult();
+        result.path = call.path;
+        
+        try {
+            String path = call.path != null ? call.path : "";
+            if (path.startsWith("/"))
+                path = path.substring(1);
+            
+            String[] parts = path.length() == 0 ? new String[0] : path.split("/");
+            
+            Properties params = new Properties();
+            if (call.params != null) {
+                for (Entry<String, String> entry : call.params.entrySet()) {
+                    if (entry.getValue() != null)
+                        params.setProperty(entry.getKey(), entry.getValue());
+                }
+            }
+            
+            String method = Strings.isNullOrEmpty(call.method) ? "GET" : call.method;
+            
+            String snapshotKey;
+            
+            if (method.equalsIgnoreCase("GET") && restTarget instanceof PyNode && (snapshotKey = getSnapshotKey(parts, params)) != null) {
+                PyNode node = (PyNode) restTarget;
+                result.result = new RawJSON(getSnapshot(node, snapshotKey, node.getVersion(), parts, params).data);
+                
+            } else if (method.equalsIgnoreCase("GET")) {
+                result.result = REST.resolveRESTcall(restTarget, parts, params, null);
+                
+            } else if (method.equalsIgnoreCase("POST")) {
+                byte[] buffer = null;
+                if (call.body != null && !JSONObject.NULL.equals(call.body))
+                    buffer = Serialisation.serialise(call.body).getBytes("UTF8");
+                
+                result.result = REST.resolveRESTcall(restTarget, parts, params, buffer);
+                
+            } else {
+                throw new UnknownServiceException("Unexpected method - '" + method + "'");
+            }
+            
+            result.status = 200;
+            
+        } catch (EndpointNotFoundException | FileNotFoundException exc) {
+            result.status = 404;
+            result.error = prepareExceptionMessage(exc, false);
+            
+        } catch (SerialisationException | UnknownServiceException exc) {
+            result.status = 500;
+            result.error = prepareExceptionMessage(exc, false);
+            
+        } catch (Exception exc) {
+            _logger.warn("Unexpected exception during batched REST operation.", exc);
+            
+            result.status = 500;
+            result.error = prepareExceptionMessage(exc, false);
+        }
+        
+        return result;
+    } // (method)
+    
+    /**
+     * Serves a node's 'logs' or 'console' as server-sent events, resuming from the 'Last-Event-ID' header 
+     * (on reconnect) or the 'from' parameter (the minimum sequence number) if given.
+     * (on the classic engine only a limited number of streams stay open, others behave like long-polls)
+     */
+    private Response serveStream(PyNode node, String name, Properties params, Properties header) {
+        PushBuffer pushBuffer;
+        if (name.equals("logs"))
+            pushBuffer = node.getLogsPushBuffer();
+        else if (name.equals("console"))
+            pushBuffer = node.getConsolePushBuffer();
+        else
+            return prepareNotFoundResponse(name, "Stream");
+
+        long from = -1;
+        try {
+            String lastEventID = header.getProperty("last-event-id");
+            String fromParam = params.getProperty("from");
+
+            if (!Strings.isNullOrEmpty(lastEventID))
+                from = Long.parseLong(lastEventID.trim()) + 1;
+            else if (!Strings.isNullOrEmpty(fromParam))
+                from = Long.parseLong(fromParam.trim());
+
+        } catch (NumberFormatException exc) {
+            // (ignore, live items only)
+        }
+
+        Response resp = new Response(HTTP_OK, "text/event-stream; charset=utf-8", pushBuffer.subscribe(from, !isNonBlocking()));
+        resp.addHeader("Cache-Control", "no-cache");
+        resp.addHeader("Access-Control-Allow-Origin", "*");
+
+        return resp;
+    } // (method)
+    
     /**
      * An exception message
      */
@@ -269,6 +704,16 @@ public class NodelHostHTTPD extends NanoHTTPD {
      * Prepares a neat exception tree for returning back to the HTTP client.
      */
     private Response prepareExceptionMessageResponse(String httpCode, Exception exc, boolean includeStackTrace) {
+        Response resp = new Response(httpCode, "application/json", Serialisation.serialise(prepareExceptionMessage(exc, includeStackTrace)));
+        resp.addHeader("Access-Control-Allow-Origin", "*");
+        
+        return resp;
+    } // (method)
+    
+    /**
+     * Prepares a neat exception tree.
+     */
+    private ExceptionMessage prepareExceptionMessage(Exception exc, boolean includeStackTrace) {
         assert exc != null : "Argument should not be null."; 
         
         ExceptionMessage message = new ExceptionMessage();
@@ -298,10 +743,7 @@ public class NodelHostHTTPD extends NanoHTTPD {
             currentMessage = currentMessage.cause;
         } // (while)
         
-        Response resp = new Response(httpCode, "application/json", Serialisation.serialise(message));
-        resp.addHeader("Access-Control-Allow-Origin", "*");
-        
-        return resp;
+        return message;
     } // (method)
     
     
@@ -0,0 +1,225 @@
+package org.nodel.jyhost;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.math.BigInteger;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.nodel.json.JSONArray;
+import org.nodel.json.JSONException;
+import org.nodel.json.JSONObject;
+import org.python.core.Py;
+import org.python.core.PyBoolean;
+import org.python.core.PyDictionary;
+import org.python.core.PyFloat;
+import org.python.core.PyInteger;
+import org.python.core.PyList;
+import org.python.core.PyLong;
+import org.python.core.PyNone;
+import org.python.core.PyObject;
+import org.python.core.PyString;
+import org.python.core.PyStringMap;
+import org.python.core.PyTuple;
+
+/**
+ * Converts values between Java (JSON) and Python directly, i.e. dispatching on type instead of walking
+ * Jython's chain of adapters for every element.
+ *
+ * JSON arrays become lazy views, only converting their items when they're first accessed.
+ */
+public class PyConverter {
+
+    /**
+     * Converts a Java value (typically from JSON) for use in Python.
+     */
+    public static PyObject toPy(Object value) {
+        if (value == null)
+            return Py.None;
+
+        if (value instanceof PyObject)
+            return (PyObject) value;
+
+        Class<?> klass = value.getClass();
+
+        if (klass == JSONObject.class)
+            return toPyDictionary((JSONObject) value);
+
+        else if (klass == JSONArray.class)
+            return PyList.fromList(new LazyJSONList((JSONArray) value));
+
+        else if (klass == String.class)
+            // (as the standard path would, Java strings are unicode)
+            return Py.newUnicode((String) value);
+
+        else if (klass == Integer.class)
+            return Py.newInteger((Integer) value);
+
+        else if (klass == Double.class)
+            return Py.newFloat((Double) value);
+
+        else if (klass == Boolean.class)
+            return Py.newBoolean((Boolean) value);
+
+        else if (JSONObject.NULL.equals(value))
+            // (as it has always been adapted)
+            return PyNone.TYPE;
+
+        else
+            // longs and anything else take the standard path
+            return Py.java2py(value);
+    } // (method)
+
+    /**
+     * (dictionaries are converted eagerly, their arrays are still lazy)
+     */
+    private static PyDictionary toPyDictionary(JSONObject jsonObject) {
+        PyDictionary pyDictionary = new PyDictionary();
+
+        for (String key : jsonObject.keySet())
+            pyDictionary.__setitem__(Py.newUnicode(key), toPy(jsonObject.opt(key)));
+
+        return pyDictionary;
+    } // (method)
+
+    /**
+     * Converts a value from Python into a JSON-native one (JSONObject, JSONArray, String, number, boolean
+     * or null), walking Python structures directly. This also snapshots mutable values.
+     *
+     * Non-Python values are returned as they are.
+     */
+    public static Object toJSON(Object value) {
+        if (!(value instanceof PyObject))
+            return value;
+
+        PyObject pyObject = (PyObject) value;
+
+        if (pyObject == Py.None)
+            return null;
+
+        // (PyUnicode is a PyString)
+        if (pyObject instanceof PyString)
+            return pyObject.toString();
+
+        // (PyBoolean is a PyInteger)
+        if (pyObject instanceof PyBoolean)
+            return pyObject.__nonzero__();
+
+        if (pyObject instanceof PyInteger)
+            return ((PyInteger) pyObject).getValue();
+
+        if (pyObject instanceof PyFloat)
+            return ((PyFloat) pyObject).getValue();
+
+        if (pyObject instanceof PyLong) {
+            BigInteger bigInteger = ((PyLong) pyObject).getValue();
+
+            if (bigInteger.bitLength() < 64)
+                return bigInteger.longValue();
+            else
+                return bigInteger.toString();
+        }
+
+        if (pyObject instanceof PyList || pyObject instanceof PyTuple) {
+            JSONArray jsonArray = new JSONArray();
+
+            for (PyObject item : pyObject.asIterable()) {
+                Object jsonItem = toJSON(item);
+                jsonArray.put(jsonItem == null ? JSONObject.NULL : jsonItem);
+            }
+
+            return jsonArray;
+        }
+
+        if (pyObject instanceof PyDictionary || pyObject instanceof PyStringMap) {
+            JSONObject jsonObject = new JSONObject();
+
+            for (PyObject key : pyObject.asIterable()) {
+                Object jsonValue = toJSON(pyObject.__finditem__(key));
+
+                // (like Serialisation, missing values are left out)
+                if (jsonValue == null)
+                    continue;
+
+                try {
+                    jsonObject.put(key.toString(), jsonValue);
+                } catch (JSONException exc) {
+                    // non-finite numbers, leave out
+                }
+            } // (for)
+
+            return jsonObject;
+        }
+
+        // anything else, e.g. a wrapped Java object, is left to the standard conversion
+        return pyObject.__tojava__(Object.class);
+    } // (method)
+
+    /**
+     * A list backing a PyList that converts JSON array items only as they're accessed.
+     * (synchronized, conversion happens once per item)
+     */
+    private static class LazyJSONList extends AbstractList<PyObject> implements RandomAccess {
+
+        /**
+         * Holds original JSON values until they're replaced by their conversions.
+         */
+        private List<Object> _items;
+
+        public LazyJSONList(JSONArray jsonArray) {
+            int len = jsonArray.length();
+
+            _items = new ArrayList<Object>(len);
+            for (int a = 0; a < len; a++)
+                _items.add(jsonArray.opt(a));
+        }
+
+        @Override
+        public synchronized PyObject get(int index) {
+            Object item = _items.get(index);
+            if (item instanceof PyObject)
+                return (PyObject) item;
+
+            PyObject pyItem = toPy(item);
+            _items.set(index, pyItem);
+
+            return pyItem;
+        } // (method)
+
+        @Override
+        public synchronized PyObject set(int index, PyObject element) {
+            PyObject previous = get(index);
+            _items.set(index, element);
+
+            return previous;
+        } // (method)
+
+        @Override
+        public synchronized void add(int index, PyObject element) {
+            _items.add(index, element);
+            modCount++;
+        } // (method)
+
+        @Override
+        public synchronized PyObject remove(int index) {
+            PyObject previous = get(index);
+            _items.remove(index);
+            modCount++;
+
+            return previous;
+        } // (method)
+
+        @Override
+        public synchronized int size() {
+            return _items.size();
+        } // (method)
+
+    } // (class)
+
+} // (class)
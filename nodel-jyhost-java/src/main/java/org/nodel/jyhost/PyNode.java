@@ -13,8 +13,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -30,6 +32,7 @@ import org.nodel.Strings;
 import org.nodel.Threads;
 import org.nodel.core.ActionRequestHandler;
 import org.nodel.core.BindingState;
+import org.nodel.core.Framework;
 import org.nodel.core.NodelClientAction;
 import org.nodel.core.NodelClientEvent;
 import org.nodel.core.NodelEventHandler;
@@ -51,12 +54,16 @@ import org.nodel.host.RemoteBindingValues;
 import org.nodel.host.RemoteBindings;
 import org.nodel.io.Files;
 import org.nodel.io.Stream;
+import org.nodel.io.WriteBehindFile;
+import org.nodel.logging.LatencyHistogram;
+import org.nodel.net.ManagedConnection;
 import org.nodel.reflection.Schema;
 import org.nodel.reflection.Param;
 import org.nodel.reflection.Serialisation;
 import org.nodel.reflection.Service;
 import org.nodel.reflection.Value;
 import org.nodel.threading.TimerTask;
+import org.python.core.Py;
 import org.python.core.PyDictionary;
 import org.python.core.PyObject;
 import org.python.core.PyString;
@@ -70,6 +77,24 @@ import org.python.util.PythonInterpreter;
  */
 public class PyNode extends BaseDynamicNode {
     
+    /**
+     * (diagnostics)
+     */
+    private static LatencyHistogram s_actionLatency = new LatencyHistogram();
+    
+    /**
+     * (diagnostics)
+     */
+    static {
+        Framework.shared().registerHistogram("action_latency", s_actionLatency);
+    }
+    
+    /**
+     * How long to wait for other config saves before writing the file.
+     * (millis)
+     */
+    private final static int CONFIG_WRITE_DELAY = 500;
+    
     /**
      * Lazy flag to help (but not enforce) avoid overlapping
      * operations.
@@ -87,15 +112,60 @@ public class PyNode extends BaseDynamicNode {
     private File _scriptFile;
     
     /**
-     * The hash used to determine whether the config and / or script files were modified.
+     * The config file's modified time when last applied or written, to determine whether it was modified.
      */
-    private long _fileModifiedHash;
+    private volatile long _configFileModified;
+    
+    /**
+     * (as above, for the script file)
+     */
+    private volatile long _scriptFileModified;
+    
+    /**
+     * Why the config could not be saved (or null if the last save was written).
+     */
+    private volatile String _configSaveError;
+    
+    /**
+     * Saves the config file in the background, coalescing rapid saves.
+     */
+    private WriteBehindFile _configWriter;
+    
+    /**
+     * The script backups, oldest first (lazily listed).
+     */
+    private List<File> _scriptBackups;
+    
+    /**
+     * The script file's modified time when the interpreter was started.
+     */
+    private long _scriptModified;
+    
+    /**
+     * Whether the script loaded cleanly (and so can have some config changes applied in place).
+     */
+    private boolean _loadedCleanly;
+    
+    /**
+     * The parameter values the script was started with (serialised).
+     */
+    private String _appliedParamValues;
     
     /**
      * The current Python interpreter.
      */
     private PythonInterpreter _python;
     
+    /**
+     * The managed device connections used by the script.
+     */
+    private ScriptConnections _connections = new ScriptConnections(this);
+    
+    /**
+     * The timers and schedules used by the script.
+     */
+    private ScriptTimers _timers = new ScriptTimers(this);
+    
     /**
      * Used when calling functions in a multithreaded Python environment.
      */
@@ -128,7 +198,7 @@ public class PyNode extends BaseDynamicNode {
     } // (method)
     
     /**
-     * (internal version)
+     * (internal version, must be called with '_busy' held)
      */
     private void saveConfig0(NodeConfig config) throws Exception {
         try {
@@ -139,12 +209,9 @@ public class PyNode extends BaseDynamicNode {
 
             this.applyConfig(config);
 
-            String configStr = Serialisation.serialise(config, 4);
-
-            Stream.writeFully(_configFile, configStr);
-
-            // make sure it's not triggered again
-            _fileModifiedHash = _configFile.lastModified() + _scriptFile.lastModified();
+            // (serialised here, under '_busy', because the live config is modified in place; only the
+            // write is coalesced, see 'init' for the modified time and any failure)
+            _configWriter.save(Serialisation.serialise(config, 4));
             
             _logger.info("saveConfig completed.");
         } catch (Exception exc) {
@@ -153,6 +220,22 @@ public class PyNode extends BaseDynamicNode {
         }        
     }
     
+    @Value(name = "configSaveError", title = "Config save error", order = 30, desc = "Why the config could not be saved, if the last save failed.")
+    public String getConfigSaveError() {
+        return _configSaveError;
+    }
+    
+    /**
+     * (part of the node's snapshot so the version is bumped on any change)
+     */
+    private void setConfigSaveError(String value) {
+        String previous = _configSaveError;
+        _configSaveError = value;
+        
+        if (previous == null ? value != null : !previous.equals(value))
+            bumpVersion();
+    } // (method)
+    
     public class ScriptInfo {
         
         @Value(name = "modified", title = "Modified", desc = "When the script was last modified.")
@@ -184,41 +267,21 @@ public class PyNode extends BaseDynamicNode {
         @Service(name = "save", title = "Save", desc = "Saves the script.")
         public void save(@Param(name = "script", title = "Script", desc = "The script text.") String script) throws IOException {
             // perform a rolling backup
-            
-            final String scriptFilePrefix = "script_backup_";
-            
-            // get the list of 'script (backup *.py files)
-            File[] files = _root.listFiles(new FileFilter() {
-                
-                @Override
-                public boolean accept(File pathname) {
-                    String lc = pathname.getName().toLowerCase();
-                    return lc.startsWith(scriptFilePrefix) && lc.endsWith(".py");
-                }
-                
-            });
-            
-            // sort by last modified
-            Arrays.sort(files, new Comparator<File>() {
-                
-                @Override
-                public int compare(File f1, File f2) {
-                    long l1 = f1.lastModified();
-                    long l2 = f2.lastModified();
-                    return (l1 == l2 ? 0 : (l2 > l1 ? 0 : 1));
-                }
+            synchronized (_script) {
+                List<File> backups = getScriptBackups();
                 
-            });
-            
-            // drop the oldest one if more than 10 are listed
-            if (files.length > 5)
-                files[0].delete();
-            
-            // make the backup file
-            String timestamp = DateTime.now().toString("YYYY-MM-dd_HHmmssSSS");
-            Files.copy(_scriptFile, new File(_root, scriptFilePrefix + timestamp + ".py"));
+                // drop the oldest ones if more than 5 are listed
+                while (backups.size() > 5)
+                    backups.remove(0).delete();
+
+                // make the backup file
+                String timestamp = DateTime.now().toString("YYYY-MM-dd_HHmmssSSS");
+                File backup = new File(_root, SCRIPT_BACKUP_PREFIX + timestamp + ".py");
+                Files.copy(_scriptFile, backup);
+                backups.add(backup);
                 
-            Stream.writeFully(_scriptFile, script);
+                Stream.writeFullyAtomically(_scriptFile, script);
+            }
             
             // do not update time stamp here, let the monitoring take care of that
             
@@ -226,6 +289,47 @@ public class PyNode extends BaseDynamicNode {
         
     } // (class)
     
+    private final static String SCRIPT_BACKUP_PREFIX = "script_backup_";
+    
+    /**
+     * Lists the existing script backups once, after which the list is maintained as backups are made.
+     * (locked by '_script')
+     */
+    private List<File> getScriptBackups() {
+        if (_scriptBackups != null)
+            return _scriptBackups;
+        
+        // get the list of 'script (backup *.py files)
+        File[] files = _root.listFiles(new FileFilter() {
+            
+            @Override
+            public boolean accept(File pathname) {
+                String lc = pathname.getName().toLowerCase();
+                return lc.startsWith(SCRIPT_BACKUP_PREFIX) && lc.endsWith(".py");
+            }
+            
+        });
+        
+        if (files == null)
+            files = new File[0];
+        
+        // sort by last modified
+        Arrays.sort(files, new Comparator<File>() {
+            
+            @Override
+            public int compare(File f1, File f2) {
+                long l1 = f1.lastModified();
+                long l2 = f2.lastModified();
+                return (l1 == l2 ? 0 : (l1 < l2 ? -1 : 1));
+            }
+            
+        });
+        
+        _scriptBackups = new ArrayList<File>(Arrays.asList(files));
+        
+        return _scriptBackups;
+    } // (method)
+    
     /**
      * The script end-point.
      */
@@ -255,7 +359,7 @@ public class PyNode extends BaseDynamicNode {
         
         // only write out the schema file if it's different or never been written out
         if(schemaFileString == null || !schemaFileString.equals(schemaString)) {
-            Stream.writeFully(schemaFile, schemaString);
+            Stream.writeFullyAtomically(schemaFile, schemaString);
         }
         
         // dump the example config if it hasn't already been dumped
@@ -270,19 +374,44 @@ public class PyNode extends BaseDynamicNode {
         
         // only write out the schema file if it's different or never been written out
         if(exampleFileString == null || !exampleFileString.equals(schemaString)) {
-            Stream.writeFully(exampleFile, exampleString);
+            Stream.writeFullyAtomically(exampleFile, exampleString);
         }        
         
         _configFile = new File(_root, filePrefix + ".json");
         
         // dump an *empty one* if there's nothing there
         if (!_configFile.exists()) {
-            Stream.writeFully(_configFile, Serialisation.serialise(NodeConfig.Empty, 4));
+            Stream.writeFullyAtomically(_configFile, Serialisation.serialise(NodeConfig.Empty, 4));
         }
         
         _scriptFile = new File(_root, "script.py");
         if (!_scriptFile.exists())
-            Stream.writeFully(_scriptFile, ExampleScript.generateExampleScript());
+            Stream.writeFullyAtomically(_scriptFile, ExampleScript.generateExampleScript());
+        
+        _configWriter = new WriteBehindFile(_configFile, CONFIG_WRITE_DELAY);
+        _configWriter.setWrittenHandler(new Handler.H1<Long>() {
+            
+            @Override
+            public void handle(Long modified) {
+                // make sure it's not triggered again (only the config file, any script change is still picked up)
+                _configFileModified = modified;
+                
+                setConfigSaveError(null);
+            }
+            
+        });
+        _configWriter.setFailedHandler(new Handler.H1<Exception>() {
+            
+            @Override
+            public void handle(Exception exc) {
+                // (the config is running but would not survive a restart)
+                String message = "The config could not be saved - " + exc;
+                setConfigSaveError(message);
+                
+                _errReader.inject(message);
+            }
+            
+        });
         
         s_threadPool.execute(new Runnable() {
             
@@ -362,13 +491,15 @@ public class PyNode extends BaseDynamicNode {
                 // use most recent 'modified' of the config or script file
                 
                 // (neither file might exists, but functions safely return '0')
-                long lastModifiedHash = _configFile.lastModified() + _scriptFile.lastModified();
+                long configFileModified = _configFile.lastModified();
+                long scriptFileModified = _scriptFile.lastModified();
                 
-                if (lastModifiedHash != _fileModifiedHash) {
+                if (configFileModified != _configFileModified || scriptFileModified != _scriptFileModified) {
                     config = (NodeConfig) Serialisation.coerceFromJSON(NodeConfig.class, Stream.readFully(_configFile));
                     applyConfig(config);
                     
-                    _fileModifiedHash = lastModifiedHash; 
+                    _configFileModified = configFileModified;
+                    _scriptFileModified = scriptFileModified;
                     
                     _logger.info("Config updated successfully.");
                 }
@@ -420,6 +551,12 @@ public class PyNode extends BaseDynamicNode {
      * cannot cleanup after itself waiting for, what becomes, its 'MainThread' thread to die.
      */
     private void applyConfig0(NodeConfig config) throws Exception {
+        // changes to only the remote binding values do not need a new interpreter
+        if (canApplyInPlace(config)) {
+            applyRemoteBindingValues(config);
+            return;
+        }
+        
         boolean hasErrors = false;
         
         cleanupInterpreter();
@@ -436,6 +573,9 @@ public class PyNode extends BaseDynamicNode {
         // append the Node's root directory to the path
         pySystemState.path.append(new PyString(_root.getAbsolutePath()));
         
+        // share compiled modules with other nodes (null if disabled)
+        ModuleCache.Importer importer = ModuleCache.instance().install(pySystemState);
+        
         PyDictionary locals = new PyDictionary();
         
         _python = new PythonInterpreter(locals, pySystemState);
@@ -451,6 +591,12 @@ public class PyNode extends BaseDynamicNode {
             _python.execfile(moneyPatchStream);
         }
         
+        // the managed device connections
+        _python.set("connections", _connections);
+        
+        // the host-managed timers
+        _python.set("timers", _timers);
+        
         // dump a new example script if necessary
         String exampleScript = ExampleScript.generateExampleScript();
         File exampleScriptFile = new File(_root, "_script_example.py");
@@ -458,7 +604,7 @@ public class PyNode extends BaseDynamicNode {
         if (exampleScriptFile.exists())
             exampleStringFileStr = Stream.readFully(exampleScriptFile);
         if (exampleStringFileStr == null || !exampleScript.equals(exampleStringFileStr))
-            Stream.writeFully(exampleScriptFile, exampleScript);
+            Stream.writeFullyAtomically(exampleScriptFile, exampleScript);
         
         Bindings bindings = Bindings.Empty;
         
@@ -466,6 +612,8 @@ public class PyNode extends BaseDynamicNode {
             if (!_scriptFile.exists())
                 throw new FileNotFoundException("No script file exists.");
             
+            _scriptModified = _scriptFile.lastModified();
+            
             _python.execfile(_scriptFile.getAbsolutePath());
             
             List<String> warnings = new ArrayList<String>();
@@ -484,6 +632,8 @@ public class PyNode extends BaseDynamicNode {
             injectParamValues(config, bindings.params);
             
             _config = config;
+            
+            _appliedParamValues = serialiseParamValues(config.paramValues);
         } catch (Exception exc) {
             hasErrors = true;
             
@@ -497,15 +647,19 @@ public class PyNode extends BaseDynamicNode {
         
         _bindings = bindings;
         
+        _loadedCleanly = !hasErrors;
+        
+        bumpVersion();
+        
         try {
             // log a message to the console and the program log
             String msg;
             if (!hasErrors) {
-                msg = "Python and Node script loaded (took " + DateTimes.formatPeriod(startTime) + "); calling 'main'...";
+                msg = "Python and Node script loaded (took " + DateTimes.formatPeriod(startTime) + moduleCacheSummary(importer) + "); calling 'main'...";
                 _outReader.inject(msg);
                 _logger.info(msg);
             } else {
-                msg = "Python and Node script loaded with errors (took " + DateTimes.formatPeriod(startTime) + "); calling 'main'...";
+                msg = "Python and Node script loaded with errors (took " + DateTimes.formatPeriod(startTime) + moduleCacheSummary(importer) + "); calling 'main'...";
                 _errReader.inject(msg);
                 _logger.warn(msg);
             }
@@ -529,7 +683,9 @@ public class PyNode extends BaseDynamicNode {
                     _started = DateTime.now();
                     _desc = _bindings.desc;
                     _signal.notifyAll();
-                }                
+                }
+                
+                bumpVersion();                
                 
             } catch (Exception exc) {
                 // don't let this interrupt anything
@@ -542,9 +698,112 @@ public class PyNode extends BaseDynamicNode {
             }
         } finally {
             _config = config;
+            
+            bumpVersion();
         }        
     }
     
+    /**
+     * Whether the new config only differs by its remote binding values, i.e. the same script
+     * (loaded cleanly) with the same parameters.
+     */
+    private boolean canApplyInPlace(NodeConfig config) {
+        return _python != null && _loadedCleanly &&
+                _scriptFile.lastModified() == _scriptModified &&
+                serialiseParamValues(config.paramValues).equals(_appliedParamValues);
+    } // (method)
+    
+    /**
+     * Applies new remote binding values to the running script, only rebinding those that changed.
+     */
+    private void applyRemoteBindingValues(NodeConfig config) {
+        _logger.info("Only the remote binding values have changed; applying to the running script...");
+        
+        Bindings bindings = new Bindings();
+        bindings.desc = _bindings.desc;
+        bindings.local = _bindings.local;
+        bindings.params = _bindings.params;
+        
+        // (values are injected into a fresh copy so that cleared values do not linger)
+        bindings.remote = copyRemoteBindings(_bindings.remote);
+        
+        injectRemoteBindingValues(config, bindings.remote);
+        
+        injectParamValues(config, bindings.params);
+        
+        _config = config;
+        
+        List<String> changes = bindRemoteBindings(bindings.remote);
+        
+        _bindings = bindings;
+        
+        bumpVersion();
+        
+        // (the script keeps running so spell out what it now refers to)
+        StringBuilder sb = new StringBuilder("Remote binding values applied to the running script (not restarted)");
+        if (changes.isEmpty()) {
+            sb.append("; no bindings changed.");
+        } else {
+            for (int a = 0; a < changes.size(); a++)
+                sb.append(a == 0 ? ": " : "; ").append(changes.get(a));
+            
+            sb.append('.');
+        }
+        
+        String message = sb.toString();
+        _logger.info(message);
+        _outReader.inject(message);
+    } // (method)
+    
+    /**
+     * A copy of the remote bindings as extracted from the script, i.e. without any nodes bound.
+     */
+    private static RemoteBindings copyRemoteBindings(RemoteBindings remoteBindings) {
+        RemoteBindings result = new RemoteBindings();
+        result.actions = new LinkedHashMap<SimpleName, NodelActionInfo>();
+        result.events = new LinkedHashMap<SimpleName, NodelEventInfo>();
+        
+        for (Entry<SimpleName, NodelActionInfo> entry : remoteBindings.actions.entrySet()) {
+            NodelActionInfo actionInfo = entry.getValue();
+            
+            NodelActionInfo copy = new NodelActionInfo();
+            copy.group = actionInfo.group;
+            copy.title = actionInfo.title;
+            copy.desc = actionInfo.desc;
+            copy.caution = actionInfo.caution;
+            
+            result.actions.put(entry.getKey(), copy);
+        } // (for)
+        
+        for (Entry<SimpleName, NodelEventInfo> entry : remoteBindings.events.entrySet()) {
+            NodelEventInfo eventInfo = entry.getValue();
+            
+            NodelEventInfo copy = new NodelEventInfo();
+            copy.group = eventInfo.group;
+            copy.title = eventInfo.title;
+            copy.desc = eventInfo.desc;
+            copy.caution = eventInfo.caution;
+            
+            result.events.put(entry.getKey(), copy);
+        } // (for)
+        
+        return result;
+    } // (method)
+    
+    private static String serialiseParamValues(ParamValues paramValues) {
+        return Serialisation.serialise(paramValues != null ? paramValues : new ParamValues());
+    }
+    
+    /**
+     * e.g. ", 12 modules shared (340 KB), 1 compiled"
+     */
+    private static String moduleCacheSummary(ModuleCache.Importer importer) {
+        if (importer == null)
+            return ", module cache disabled";
+
+        return ", " + importer.getShared() + " modules shared (" + importer.getSharedSize() / 1024 + " KB), " + importer.getCompiled() + " compiled";
+    } // (method)
+    
     /**
      * Cleans up the interpreter.
      */
@@ -553,8 +812,12 @@ public class PyNode extends BaseDynamicNode {
             _logger.info("Cleaning up previous interpreter...");
             _outReader.inject("Closing this interpreter...");
 
+            _timers.reset();
+
             _python.cleanup();
             
+            _connections.closeAll();
+            
             String message = "Clean up complete.";
             _logger.info(message);
             _outReader.inject(message);
@@ -570,13 +833,19 @@ public class PyNode extends BaseDynamicNode {
             return;
         }
         
-        cleanupBindings();
+        // (existing registrations that are unchanged are kept alive and rewired)
         
         // deal with the local bindings
         int count = bindLocalBindings(bindings.local);
         
         // check if we need to use a 'dummy' binding
-        if (count == 0) {
+        if (count > 0 && _dummyBinding != null) {
+            _logger.info("Releasing dummy local binding.");
+            _dummyBinding.close();
+            
+            _dummyBinding = null;
+            
+        } else if (count == 0 && _dummyBinding == null) {
             // bind 'dummy' so advertisement still takes place
             _dummyBinding = new NodelServerAction(_name.getOriginalName(), "Dummy");
             _dummyBinding.registerAction(new ActionRequestHandler() {
@@ -604,6 +873,10 @@ public class PyNode extends BaseDynamicNode {
     private int bindLocalBindings(LocalBindings provides) {
         if (provides == null) {
             _logger.info("This node does not provide any events nor actions.");
+            
+            // (releases any previous ones)
+            bindLocalActions(null);
+            bindLocalEvents(null);
             return 0;
         }
         
@@ -622,23 +895,36 @@ public class PyNode extends BaseDynamicNode {
      * Binds actions.
      */
     private int bindLocalActions(Map<SimpleName, Binding> actions) {
+        // the previous actions, any left over are released
+        Map<SimpleName, ServerActionEntry> previous = new LinkedHashMap<SimpleName, ServerActionEntry>(_localActions);
+        _localActions.clear();
+        
         if (actions == null)
-            return 0;
+            actions = Collections.emptyMap();
         
         StringBuilder sb = new StringBuilder();
 
         for (final Entry<SimpleName, Binding> entry : actions.entrySet()) {
-            // (Nodel layer)
-            NodelServerAction serverAction = new NodelServerAction(_name.getOriginalName(), entry.getKey().getReducedName());
-            serverAction.registerAction(new ActionRequestHandler() {
-                
-                @Override
-                public Object handleActionRequest(Object arg) {
-                    addLog(DateTime.now(), LogEntry.Source.local, LogEntry.Type.action, entry.getKey().getReducedName(), arg);
-                    return PyNode.this.handleActionRequest(entry.getKey().getReducedName(), arg);
-                }
+            NodelServerAction serverAction;
+            
+            // (the handler always calls into the current interpreter so an existing registration can be kept)
+            ServerActionEntry existing = previous.remove(entry.getKey());
+            if (existing != null) {
+                serverAction = existing.action;
                 
-            });
+            } else {
+                // (Nodel layer)
+                serverAction = new NodelServerAction(_name.getOriginalName(), entry.getKey().getReducedName());
+                serverAction.registerAction(new ActionRequestHandler() {
+
+                    @Override
+                    public Object handleActionRequest(Object arg) {
+                        addLog(DateTime.now(), LogEntry.Source.local, LogEntry.Type.action, entry.getKey().getReducedName(), arg);
+                        return PyNode.this.handleActionRequest(entry.getKey().getReducedName(), arg);
+                    }
+
+                });
+            }
             
             _localActions.put(entry.getKey(), new ServerActionEntry(entry.getValue(), serverAction));
             
@@ -647,6 +933,11 @@ public class PyNode extends BaseDynamicNode {
             
             sb.append("local_action_" + entry.getKey().getReducedName());
         }
+        
+        for (ServerActionEntry entry : previous.values()) {
+            _logger.info("Releasing server action {}", entry.action.getNodelPoint());
+            entry.action.close();
+        }
 
         if (sb.length() > 0)
             _logger.info("Mapped this Node's actions to Python functions {}", sb);
@@ -672,18 +963,21 @@ public class PyNode extends BaseDynamicNode {
         
         String functionArgName = functionName + "_arg_" + num;
         
+        long startTime = System.nanoTime();
+        
         try {
             synchronized (_activeFunctions) {
-                _activeFunctions.put(functionKey, System.nanoTime());
+                _activeFunctions.put(functionKey, startTime);
             }
 
             // create temporary argument
-            _python.set(functionArgName, arg);
+            _python.set(functionArgName, PyConverter.toPy(arg));
 
             // evaluate the function
             PyObject pyObject = _python.eval(functionName + "(" + functionArgName + ")");
             
-            return pyObject;
+            // (converted directly, like event and remote action arguments)
+            return PyConverter.toJSON(pyObject);
             
         } catch (Exception exc) {
             String message = "Action call failed - " + exc;
@@ -702,6 +996,8 @@ public class PyNode extends BaseDynamicNode {
                 _python.getLocals().__delitem__(functionArgName.intern());
             } catch (Exception ignore) {
             }
+            
+            s_actionLatency.recordSince(startTime);
         }
     } // (method)
         
@@ -709,21 +1005,41 @@ public class PyNode extends BaseDynamicNode {
      * Binds the 'provided events'.
      */
     private int bindLocalEvents(Map<SimpleName, Binding> events) {
+        // the previous events, any left over are released
+        Map<SimpleName, ServerEventEntry> previous = new LinkedHashMap<SimpleName, ServerEventEntry>(_localEvents);
+        _localEvents.clear();
+        
         if (events == null)
-            return 0;
+            events = Collections.emptyMap();
         
         StringBuilder sb = new StringBuilder();
 
         for(final Entry<SimpleName, Binding> eventBinding : events.entrySet()) {
-            // (Nodel layer and Python)
-            NodelServerEvent nodelServerEvent = new NodelServerEvent(_name.getOriginalName(), eventBinding.getKey().getReducedName());
-            nodelServerEvent.attachMonitor(new Handler.H1<Object>() {
-                @Override
-                public void handle(Object arg) {
-                    addLog(DateTime.now(), LogEntry.Source.local, LogEntry.Type.event, eventBinding.getKey().getReducedName(), arg);
-                }
-            });
-            nodelServerEvent.registerEvent();
+            NodelServerEvent nodelServerEvent;
+            
+            ServerEventEntry existing = previous.remove(eventBinding.getKey());
+            if (existing != null) {
+                nodelServerEvent = existing.__event;
+                
+            } else {
+                // (Nodel layer and Python)
+                nodelServerEvent = new NodelServerEvent(_name.getOriginalName(), eventBinding.getKey().getReducedName()) {
+
+                    @Override
+                    public void emit(Object arg) {
+                        // (arguments from the script are converted directly)
+                        super.emit(PyConverter.toJSON(arg));
+                    }
+
+                };
+                nodelServerEvent.attachMonitor(new Handler.H1<Object>() {
+                    @Override
+                    public void handle(Object arg) {
+                        addLog(DateTime.now(), LogEntry.Source.local, LogEntry.Type.event, eventBinding.getKey().getReducedName(), arg);
+                    }
+                });
+                nodelServerEvent.registerEvent();
+            }
             
             String varName = "local_event_" + eventBinding.getKey().getReducedName();
             _python.set(varName, nodelServerEvent);
@@ -736,6 +1052,11 @@ public class PyNode extends BaseDynamicNode {
             sb.append(varName);            
         } // (for)
         
+        for (ServerEventEntry entry : previous.values()) {
+            _logger.info("Releasing server event {}", entry.__event.getNodelPoint());
+            entry.__event.close();
+        }
+        
         if (sb.length() > 0)
             _logger.info("Mapped this Node's events to Python variables {}", sb);
         else
@@ -744,15 +1065,26 @@ public class PyNode extends BaseDynamicNode {
         return events.size();
     } // (method)
     
-    private void bindRemoteBindings(RemoteBindings remoteBindings) {
+    /**
+     * Returns the bindings that were rebound or released, e.g. "remote_action_Mute rebound to 'Projector2' / 'Mute'".
+     */
+    private List<String> bindRemoteBindings(RemoteBindings remoteBindings) {
+        List<String> changes = new ArrayList<String>();
+        
         if (remoteBindings == null) {
             _logger.info("This node does not require any events nor actions.");
-            return;
+            
+            // (releases any previous ones)
+            bindRemoteActions(null, changes);
+            bindRemoteEvents(null, changes);
+            return changes;
         }
         
-        bindRemoteActions(remoteBindings.actions);
+        bindRemoteActions(remoteBindings.actions, changes);
+        
+        bindRemoteEvents(remoteBindings.events, changes);
         
-        bindRemoteEvents(remoteBindings.events);
+        return changes;
     } // (method)
     
     public class Remote {
@@ -798,12 +1130,14 @@ public class PyNode extends BaseDynamicNode {
         return _remote;
     }    
         
-    private List<RemoteActionEntry> _clientActions = new ArrayList<RemoteActionEntry>();
-    
-    private void bindRemoteActions(Map<SimpleName, NodelActionInfo> actions) {
+    private void bindRemoteActions(Map<SimpleName, NodelActionInfo> actions, List<String> changes) {
+        // the previous actions, any left over are released
+        Map<SimpleName, RemoteActionEntry> previous = new LinkedHashMap<SimpleName, RemoteActionEntry>(_clientActions);
+        _clientActions.clear();
+        
         if (actions == null) {
             _logger.info("This node does not require any actions.");
-            return;
+            actions = Collections.emptyMap();
         }
         
         for(final Entry<SimpleName, NodelActionInfo> action : actions.entrySet()) {
@@ -811,13 +1145,36 @@ public class PyNode extends BaseDynamicNode {
             
             String varName = "remote_action_" + action.getKey().getReducedName();
             
+            // keep the existing one if it is bound to the same node and action
+            RemoteActionEntry existing = previous.remove(action.getKey());
+            if (existing != null) {
+                if (existing.isBoundTo(actionInfo)) {
+                    _python.set(varName, existing.action);
+                    _clientActions.put(action.getKey(), existing);
+                    continue;
+                }
+                
+                _logger.info("Releasing client action {} (rebinding)", existing.action.getNodelPoint());
+                existing.action.close();
+                
+                changes.add(varName + " rebound to '" + actionInfo.node + "' / '" + actionInfo.action + "'");
+            }
+            
             String nodeName = actionInfo.node;
             String actionName = actionInfo.action;
             
             // empty bindings are allowed and will show up as "unbound" sources
             
             // (Nodel layer)
-            final NodelClientAction nodelAction = new NodelClientAction(nodeName, actionName);
+            final NodelClientAction nodelAction = new NodelClientAction(nodeName, actionName) {
+                
+                @Override
+                public void call(Object arg) {
+                    // (arguments from the script are converted directly)
+                    super.call(PyConverter.toJSON(arg));
+                }
+                
+            };
             nodelAction.attachMonitor(new Handler.H1<Object>() {
                 
                 @Override
@@ -844,19 +1201,28 @@ public class PyNode extends BaseDynamicNode {
             // (Python)
             _python.set(varName, nodelAction);
 
-            _clientActions.add(new RemoteActionEntry(nodelAction));
+            _clientActions.put(action.getKey(), new RemoteActionEntry(nodelAction, nodeName, actionName));
             
             _logger.info("Mapped peer action to Python variable '{}'", varName);
         } // (for)
         
+        for (Entry<SimpleName, RemoteActionEntry> entry : previous.entrySet()) {
+            _logger.info("Releasing client action {}", entry.getValue().action.getNodelPoint());
+            entry.getValue().action.close();
+            
+            changes.add("remote_action_" + entry.getKey().getReducedName() + " released");
+        }
+        
     } // (method)
         
-    private List<RemoteEventEntry> _remoteEvents = new ArrayList<RemoteEventEntry>();
-    
-    private void bindRemoteEvents(Map<SimpleName, NodelEventInfo> events) {
+    private void bindRemoteEvents(Map<SimpleName, NodelEventInfo> events, List<String> changes) {
+        // the previous events, any left over are released
+        Map<SimpleName, RemoteEventEntry> previous = new LinkedHashMap<SimpleName, RemoteEventEntry>(_remoteEvents);
+        _remoteEvents.clear();
+        
         if (events == null) {
             _logger.info("This node does not require any events.");
-            return;
+            events = Collections.emptyMap();
         }
         
         // for summary in log
@@ -872,8 +1238,22 @@ public class PyNode extends BaseDynamicNode {
             String eventName = eventInfo.event;
             
             if (Strings.isNullOrEmpty(nodeName) || Strings.isNullOrEmpty(eventName))
-                // skip for now
+                // skip for now (any previous one is released)
+                continue;
+            
+            // keep the existing one if it is bound to the same node and event
+            // (its handler always calls into the current interpreter)
+            RemoteEventEntry existing = previous.get(alias);
+            if (existing != null && existing.isBoundTo(eventInfo)) {
+                previous.remove(alias);
+                _remoteEvents.put(alias, existing);
+                
+                if (sb.length() > 0)
+                    sb.append(", ");
+
+                sb.append('"').append(pythonEvent).append('"');
                 continue;
+            }
 
             final NodelClientEvent nodelClientEvent = new NodelClientEvent(nodeName, eventName);
             nodelClientEvent.setHandler(new NodelEventHandler() {
@@ -896,7 +1276,10 @@ public class PyNode extends BaseDynamicNode {
                 
             });            
             
-            _remoteEvents.add(new RemoteEventEntry(nodelClientEvent));
+            _remoteEvents.put(alias, new RemoteEventEntry(nodelClientEvent, nodeName, eventName));
+            
+            if (existing != null)
+                changes.add(pythonEvent + " rebound to '" + nodeName + "' / '" + eventName + "'");
             
             if (sb.length() > 0)
                 sb.append(", ");
@@ -904,6 +1287,15 @@ public class PyNode extends BaseDynamicNode {
             sb.append('"').append(pythonEvent).append('"');
         } // (for)
         
+        for (Entry<SimpleName, RemoteEventEntry> entry : previous.entrySet()) {
+            _logger.info("Releasing client event {}", entry.getValue().event.getNodelPoint());
+            entry.getValue().event.close();
+            
+            // (rebound ones have already been reported)
+            if (!_remoteEvents.containsKey(entry.getKey()))
+                changes.add("remote_event_" + entry.getKey() + " released");
+        }
+        
         if (sb.length() > 0)
             _logger.info("Mapped peer events to Python events {}", sb.toString());
 
@@ -932,13 +1324,13 @@ public class PyNode extends BaseDynamicNode {
         }
 
         try {
-            _python.set(functionArgName, arg);
+            _python.set(functionArgName, PyConverter.toPy(arg));
 
             // evaluate the function
             _python.exec(functionName + "(" + functionArgName + ")");
 
         } catch (Exception exc) {
-            _logger.info("Script threw an exception while handling an event '" + alias + "'", exc);
+            _logger.info("Script threw an exception while handling an event '{}'", alias, exc);
 
             _errReader.inject("Exception occurred while handling an event '" + functionName + "' - " + exc);
         } finally {
@@ -956,11 +1348,75 @@ public class PyNode extends BaseDynamicNode {
 
     } // (method)
     
+    /**
+     * When a script timer or schedule is due.
+     * (package-private, see ScriptTimers)
+     */
+    void handleCallback(String name, final PyObject callback) {
+        callScript(name, "timer '" + name + "'", new Handler.H0() {
+
+            @Override
+            public void handle() {
+                callback.__call__();
+            }
+
+        });
+    } // (method)
+
+    /**
+     * When data arrives for a script's managed connection handler.
+     * (package-private, see ScriptConnections)
+     */
+    void handleReceived(ManagedConnection connection, final Handler.H1<String> handler, final String data) {
+        String address = connection.getProtocol().toString().toLowerCase() + "://" + connection.getHost() + ":" + connection.getPort();
+
+        callScript("received", "received handler for '" + address + "'", new Handler.H0() {
+
+            @Override
+            public void handle() {
+                handler.handle(data);
+            }
+
+        });
+    } // (method)
+
+    /**
+     * Calls into the script from a thread that isn't tied to this node, e.g. a shared pool. The node's system state is
+     * put in place for the call and any exception goes to the node's console.
+     */
+    private void callScript(String name, String description, Handler.H0 call) {
+        // is a threaded environment so need sequence numbering
+        String functionKey = name + "_" + _funcSeqNumber.getAndIncrement();
+
+        synchronized (_activeFunctions) {
+            _activeFunctions.put(functionKey, System.nanoTime());
+        }
+
+        PySystemState previousState = Py.setSystemState(_python.getSystemState());
+
+        try {
+            call.handle();
+
+        } catch (Exception exc) {
+            _logger.info("Script threw an exception within {}", description, exc);
+
+            _errReader.inject("Exception occurred within " + description + " - " + exc);
+        } finally {
+            Py.setSystemState(previousState);
+
+            synchronized (_activeFunctions) {
+                _activeFunctions.remove(functionKey);
+            }
+        }
+    } // (method)
+    
     /**
      * Binds the parameters to the script.
      * @param params
      */
     private void bindParams(ParameterBindings params) {
+        _parameters.clear();
+        
         if (params == null) {
             _logger.info("This node does use any parameters.");
             return;
@@ -1026,6 +1482,16 @@ public class PyNode extends BaseDynamicNode {
         return _params;
     }
     
+    @Service(name = "connections", title = "Connections", desc = "The managed device connections in use by the script.")
+    public ManagedConnection[] getConnections() {
+        return _connections.getAll();
+    }
+    
+    @Service(name = "timers", title = "Timers", desc = "The timers and schedules in use by the script.")
+    public ScriptTimers getTimers() {
+        return _timers;
+    }
+    
     /**
      * Evaluates a Python expression related to the current interpreter instance.
      */
@@ -1088,10 +1554,16 @@ public class PyNode extends BaseDynamicNode {
             
             _logger.info("Closing node...");
             
+            // (any pending config save)
+            if (_configWriter != null)
+                _configWriter.flush();
+            
             cleanupBindings();
             
             cleanupInterpreter();
             
+            closeLogs();
+            
             _closed = true;
             
             // stuff
@@ -0,0 +1,145 @@
+package org.nodel.jyhost;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.nodel.Handler;
+import org.nodel.net.ManagedConnection;
+import org.nodel.net.ManagedConnections;
+
+/**
+ * The managed device connections available to a node's script (as 'connections'), e.g.
+ *
+ *   conn = connections.tcp(param_ipAddress, 23, '\r\n')
+ *   print conn.request('status?\r\n')
+ *
+ * The same connection is returned for the same host, port and framing so scripts can look them up on
+ * every use. They are all closed along with the interpreter.
+ *
+ * Received handlers are called through the node (see 'PyNode.handleReceived').
+ */
+public class ScriptConnections {
+
+    private PyNode _node;
+
+    /**
+     * (self locked)
+     */
+    private Map<String, ManagedConnection> _connections = new LinkedHashMap<String, ManagedConnection>();
+
+    /**
+     * (package-private, see PyNode)
+     */
+    ScriptConnections(PyNode node) {
+        _node = node;
+    }
+
+    /**
+     * A TCP connection where responses are whatever arrives at once.
+     */
+    public ManagedConnection tcp(String host, int port) {
+        return tcp(host, port, null);
+    }
+
+    /**
+     * A TCP connection where responses end with a delimiter.
+     */
+    public ManagedConnection tcp(String host, int port, String delimiter) {
+        String key = "tcp://" + host + ":" + port + "/" + delimiter;
+
+        synchronized (_connections) {
+            ManagedConnection connection = _connections.get(key);
+            if (connection == null) {
+                connection = adopt(ManagedConnections.instance().tcp(host, port, delimiter));
+                _connections.put(key, connection);
+            }
+
+            return connection;
+        }
+    } // (method)
+
+    /**
+     * A TCP connection where responses are of a fixed length.
+     */
+    public ManagedConnection tcp(String host, int port, int frameLength) {
+        String key = "tcp://" + host + ":" + port + "/#" + frameLength;
+
+        synchronized (_connections) {
+            ManagedConnection connection = _connections.get(key);
+            if (connection == null) {
+                connection = adopt(ManagedConnections.instance().tcp(host, port, frameLength));
+                _connections.put(key, connection);
+            }
+
+            return connection;
+        }
+    } // (method)
+
+    /**
+     * A UDP connection where each datagram is a response.
+     */
+    public ManagedConnection udp(String host, int port) {
+        return udp(host, port, null);
+    }
+
+    /**
+     * A UDP connection where responses end with a delimiter.
+     */
+    public ManagedConnection udp(String host, int port, String delimiter) {
+        String key = "udp://" + host + ":" + port + "/" + delimiter;
+
+        synchronized (_connections) {
+            ManagedConnection connection = _connections.get(key);
+            if (connection == null) {
+                connection = adopt(ManagedConnections.instance().udp(host, port, delimiter));
+                _connections.put(key, connection);
+            }
+
+            return connection;
+        }
+    } // (method)
+
+    /**
+     * Has the connection's received handlers called through the node.
+     */
+    private ManagedConnection adopt(final ManagedConnection connection) {
+        connection.setReceivedHandlerCaller(new Handler.H2<Handler.H1<String>, String>() {
+
+            @Override
+            public void handle(Handler.H1<String> handler, String data) {
+                _node.handleReceived(connection, handler, data);
+            }
+
+        });
+
+        return connection;
+    } // (method)
+
+    /**
+     * All the connections in use.
+     */
+    public ManagedConnection[] getAll() {
+        synchronized (_connections) {
+            return _connections.values().toArray(new ManagedConnection[_connections.size()]);
+        }
+    }
+
+    /**
+     * Closes all the connections.
+     */
+    public void closeAll() {
+        synchronized (_connections) {
+            for (ManagedConnection connection : _connections.values())
+                connection.close();
+
+            _connections.clear();
+        }
+    } // (method)
+
+} // (class)
@@ -0,0 +1,367 @@
+package org.nodel.jyhost;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.nodel.reflection.Value;
+import org.nodel.threading.CronExpression;
+import org.nodel.threading.ThreadPool;
+import org.nodel.threading.TimerTask;
+import org.nodel.threading.Timers;
+import org.python.core.PyObject;
+
+/**
+ * The timers and schedules available to a node's script (as 'timers') using the host's shared timer threads
+ * instead of a thread per node, e.g.
+ *
+ *   timers.after(5, lambda: poll())
+ *   timers.every(30, poll)
+ *   timers.cron('0 7 * * 1-5', turnOn)
+ *
+ * (times in seconds) Callbacks go through the node's normal dispatch and are all cancelled along with
+ * the interpreter. A repeating job that is still running when next due skips that run (an 'overrun').
+ */
+public class ScriptTimers {
+
+    /**
+     * Shared by all nodes.
+     */
+    private static Timers s_timers = new Timers("script_timers");
+
+    /**
+     * (callbacks could block so never run on the timer threads)
+     */
+    private static ThreadPool s_threadPool = new ThreadPool("script_timers", 64);
+
+    /**
+     * The node callbacks are dispatched through.
+     */
+    private PyNode _node;
+
+    /**
+     * The active jobs.
+     * (self locked)
+     */
+    private List<Job> _jobs = new ArrayList<Job>();
+
+    private AtomicInteger _nextID = new AtomicInteger();
+
+    // (diagnostics)
+
+    private AtomicLong _scheduled = new AtomicLong();
+
+    private AtomicLong _runs = new AtomicLong();
+
+    private AtomicLong _overruns = new AtomicLong();
+
+    /**
+     * (package-private, see PyNode)
+     */
+    ScriptTimers(PyNode node) {
+        _node = node;
+    }
+
+    @Value(name = "active", title = "Active", desc = "The number of active jobs.", order = 1)
+    public int getActive() {
+        synchronized (_jobs) {
+            return _jobs.size();
+        }
+    }
+
+    @Value(name = "scheduled", title = "Scheduled", desc = "The number of jobs scheduled since the script started.", order = 2)
+    public long getScheduled() {
+        return _scheduled.get();
+    }
+
+    @Value(name = "runs", title = "Runs", order = 3)
+    public long getRuns() {
+        return _runs.get();
+    }
+
+    @Value(name = "overruns", title = "Overruns", desc = "Runs skipped because the previous one was still running.", order = 4)
+    public long getOverruns() {
+        return _overruns.get();
+    }
+
+    @Value(name = "jobs", title = "Jobs", order = 5)
+    public Job[] getJobs() {
+        synchronized (_jobs) {
+            return _jobs.toArray(new Job[_jobs.size()]);
+        }
+    }
+
+    /**
+     * Calls back once after a delay (seconds).
+     */
+    public Job after(double delay, PyObject callback) {
+        final Job job = new Job("after", String.valueOf(delay), callback, false);
+
+        job.schedule(new TimerTask() {
+
+            @Override
+            public void run() {
+                job.fire();
+            }
+
+        }, toMillis(delay), 0);
+
+        return job;
+    } // (method)
+
+    /**
+     * Calls back at a fixed rate (seconds), starting after one period.
+     */
+    public Job every(double period, PyObject callback) {
+        return every(period, period, callback);
+    }
+
+    /**
+     * Calls back at a fixed rate (seconds), starting after a delay (seconds).
+     */
+    public Job every(double period, double delay, PyObject callback) {
+        if (period <= 0)
+            throw new IllegalArgumentException("The period must be positive.");
+
+        final Job job = new Job("every", String.valueOf(period), callback, true);
+
+        job.schedule(new TimerTask() {
+
+            @Override
+            public void run() {
+                job.fire();
+            }
+
+        }, toMillis(delay), Math.max(1, toMillis(period)));
+
+        return job;
+    } // (method)
+
+    /**
+     * Calls back according to a (5-field) cron expression, e.g. '0 7 * * 1-5' for 7am on weekdays.
+     */
+    public Job cron(String expression, PyObject callback) {
+        CronExpression cron = new CronExpression(expression);
+
+        Job job = new Job("cron", cron.toString(), callback, true);
+        job.scheduleNext(cron);
+
+        return job;
+    } // (method)
+
+    /**
+     * Cancels all jobs.
+     */
+    public void cancelAll() {
+        for (Job job : getJobs())
+            job.cancel();
+    } // (method)
+
+    /**
+     * Cancels all jobs and clears the statistics (when the interpreter is cleaned up).
+     * (package-private, see PyNode)
+     */
+    void reset() {
+        cancelAll();
+
+        _scheduled.set(0);
+        _runs.set(0);
+        _overruns.set(0);
+    } // (method)
+
+    private static long toMillis(double seconds) {
+        if (seconds < 0 || Double.isNaN(seconds))
+            throw new IllegalArgumentException("Times cannot be negative.");
+
+        return (long) (seconds * 1000);
+    } // (method)
+
+    /**
+     * A scheduled job.
+     */
+    public class Job {
+
+        private String _name;
+
+        private String _kind;
+
+        private String _schedule;
+
+        private PyObject _callback;
+
+        private boolean _repeating;
+
+        private volatile TimerTask _timerTask;
+
+        private volatile boolean _cancelled;
+
+        private volatile DateTime _nextRun;
+
+        private volatile DateTime _lastRun;
+
+        private AtomicBoolean _running = new AtomicBoolean();
+
+        private AtomicLong _runs = new AtomicLong();
+
+        private AtomicLong _overruns = new AtomicLong();
+
+        private Job(String kind, String schedule, PyObject callback, boolean repeating) {
+            if (callback == null)
+                throw new IllegalArgumentException("A callback function is required.");
+
+            _name = "timer_" + _nextID.incrementAndGet();
+            _kind = kind;
+            _schedule = schedule;
+            _callback = callback;
+            _repeating = repeating;
+
+            synchronized (_jobs) {
+                _jobs.add(this);
+            }
+
+            _scheduled.incrementAndGet();
+        }
+
+        @Value(name = "name", title = "Name", order = 1)
+        public String getName() {
+            return _name;
+        }
+
+        @Value(name = "kind", title = "Kind", desc = "'after', 'every' or 'cron'", order = 2)
+        public String getKind() {
+            return _kind;
+        }
+
+        @Value(name = "schedule", title = "Schedule", desc = "The delay, period (seconds) or cron expression.", order = 3)
+        public String getSchedule() {
+            return _schedule;
+        }
+
+        @Value(name = "runs", title = "Runs", order = 4)
+        public long getRuns() {
+            return _runs.get();
+        }
+
+        @Value(name = "overruns", title = "Overruns", order = 5)
+        public long getOverruns() {
+            return _overruns.get();
+        }
+
+        @Value(name = "lastRun", title = "Last run", order = 6)
+        public DateTime getLastRun() {
+            return _lastRun;
+        }
+
+        @Value(name = "nextRun", title = "Next run", desc = "(cron jobs)", order = 7)
+        public DateTime getNextRun() {
+            return _nextRun;
+        }
+
+        public boolean isCancelled() {
+            return _cancelled;
+        }
+
+        /**
+         * Cancels this job (a run in progress will complete).
+         */
+        public void cancel() {
+            _cancelled = true;
+
+            TimerTask timerTask = _timerTask;
+            if (timerTask != null)
+                timerTask.cancel();
+
+            remove();
+        } // (method)
+
+        private void remove() {
+            synchronized (_jobs) {
+                _jobs.remove(this);
+            }
+        } // (method)
+
+        private void schedule(TimerTask timerTask, long delay, long period) {
+            _timerTask = timerTask;
+
+            if (period > 0)
+                s_timers.scheduleAtFixedRate(timerTask, delay, period);
+            else
+                s_timers.schedule(timerTask, delay);
+        } // (method)
+
+        /**
+         * (cron jobs are a series of one-off timers)
+         */
+        private void scheduleNext(final CronExpression cron) {
+            if (_cancelled)
+                return;
+
+            DateTime next = cron.nextAfter(DateTime.now());
+            _nextRun = next;
+
+            if (next == null) {
+                // will never occur again
+                remove();
+                return;
+            }
+
+            TimerTask timerTask = new TimerTask() {
+
+                @Override
+                public void run() {
+                    fire();
+                    scheduleNext(cron);
+                }
+
+            };
+            _timerTask = timerTask;
+
+            s_timers.schedule(timerTask, next.toDate());
+        } // (method)
+
+        /**
+         * (timer thread)
+         */
+        private void fire() {
+            if (_cancelled)
+                return;
+
+            if (!_running.compareAndSet(false, true)) {
+                _overruns.incrementAndGet();
+                ScriptTimers.this._overruns.incrementAndGet();
+                return;
+            }
+
+            if (!_repeating)
+                remove();
+
+            s_threadPool.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        _lastRun = DateTime.now();
+                        _runs.incrementAndGet();
+                        ScriptTimers.this._runs.incrementAndGet();
+
+                        _node.handleCallback(_name, _callback);
+                    } finally {
+                        _running.set(false);
+                    }
+                }
+
+            });
+        } // (method)
+
+    } // (class)
+
+} // (class)
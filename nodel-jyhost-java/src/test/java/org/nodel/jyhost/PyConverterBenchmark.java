@@ -0,0 +1,267 @@
+package org.nodel.jyhost;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.util.Arrays;
+
+import org.nodel.json.JSONArray;
+import org.nodel.json.JSONException;
+import org.nodel.json.JSONObject;
+import org.nodel.reflection.Serialisation;
+import org.python.core.Py;
+import org.python.core.PyDictionary;
+import org.python.core.PyList;
+import org.python.core.PyNone;
+import org.python.core.PyObject;
+import org.python.core.PySystemState;
+import org.python.core.adapter.PyObjectAdapter;
+
+/**
+ * Compares 'PyConverter' with the adapter chain it replaced (as previously registered by 'Launch') for typical
+ * action and event payloads. Not a unit test, run it directly, e.g.
+ *
+ *     java -cp ... org.nodel.jyhost.PyConverterBenchmark
+ */
+public class PyConverterBenchmark {
+
+    private final static int WARMUP_ITERATIONS = 20000;
+
+    private final static int ITERATIONS = 20000;
+
+    private final static int ROUNDS = 5;
+
+    /**
+     * A conversion being timed.
+     */
+    private interface Op {
+
+        public Object run(Object value) throws Exception;
+
+    } // (class)
+
+    public static void main(String[] args) throws Exception {
+        PySystemState.initialize();
+
+        // (this process never registers PyConverter's adapter, 'PyConverter' does not rely on one)
+        registerPreviousAdapters();
+
+        Object[][] payloads = {
+            { "100 integers", ints() },
+            { "100 small dicts", smallDicts() },
+            { "nested dicts", nestedDicts() },
+        };
+
+        System.out.println(String.format("%-18s %-34s %12s %12s %8s", "payload", "path", "before (us)", "after (us)", "speed-up"));
+
+        for (Object[] payload : payloads) {
+            String name = (String) payload[0];
+            Object json = payload[1];
+
+            // arguments into Python, not touched by the script
+            compare(name, "toPy", json, new Op() {
+
+                @Override
+                public Object run(Object value) {
+                    return Py.java2py(value);
+                }
+
+            }, new Op() {
+
+                @Override
+                public Object run(Object value) {
+                    return PyConverter.toPy(value);
+                }
+
+            });
+
+            // arguments into Python, every item read (forces the lazy views)
+            compare(name, "toPy, every item read", json, new Op() {
+
+                @Override
+                public Object run(Object value) {
+                    return touch(Py.java2py(value));
+                }
+
+            }, new Op() {
+
+                @Override
+                public Object run(Object value) {
+                    return touch(PyConverter.toPy(value));
+                }
+
+            });
+
+            // results out of Python, as serialised for the response
+            final PyObject result = touch(Py.java2py(json));
+
+            compare(name, "result serialised", result, new Op() {
+
+                @Override
+                public Object run(Object value) {
+                    return Serialisation.serialise(value);
+                }
+
+            }, new Op() {
+
+                @Override
+                public Object run(Object value) {
+                    return Serialisation.serialise(PyConverter.toJSON(value));
+                }
+
+            });
+        } // (for)
+    } // (method)
+
+    private static void compare(String payload, String path, Object value, Op before, Op after) throws Exception {
+        long beforeNanos = time(before, value);
+        long afterNanos = time(after, value);
+
+        System.out.println(String.format("%-18s %-34s %12.1f %12.1f %7.1fx", payload, path, beforeNanos / 1000.0, afterNanos / 1000.0, (double) beforeNanos / afterNanos));
+    } // (method)
+
+    /**
+     * The median time per operation (nanos).
+     */
+    private static long time(Op op, Object value) throws Exception {
+        for (int a = 0; a < WARMUP_ITERATIONS; a++)
+            op.run(value);
+
+        long[] rounds = new long[ROUNDS];
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int a = 0; a < ITERATIONS; a++)
+                op.run(value);
+
+            rounds[r] = (System.nanoTime() - start) / ITERATIONS;
+        }
+
+        Arrays.sort(rounds);
+
+        return rounds[ROUNDS / 2];
+    } // (method)
+
+    /**
+     * Reads every item of a converted structure, as a script walking its argument would.
+     */
+    private static PyObject touch(PyObject pyObject) {
+        if (pyObject instanceof PyList || pyObject instanceof PyDictionary) {
+            for (PyObject key : pyObject.asIterable())
+                touch(pyObject instanceof PyList ? key : pyObject.__finditem__(key));
+        }
+
+        return pyObject;
+    } // (method)
+
+    private static JSONArray ints() {
+        JSONArray jsonArray = new JSONArray();
+        for (int a = 0; a < 100; a++)
+            jsonArray.put(a * 7);
+
+        return jsonArray;
+    } // (method)
+
+    private static JSONArray smallDicts() throws JSONException {
+        JSONArray jsonArray = new JSONArray();
+        for (int a = 0; a < 100; a++) {
+            JSONObject item = new JSONObject();
+            item.put("id", a);
+            item.put("name", "Input " + a);
+            item.put("level", a / 3.0);
+            item.put("on", a % 2 == 0);
+            jsonArray.put(item);
+        }
+
+        return jsonArray;
+    } // (method)
+
+    private static JSONObject nestedDicts() throws JSONException {
+        return new JSONObject("{ \"device\": { \"name\": \"Projector 1\", \"model\": \"X-100\", \"power\": { \"state\": \"On\", \"hours\": 1234 }, " +
+                              "\"inputs\": { \"current\": \"HDMI 1\", \"available\": [\"HDMI 1\", \"HDMI 2\", \"DVI\", \"VGA\"] } }, " +
+                              "\"status\": { \"level\": \"Ok\", \"message\": \"Running\", \"since\": \"2026-10-19T04:00:00Z\", \"faults\": [] }, " +
+                              "\"levels\": { \"a\": 1, \"b\": 2.5, \"c\": -3, \"d\": 0, \"e\": { \"f\": { \"g\": true, \"h\": null } } } }");
+    } // (method)
+
+    /**
+     * The adapters 'Launch' registered before 'PyConverter' (eager and recursive through 'Py.java2py').
+     */
+    private static void registerPreviousAdapters() {
+        // JSONObject.NULL
+        Py.getAdapter().addPostClass(new PyObjectAdapter() {
+
+            @Override
+            public boolean canAdapt(Object o) {
+                return JSONObject.NULL.equals(o);
+            }
+
+            @Override
+            public PyObject adapt(Object o) {
+                return PyNone.TYPE;
+            }
+
+        });
+
+        // JSONArray
+        Py.getAdapter().addPostClass(new PyObjectAdapter() {
+
+            @Override
+            public boolean canAdapt(Object o) {
+                return o instanceof JSONArray;
+            }
+
+            @Override
+            public PyObject adapt(Object o) {
+                JSONArray jsonArray = (JSONArray) o;
+
+                int len = jsonArray.length();
+
+                PyList pyList = new PyList();
+
+                for (int a = 0; a < len; a++) {
+                    try {
+                        Object obj = jsonArray.get(a);
+                        pyList.append(Py.java2py(obj));
+                    } catch (JSONException e) {
+                        pyList.append(PyNone.TYPE);
+                    }
+                } // (for)
+
+                return pyList;
+            }
+
+        });
+
+        // JSONDict
+        Py.getAdapter().addPostClass(new PyObjectAdapter() {
+
+            @Override
+            public boolean canAdapt(Object o) {
+                return o instanceof JSONObject;
+            }
+
+            @Override
+            public PyObject adapt(Object o) {
+                JSONObject jsonObject = (JSONObject) o;
+
+                PyDictionary pyDictionary = new PyDictionary();
+
+                for (String key : jsonObject.keySet()) {
+                    Object value;
+                    try {
+                        value = jsonObject.get(key);
+                    } catch (JSONException e) {
+                        value = PyNone.TYPE;
+                    }
+                    pyDictionary.put(key, Py.java2py(value));
+                } // (for)
+
+                return pyDictionary;
+            }
+
+        });
+    } // (method)
+
+} // (class)
@@ -0,0 +1,246 @@
+package org.nodel.jyhost;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nodel.SimpleName;
+import org.nodel.core.NodelClientAction;
+import org.nodel.host.ConsoleLogEntry;
+import org.nodel.host.NodeConfig;
+import org.nodel.host.ParamValues;
+import org.nodel.host.RemoteBindingValues;
+import org.nodel.io.Stream;
+import org.nodel.reflection.Serialisation;
+import org.python.core.PyObject;
+
+/**
+ * Runs a node against a real interpreter, checking which config changes restart the script.
+ */
+public class PyNodeTest {
+
+    private final static String SCRIPT =
+            "param_Level = Parameter({'title': 'Level', 'schema': {'type': 'integer'}})\n" +
+            "remote_action_Power = RemoteAction()\n" +
+            "remote_action_Mute = RemoteAction()\n" +
+            "def remote_event_Status(arg):\n" +
+            "    pass\n" +
+            "def main():\n" +
+            "    global mainLevel\n" +
+            "    mainLevel = param_Level\n";
+
+    private File _root;
+
+    private PyNode _node;
+
+    @Before
+    public void start() throws Exception {
+        _root = new File(System.getProperty("java.io.tmpdir"), "PyNodeTest_" + System.nanoTime());
+        _root.mkdirs();
+
+        Stream.writeFullyAtomically(new File(_root, "script.py"), SCRIPT);
+        Stream.writeFullyAtomically(new File(_root, "nodeConfig.json"), Serialisation.serialise(config("Display", 1), 4));
+
+        _node = new PyNode(_root);
+
+        // wait for 'main' to have run
+        long deadline = System.currentTimeMillis() + 60000;
+        for (;;) {
+            try {
+                if (_node.eval("mainLevel").toString().equals("1"))
+                    break;
+            } catch (Exception exc) {
+                // (not yet)
+            }
+
+            if (System.currentTimeMillis() > deadline)
+                fail("The script did not start.");
+
+            Thread.sleep(100);
+        }
+
+        // (only survives while the interpreter does)
+        _node.exec("marker = True");
+    }
+
+    @After
+    public void stop() {
+        _node.close();
+
+        for (File file : _root.listFiles())
+            file.delete();
+
+        _root.delete();
+    }
+
+    @Test
+    public void bindingValuesAreAppliedInPlace() throws Exception {
+        NodelClientAction power = action("remote_action_Power");
+        NodelClientAction mute = action("remote_action_Mute");
+
+        // Power is kept, Mute is retargeted and Status is removed
+        RemoteBindingValues values = config("Display", 1).remoteBindingValues;
+        values.actions.get(new SimpleName("Mute")).node = new SimpleName("Amplifier");
+        values.events.clear();
+
+        _node.getRemote().save(values);
+
+        assertEquals("True", _node.eval("marker").toString());
+
+        assertSame(power, action("remote_action_Power"));
+
+        NodelClientAction newMute = action("remote_action_Mute");
+        assertNotSame(mute, newMute);
+        assertEquals("Amplifier.Mute", newMute.getNodelPoint().toString());
+
+        assertConsole("Remote binding values applied to the running script (not restarted): " +
+                "remote_action_Mute rebound to 'Amplifier' / 'Mute'; remote_event_Status released.");
+    }
+
+    @Test
+    public void unchangedBindingValuesAreReported() throws Exception {
+        NodelClientAction power = action("remote_action_Power");
+
+        _node.getRemote().save(config("Display", 1).remoteBindingValues);
+
+        assertSame(power, action("remote_action_Power"));
+
+        assertConsole("Remote binding values applied to the running script (not restarted); no bindings changed.");
+    }
+
+    @Test
+    public void paramChangesRestartTheScript() throws Exception {
+        NodelClientAction power = action("remote_action_Power");
+
+        _node.saveConfig(config("Display", 2));
+
+        assertEquals("2", _node.eval("mainLevel").toString());
+        assertEquals("False", _node.eval("'marker' in globals()").toString());
+
+        // (the unchanged binding still survives the restart)
+        assertSame(power, action("remote_action_Power"));
+    }
+
+    @Test
+    public void configSaveFailuresAreSurfaced() throws Exception {
+        // (a non-empty directory cannot be replaced by the config)
+        File configFile = new File(_root, "nodeConfig.json");
+        configFile.delete();
+        configFile.mkdir();
+        File blocker = new File(configFile, "blocker");
+        Stream.writeFullyAtomically(blocker, "");
+
+        try {
+            _node.getRemote().save(config("Display", 1).remoteBindingValues);
+
+            // (a snapshot taken before the write-behind delay is up must not be served once the save fails)
+            assertFalse(rootSnapshot().contains("could not be saved"));
+
+            waitForConfigSaveError(true);
+
+            String error = _node.getConfigSaveError();
+            assertTrue(error, error.startsWith("The config could not be saved - "));
+            assertConsole(error);
+
+            assertTrue(rootSnapshot().contains(error.substring(0, 30)));
+
+        } finally {
+            blocker.delete();
+            configFile.delete();
+        }
+
+        // the next successful save clears it
+        _node.getRemote().save(config("Display", 1).remoteBindingValues);
+        assertTrue(rootSnapshot().contains("could not be saved"));
+
+        waitForConfigSaveError(false);
+
+        assertFalse(rootSnapshot().contains("could not be saved"));
+    }
+
+    @Test
+    public void configIsSavedAsItWasWhenSaved() throws Exception {
+        NodeConfig config = config("Display", 2);
+        _node.saveConfig(config);
+
+        // (changes after saving, before the write-behind delay is up, are not written)
+        config.paramValues.put(new SimpleName("Level"), 3);
+
+        _node.close();
+
+        NodeConfig saved = (NodeConfig) Serialisation.coerceFromJSON(NodeConfig.class, Stream.readFully(new File(_root, "nodeConfig.json")));
+        assertEquals(2, ((Number) saved.paramValues.get(new SimpleName("Level"))).intValue());
+    }
+
+    /**
+     * The node itself, as served by the host through its snapshot cache.
+     */
+    private String rootSnapshot() throws Exception {
+        String[] parts = new String[0];
+        Properties params = new Properties();
+
+        return NodelHostHTTPD.getSnapshot(_node, NodelHostHTTPD.getSnapshotKey(parts, params), _node.getVersion(), parts, params).data;
+    }
+
+    private void waitForConfigSaveError(boolean present) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while ((_node.getConfigSaveError() != null) != present && System.currentTimeMillis() < deadline)
+            Thread.sleep(50);
+    }
+
+    private NodelClientAction action(String name) throws Exception {
+        return (NodelClientAction) ((PyObject) _node.eval(name)).__tojava__(NodelClientAction.class);
+    }
+
+    private void assertConsole(String comment) {
+        for (ConsoleLogEntry entry : _node.getConsoleLogs(0, 1000, 0)) {
+            if (comment.equals(entry.comment))
+                return;
+        }
+
+        fail("Console did not show: " + comment);
+    }
+
+    private static NodeConfig config(String node, int level) throws IOException {
+        NodeConfig config = new NodeConfig();
+
+        config.remoteBindingValues = new RemoteBindingValues();
+        config.remoteBindingValues.actions = new LinkedHashMap<SimpleName, RemoteBindingValues.ActionValue>();
+        config.remoteBindingValues.events = new LinkedHashMap<SimpleName, RemoteBindingValues.EventValue>();
+
+        for (String name : new String[] { "Power", "Mute" }) {
+            RemoteBindingValues.ActionValue action = new RemoteBindingValues.ActionValue();
+            action.node = new SimpleName(node);
+            action.action = new SimpleName(name);
+            config.remoteBindingValues.actions.put(new SimpleName(name), action);
+        }
+
+        RemoteBindingValues.EventValue event = new RemoteBindingValues.EventValue();
+        event.node = new SimpleName(node);
+        event.event = new SimpleName("Status");
+        config.remoteBindingValues.events.put(new SimpleName("Status"), event);
+
+        config.paramValues = new ParamValues();
+        config.paramValues.put(new SimpleName("Level"), level);
+
+        return config;
+    }
+
+}
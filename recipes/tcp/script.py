@@ -3,27 +3,17 @@
 
 '''This node demonstrates a simple tcp controller.'''
 
-# Libraries required by this node
-import socket
-
 # Functions used by this node
 def send_tcp_string(msg):
-  #open socket
-  sock = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
-  sock.settimeout(10)
-  try:
-    sock.connect((param_ipAddress, param_port))
-    sock.send(msg)
-    data = sock.recv(1024)
-    assert msg in data
-  except socket.error, e:
-    print "socket error: %s\n" % e
-    local_event_Error.emit(e)
-  except AssertionError, e:
-    print "command error: %s\n" % e
-    local_event_Error.emit(e)
-  finally:
-    sock.close()
+  # (the connection is kept open and shared between calls)
+  conn = connections.tcp(param_ipAddress, int(param_port))
+  data = conn.request(msg)
+  if data is None:
+    print "socket error: no response from %s\n" % conn
+    local_event_Error.emit('No response (%s)' % conn.getLastError())
+  elif msg not in data:
+    print "command error: unexpected response %s\n" % data
+    local_event_Error.emit(data)
 
 # Local actions this Node provides
 def local_action_Start(arg = None):
@@ -3,20 +3,10 @@
 
 '''This node demonstrates a simple udp controller.'''
 
-import socket
-
 # Functions used by this node
 def send_udp_string(msg):
-  #open socket
-  sock = socket.socket(socket.AF_INET, socket.SOCK_DGRAM)
-  try:
-    sock.sendto(msg, (param_ipAddress, param_port))
-  except socket.error, msg:
-    print "error: %s\n" % msg
-    local_event_Error.emit(msg)
-  finally:
-    if sock:
-      sock.close()
+  # (no response is expected)
+  connections.udp(param_ipAddress, int(param_port)).send(msg)
 
 # Local actions this Node provides
 def local_action_Start(arg = None):